@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Request state of a coalescing connection, shared by the HTTP and HTTPS
+ * connection wrappers.
+ * <p>
+ * Records the request headers set by the application, and once the response
+ * is needed either joins the coalesced request or, for requests which may
+ * not be coalesced, connects the wrapped connection.
+ */
+final class CoalescedRequest {
+
+    private static final String GET = "GET";
+
+    private final HttpURLConnection delegate;
+    private final RequestCoalescer coalescer;
+    private final Map<String, List<String>> headers
+            = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private CoalescedResponse response; //guarded by this
+    private InputStream body; //guarded by this
+    private boolean direct; //guarded by this
+    private boolean released; //guarded by this
+
+    CoalescedRequest(HttpURLConnection delegate, RequestCoalescer coalescer) {
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+    }
+
+    HttpURLConnection getDelegate() {
+        return delegate;
+    }
+
+    synchronized void setRequestProperty(String key, String value) {
+        delegate.setRequestProperty(key, value);
+        if (key != null) {
+            List<String> values = new ArrayList<>(1);
+            values.add(value);
+            headers.put(key, values);
+        }
+    }
+
+    synchronized void addRequestProperty(String key, String value) {
+        delegate.addRequestProperty(key, value);
+        if (key != null) {
+            headers.computeIfAbsent(key, (k) -> new ArrayList<>(1))
+                    .add(value);
+        }
+    }
+
+    /**
+     * Returns the coalesced response, making or joining the request, or null
+     * if the request is made directly by the wrapped connection.
+     */
+    synchronized CoalescedResponse response() throws IOException {
+        if (response != null || direct) {
+            return response;
+        }
+        if (!GET.equals(delegate.getRequestMethod())
+                || delegate.getDoOutput()) {
+            direct = true;
+            return null;
+        }
+        response = coalescer.exchange(key(), delegate, waitMillis());
+        return response;
+    }
+
+    /**
+     * Returns the response, or null if the request could not be made or is
+     * made directly.  Header accessors of URLConnection do not throw.
+     */
+    CoalescedResponse responseQuietly() {
+        try {
+            return response();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    synchronized boolean isDirect() {
+        return direct;
+    }
+
+    void connect() throws IOException {
+        if (response() == null) {
+            delegate.connect();
+        }
+    }
+
+    int getResponseCode() throws IOException {
+        CoalescedResponse r = response();
+        return (r == null) ? delegate.getResponseCode() : r.getCode();
+    }
+
+    String getResponseMessage() throws IOException {
+        CoalescedResponse r = response();
+        return (r == null) ? delegate.getResponseMessage() : r.getMessage();
+    }
+
+    InputStream getInputStream() throws IOException {
+        CoalescedResponse r = response();
+        if (r == null) {
+            return delegate.getInputStream();
+        }
+        if (r.getCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            String url = delegate.getURL().toString();
+            if (r.getCode() == HttpURLConnection.HTTP_NOT_FOUND
+                    || r.getCode() == HttpURLConnection.HTTP_GONE) {
+                throw new FileNotFoundException(url);
+            }
+            throw new IOException(String.format("Server returned HTTP "
+                    + "response code: %d for URL: %s", r.getCode(), url));
+        }
+        return body(r);
+    }
+
+    InputStream getErrorStream() {
+        CoalescedResponse r;
+        synchronized (this) {
+            if (direct) {
+                return delegate.getErrorStream();
+            }
+            r = response;
+        }
+        if (r == null || r.getCode() < HttpURLConnection.HTTP_BAD_REQUEST) {
+            return null;
+        }
+        try {
+            return body(r);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    OutputStream getOutputStream() throws IOException {
+        synchronized (this) {
+            if (response != null) {
+                throw new IllegalStateException("Already connected");
+            }
+            direct = true;
+        }
+        return delegate.getOutputStream();
+    }
+
+    String getHeaderField(String name) {
+        CoalescedResponse r = responseQuietly();
+        return (r == null) ? delegate.getHeaderField(name)
+                : r.getHeaderField(name);
+    }
+
+    String getHeaderField(int n) {
+        CoalescedResponse r = responseQuietly();
+        return (r == null) ? delegate.getHeaderField(n)
+                : r.getHeaderField(n);
+    }
+
+    String getHeaderFieldKey(int n) {
+        CoalescedResponse r = responseQuietly();
+        return (r == null) ? delegate.getHeaderFieldKey(n)
+                : r.getHeaderFieldKey(n);
+    }
+
+    Map<String, List<String>> getHeaderFields() {
+        CoalescedResponse r = responseQuietly();
+        return (r == null) ? delegate.getHeaderFields()
+                : r.getHeaderFields();
+    }
+
+    /**
+     * Releases the reference to the response held by the connection.
+     */
+    void disconnect() {
+        InputStream in;
+        synchronized (this) {
+            if (response == null) {
+                if (direct) {
+                    delegate.disconnect();
+                }
+                return;
+            }
+            in = body;
+            if (in == null && !released) {
+                released = true;
+                response.release();
+            }
+        }
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                //already closed
+            }
+        }
+    }
+
+    private synchronized InputStream body(CoalescedResponse r)
+            throws IOException {
+        if (body == null) {
+            if (released) {
+                throw new IOException("Connection is disconnected.");
+            }
+            released = true; //released by the stream from here
+            body = r.openBody();
+        }
+        return body;
+    }
+
+    /**
+     * Request key: the URL, the settings which change the request or its
+     * response (if-modified-since, redirect following and caching) and every
+     * header set by the application.
+     */
+    private String key() {
+        StringBuilder sb = new StringBuilder(delegate.getURL().toString())
+                .append('\n').append(delegate.getIfModifiedSince())
+                .append(delegate.getInstanceFollowRedirects() ? 'R' : '-')
+                .append(delegate.getUseCaches() ? 'C' : '-');
+        for (Map.Entry<String, List<String>> h : headers.entrySet()) {
+            sb.append('\n').append(h.getKey().toLowerCase()).append(':');
+            for (String v : h.getValue()) {
+                sb.append(v).append(',');
+            }
+        }
+        return sb.toString();
+    }
+
+    private long waitMillis() {
+        int connect = delegate.getConnectTimeout();
+        int read = delegate.getReadTimeout();
+        return (connect == 0 || read == 0) ? 0 : (long) connect + read;
+    }
+}
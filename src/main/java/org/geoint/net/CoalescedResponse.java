@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Response of a coalesced request, read once and shared by every connection
+ * which requested it.
+ * <p>
+ * The body is held in memory up to a limit, beyond which it is written to a
+ * temporary file.  Each connection sharing the response holds a reference to
+ * it, released when it closes its body stream or disconnects; the file is
+ * deleted when the last reference is released, or when the response is
+ * garbage collected if a connection was abandoned without releasing it.
+ */
+final class CoalescedResponse {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final Logger LOGGER
+            = Logger.getLogger(CoalescedResponse.class.getName());
+
+    private final int code;
+    private final String message;
+    private final List<String> headerKeys;
+    private final List<String> headerValues;
+    private final Map<String, List<String>> headerFields;
+    private final byte[] body; //null if spilled to file
+    private final File file;
+    private final String cipherSuite;
+    private final Certificate[] localCertificates;
+    private final Certificate[] serverCertificates;
+    private final Principal peerPrincipal;
+    private final Principal localPrincipal;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private CoalescedResponse(HttpURLConnection conn, byte[] body, File file)
+            throws IOException {
+        this.code = conn.getResponseCode();
+        this.message = conn.getResponseMessage();
+        this.headerKeys = new ArrayList<>();
+        this.headerValues = new ArrayList<>();
+        for (int i = 0;; i++) {
+            String value = conn.getHeaderField(i);
+            if (value == null) {
+                break;
+            }
+            headerKeys.add(conn.getHeaderFieldKey(i));
+            headerValues.add(value);
+        }
+        this.headerFields = Collections.unmodifiableMap(conn.getHeaderFields());
+        this.body = body;
+        this.file = file;
+
+        if (conn instanceof HttpsURLConnection) {
+            HttpsURLConnection https = (HttpsURLConnection) conn;
+            this.cipherSuite = https.getCipherSuite();
+            this.localCertificates = https.getLocalCertificates();
+            this.localPrincipal = https.getLocalPrincipal();
+            Certificate[] server = null;
+            Principal peer = null;
+            try {
+                server = https.getServerCertificates();
+                peer = https.getPeerPrincipal();
+            } catch (SSLPeerUnverifiedException ex) {
+                //anonymous server
+            }
+            this.serverCertificates = server;
+            this.peerPrincipal = peer;
+        } else {
+            this.cipherSuite = null;
+            this.localCertificates = null;
+            this.serverCertificates = null;
+            this.peerPrincipal = null;
+            this.localPrincipal = null;
+        }
+    }
+
+    /**
+     * Makes the request of the connection and reads the response.
+     *
+     * @param conn unconnected connection
+     * @param memoryLimit size of body held in memory
+     * @return response
+     * @throws IOException if the request failed
+     */
+    static CoalescedResponse read(HttpURLConnection conn, int memoryLimit)
+            throws IOException {
+        int code = conn.getResponseCode();
+        InputStream in = (code >= HttpURLConnection.HTTP_BAD_REQUEST)
+                ? conn.getErrorStream()
+                : conn.getInputStream();
+        if (in == null) {
+            return new CoalescedResponse(conn, new byte[0], null);
+        }
+
+        try (InputStream i = in) {
+            ByteArrayOutputStream memory = new ByteArrayOutputStream(
+                    Math.min(BUFFER_SIZE, memoryLimit));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = i.read(buffer)) != -1) {
+                if (memory.size() + read > memoryLimit) {
+                    return new CoalescedResponse(conn, null,
+                            spill(memory, buffer, read, i));
+                }
+                memory.write(buffer, 0, read);
+            }
+            return new CoalescedResponse(conn, memory.toByteArray(), null);
+        }
+    }
+
+    private static File spill(ByteArrayOutputStream memory, byte[] buffer,
+            int read, InputStream in) throws IOException {
+        File file = File.createTempFile("coalesced", ".body");
+        try (OutputStream out = new FileOutputStream(file)) {
+            memory.writeTo(out);
+            do {
+                out.write(buffer, 0, read);
+            } while ((read = in.read(buffer)) != -1);
+            return file;
+        } catch (IOException | RuntimeException ex) {
+            file.delete();
+            throw ex;
+        }
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    String getHeaderField(int n) {
+        return (n < headerValues.size()) ? headerValues.get(n) : null;
+    }
+
+    String getHeaderFieldKey(int n) {
+        return (n < headerKeys.size()) ? headerKeys.get(n) : null;
+    }
+
+    /**
+     * Returns the last value of the header, as HttpURLConnection does.
+     */
+    String getHeaderField(String name) {
+        if (name == null) {
+            return getHeaderField(0);
+        }
+        for (int i = headerKeys.size() - 1; i >= 0; i--) {
+            if (name.equalsIgnoreCase(headerKeys.get(i))) {
+                return headerValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    Map<String, List<String>> getHeaderFields() {
+        return headerFields;
+    }
+
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    String getCipherSuite() {
+        return cipherSuite;
+    }
+
+    Certificate[] getLocalCertificates() {
+        return localCertificates;
+    }
+
+    Certificate[] getServerCertificates() throws SSLPeerUnverifiedException {
+        if (serverCertificates == null) {
+            throw new SSLPeerUnverifiedException("Peer not authenticated.");
+        }
+        return serverCertificates;
+    }
+
+    Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+        if (peerPrincipal == null) {
+            throw new SSLPeerUnverifiedException("Peer not authenticated.");
+        }
+        return peerPrincipal;
+    }
+
+    Principal getLocalPrincipal() {
+        return localPrincipal;
+    }
+
+    /**
+     * Adds references for connections which joined the request.
+     *
+     * @param count number of references
+     */
+    void retain(int count) {
+        references.addAndGet(count);
+    }
+
+    /**
+     * Releases a reference, deleting the spilled body after the last.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0 && file != null
+                && !file.delete()) {
+            LOGGER.log(Level.FINE, "Unable to delete coalesced response "
+                    + "body ''{0}''.", file);
+        }
+    }
+
+    /**
+     * Deletes the spilled body of a response whose connections were
+     * discarded without being closed or disconnected.
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            if (references.get() > 0 && file != null && file.delete()) {
+                LOGGER.log(Level.FINE, "Deleted unreleased coalesced "
+                        + "response body ''{0}''.", file);
+            }
+        } finally {
+            super.finalize();
+        }
+    }
+
+    /**
+     * Opens an independent stream over the body which releases a reference
+     * when closed.
+     *
+     * @return body stream
+     * @throws IOException if the spilled body could not be opened
+     */
+    InputStream openBody() throws IOException {
+        InputStream in = (file == null)
+                ? new ByteArrayInputStream(body)
+                : new FileInputStream(file);
+        return new FilterInputStream(in) {
+            private final AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public void close() throws IOException {
+                if (closed.compareAndSet(false, true)) {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpURLConnection whose GET request may be coalesced with identical
+ * concurrent requests by a {@link RequestCoalescer}.
+ * <p>
+ * Every other method delegates to the initialized connection it wraps, which
+ * makes the request upstream if this connection is the first to make it, or
+ * if the request may not be coalesced.
+ */
+class CoalescingHttpURLConnection extends HttpURLConnection {
+
+    private final CoalescedRequest request;
+
+    CoalescingHttpURLConnection(HttpURLConnection delegate,
+            RequestCoalescer coalescer) {
+        super(delegate.getURL());
+        this.request = new CoalescedRequest(delegate, coalescer);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        request.connect();
+        connected = true;
+    }
+
+    @Override
+    public void disconnect() {
+        request.disconnect();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return request.getDelegate().usingProxy();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        InputStream in = request.getInputStream();
+        connected = true;
+        return in;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return request.getErrorStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return request.getOutputStream();
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        int code = request.getResponseCode();
+        connected = true;
+        return code;
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        return request.getResponseMessage();
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return request.getHeaderField(name);
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        return request.getHeaderField(n);
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        return request.getHeaderFieldKey(n);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return request.getHeaderFields();
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        request.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value) {
+        request.addRequestProperty(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(String key) {
+        return request.getDelegate().getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties() {
+        return request.getDelegate().getRequestProperties();
+    }
+
+    @Override
+    public void setRequestMethod(String method) throws ProtocolException {
+        request.getDelegate().setRequestMethod(method);
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return request.getDelegate().getRequestMethod();
+    }
+
+    @Override
+    public void setConnectTimeout(int timeout) {
+        request.getDelegate().setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return request.getDelegate().getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) {
+        request.getDelegate().setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return request.getDelegate().getReadTimeout();
+    }
+
+    @Override
+    public void setDoOutput(boolean dooutput) {
+        request.getDelegate().setDoOutput(dooutput);
+    }
+
+    @Override
+    public boolean getDoOutput() {
+        return request.getDelegate().getDoOutput();
+    }
+
+    @Override
+    public void setDoInput(boolean doinput) {
+        request.getDelegate().setDoInput(doinput);
+    }
+
+    @Override
+    public boolean getDoInput() {
+        return request.getDelegate().getDoInput();
+    }
+
+    @Override
+    public void setUseCaches(boolean usecaches) {
+        request.getDelegate().setUseCaches(usecaches);
+    }
+
+    @Override
+    public boolean getUseCaches() {
+        return request.getDelegate().getUseCaches();
+    }
+
+    @Override
+    public void setDefaultUseCaches(boolean defaultusecaches) {
+        request.getDelegate().setDefaultUseCaches(defaultusecaches);
+    }
+
+    @Override
+    public boolean getDefaultUseCaches() {
+        return request.getDelegate().getDefaultUseCaches();
+    }
+
+    @Override
+    public void setIfModifiedSince(long ifmodifiedsince) {
+        request.getDelegate().setIfModifiedSince(ifmodifiedsince);
+    }
+
+    @Override
+    public long getIfModifiedSince() {
+        return request.getDelegate().getIfModifiedSince();
+    }
+
+    @Override
+    public void setAllowUserInteraction(boolean allowuserinteraction) {
+        request.getDelegate().setAllowUserInteraction(allowuserinteraction);
+    }
+
+    @Override
+    public boolean getAllowUserInteraction() {
+        return request.getDelegate().getAllowUserInteraction();
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        request.getDelegate().setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects() {
+        return request.getDelegate().getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunklen) {
+        request.getDelegate().setChunkedStreamingMode(chunklen);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        request.getDelegate().setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength) {
+        request.getDelegate().setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public URL getURL() {
+        return request.getDelegate().getURL();
+    }
+
+    @Override
+    public Permission getPermission() throws IOException {
+        return request.getDelegate().getPermission();
+    }
+
+    @Override
+    public String toString() {
+        return request.getDelegate().toString();
+    }
+}
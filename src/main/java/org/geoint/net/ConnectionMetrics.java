@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Records the timing breakdown and byte counts of requests made with
+ * HTTP(S) connections created by a
+ * {@link URLProtocolRegistry#setConnectionMetrics(ConnectionMetrics) registry}.
+ * <p>
+ * Each request is recorded once, when its response body has been read or
+ * closed, its connection is disconnected, or it fails; a request whose
+ * response is never read and whose connection is never disconnected is not
+ * recorded.  Requests are aggregated by endpoint (scheme, host and port) in
+ * lock-free {@link RouteMetrics}, and passed to the listener, if any, on the
+ * thread which completed them.
+ * <p>
+ * The DNS, connect and TLS handshake times of a new HTTPS connection are
+ * measured by the sockets of its SSLSocketFactory, which is decorated when
+ * the connection connects; the decorated factory of a factory is reused, so
+ * instrumented connections are kept alive and reused as usual.  The JRE
+ * HttpURLConnection does not expose the sockets of plain HTTP connections,
+ * whose connect time includes resolving the host.
+ * <p>
+ * Instrumentation is disabled by default; when disabled, connections are
+ * not wrapped.
+ */
+public class ConnectionMetrics {
+
+    private static final Logger LOGGER
+            = Logger.getLogger(ConnectionMetrics.class.getName());
+
+    private final Predicate<URL> routes;
+    private final Consumer<? super ConnectionTiming> listener;
+    private final ConcurrentMap<String, RouteMetrics> endpoints
+            = new ConcurrentHashMap<>(); //key=endpoint
+    //key=decorated factory; the decorator references its key, so it is held
+    //weakly and stays reachable through its connections and the keep-alive
+    //cache (keyed by factory identity) while it is in use
+    private final Map<SSLSocketFactory, WeakReference<SSLSocketFactory>>
+            factories = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Records requests to every HTTP(S) URL, without a listener.
+     */
+    public ConnectionMetrics() {
+        this((u) -> true, null);
+    }
+
+    /**
+     * Records requests to every HTTP(S) URL.
+     *
+     * @param listener called with the timing of each request
+     */
+    public ConnectionMetrics(Consumer<? super ConnectionTiming> listener) {
+        this((u) -> true, listener);
+    }
+
+    /**
+     * @param routes URLs whose requests are recorded
+     * @param listener called with the timing of each request, or null
+     */
+    public ConnectionMetrics(Predicate<URL> routes,
+            Consumer<? super ConnectionTiming> listener) {
+        this.routes = routes;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the metrics of the requests to the endpoint.
+     *
+     * @param protocol protocol
+     * @param host host
+     * @param port port, or -1 for the default port of the protocol
+     * @return route metrics, or null if no request to the endpoint was
+     * recorded
+     */
+    public RouteMetrics getRoute(String protocol, String host, int port) {
+        return endpoints.get(ParsedURL.endpoint(protocol, host, port));
+    }
+
+    /**
+     * Returns the metrics of each endpoint requests were recorded for.
+     *
+     * @return unmodifiable view of the route metrics by endpoint key
+     * @see ParsedURL#getEndpoint()
+     */
+    public Map<String, RouteMetrics> getRoutes() {
+        return Collections.unmodifiableMap(endpoints);
+    }
+
+    /**
+     * Clears the metrics of every route.
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    /**
+     * Wraps an initialized connection so that its request is recorded.
+     *
+     * @param conn initialized connection
+     * @return instrumented connection, or the connection if it is not an
+     * HTTP connection to a recorded route
+     */
+    URLConnection wrap(URLConnection conn) {
+        if (!(conn instanceof HttpURLConnection)
+                || !routes.test(conn.getURL())) {
+            return conn;
+        }
+        if (conn instanceof HttpsURLConnection) {
+            return new InstrumentedHttpsURLConnection(
+                    (HttpsURLConnection) conn, this);
+        }
+        return new InstrumentedHttpURLConnection((HttpURLConnection) conn,
+                this);
+    }
+
+    /**
+     * Returns the decorated factory, whose sockets time their connection and
+     * handshake.  The same decorator is returned for the factory while it is
+     * reachable, so pooled connections of the factory are reused.
+     */
+    SSLSocketFactory instrument(SSLSocketFactory factory) {
+        if (factory instanceof InstrumentedSSLSocketFactory) {
+            return factory;
+        }
+        synchronized (factories) {
+            WeakReference<SSLSocketFactory> ref = factories.get(factory);
+            SSLSocketFactory instrumented = (ref == null) ? null : ref.get();
+            if (instrumented == null) {
+                instrumented = new InstrumentedSSLSocketFactory(factory);
+                factories.put(factory, new WeakReference<>(instrumented));
+            }
+            return instrumented;
+        }
+    }
+
+    void record(ConnectionTiming timing) {
+        String endpoint = timing.getEndpoint();
+        RouteMetrics route = endpoints.get(endpoint);
+        if (route == null) {
+            route = endpoints.computeIfAbsent(endpoint, RouteMetrics::new);
+        }
+        route.record(timing);
+        if (listener != null) {
+            try {
+                listener.accept(timing);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, String.format("Connection metrics "
+                        + "listener failed for '%s'.", timing.getURL()), ex);
+            }
+        }
+    }
+}
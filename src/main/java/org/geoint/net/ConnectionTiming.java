@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing breakdown and byte counts of one request made with a connection
+ * instrumented by {@link ConnectionMetrics}.
+ * <p>
+ * Durations are in nanoseconds from the start of the request, when the
+ * connection first connected.  The DNS and TLS handshake durations are part
+ * of the connect duration, and are only measured for a new HTTPS connection
+ * whose sockets were created by the SSLSocketFactory of the connection; a
+ * duration which was not measured is -1.
+ */
+public final class ConnectionTiming {
+
+    private final URL url;
+    private final String endpoint;
+    private final long dnsNanos;
+    private final long connectNanos;
+    private final long tlsHandshakeNanos;
+    private final long ttfbNanos;
+    private final long totalNanos;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final Exception failure;
+
+    ConnectionTiming(URL url, String endpoint, long dnsNanos,
+            long connectNanos, long tlsHandshakeNanos, long ttfbNanos,
+            long totalNanos, long bytesRead, long bytesWritten,
+            Exception failure) {
+        this.url = url;
+        this.endpoint = endpoint;
+        this.dnsNanos = dnsNanos;
+        this.connectNanos = connectNanos;
+        this.tlsHandshakeNanos = tlsHandshakeNanos;
+        this.ttfbNanos = ttfbNanos;
+        this.totalNanos = totalNanos;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.failure = failure;
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    /**
+     * Returns the endpoint of the request, the key of its
+     * {@link RouteMetrics route}.
+     *
+     * @return endpoint key
+     * @see ParsedURL#getEndpoint()
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Time resolving the host before the socket connected.
+     *
+     * @return nanoseconds, or -1 if not measured
+     */
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    /**
+     * Time connecting, including resolving the host and the TLS handshake;
+     * close to zero if a kept-alive connection was reused.
+     *
+     * @return nanoseconds, or -1 if the connection did not connect
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * Time of the TLS handshake.
+     *
+     * @return nanoseconds, or -1 if not measured
+     */
+    public long getTlsHandshakeNanos() {
+        return tlsHandshakeNanos;
+    }
+
+    /**
+     * Time to the first byte: from the start of the request until the
+     * response status and headers were read.
+     *
+     * @return nanoseconds, or -1 if there was no response
+     */
+    public long getTtfbNanos() {
+        return ttfbNanos;
+    }
+
+    /**
+     * Time from the start of the request until the response body was read,
+     * the connection was disconnected or the request failed.
+     *
+     * @return nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return bytes of the response body (or error body) read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return bytes of the request body written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return exception the request failed with, or null if it did not fail
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s dns=%s connect=%s tls=%s ttfb=%s total=%s "
+                + "read=%d written=%d%s", url, millis(dnsNanos),
+                millis(connectNanos), millis(tlsHandshakeNanos),
+                millis(ttfbNanos), millis(totalNanos), bytesRead,
+                bytesWritten, (failure == null) ? "" : " failed=" + failure);
+    }
+
+    private static String millis(long nanos) {
+        return (nanos < 0) ? "-"
+                : String.format("%.3fms",
+                        nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to hosts which resolve to several addresses by racing connection
+ * attempts with staggered starts, as described by
+ * <a href="https://tools.ietf.org/html/rfc8305">RFC 8305</a> (Happy
+ * Eyeballs version 2).
+ * <p>
+ * The addresses of a host are ordered alternating between address families,
+ * starting with the family which connected first the last time the host was
+ * connected to (or the family of the first resolved address for a host not
+ * yet connected to).  An attempt is started on the first address, and on the
+ * next address each time the attempt delay elapses without a connection or
+ * an attempt fails.  The first connection established is returned and the
+ * remaining attempts are cancelled.
+ * <p>
+ * Attempts are made on daemon threads, so the calling thread only waits for
+ * the first connection.  Hosts which resolve to a single address are
+ * connected to on the calling thread.
+ *
+ * @see HappyEyeballsSocketFactory
+ */
+public class HappyEyeballsConnector {
+
+    /**
+     * Connection attempt delay recommended by RFC 8305.
+     */
+    public static final long DEFAULT_ATTEMPT_DELAY_MILLIS = 250;
+    private static final int DEFAULT_MAX_HOSTS = 1024;
+    private static final ExecutorService ATTEMPTS
+            = Executors.newCachedThreadPool((r) -> {
+                Thread t = new Thread(r, "happy-eyeballs-connect");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final long attemptDelayNanos;
+    private final Map<String, Boolean> ipv6Preferred; //key=host
+
+    /**
+     * Connector with the RFC 8305 recommended attempt delay of 250ms.
+     */
+    public HappyEyeballsConnector() {
+        this(DEFAULT_ATTEMPT_DELAY_MILLIS, TimeUnit.MILLISECONDS,
+                DEFAULT_MAX_HOSTS);
+    }
+
+    /**
+     * @param attemptDelay time to wait for an attempt to connect before
+     * starting the next
+     * @param unit attempt delay unit
+     * @param maxHosts maximum number of hosts whose faster address family
+     * is remembered; the least recently connected are forgotten
+     */
+    public HappyEyeballsConnector(long attemptDelay, TimeUnit unit,
+            int maxHosts) {
+        if (attemptDelay < 0) {
+            throw new IllegalArgumentException("Attempt delay must not be "
+                    + "negative.");
+        }
+        this.attemptDelayNanos = unit.toNanos(attemptDelay);
+        this.ipv6Preferred = Collections.synchronizedMap(
+                new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Boolean> eldest) {
+                return size() > maxHosts;
+            }
+        });
+    }
+
+    /**
+     * Connects to the host, racing its addresses.
+     *
+     * @param host host name or address
+     * @param port port
+     * @param timeout maximum time to connect, in milliseconds, or zero for
+     * no timeout
+     * @param options options applied to each socket before it connects, may
+     * be null
+     * @return connected socket
+     * @throws IOException if no address could be connected to
+     */
+    public Socket connect(String host, int port, int timeout,
+            SocketOptions options) throws IOException {
+        return connect(host, InetAddress.getAllByName(host), port, timeout,
+                options);
+    }
+
+    /**
+     * Returns the address family which connected first the last time the
+     * host was connected to.
+     *
+     * @param host host name
+     * @return true if IPv6 connected first, false if IPv4, null if not known
+     */
+    public Boolean isIPv6Preferred(String host) {
+        return ipv6Preferred.get(key(host));
+    }
+
+    Socket connect(String host, InetAddress[] resolved, int port,
+            int timeout, SocketOptions options) throws IOException {
+        List<InetAddress> addresses = order(host, resolved);
+        if (addresses.isEmpty()) {
+            throw new UnknownHostException(host);
+        }
+        if (addresses.size() == 1) {
+            Socket socket = open(options);
+            try {
+                socket.connect(new InetSocketAddress(addresses.get(0), port),
+                        timeout);
+                return socket;
+            } catch (IOException | RuntimeException ex) {
+                socket.close();
+                throw ex;
+            }
+        }
+
+        Race race = new Race(port, options, (timeout > 0)
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)
+                : Long.MAX_VALUE);
+        Attempt winner = null;
+        try {
+            winner = race.run(addresses);
+            ipv6Preferred.put(key(host),
+                    winner.address instanceof Inet6Address);
+            return winner.socket;
+        } finally {
+            race.cancel(winner);
+        }
+    }
+
+    /**
+     * Orders the addresses alternating between families, starting with the
+     * preferred family.
+     */
+    List<InetAddress> order(String host, InetAddress[] resolved) {
+        Boolean preferV6 = ipv6Preferred.get(key(host));
+        if (preferV6 == null) {
+            preferV6 = resolved.length > 0
+                    && resolved[0] instanceof Inet6Address;
+        }
+        List<InetAddress> preferred = new ArrayList<>(resolved.length);
+        List<InetAddress> other = new ArrayList<>(resolved.length);
+        for (InetAddress a : resolved) {
+            if ((a instanceof Inet6Address) == preferV6) {
+                preferred.add(a);
+            } else {
+                other.add(a);
+            }
+        }
+        List<InetAddress> ordered = new ArrayList<>(resolved.length);
+        for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+            if (i < preferred.size()) {
+                ordered.add(preferred.get(i));
+            }
+            if (i < other.size()) {
+                ordered.add(other.get(i));
+            }
+        }
+        return ordered;
+    }
+
+    private static String key(String host) {
+        return host.toLowerCase();
+    }
+
+    private static Socket open(SocketOptions options) throws IOException {
+        Socket socket = new Socket();
+        if (options != null) {
+            try {
+                options.apply(socket);
+            } catch (IOException | RuntimeException ex) {
+                socket.close();
+                throw ex;
+            }
+        }
+        return socket;
+    }
+
+    private final class Race {
+
+        private final int port;
+        private final SocketOptions options;
+        private final long deadline;
+        private final BlockingQueue<Attempt> completed
+                = new LinkedBlockingQueue<>();
+        private final List<Attempt> started = new ArrayList<>();
+        private boolean finished;
+
+        private Race(int port, SocketOptions options, long deadline) {
+            this.port = port;
+            this.options = options;
+            this.deadline = deadline;
+        }
+
+        private Attempt run(List<InetAddress> addresses) throws IOException {
+            int next = 0;
+            int pending = 0;
+            IOException failure = null;
+            while (true) {
+                if (next < addresses.size()) {
+                    start(addresses.get(next++));
+                    pending++;
+                } else if (pending == 0) {
+                    throw failure;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Connect timed out.");
+                }
+                Attempt done;
+                try {
+                    done = completed.poll((next < addresses.size())
+                            ? Math.min(attemptDelayNanos, remaining)
+                            : remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while "
+                            + "connecting.");
+                }
+                if (done == null) {
+                    //delay elapsed, start the next attempt
+                    continue;
+                }
+                pending--;
+                if (done.socket != null) {
+                    return done;
+                }
+                if (failure == null) {
+                    failure = done.failure;
+                } else {
+                    failure.addSuppressed(done.failure);
+                }
+            }
+        }
+
+        private void start(InetAddress address) {
+            Attempt attempt = new Attempt(address);
+            synchronized (this) {
+                started.add(attempt);
+            }
+            ATTEMPTS.execute(() -> attempt.connect(this));
+        }
+
+        private synchronized boolean complete(Attempt attempt) {
+            if (finished) {
+                return false;
+            }
+            completed.add(attempt);
+            return true;
+        }
+
+        /**
+         * Closes the sockets of every attempt other than the winner.
+         */
+        private void cancel(Attempt winner) {
+            List<Attempt> attempts;
+            synchronized (this) {
+                finished = true;
+                attempts = new ArrayList<>(started);
+            }
+            for (Attempt a : attempts) {
+                if (a != winner) {
+                    a.abort();
+                }
+            }
+        }
+    }
+
+    private final class Attempt {
+
+        private final InetAddress address;
+        private volatile Socket socket;
+        private volatile Socket connecting;
+        private volatile IOException failure;
+
+        private Attempt(InetAddress address) {
+            this.address = address;
+        }
+
+        private void connect(Race race) {
+            Socket s = null;
+            try {
+                s = open(race.options);
+                connecting = s;
+                long remaining = race.deadline - System.nanoTime();
+                int timeout = (race.deadline == Long.MAX_VALUE)
+                        ? 0
+                        : (int) Math.max(1,
+                                TimeUnit.NANOSECONDS.toMillis(remaining));
+                s.connect(new InetSocketAddress(address, race.port), timeout);
+                socket = s;
+            } catch (IOException ex) {
+                failure = ex;
+            } catch (RuntimeException ex) {
+                failure = new ConnectException(ex.getMessage());
+            }
+            if (!race.complete(this) && s != null) {
+                //lost the race
+                abort();
+            }
+        }
+
+        private void abort() {
+            Socket s = connecting;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException ex) {
+                    //already closed
+                }
+            }
+        }
+    }
+}
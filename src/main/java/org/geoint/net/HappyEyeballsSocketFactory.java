@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import javax.net.SocketFactory;
+
+/**
+ * SocketFactory which connects to host names with a
+ * {@link HappyEyeballsConnector}, racing the addresses of the host.
+ * <p>
+ * Sockets requested for an address, or bound to a local address, connect to
+ * that address only.  Unconnected sockets are plain sockets; callers which
+ * connect sockets themselves should use
+ * {@link HappyEyeballsConnector#connect(String, int, int, SocketOptions)}.
+ */
+public class HappyEyeballsSocketFactory extends SocketFactory {
+
+    private final HappyEyeballsConnector connector;
+    private final SocketOptions options;
+
+    /**
+     * @param connector connector
+     */
+    public HappyEyeballsSocketFactory(HappyEyeballsConnector connector) {
+        this(connector, SocketOptions.defaults());
+    }
+
+    /**
+     * @param connector connector
+     * @param options options applied to each socket before it connects; the
+     * connect timeout of the options bounds the whole race
+     */
+    public HappyEyeballsSocketFactory(HappyEyeballsConnector connector,
+            SocketOptions options) {
+        this.connector = connector;
+        this.options = options;
+    }
+
+    /**
+     * Returns the connector racing connections for this factory.
+     *
+     * @return connector
+     */
+    public HappyEyeballsConnector getConnector() {
+        return connector;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        Socket socket = new Socket();
+        try {
+            options.apply(socket);
+            return socket;
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connector.connect(host, port, connectTimeout(), options);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost,
+            int localPort) throws IOException {
+        return connect(new InetSocketAddress(host, port),
+                new InetSocketAddress(localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connect(new InetSocketAddress(host, port), null);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port,
+            InetAddress localAddress, int localPort) throws IOException {
+        return connect(new InetSocketAddress(address, port),
+                new InetSocketAddress(localAddress, localPort));
+    }
+
+    private Socket connect(InetSocketAddress remote, InetSocketAddress local)
+            throws IOException {
+        Socket socket = createSocket();
+        try {
+            if (local != null) {
+                socket.bind(local);
+            }
+            socket.connect(remote, connectTimeout());
+            return socket;
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    private int connectTimeout() {
+        Integer timeout = options.getConnectTimeout();
+        return (timeout == null) ? 0 : timeout;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * Request state of an instrumented connection, shared by the HTTP and HTTPS
+ * connection wrappers.
+ * <p>
+ * The request starts when the wrapped connection is first connected, which
+ * every method making the request does first.  While it connects, the
+ * request is the {@link #connecting() connecting request} of the thread, so
+ * the sockets of an {@link InstrumentedSSLSocketFactory} report their DNS
+ * and handshake times to it.  The request is recorded once: when its
+ * response body is read to the end or closed, when it has no body, when the
+ * connection is disconnected, or when it fails.  An HTTP error response
+ * returned as an exception by {@link #getInputStream()} is recorded then,
+ * without its error body.
+ * <p>
+ * Like URLConnection, a request is used by one thread at a time.
+ */
+final class InstrumentedRequest {
+
+    private static final ThreadLocal<InstrumentedRequest> CONNECTING
+            = new ThreadLocal<>();
+
+    private final HttpURLConnection delegate;
+    private final ConnectionMetrics metrics;
+    private final URL url;
+    private boolean started;
+    private boolean connected;
+    private boolean completed; //guarded by this
+    private long startNanos;
+    private long connectNanos = -1;
+    private long dnsNanos = -1;
+    private long tlsHandshakeNanos = -1;
+    private long ttfbNanos = -1;
+    private long bytesRead;
+    private long bytesWritten;
+
+    InstrumentedRequest(HttpURLConnection delegate,
+            ConnectionMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.url = delegate.getURL();
+    }
+
+    /**
+     * Returns the request connecting on this thread.
+     *
+     * @return connecting request, or null
+     */
+    static InstrumentedRequest connecting() {
+        return CONNECTING.get();
+    }
+
+    HttpURLConnection getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Time resolving the host of a new socket, before it connected.
+     */
+    void resolved(long nanos) {
+        dnsNanos = nanos;
+    }
+
+    /**
+     * Time of the TLS handshake of a new socket.
+     */
+    void handshaked(long nanos) {
+        tlsHandshakeNanos = nanos;
+    }
+
+    void connect() throws IOException {
+        if (connected) {
+            return;
+        }
+        if (!started) {
+            started = true;
+            startNanos = System.nanoTime();
+        }
+        if (delegate instanceof HttpsURLConnection) {
+            HttpsURLConnection https = (HttpsURLConnection) delegate;
+            https.setSSLSocketFactory(
+                    metrics.instrument(https.getSSLSocketFactory()));
+        }
+        CONNECTING.set(this);
+        try {
+            delegate.connect();
+        } catch (IOException | RuntimeException ex) {
+            complete(ex);
+            throw ex;
+        } finally {
+            CONNECTING.remove();
+        }
+        connectNanos = System.nanoTime() - startNanos;
+        connected = true;
+    }
+
+    int getResponseCode() throws IOException {
+        connect();
+        int code;
+        try {
+            code = delegate.getResponseCode();
+        } catch (IOException | RuntimeException ex) {
+            complete(ex);
+            throw ex;
+        }
+        responded(code);
+        return code;
+    }
+
+    String getResponseMessage() throws IOException {
+        getResponseCode();
+        return delegate.getResponseMessage();
+    }
+
+    InputStream getInputStream() throws IOException {
+        connect();
+        InputStream in;
+        try {
+            in = delegate.getInputStream();
+        } catch (IOException | RuntimeException ex) {
+            if (ttfbNanos == -1 && responseCodeQuietly() > 0) {
+                ttfbNanos = System.nanoTime() - startNanos;
+                complete(null); //HTTP error response
+            } else {
+                complete(ex);
+            }
+            throw ex;
+        }
+        if (ttfbNanos == -1) {
+            ttfbNanos = System.nanoTime() - startNanos;
+        }
+        return new CountingInputStream(in);
+    }
+
+    InputStream getErrorStream() {
+        InputStream err = delegate.getErrorStream();
+        return (err == null) ? null : new CountingInputStream(err);
+    }
+
+    OutputStream getOutputStream() throws IOException {
+        connect();
+        try {
+            return new CountingOutputStream(delegate.getOutputStream());
+        } catch (IOException | RuntimeException ex) {
+            complete(ex);
+            throw ex;
+        }
+    }
+
+    String getHeaderField(String name) {
+        respondedQuietly();
+        return delegate.getHeaderField(name);
+    }
+
+    String getHeaderField(int n) {
+        respondedQuietly();
+        return delegate.getHeaderField(n);
+    }
+
+    String getHeaderFieldKey(int n) {
+        respondedQuietly();
+        return delegate.getHeaderFieldKey(n);
+    }
+
+    Map<String, List<String>> getHeaderFields() {
+        respondedQuietly();
+        return delegate.getHeaderFields();
+    }
+
+    void disconnect() {
+        complete(null);
+        delegate.disconnect();
+    }
+
+    /**
+     * Records the time to first byte, and completes a response without a
+     * body.
+     */
+    private void responded(int code) {
+        if (ttfbNanos != -1) {
+            return;
+        }
+        ttfbNanos = System.nanoTime() - startNanos;
+        if ("HEAD".equals(delegate.getRequestMethod())
+                || code < HttpURLConnection.HTTP_OK
+                || code == HttpURLConnection.HTTP_NO_CONTENT
+                || code == HttpURLConnection.HTTP_NOT_MODIFIED
+                || delegate.getContentLengthLong() == 0) {
+            complete(null);
+        }
+    }
+
+    /**
+     * Makes the request, as the header accessors of URLConnection do, without
+     * throwing; the accessor returns null if the request failed.
+     */
+    private void respondedQuietly() {
+        if (ttfbNanos != -1 || completed()) {
+            return;
+        }
+        try {
+            getResponseCode();
+        } catch (IOException ex) {
+            //recorded as failed
+        }
+    }
+
+    private int responseCodeQuietly() {
+        try {
+            return delegate.getResponseCode();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private synchronized boolean completed() {
+        return completed;
+    }
+
+    private void complete(Exception failure) {
+        ConnectionTiming timing;
+        synchronized (this) {
+            if (completed || !started) {
+                return;
+            }
+            completed = true;
+            String endpoint = ParsedURL.of(url).getEndpoint();
+            timing = new ConnectionTiming(url,
+                    (endpoint == null) ? url.getProtocol() + ":" : endpoint,
+                    dnsNanos, connectNanos, tlsHandshakeNanos, ttfbNanos,
+                    System.nanoTime() - startNanos, bytesRead, bytesWritten,
+                    failure);
+        }
+        metrics.record(timing);
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException | RuntimeException ex) {
+                complete(ex);
+                throw ex;
+            }
+            if (b == -1) {
+                complete(null);
+            } else {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read;
+            try {
+                read = super.read(b, off, len);
+            } catch (IOException | RuntimeException ex) {
+                complete(ex);
+                throw ex;
+            }
+            if (read == -1) {
+                complete(null);
+            } else {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytesRead += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                complete(null);
+            }
+        }
+    }
+
+    private final class CountingOutputStream extends FilterOutputStream {
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWritten += len;
+        }
+    }
+}
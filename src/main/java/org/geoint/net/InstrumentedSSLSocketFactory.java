@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Decorates an SSLSocketFactory, returning sockets which report their DNS
+ * and handshake times when created while an instrumented request is
+ * connecting.
+ * <p>
+ * Sockets created on any other thread, or at any other time, are the
+ * sockets of the decorated factory.  One decorator is used for each
+ * decorated factory, as HttpsURLConnection only reuses kept-alive
+ * connections created by the same factory instance.
+ *
+ * @see ConnectionMetrics
+ */
+class InstrumentedSSLSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory delegate;
+
+    InstrumentedSSLSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return instrument(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port,
+            boolean autoClose) throws IOException {
+        return instrument(delegate.createSocket(socket, host, port,
+                autoClose));
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, InputStream consumed,
+            boolean autoClose) throws IOException {
+        return delegate.createSocket(socket, consumed, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return instrument(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost,
+            int localPort) throws IOException {
+        return instrument(delegate.createSocket(host, port, localHost,
+                localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return instrument(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port,
+            InetAddress localAddress, int localPort) throws IOException {
+        return instrument(delegate.createSocket(address, port, localAddress,
+                localPort));
+    }
+
+    private static Socket instrument(Socket socket) {
+        if (!(socket instanceof SSLSocket)
+                || InstrumentedRequest.connecting() == null) {
+            return socket;
+        }
+        return new InstrumentedSSLSocket((SSLSocket) socket);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
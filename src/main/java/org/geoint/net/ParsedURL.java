@@ -0,0 +1,347 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * URL parsed once for matching it against routes.
+ * <p>
+ * The scheme and host are lower case, and the endpoint key (scheme, host and
+ * port, with the default port of the scheme if the URL has none) is computed
+ * when first needed.  Endpoint keys created with
+ * {@link #endpoint(String, String, int)} are canonical: the endpoint key of
+ * every URL of that endpoint is the same instance, so a route may compare it
+ * by identity.  Unlike {@link URL}, equality never resolves the host.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public final class ParsedURL {
+
+    //canonical endpoint keys, only of registered routes so not grown by
+    //the URLs parsed
+    private static final ConcurrentMap<String, String> ENDPOINTS
+            = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> SCHEMES
+            = new ConcurrentHashMap<>();
+
+    static {
+        for (String s : new String[]{"http", "https", "ftp", "file", "jar",
+            "ws", "wss"}) {
+            SCHEMES.put(s, s);
+        }
+    }
+
+    private final String scheme;
+    private final String host; //null if no authority
+    private final int port;
+    private final int effectivePort;
+    private final String path;
+    private final String query;
+    private final String ref;
+    private String spec; //lazy, of a URL
+    private String endpoint; //lazy
+
+    private ParsedURL(String spec, String scheme, String host, int port,
+            int defaultPort, String path, String query, String ref) {
+        this.spec = spec;
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.effectivePort = (port == -1) ? defaultPort : port;
+        this.path = path;
+        this.query = query;
+        this.ref = ref;
+    }
+
+    /**
+     * Parses the URL, from the components it has already parsed.
+     *
+     * @param url url
+     * @return parsed URL
+     */
+    public static ParsedURL of(URL url) {
+        String scheme = scheme(url.getProtocol());
+        String authority = url.getAuthority();
+        String host = (authority == null || authority.isEmpty()) ? null
+                : url.getHost().toLowerCase(Locale.ROOT);
+        int defaultPort = url.getDefaultPort();
+        return new ParsedURL(null, scheme, host, url.getPort(),
+                (defaultPort == -1) ? defaultPort(scheme) : defaultPort,
+                url.getPath(), url.getQuery(), url.getRef());
+    }
+
+    /**
+     * Parses the URL.
+     *
+     * @param spec url
+     * @return parsed URL
+     * @throws MalformedURLException if the URL has no scheme or an invalid
+     * port
+     */
+    public static ParsedURL parse(String spec) throws MalformedURLException {
+        int length = spec.length();
+        int colon = spec.indexOf(':');
+        if (colon < 1) {
+            throw new MalformedURLException("No scheme: " + spec);
+        }
+        String scheme = scheme(spec.substring(0, colon));
+
+        String host = null;
+        int port = -1;
+        int i = colon + 1;
+        if (spec.startsWith("//", i)) {
+            int authorityStart = i + 2;
+            int authorityEnd = authorityStart;
+            while (authorityEnd < length) {
+                char c = spec.charAt(authorityEnd);
+                if (c == '/' || c == '?' || c == '#') {
+                    break;
+                }
+                authorityEnd++;
+            }
+            int hostStart = spec.lastIndexOf('@', authorityEnd - 1) + 1;
+            if (hostStart < authorityStart) {
+                hostStart = authorityStart;
+            }
+            int hostEnd = authorityEnd;
+            int bracket = spec.lastIndexOf(']', authorityEnd - 1);
+            int portSeparator = spec.lastIndexOf(':', authorityEnd - 1);
+            if (portSeparator >= hostStart && portSeparator > bracket) {
+                hostEnd = portSeparator;
+                port = port(spec, portSeparator + 1, authorityEnd);
+            }
+            if (authorityEnd > authorityStart) {
+                host = spec.substring(hostStart, hostEnd)
+                        .toLowerCase(Locale.ROOT);
+            }
+            i = authorityEnd;
+        }
+
+        int pathEnd = i;
+        while (pathEnd < length && spec.charAt(pathEnd) != '?'
+                && spec.charAt(pathEnd) != '#') {
+            pathEnd++;
+        }
+        int queryEnd = spec.indexOf('#', pathEnd);
+        if (queryEnd == -1) {
+            queryEnd = length;
+        }
+        return new ParsedURL(spec, scheme, host, port, defaultPort(scheme),
+                spec.substring(i, pathEnd),
+                (pathEnd == queryEnd) ? null
+                        : spec.substring(pathEnd + 1, queryEnd),
+                (queryEnd == length) ? null : spec.substring(queryEnd + 1));
+    }
+
+    /**
+     * Returns the canonical endpoint key of the route, for comparison with
+     * {@link #getEndpoint()}.
+     *
+     * @param scheme scheme
+     * @param host host
+     * @param port port, or -1 for the default port of the scheme
+     * @return endpoint key
+     */
+    public static String endpoint(String scheme, String host, int port) {
+        String s = scheme(scheme.toLowerCase(Locale.ROOT));
+        String key = key(s, host.toLowerCase(Locale.ROOT),
+                (port == -1) ? defaultPort(s) : port);
+        String existing = ENDPOINTS.putIfAbsent(key, key);
+        return (existing == null) ? key : existing;
+    }
+
+    /**
+     * @return lower case scheme
+     */
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * @return lower case host, IPv6 addresses in brackets, or null if the URL
+     * has no authority
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return port, or -1 if the URL has none
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return port, or the default port of the scheme if the URL has none,
+     * or -1 if the scheme has no known default
+     */
+    public int getEffectivePort() {
+        return effectivePort;
+    }
+
+    /**
+     * Returns the endpoint key of the URL, for keying state by route without
+     * retaining the parsed URL.
+     *
+     * @param url url
+     * @return endpoint key, or null if the URL has no authority
+     * @see #getEndpoint()
+     */
+    public static String endpointOf(URL url) {
+        return of(url).getEndpoint();
+    }
+
+    /**
+     * Returns the endpoint key, the canonical instance if one was created by
+     * {@link #endpoint(String, String, int)}.
+     *
+     * @return endpoint key, or null if the URL has no authority
+     */
+    public String getEndpoint() {
+        if (endpoint == null && host != null) {
+            endpoint = canonical(key(scheme, host, effectivePort));
+        }
+        return endpoint;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return query, or null if the URL has none
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return fragment, or null if the URL has none
+     */
+    public String getRef() {
+        return ref;
+    }
+
+    /**
+     * Tests the host, without allocating.
+     *
+     * @param host host
+     * @return true if the URL host is the host, ignoring case
+     */
+    public boolean isHost(String host) {
+        return this.host != null && this.host.equalsIgnoreCase(host);
+    }
+
+    /**
+     * Tests whether the path starts with the prefix, without allocating.
+     *
+     * @param prefix path prefix
+     * @return true if the path starts with the prefix
+     */
+    public boolean isPathUnder(String prefix) {
+        return path.startsWith(prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || (obj instanceof ParsedURL
+                && toString().equals(obj.toString()));
+    }
+
+    @Override
+    public String toString() {
+        if (spec == null) {
+            StringBuilder sb = new StringBuilder(scheme).append(':');
+            if (host != null) {
+                sb.append("//").append(host);
+                if (port != -1) {
+                    sb.append(':').append(port);
+                }
+            }
+            sb.append(path);
+            if (query != null) {
+                sb.append('?').append(query);
+            }
+            if (ref != null) {
+                sb.append('#').append(ref);
+            }
+            spec = sb.toString();
+        }
+        return spec;
+    }
+
+    private static String key(String scheme, String host, int port) {
+        return new StringBuilder(scheme.length() + host.length() + 9)
+                .append(scheme).append("://").append(host).append(':')
+                .append(port).toString();
+    }
+
+    private static String canonical(String key) {
+        String canonical = ENDPOINTS.get(key);
+        return (canonical == null) ? key : canonical;
+    }
+
+    private static String scheme(String scheme) {
+        String lower = scheme.toLowerCase(Locale.ROOT);
+        String canonical = SCHEMES.get(lower);
+        return (canonical == null) ? lower : canonical;
+    }
+
+    private static int defaultPort(String scheme) {
+        switch (scheme) {
+            case "http":
+            case "ws":
+                return 80;
+            case "https":
+            case "wss":
+                return 443;
+            case "ftp":
+                return 21;
+            default:
+                return -1;
+        }
+    }
+
+    private static int port(String spec, int start, int end)
+            throws MalformedURLException {
+        if (start == end) {
+            return -1; //empty port, as URL treats it
+        }
+        int port = 0;
+        for (int i = start; i < end; i++) {
+            char c = spec.charAt(i);
+            if (c < '0' || c > '9' || port > 0xFFFF) {
+                throw new MalformedURLException("Invalid port: " + spec);
+            }
+            port = port * 10 + (c - '0');
+        }
+        if (port > 0xFFFF) {
+            throw new MalformedURLException("Invalid port: " + spec);
+        }
+        return port;
+    }
+}
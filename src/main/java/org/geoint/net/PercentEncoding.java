@@ -0,0 +1,497 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Table driven percent-encoding of URL components.
+ * <p>
+ * Each {@link Component} has a table of the ASCII characters written as they
+ * are; every other character is written as the percent-encoded bytes of its
+ * UTF-8 encoding.  Form encoding ({@link #encodeForm(String, Charset)}) is
+ * compatible with {@link URLEncoder}, writing spaces as '+', and may use
+ * another charset.  Encoded characters are written to a StringBuilder or, as
+ * ASCII bytes, to a ByteBuffer; UTF-8 is encoded without intermediate
+ * strings or byte arrays.
+ * <p>
+ * Unpaired surrogates are encoded as '?', as {@link URLEncoder} does.
+ */
+public final class PercentEncoding {
+
+    /**
+     * URL components, each with the characters which are not encoded.
+     */
+    public enum Component {
+
+        /**
+         * RFC 3986 unreserved characters.
+         */
+        UNRESERVED("-._~"),
+        /**
+         * RFC 3986 unreserved and reserved characters.
+         */
+        RESERVED("-._~:/?#[]@!$&'()*+,;="),
+        /**
+         * Path segment characters (pchar); '/' is encoded.
+         */
+        PATH_SEGMENT("-._~!$&'()*+,;=:@"),
+        /**
+         * Path characters, the path segment characters and '/'.
+         */
+        PATH("-._~!$&'()*+,;=:@/"),
+        /**
+         * Query characters.
+         */
+        QUERY("-._~!$&'()*+,;=:@/?"),
+        /**
+         * Query key or value characters, the query characters except for
+         * the '&amp;', '=' and '+' delimiters.
+         */
+        QUERY_PARAM("-._~!$'()*,;:@/?"),
+        /**
+         * Fragment characters.
+         */
+        FRAGMENT("-._~!$&'()*+,;=:@/?"),
+        /**
+         * User info characters.
+         */
+        USER_INFO("-._~!$&'()*+,;=:");
+
+        private final boolean[] safe;
+
+        private Component(String safe) {
+            this.safe = table(safe);
+        }
+    }
+
+    /**
+     * Characters left unencoded by {@link URLEncoder}.
+     */
+    private static final boolean[] FORM = table("-_.*");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final char UNMAPPABLE = '?';
+
+    private PercentEncoding() {
+    }
+
+    /**
+     * Encodes the URL component.
+     *
+     * @param value unencoded value
+     * @param component component the value is encoded for
+     * @return encoded value
+     */
+    public static String encode(String value, Component component) {
+        int safe = safePrefix(value, component.safe);
+        if (safe == value.length()) {
+            return value; //nothing to encode
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        sb.append(value, 0, safe);
+        append(sb, value, safe, component, false);
+        return sb.toString();
+    }
+
+    /**
+     * Encodes the URL component.
+     *
+     * @param sb destination
+     * @param value unencoded value
+     * @param component component the value is encoded for
+     */
+    public static void encode(StringBuilder sb, String value,
+            Component component) {
+        append(sb, value, 0, component, false);
+    }
+
+    /**
+     * Encodes the URL component as ASCII bytes.
+     *
+     * @param buffer destination
+     * @param value unencoded value
+     * @param component component the value is encoded for
+     * @throws java.nio.BufferOverflowException if the buffer does not have
+     * room for the encoded value; its position is then unspecified
+     */
+    public static void encode(ByteBuffer buffer, String value,
+            Component component) {
+        boolean[] safe = component.safe;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && safe[c]) {
+                buffer.put((byte) c);
+            } else {
+                int cp = codePoint(value, i);
+                if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    i++;
+                }
+                escapeUtf8(buffer, cp);
+            }
+        }
+    }
+
+    /**
+     * Encodes the value as {@link URLEncoder#encode(String, String)} does.
+     *
+     * @param value unencoded value
+     * @param charset charset of encoded characters
+     * @return encoded value
+     */
+    public static String encodeForm(String value, Charset charset) {
+        int safe = safePrefix(value, FORM);
+        if (safe == value.length()) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        sb.append(value, 0, safe);
+        appendForm(sb, value, safe, charset);
+        return sb.toString();
+    }
+
+    /**
+     * Encodes the value as {@link URLEncoder#encode(String, String)} does.
+     *
+     * @param sb destination
+     * @param value unencoded value
+     * @param charset charset of encoded characters
+     */
+    public static void encodeForm(StringBuilder sb, String value,
+            Charset charset) {
+        appendForm(sb, value, 0, charset);
+    }
+
+    /**
+     * Encodes the value as {@link URLEncoder#encode(String, String)} does,
+     * as ASCII bytes.
+     *
+     * @param buffer destination
+     * @param value unencoded value
+     * @param charset charset of encoded characters
+     * @throws java.nio.BufferOverflowException if the buffer does not have
+     * room for the encoded value; its position is then unspecified
+     */
+    public static void encodeForm(ByteBuffer buffer, String value,
+            Charset charset) {
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && FORM[c]) {
+                buffer.put((byte) c);
+            } else if (c == ' ') {
+                buffer.put((byte) '+');
+            } else if (utf8) {
+                int cp = codePoint(value, i);
+                if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    i++;
+                }
+                escapeUtf8(buffer, cp);
+            } else {
+                int end = formRunEnd(value, i);
+                for (byte b : value.substring(i, end).getBytes(charset)) {
+                    escape(buffer, b);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    /**
+     * Decodes the form encoded value, as {@link URLDecoder} does, except that
+     * a '%' not followed by two hex digits is kept as it is.
+     *
+     * @param value encoded value
+     * @param charset charset of encoded characters
+     * @return decoded value
+     */
+    public static String decodeForm(String value, Charset charset) {
+        return decodeForm(value, 0, value.length(), charset);
+    }
+
+    /**
+     * Decodes the percent-encoded URL component as UTF-8.  Unlike
+     * {@link #decodeForm(String, Charset)} a '+' is kept as it is, as is a
+     * '%' not followed by two hex digits.
+     *
+     * @param value encoded value, may be null
+     * @return decoded value
+     */
+    static String decode(String value) {
+        return (value == null) ? null : decode(value, 0, value.length(),
+                StandardCharsets.UTF_8, false);
+    }
+
+    /**
+     * Form encodes the value, appending it to the builder.
+     */
+    static void appendForm(StringBuilder sb, String value, Charset charset) {
+        appendForm(sb, value, 0, charset);
+    }
+
+    /**
+     * Encodes the URL component, leaving valid percent-encoded octets as
+     * they are.
+     *
+     * @param sb destination
+     * @param value component
+     * @param component component the value is encoded for
+     */
+    static void append(StringBuilder sb, String value, Component component) {
+        append(sb, value, 0, component, true);
+    }
+
+    /**
+     * Encodes the URL component.
+     *
+     * @param sb destination
+     * @param value component
+     * @param component component the value is encoded for
+     * @param keepEscapes true to leave valid percent-encoded octets as they
+     * are, false to encode their '%'
+     */
+    static void append(StringBuilder sb, String value, Component component,
+            boolean keepEscapes) {
+        append(sb, value, 0, component, keepEscapes);
+    }
+
+    /**
+     * Decodes the form encoded region of the string.
+     *
+     * @param value encoded string
+     * @param start start of the region, inclusive
+     * @param end end of the region, exclusive
+     * @param charset charset of encoded characters
+     * @return decoded region
+     * @see #decodeForm(String, Charset)
+     */
+    static String decodeForm(String value, int start, int end,
+            Charset charset) {
+        return decode(value, start, end, charset, true);
+    }
+
+    private static String decode(String value, int start, int end,
+            Charset charset, boolean form) {
+        int i = start;
+        while (i < end && value.charAt(i) != '%'
+                && (!form || value.charAt(i) != '+')) {
+            i++;
+        }
+        if (i == end) {
+            return value.substring(start, end); //nothing encoded
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(value, start, i);
+        byte[] bytes = null;
+        while (i < end) {
+            char c = value.charAt(i);
+            if (form && c == '+') {
+                sb.append(' ');
+                i++;
+            } else if (c == '%' && isEscape(value, i, end)) {
+                if (bytes == null) {
+                    bytes = new byte[(end - i) / 3];
+                }
+                int n = 0;
+                do {
+                    bytes[n++] = (byte) (
+                            (Character.digit(value.charAt(i + 1), 16) << 4)
+                            | Character.digit(value.charAt(i + 2), 16));
+                    i += 3;
+                } while (i < end && value.charAt(i) == '%'
+                        && isEscape(value, i, end));
+                sb.append(new String(bytes, 0, n, charset));
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String value, int from,
+            Component component, boolean keepEscapes) {
+        boolean[] safe = component.safe;
+        int length = value.length();
+        for (int i = from; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && safe[c]) {
+                sb.append(c);
+            } else if (keepEscapes && c == '%' && isEscape(value, i, length)) {
+                sb.append(c); //already encoded
+            } else {
+                int cp = codePoint(value, i);
+                if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    i++;
+                }
+                escapeUtf8(sb, cp);
+            }
+        }
+    }
+
+    private static void appendForm(StringBuilder sb, String value, int from,
+            Charset charset) {
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        int length = value.length();
+        for (int i = from; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && FORM[c]) {
+                sb.append(c);
+            } else if (c == ' ') {
+                sb.append('+');
+            } else if (utf8) {
+                int cp = codePoint(value, i);
+                if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    i++;
+                }
+                escapeUtf8(sb, cp);
+            } else {
+                //encode the run of characters needing encoding together
+                int end = formRunEnd(value, i);
+                for (byte b : value.substring(i, end).getBytes(charset)) {
+                    escape(sb, b);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the end of the run of characters needing form encoding, other
+     * than spaces, starting at the index.
+     */
+    private static int formRunEnd(String value, int i) {
+        int end = i + 1;
+        while (end < value.length()) {
+            char e = value.charAt(end);
+            if (e == ' ' || (e < 0x80 && FORM[e])) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the length of the prefix of the value which isn't encoded.
+     */
+    private static int safePrefix(String value, boolean[] safe) {
+        int i = 0;
+        int length = value.length();
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || !safe[c]) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the code point at the index, or '?' for an unpaired
+     * surrogate.
+     */
+    private static int codePoint(String value, int i) {
+        char c = value.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            return Character.toCodePoint(c, value.charAt(i + 1));
+        }
+        return Character.isSurrogate(c) ? UNMAPPABLE : c;
+    }
+
+    private static void escapeUtf8(StringBuilder sb, int cp) {
+        if (cp < 0x80) {
+            escape(sb, cp);
+        } else if (cp < 0x800) {
+            escape(sb, 0xC0 | (cp >> 6));
+            escape(sb, 0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            escape(sb, 0xE0 | (cp >> 12));
+            escape(sb, 0x80 | ((cp >> 6) & 0x3F));
+            escape(sb, 0x80 | (cp & 0x3F));
+        } else {
+            escape(sb, 0xF0 | (cp >> 18));
+            escape(sb, 0x80 | ((cp >> 12) & 0x3F));
+            escape(sb, 0x80 | ((cp >> 6) & 0x3F));
+            escape(sb, 0x80 | (cp & 0x3F));
+        }
+    }
+
+    private static void escapeUtf8(ByteBuffer buffer, int cp) {
+        if (cp < 0x80) {
+            escape(buffer, cp);
+        } else if (cp < 0x800) {
+            escape(buffer, 0xC0 | (cp >> 6));
+            escape(buffer, 0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            escape(buffer, 0xE0 | (cp >> 12));
+            escape(buffer, 0x80 | ((cp >> 6) & 0x3F));
+            escape(buffer, 0x80 | (cp & 0x3F));
+        } else {
+            escape(buffer, 0xF0 | (cp >> 18));
+            escape(buffer, 0x80 | ((cp >> 12) & 0x3F));
+            escape(buffer, 0x80 | ((cp >> 6) & 0x3F));
+            escape(buffer, 0x80 | (cp & 0x3F));
+        }
+    }
+
+    private static void escape(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    private static void escape(ByteBuffer buffer, int b) {
+        buffer.put((byte) '%')
+                .put((byte) HEX[(b >> 4) & 0xF])
+                .put((byte) HEX[b & 0xF]);
+    }
+
+    private static boolean isEscape(String value, int i, int end) {
+        return i + 2 < end && isHex(value.charAt(i + 1))
+                && isHex(value.charAt(i + 2));
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F')
+                || (c >= 'a' && c <= 'f');
+    }
+
+    /**
+     * Table of the alphanumeric characters and the provided characters.
+     */
+    private static boolean[] table(String safe) {
+        boolean[] table = new boolean[0x80];
+        for (char c = 'a'; c <= 'z'; c++) {
+            table[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            table[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            table[c] = true;
+        }
+        for (int i = 0; i < safe.length(); i++) {
+            table[safe.charAt(i)] = true;
+        }
+        return table;
+    }
+}
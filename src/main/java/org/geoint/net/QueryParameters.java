@@ -0,0 +1,439 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Form encoded query parameters: a multimap in insertion order, indexed by
+ * key.
+ * <p>
+ * A query is parsed in a single pass which only records the offsets of each
+ * parameter in the query; keys and values are decoded when first accessed,
+ * and parameters which are not changed are serialized as they were parsed,
+ * without being decoded and encoded again.  The key index is built on the
+ * first lookup or removal by key, after which lookup and removal of a key
+ * don't depend on the number of parameters.
+ * <p>
+ * A key without a '=' has an empty value.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class QueryParameters
+        implements Iterable<Map.Entry<String, String>> {
+
+    private static final int MIN_COMPACTION = 16;
+
+    private final List<Parameter> parameters;
+    //first parameter of each key, built when first needed
+    private Map<String, Parameter> index;
+    private int removed; //parameters removed but not yet compacted
+
+    public QueryParameters() {
+        this.parameters = new ArrayList<>();
+    }
+
+    private QueryParameters(int capacity) {
+        this.parameters = new ArrayList<>(capacity);
+    }
+
+    /**
+     * Parses the UTF-8 form encoded query.
+     *
+     * @param query query, may be null
+     * @return parameters
+     */
+    public static QueryParameters parse(String query) {
+        return parse(query, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the form encoded query.
+     *
+     * @param query query, may be null
+     * @param charset charset of encoded characters
+     * @return parameters
+     */
+    public static QueryParameters parse(String query, Charset charset) {
+        if (query == null || query.isEmpty()) {
+            return new QueryParameters();
+        }
+        QueryParameters params = new QueryParameters(
+                Math.min(query.length() / 8 + 1, 256));
+        int start = 0;
+        int eq = -1;
+        int length = query.length();
+        for (int i = 0; i <= length; i++) {
+            char c = (i == length) ? '&' : query.charAt(i);
+            if (c == '=' && eq == -1) {
+                eq = i;
+            } else if (c == '&') {
+                if (i > start) {
+                    params.parameters.add(
+                            new Parameter(query, start, eq, i, charset));
+                }
+                start = i + 1;
+                eq = -1;
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Adds a UTF-8 form encoded parameter.
+     *
+     * @param key unencoded key
+     * @param value unencoded value
+     * @return this (fluid interface)
+     */
+    public QueryParameters add(String key, String value) {
+        return add(StandardCharsets.UTF_8, key, value);
+    }
+
+    /**
+     * Adds a parameter.
+     *
+     * @param charset charset of encoded characters
+     * @param key unencoded key
+     * @param value unencoded value
+     * @return this (fluid interface)
+     */
+    public QueryParameters add(Charset charset, String key, String value) {
+        Parameter p = new Parameter(charset, key, value);
+        parameters.add(p);
+        if (index != null) {
+            link(index, p);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the first value of the key.
+     *
+     * @param key key
+     * @return first value, or null if there is no parameter with the key
+     */
+    public String getFirst(String key) {
+        Parameter first = index().get(key);
+        return (first == null) ? null : first.getValue();
+    }
+
+    /**
+     * Returns the values of the key, in order.
+     *
+     * @param key key
+     * @return values, empty if there is no parameter with the key
+     */
+    public List<String> getAll(String key) {
+        Parameter first = index().get(key);
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        List<String> all = new ArrayList<>();
+        for (Parameter p = first; p != null; p = p.nextOfKey) {
+            all.add(p.getValue());
+        }
+        return all;
+    }
+
+    public boolean containsKey(String key) {
+        return index().containsKey(key);
+    }
+
+    /**
+     * Removes every parameter with the key.
+     *
+     * @param key key
+     * @return number of parameters removed
+     */
+    public int removeAll(String key) {
+        int count = 0;
+        for (Parameter p = index().remove(key); p != null; p = p.nextOfKey) {
+            p.removed = true;
+            count++;
+        }
+        removed(count);
+        return count;
+    }
+
+    /**
+     * Removes the parameters with the key and value.
+     *
+     * @param key key
+     * @param value value
+     * @return number of parameters removed
+     */
+    public int remove(String key, String value) {
+        Parameter first = index().remove(key);
+        int count = 0;
+        Parameter next;
+        for (Parameter p = first; p != null; p = next) {
+            next = p.nextOfKey; //reset when relinked
+            if (p.getValue().equals(value)) {
+                p.removed = true;
+                count++;
+            } else {
+                link(index, p);
+            }
+        }
+        removed(count);
+        return count;
+    }
+
+    public int size() {
+        return parameters.size() - removed;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        parameters.clear();
+        index = null;
+        removed = 0;
+    }
+
+    /**
+     * Iterates the parameters in order; the value of an entry may be set.
+     *
+     * @return parameter iterator
+     */
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+            private int next = skipRemoved(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < parameters.size();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Parameter p = parameters.get(next);
+                next = skipRemoved(next + 1);
+                return p;
+            }
+        };
+    }
+
+    /**
+     * Appends the encoded query, without the leading '?'.
+     *
+     * @param sb destination
+     */
+    void appendTo(StringBuilder sb) {
+        boolean first = true;
+        for (Parameter p : parameters) {
+            if (p.removed) {
+                continue;
+            }
+            if (!first) {
+                sb.append('&');
+            }
+            first = false;
+            p.appendTo(sb);
+        }
+    }
+
+    /**
+     * Returns the encoded query, without the leading '?'.
+     *
+     * @return encoded query
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    private int skipRemoved(int i) {
+        while (i < parameters.size() && parameters.get(i).removed) {
+            i++;
+        }
+        return i;
+    }
+
+    private Map<String, Parameter> index() {
+        if (index == null) {
+            Map<String, Parameter> keys
+                    = new HashMap<>(parameters.size() * 4 / 3 + 1);
+            for (Parameter p : parameters) {
+                if (!p.removed) {
+                    link(keys, p);
+                }
+            }
+            index = keys;
+        }
+        return index;
+    }
+
+    /**
+     * Links the parameter after the last parameter of its key.
+     */
+    private static void link(Map<String, Parameter> index, Parameter p) {
+        p.nextOfKey = null;
+        Parameter first = index.putIfAbsent(p.getKey(), p);
+        if (first == null) {
+            p.lastOfKey = p;
+        } else {
+            first.lastOfKey.nextOfKey = p;
+            first.lastOfKey = p;
+        }
+    }
+
+    /**
+     * Counts removed parameters, compacting the list once half of it are
+     * removed parameters.
+     */
+    private void removed(int count) {
+        removed += count;
+        if (removed >= MIN_COMPACTION && removed * 2 >= parameters.size()) {
+            parameters.removeIf((p) -> p.removed);
+            removed = 0;
+        }
+    }
+
+    /**
+     * Parameter which is either a region of a parsed query, decoded when
+     * accessed, or an added (or changed) key and value, encoded when
+     * serialized.
+     */
+    static final class Parameter implements Map.Entry<String, String> {
+
+        private final Charset charset;
+        private String source; //null if added or changed
+        private final int start;
+        private final int eq; //-1 if no value
+        private final int end;
+        private String key;
+        private String value;
+        private boolean removed;
+        private String encoded; //memoized if added or changed
+        private Parameter nextOfKey; //next parameter with the same key
+        private Parameter lastOfKey; //of the first parameter of a key
+
+        private Parameter(String source, int start, int eq, int end,
+                Charset charset) {
+            this.source = source;
+            this.start = start;
+            this.eq = eq;
+            this.end = end;
+            this.charset = charset;
+        }
+
+        private Parameter(Charset charset, String key, String value) {
+            this.charset = Objects.requireNonNull(charset);
+            this.key = Objects.requireNonNull(key, "Parameter key must not "
+                    + "be null.");
+            this.value = Objects.requireNonNull(value, "Parameter value must "
+                    + "not be null.");
+            this.start = -1;
+            this.eq = -1;
+            this.end = -1;
+        }
+
+        Charset getCharset() {
+            return charset;
+        }
+
+        @Override
+        public String getKey() {
+            if (key == null) {
+                key = PercentEncoding.decodeForm(source, start,
+                        (eq == -1) ? end : eq, charset);
+            }
+            return key;
+        }
+
+        @Override
+        public String getValue() {
+            if (value == null) {
+                value = (eq == -1) ? ""
+                        : PercentEncoding.decodeForm(source, eq + 1, end,
+                                charset);
+            }
+            return value;
+        }
+
+        /**
+         * Sets the unencoded value.
+         */
+        @Override
+        public String setValue(String value) {
+            String previous = getValue();
+            getKey();
+            this.value = Objects.requireNonNull(value, "Parameter value "
+                    + "must not be null.");
+            this.source = null;
+            this.encoded = null;
+            return previous;
+        }
+
+        private void appendTo(StringBuilder sb) {
+            if (source != null) {
+                sb.append(source, start, end); //unchanged, as parsed
+                return;
+            }
+            if (encoded == null) {
+                StringBuilder e = new StringBuilder(
+                        key.length() + value.length() + 16);
+                PercentEncoding.appendForm(e, key, charset);
+                e.append('=');
+                PercentEncoding.appendForm(e, value, charset);
+                encoded = e.toString();
+            }
+            sb.append(encoded);
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            return getKey().equals(other.getKey())
+                    && getValue().equals(other.getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
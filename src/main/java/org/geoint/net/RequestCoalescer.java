@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * Coalesces concurrent identical GET requests made through a
+ * {@link URLProtocolRegistry#setRequestCoalescer(RequestCoalescer) registry}
+ * into one upstream request.
+ * <p>
+ * Requests are identical if they are for the same URL and the application
+ * set the same request headers; headers set by the initializers of the
+ * registry are the same for every connection to a URL, and are not compared.
+ * The first connection to make a request makes it upstream and reads the
+ * whole response; connections which make an identical request before that
+ * response is read wait for it rather than make their own.  Each of them is
+ * given the same status and headers and an independent stream over the
+ * body, which is held in memory up to a limit and in a temporary file beyond
+ * it.  Responses are not cached: a request made after the response was read
+ * is made upstream again.
+ * <p>
+ * Only GET requests which do not write a request body are coalesced;
+ * connections which change the method or write a body connect as usual.
+ */
+public class RequestCoalescer {
+
+    /**
+     * Size of a response body held in memory, 1 MiB.
+     */
+    public static final int DEFAULT_MEMORY_LIMIT = 1024 * 1024;
+
+    private final Predicate<URL> routes;
+    private final int memoryLimit;
+    private final ConcurrentMap<String, Exchange> inFlight
+            = new ConcurrentHashMap<>(); //key=request key
+
+    /**
+     * Coalesces requests for every HTTP(S) URL, holding bodies of up to 1 MiB
+     * in memory.
+     */
+    public RequestCoalescer() {
+        this((u) -> true, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * @param routes URLs which requests are coalesced for
+     * @param memoryLimit size of a response body held in memory; larger
+     * bodies are written to a temporary file
+     */
+    public RequestCoalescer(Predicate<URL> routes, int memoryLimit) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be "
+                    + "negative.");
+        }
+        this.routes = routes;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Returns the number of requests currently being made upstream.
+     *
+     * @return requests in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Wraps an initialized connection so that its request may be coalesced.
+     *
+     * @param conn initialized connection
+     * @return coalescing connection, or the connection if it is not an HTTP
+     * connection to a coalesced route
+     */
+    URLConnection wrap(URLConnection conn) {
+        if (!routes.test(conn.getURL())) {
+            return conn;
+        }
+        if (conn instanceof HttpsURLConnection) {
+            return new CoalescingHttpsURLConnection(
+                    (HttpsURLConnection) conn, this);
+        }
+        if (conn instanceof HttpURLConnection) {
+            return new CoalescingHttpURLConnection(
+                    (HttpURLConnection) conn, this);
+        }
+        return conn;
+    }
+
+    /**
+     * Makes the request with the connection, or waits for an identical
+     * request in flight.
+     *
+     * @param key request key
+     * @param conn unconnected connection, used if no identical request is in
+     * flight
+     * @param timeoutMillis maximum time to wait for a request in flight, or
+     * zero to wait until it completes
+     * @return response, with a reference retained for the caller
+     * @throws IOException if the request failed
+     */
+    CoalescedResponse exchange(String key, HttpURLConnection conn,
+            long timeoutMillis) throws IOException {
+        while (true) {
+            Exchange e = new Exchange();
+            Exchange current = inFlight.putIfAbsent(key, e);
+            if (current == null) {
+                return e.lead(key, conn);
+            }
+            if (current.join()) {
+                return current.await(timeoutMillis);
+            }
+            //response already read, make the request again
+            Thread.yield();
+        }
+    }
+
+    private final class Exchange {
+
+        private final CompletableFuture<CoalescedResponse> result
+                = new CompletableFuture<>();
+        private int joined; //guarded by this
+        private boolean closed; //guarded by this
+
+        private synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            joined++;
+            return true;
+        }
+
+        private CoalescedResponse lead(String key, HttpURLConnection conn)
+                throws IOException {
+            CoalescedResponse response = null;
+            try {
+                response = CoalescedResponse.read(conn, memoryLimit);
+                return response;
+            } catch (IOException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                inFlight.remove(key, this);
+                int waiters;
+                synchronized (this) {
+                    closed = true;
+                    waiters = joined;
+                }
+                if (response != null) {
+                    response.retain(waiters);
+                    result.complete(response);
+                }
+            }
+        }
+
+        private CoalescedResponse await(long timeoutMillis)
+                throws IOException {
+            try {
+                return (timeoutMillis > 0)
+                        ? result.get(timeoutMillis, TimeUnit.MILLISECONDS)
+                        : result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for "
+                        + "coalesced request.");
+            } catch (TimeoutException ex) {
+                //if the response does complete, release this reference
+                result.thenAccept(CoalescedResponse::release);
+                throw new SocketTimeoutException("Timed out waiting for "
+                        + "coalesced request.");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate timings and byte counts of the requests to one endpoint recorded
+ * by {@link ConnectionMetrics}.
+ * <p>
+ * Requests are recorded without locking, so requests recorded concurrently
+ * with a call to a getter may or may not be included in its result, and the
+ * results of separate getters may include different requests.
+ */
+public final class RouteMetrics {
+
+    private final String endpoint;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder connectNanos = new LongAdder();
+    private final LongAdder resolutions = new LongAdder();
+    private final LongAdder dnsNanos = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder tlsHandshakeNanos = new LongAdder();
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder ttfbNanos = new LongAdder();
+    private final LongAccumulator maxTtfbNanos
+            = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalNanos = new LongAdder();
+
+    RouteMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    void record(ConnectionTiming t) {
+        requests.increment();
+        if (t.getFailure() != null) {
+            failures.increment();
+        }
+        bytesRead.add(t.getBytesRead());
+        bytesWritten.add(t.getBytesWritten());
+        if (t.getConnectNanos() >= 0) {
+            connectNanos.add(t.getConnectNanos());
+        }
+        if (t.getDnsNanos() >= 0) {
+            resolutions.increment();
+            dnsNanos.add(t.getDnsNanos());
+        }
+        if (t.getTlsHandshakeNanos() >= 0) {
+            handshakes.increment();
+            tlsHandshakeNanos.add(t.getTlsHandshakeNanos());
+        }
+        if (t.getTtfbNanos() >= 0) {
+            responses.increment();
+            ttfbNanos.add(t.getTtfbNanos());
+            maxTtfbNanos.accumulate(t.getTtfbNanos());
+        }
+        totalNanos.add(t.getTotalNanos());
+    }
+
+    /**
+     * @return endpoint key of the route
+     * @see ParsedURL#getEndpoint()
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return number of requests recorded
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests which failed with an exception
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return total time connecting, of every request
+     */
+    public long getConnectNanos() {
+        return connectNanos.sum();
+    }
+
+    /**
+     * @return number of requests whose DNS resolution was measured
+     */
+    public long getResolutions() {
+        return resolutions.sum();
+    }
+
+    /**
+     * @return total time resolving hosts, of the resolutions measured
+     */
+    public long getDnsNanos() {
+        return dnsNanos.sum();
+    }
+
+    /**
+     * @return number of requests whose TLS handshake was measured
+     */
+    public long getTlsHandshakes() {
+        return handshakes.sum();
+    }
+
+    /**
+     * @return total time of the TLS handshakes measured
+     */
+    public long getTlsHandshakeNanos() {
+        return tlsHandshakeNanos.sum();
+    }
+
+    /**
+     * @return number of requests which received a response
+     */
+    public long getResponses() {
+        return responses.sum();
+    }
+
+    /**
+     * @return total time to first byte, of the responses
+     */
+    public long getTtfbNanos() {
+        return ttfbNanos.sum();
+    }
+
+    /**
+     * @return longest time to first byte, or 0 if there were no responses
+     */
+    public long getMaxTtfbNanos() {
+        return maxTtfbNanos.get();
+    }
+
+    /**
+     * @return total time of every request
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s requests=%d, failures=%d, read=%d, "
+                + "written=%d, connect=%s, dns=%s, tls=%s, ttfb=%s, "
+                + "maxTtfb=%s", endpoint, getRequests(), getFailures(),
+                getBytesRead(), getBytesWritten(),
+                mean(getConnectNanos(), getRequests()),
+                mean(getDnsNanos(), getResolutions()),
+                mean(getTlsHandshakeNanos(), getTlsHandshakes()),
+                mean(getTtfbNanos(), getResponses()),
+                mean(getMaxTtfbNanos(), Math.min(getResponses(), 1)));
+    }
+
+    private static String mean(long nanos, long count) {
+        return (count == 0) ? "-"
+                : String.format("%.3fms", nanos / (double) count
+                        / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
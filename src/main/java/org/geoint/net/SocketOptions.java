@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLConnection;
+import java.util.Objects;
+
+/**
+ * Immutable profile of TCP socket options applied to the sockets of a route.
+ * <p>
+ * Options which are not set are left at the platform default.  Small
+ * request/response calls typically want {@link #withTcpNoDelay(boolean)
+ * TCP_NODELAY}, while bulk transfers benefit from larger
+ * {@link #withReceiveBufferSize(int) buffers}; buffer sizes are applied
+ * before the socket connects so the TCP window scale can be negotiated for
+ * them.
+ * <p>
+ * The connect and read timeouts are applied to the URLConnection rather than
+ * the socket, since URLConnection implementations overwrite the socket
+ * timeout with their own.
+ *
+ * @see SocketOptionsSocketFactory
+ */
+public final class SocketOptions {
+
+    private static final SocketOptions DEFAULTS = new SocketOptions(null,
+            null, null, null, null, null, null);
+
+    private final Boolean tcpNoDelay;
+    private final Boolean keepAlive;
+    private final Integer sendBufferSize;
+    private final Integer receiveBufferSize;
+    private final Integer trafficClass;
+    private final Integer connectTimeout;
+    private final Integer readTimeout;
+
+    private SocketOptions(Boolean tcpNoDelay, Boolean keepAlive,
+            Integer sendBufferSize, Integer receiveBufferSize,
+            Integer trafficClass, Integer connectTimeout,
+            Integer readTimeout) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.keepAlive = keepAlive;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.trafficClass = trafficClass;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Options which leave every setting at the platform default.
+     *
+     * @return default options
+     */
+    public static SocketOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Options for small request/response exchanges: TCP_NODELAY and
+     * SO_KEEPALIVE enabled.
+     *
+     * @return low latency options
+     */
+    public static SocketOptions lowLatency() {
+        return DEFAULTS.withTcpNoDelay(true).withKeepAlive(true);
+    }
+
+    /**
+     * Options for large transfers: SO_KEEPALIVE enabled and the send and
+     * receive buffers set to the specified size.
+     *
+     * @param bufferSize socket buffer size in bytes
+     * @return bulk transfer options
+     */
+    public static SocketOptions bulkTransfer(int bufferSize) {
+        return DEFAULTS.withKeepAlive(true)
+                .withSendBufferSize(bufferSize)
+                .withReceiveBufferSize(bufferSize);
+    }
+
+    /**
+     * @param on enable TCP_NODELAY (disable Nagle's algorithm)
+     * @return options
+     */
+    public SocketOptions withTcpNoDelay(boolean on) {
+        return new SocketOptions(on, keepAlive, sendBufferSize,
+                receiveBufferSize, trafficClass, connectTimeout, readTimeout);
+    }
+
+    /**
+     * @param on enable SO_KEEPALIVE
+     * @return options
+     */
+    public SocketOptions withKeepAlive(boolean on) {
+        return new SocketOptions(tcpNoDelay, on, sendBufferSize,
+                receiveBufferSize, trafficClass, connectTimeout, readTimeout);
+    }
+
+    /**
+     * @param size SO_SNDBUF size in bytes
+     * @return options
+     * @throws IllegalArgumentException if size is not positive
+     */
+    public SocketOptions withSendBufferSize(int size) {
+        return new SocketOptions(tcpNoDelay, keepAlive, positive(size),
+                receiveBufferSize, trafficClass, connectTimeout, readTimeout);
+    }
+
+    /**
+     * @param size SO_RCVBUF size in bytes
+     * @return options
+     * @throws IllegalArgumentException if size is not positive
+     */
+    public SocketOptions withReceiveBufferSize(int size) {
+        return new SocketOptions(tcpNoDelay, keepAlive, sendBufferSize,
+                positive(size), trafficClass, connectTimeout, readTimeout);
+    }
+
+    /**
+     * @param tc IP_TOS traffic class (ie the DSCP value shifted left by two)
+     * @return options
+     * @throws IllegalArgumentException if tc is not between 0 and 255
+     */
+    public SocketOptions withTrafficClass(int tc) {
+        if (tc < 0 || tc > 255) {
+            throw new IllegalArgumentException("Traffic class must be "
+                    + "between 0 and 255, was " + tc);
+        }
+        return new SocketOptions(tcpNoDelay, keepAlive, sendBufferSize,
+                receiveBufferSize, tc, connectTimeout, readTimeout);
+    }
+
+    /**
+     * @param millis connect timeout in milliseconds, zero for none
+     * @return options
+     * @throws IllegalArgumentException if millis is negative
+     */
+    public SocketOptions withConnectTimeout(int millis) {
+        return new SocketOptions(tcpNoDelay, keepAlive, sendBufferSize,
+                receiveBufferSize, trafficClass, notNegative(millis),
+                readTimeout);
+    }
+
+    /**
+     * @param millis read timeout in milliseconds, zero for none
+     * @return options
+     * @throws IllegalArgumentException if millis is negative
+     */
+    public SocketOptions withReadTimeout(int millis) {
+        return new SocketOptions(tcpNoDelay, keepAlive, sendBufferSize,
+                receiveBufferSize, trafficClass, connectTimeout,
+                notNegative(millis));
+    }
+
+    /**
+     * Applies the socket options which are set.  Should be called before the
+     * socket is connected.
+     *
+     * @param socket socket to configure
+     * @throws SocketException if an option could not be set
+     */
+    public void apply(Socket socket) throws SocketException {
+        if (sendBufferSize != null) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize != null) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        if (tcpNoDelay != null) {
+            socket.setTcpNoDelay(tcpNoDelay);
+        }
+        if (keepAlive != null) {
+            socket.setKeepAlive(keepAlive);
+        }
+        if (trafficClass != null) {
+            socket.setTrafficClass(trafficClass);
+        }
+    }
+
+    /**
+     * Applies the connect and read timeouts which are set.
+     *
+     * @param connection connection to configure
+     */
+    public void apply(URLConnection connection) {
+        if (connectTimeout != null) {
+            connection.setConnectTimeout(connectTimeout);
+        }
+        if (readTimeout != null) {
+            connection.setReadTimeout(readTimeout);
+        }
+    }
+
+    /**
+     * True if any option applied to sockets (rather than the connection) is
+     * set.
+     *
+     * @return true if socket options are set
+     */
+    public boolean hasSocketOptions() {
+        return tcpNoDelay != null || keepAlive != null
+                || sendBufferSize != null || receiveBufferSize != null
+                || trafficClass != null;
+    }
+
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public Boolean getKeepAlive() {
+        return keepAlive;
+    }
+
+    public Integer getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public Integer getTrafficClass() {
+        return trafficClass;
+    }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Integer getReadTimeout() {
+        return readTimeout;
+    }
+
+    private static int positive(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Buffer size must be "
+                    + "positive, was " + value);
+        }
+        return value;
+    }
+
+    private static int notNegative(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Timeout must not be "
+                    + "negative, was " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tcpNoDelay, keepAlive, sendBufferSize,
+                receiveBufferSize, trafficClass, connectTimeout, readTimeout);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final SocketOptions other = (SocketOptions) obj;
+        return Objects.equals(tcpNoDelay, other.tcpNoDelay)
+                && Objects.equals(keepAlive, other.keepAlive)
+                && Objects.equals(sendBufferSize, other.sendBufferSize)
+                && Objects.equals(receiveBufferSize, other.receiveBufferSize)
+                && Objects.equals(trafficClass, other.trafficClass)
+                && Objects.equals(connectTimeout, other.connectTimeout)
+                && Objects.equals(readTimeout, other.readTimeout);
+    }
+
+    @Override
+    public String toString() {
+        return "SocketOptions{" + "tcpNoDelay=" + tcpNoDelay
+                + ", keepAlive=" + keepAlive
+                + ", sendBufferSize=" + sendBufferSize
+                + ", receiveBufferSize=" + receiveBufferSize
+                + ", trafficClass=" + trafficClass
+                + ", connectTimeout=" + connectTimeout
+                + ", readTimeout=" + readTimeout + '}';
+    }
+}
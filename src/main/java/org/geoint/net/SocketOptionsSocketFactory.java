@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import javax.net.SocketFactory;
+
+/**
+ * Decorates a SocketFactory, applying {@link SocketOptions} to each socket
+ * it creates.
+ * <p>
+ * Sockets requested connected are created unconnected, configured, and then
+ * connected, so the buffer sizes are in effect for the TCP handshake.
+ * Factories which do not support unconnected sockets are asked for a
+ * connected socket, which is then configured.
+ */
+public class SocketOptionsSocketFactory extends SocketFactory {
+
+    private final SocketFactory delegate;
+    private final SocketOptions options;
+
+    /**
+     * Applies the options to sockets from the default factory.
+     *
+     * @param options socket options
+     */
+    public SocketOptionsSocketFactory(SocketOptions options) {
+        this(SocketFactory.getDefault(), options);
+    }
+
+    /**
+     * @param delegate decorated factory
+     * @param options socket options
+     */
+    public SocketOptionsSocketFactory(SocketFactory delegate,
+            SocketOptions options) {
+        this.delegate = delegate;
+        this.options = options;
+    }
+
+    /**
+     * Returns the options applied to each socket.
+     *
+     * @return socket options
+     */
+    public SocketOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return configure(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = unconnected();
+        if (socket == null) {
+            return configure(delegate.createSocket(host, port));
+        }
+        return connect(socket, new InetSocketAddress(host, port), null);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost,
+            int localPort) throws IOException {
+        Socket socket = unconnected();
+        if (socket == null) {
+            return configure(delegate.createSocket(host, port, localHost,
+                    localPort));
+        }
+        return connect(socket, new InetSocketAddress(host, port),
+                new InetSocketAddress(localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        Socket socket = unconnected();
+        if (socket == null) {
+            return configure(delegate.createSocket(host, port));
+        }
+        return connect(socket, new InetSocketAddress(host, port), null);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port,
+            InetAddress localAddress, int localPort) throws IOException {
+        Socket socket = unconnected();
+        if (socket == null) {
+            return configure(delegate.createSocket(address, port,
+                    localAddress, localPort));
+        }
+        return connect(socket, new InetSocketAddress(address, port),
+                new InetSocketAddress(localAddress, localPort));
+    }
+
+    private Socket unconnected() throws IOException {
+        Socket socket;
+        try {
+            socket = delegate.createSocket();
+        } catch (UnsupportedOperationException | SocketException ex) {
+            //factory only creates connected sockets
+            return null;
+        }
+        return configure(socket);
+    }
+
+    private Socket connect(Socket socket, InetSocketAddress remote,
+            InetSocketAddress local) throws IOException {
+        try {
+            if (local != null) {
+                socket.bind(local);
+            }
+            Integer timeout = options.getConnectTimeout();
+            socket.connect(remote, (timeout == null) ? 0 : timeout);
+            return socket;
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    private Socket configure(Socket socket) throws IOException {
+        try {
+            options.apply(socket);
+            return socket;
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Expands a {@link URLTemplate} for each binding of a stream of variable
+ * bindings, in parallel, returning the URLs in the order of the bindings.
+ * <p>
+ * The bindings are split across the workers of a fork/join pool; each worker
+ * expands the template in its own reused buffer, so the only allocation per
+ * URL is the URL itself.  A batch of a template
+ * {@link URLTemplate#bind(URLProtocolRegistry) bound} to a registry creates
+ * URLs whose connections are initialized by the registry.  A base URL from a
+ * {@link URLBuilder} is continued with
+ * {@link URLTemplate#compile(URLBuilder, String)}.
+ * <p>
+ * The bindings are best split from a source of known size, such as a list or
+ * the {@link #columns(List...) columns} of the variable values; a stream of
+ * unknown size is split in batches of increasing size and may not keep every
+ * worker busy.
+ * <p>
+ * This class is immutable and thread safe.
+ */
+public final class URLBatch {
+
+    private final URLTemplate template;
+    private final ForkJoinPool pool;
+
+    /**
+     * Batch expanded on the common fork/join pool.
+     *
+     * @param template URL template
+     */
+    public URLBatch(URLTemplate template) {
+        this(template, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Batch expanded on the fork/join pool, which bounds the number of
+     * threads used.
+     *
+     * @param template URL template
+     * @param pool pool the template is expanded on
+     */
+    public URLBatch(URLTemplate template, ForkJoinPool pool) {
+        this.template = Objects.requireNonNull(template);
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Returns the bindings of the rows of the columns of variable values.
+     * <p>
+     * Each column holds the values of one variable, in the order of
+     * {@link URLTemplate#getVariables()}; the returned stream is sized and
+     * splits evenly.  The columns should support random access.
+     *
+     * @param columns values of each variable
+     * @return bindings of each row
+     * @throws IllegalArgumentException if the columns are not the same size
+     */
+    public static Stream<Object[]> columns(List<?>... columns) {
+        int rows = (columns.length == 0) ? 0 : columns[0].size();
+        for (List<?> c : columns) {
+            if (c.size() != rows) {
+                throw new IllegalArgumentException(String.format("Columns "
+                        + "must be the same size, %d and %d values.",
+                        rows, c.size()));
+            }
+        }
+        return IntStream.range(0, rows).mapToObj((r) -> {
+            Object[] row = new Object[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                row[c] = columns[c].get(r);
+            }
+            return row;
+        });
+    }
+
+    /**
+     * Expands the template for each binding.
+     *
+     * @param bindings value of each variable, in the order of
+     * {@link URLTemplate#getVariables()}
+     * @return URLs, in the order of the bindings
+     * @throws IllegalArgumentException if the number of values of a binding
+     * does not match the number of variables
+     */
+    public List<String> expand(Stream<Object[]> bindings) {
+        return collect(() -> bindings.parallel()
+                .map(template::expand)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Expands the template for each binding of variable names to values.
+     *
+     * @param bindings variable values by name; missing variables are
+     * undefined
+     * @return URLs, in the order of the bindings
+     */
+    public List<String> expandNamed(Stream<? extends Map<String, ?>> bindings) {
+        return collect(() -> bindings.parallel()
+                .map((Map<String, ?> b) -> template.expand(b))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Creates a URL of the template for each binding.
+     *
+     * @param bindings value of each variable, in the order of
+     * {@link URLTemplate#getVariables()}
+     * @return URLs, in the order of the bindings
+     * @throws MalformedURLException if an expanded template is not a URL
+     * @throws IllegalArgumentException if the number of values of a binding
+     * does not match the number of variables
+     */
+    public List<URL> toURLs(Stream<Object[]> bindings)
+            throws MalformedURLException {
+        try {
+            return collect(() -> bindings.parallel()
+                    .map(this::toURL)
+                    .collect(Collectors.toList()));
+        } catch (UncheckedIOException ex) {
+            if (ex.getCause() instanceof MalformedURLException) {
+                throw (MalformedURLException) ex.getCause();
+            }
+            throw ex; //of the bindings
+        }
+    }
+
+    private URL toURL(Object[] values) {
+        try {
+            return template.toURL(values);
+        } catch (MalformedURLException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Runs the parallel pipeline in the pool, so it is split across the
+     * workers of the pool rather than of the common pool.
+     */
+    private <T> List<T> collect(Supplier<List<T>> pipeline) {
+        try {
+            if (pool == ForkJoinPool.commonPool()) {
+                return pipeline.get();
+            }
+            ForkJoinTask<List<T>> task = pool.submit(pipeline::get);
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted expanding URLs.", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Unable to expand URLs.", cause);
+        }
+    }
+}
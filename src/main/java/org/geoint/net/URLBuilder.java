@@ -15,26 +15,25 @@
  */
 package org.geoint.net;
 
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Fluid interface to construct a URL.
  * <p>
+ * The URL is serialized in one pass into a StringBuilder reused by the
+ * thread, percent-encoding each component as it is appended, and the URL is
+ * created from the serialized components without first creating a URI.
+ * <p>
  * This class is not thread safe.
  */
 public class URLBuilder {
@@ -42,20 +41,17 @@ public class URLBuilder {
     private String protocol;
     private String host;
     private Integer port;
-    private List<String> path = new LinkedList();
-    private List<Parameter> params = new LinkedList();
+    private List<String> path = new ArrayList<>();
+    private QueryParameters params = new QueryParameters();
     private String ref;
     private String userInfo;
 
     private static final String PATH_SEPARATOR = "/";
     private static final Pattern PATH_SPLITTER
             = Pattern.compile(PATH_SEPARATOR, Pattern.LITERAL);
-    private static final String QUERY_SEPARATOR = "&";
-    private static final Pattern QUERY_SPLITTER
-            = Pattern.compile(QUERY_SEPARATOR, Pattern.LITERAL);
-    private static final String PARAM_SEPARATOR = "=";
-    private static final Pattern PARAM_SPLITTER
-            = Pattern.compile(PARAM_SEPARATOR, Pattern.LITERAL);
+    private static final int MAX_RETAINED_BUFFER = 8192;
+    private static final ThreadLocal<StringBuilder> BUFFER
+            = ThreadLocal.withInitial(() -> new StringBuilder(256));
 
     public URLBuilder() {
     }
@@ -68,9 +64,9 @@ public class URLBuilder {
         withProtocol(baseUrl.getProtocol())
                 .withHost(baseUrl.getHost())
                 .withPort(baseUrl.getPort())
-                .withPath(baseUrl.getPath())
+                .withPath(decodePath(baseUrl.getPath()))
                 .withQuery(baseUrl.getQuery())
-                .withRef(baseUrl.getRef());
+                .withRef(PercentEncoding.decode(baseUrl.getRef()));
     }
 
     /**
@@ -152,6 +148,8 @@ public class URLBuilder {
 
     /**
      * Appends the tokens to the URL path.
+     * <p>
+     * Each token is an unencoded path segment; a '/' in a token is encoded.
      *
      * @param tokens path tokens
      * @return this builder (fluid interface)
@@ -163,66 +161,72 @@ public class URLBuilder {
 
     /**
      * Sets the query, removing any parameters that may already be set.
+     * <p>
+     * The parameters are decoded when accessed; those which are not changed
+     * are written to the URL as they are in the query.
      *
-     * @param query url query
+     * @param query UTF-8 form encoded url query
      * @return this builder (fluid interface)
      */
     public URLBuilder withQuery(String query) {
-        this.params.clear();
-        this.parseQuery(query, this::addParameter);
+        this.params = QueryParameters.parse(query);
         return this;
     }
 
+    /**
+     * Parses the UTF-8 form encoded query, providing each decoded key and
+     * value to the consumer.  A key without a value has an empty value.
+     *
+     * @param query url query, may be null
+     * @param paramConsumer parameter consumer
+     */
     protected void parseQuery(String query,
             BiConsumer<String, String> paramConsumer) {
-        if (query == null) {
-            return;
+        for (Map.Entry<String, String> p : QueryParameters.parse(query)) {
+            paramConsumer.accept(p.getKey(), p.getValue());
         }
-        Arrays.stream(QUERY_SPLITTER.split(query))
-                .map(PARAM_SPLITTER::split)
-                .forEach((p) -> paramConsumer.accept(p[0], p[1]));
+    }
 
+    /**
+     * Returns the query parameters of the URL, which may be changed.
+     *
+     * @return query parameters
+     */
+    public QueryParameters getParameters() {
+        return params;
     }
 
     public URLBuilder addParameter(String key, String value) {
-        this.params.add(new Parameter(key, value));
+        this.params.add(key, value);
         return this;
     }
 
     public URLBuilder addParameter(Charset charset, String key, String value) {
-        this.params.add(new Parameter(key, value, charset));
+        this.params.add(charset, key, value);
         return this;
     }
 
     public URLBuilder addParameters(Charset charset, String key, String... values) {
-        Arrays.stream(values).forEach((v) -> this.addParameter(charset, key, v));
+        for (String v : values) {
+            addParameter(charset, key, v);
+        }
         return this;
     }
 
     public URLBuilder addParameters(String key, String... values) {
-        Arrays.stream(values).forEach((v) -> this.addParameter(key, v));
+        for (String v : values) {
+            addParameter(key, v);
+        }
         return this;
     }
 
     public URLBuilder removeParameter(String key, String value) {
-        Iterator<Parameter> iterator = this.params.iterator();
-        while (iterator.hasNext()) {
-            Parameter p = iterator.next();
-            if (p.getKey().contentEquals(key)
-                    && p.getValue().contentEquals(value)) {
-                iterator.remove();
-            }
-        }
+        this.params.remove(key, value);
         return this;
     }
 
     public URLBuilder removeParameters(String key) {
-        Iterator<Parameter> iterator = this.params.iterator();
-        while (iterator.hasNext()) {
-            if (iterator.next().getKey().contentEquals(key)) {
-                iterator.remove();
-            }
-        }
+        this.params.removeAll(key);
         return this;
     }
 
@@ -232,119 +236,139 @@ public class URLBuilder {
     }
 
     public URL toURL() throws MalformedURLException {
-        try {
-            return toURI().toURL();
-        } catch (URISyntaxException ex) {
-            throw new MalformedURLException("Invalid URI syntax. "
-                    + ex.getMessage());
+        if (protocol == null || host == null) {
+            throw new MalformedURLException("URL requires a protocol and "
+                    + "host.");
+        }
+        if (userInfo != null) {
+            //URL has no constructor accepting the user info
+            return new URL(asString());
         }
+        StringBuilder sb = buffer();
+        appendFile(sb);
+        return new URL(protocol, host, (port == null) ? -1 : port,
+                sb.toString());
     }
 
     public URI toURI() throws URISyntaxException {
-        return new URI(protocol,
-                userInfo,
-                host,
-                (port == null)
-                        ? port
-                        : -1,
-                (path.isEmpty())
-                        ? null
-                        : String.join(PATH_SEPARATOR, path),
-                (params.isEmpty())
-                        ? null
-                        : params.stream().map(Parameter::toString)
-                        .collect(Collectors.joining(QUERY_SEPARATOR)),
-                ref);
+        return new URI(asString());
     }
 
-    public String asString() {
-        try {
-            return toURI().toString();
-        } catch (URISyntaxException ex) {
-            return "Invalid URI syntax";
+    /**
+     * Returns an immutable specification of the URL currently built, which
+     * may be shared between threads and derived from.
+     *
+     * @return specification
+     */
+    public URLSpec toSpec() {
+        URLSpec spec = URLSpec.EMPTY.withProtocol(protocol)
+                .withUserInfo(userInfo)
+                .withHost(host)
+                .withPort((port == null) ? -1 : port)
+                .withPath(path.toArray(new String[path.size()]))
+                .withRef(ref);
+        for (Map.Entry<String, String> p : params) {
+            spec = spec.addParameter(
+                    ((QueryParameters.Parameter) p).getCharset(),
+                    p.getKey(), p.getValue());
         }
+        return spec;
     }
 
-    protected final class Parameter {
-
-        private final String key;
-        private final String value;
-        private final Charset charset;
-
-        public Parameter(String key, String value) {
-            this.key = key;
-            this.value = value;
-            this.charset = StandardCharsets.UTF_8;
-        }
-
-        public Parameter(String key, String value, Charset charset) {
-            this.key = key;
-            this.value = value;
-            this.charset = charset;
-        }
+    public String asString() {
+        StringBuilder sb = buffer();
+        appendAuthority(sb, protocol, userInfo, host,
+                (port == null) ? -1 : port);
+        appendFile(sb);
+        return sb.toString();
+    }
 
-        public String getKey() {
-            return key;
+    /**
+     * Appends the scheme and authority of a URL.
+     *
+     * @param sb destination
+     * @param protocol protocol, or null
+     * @param userInfo unencoded user info, or null
+     * @param host host, or null for no authority
+     * @param port port, or -1 for the default port
+     */
+    static void appendAuthority(StringBuilder sb, String protocol,
+            String userInfo, String host, int port) {
+        if (protocol != null) {
+            sb.append(protocol).append(':');
         }
-
-        public String getEncodedKey() {
-            try {
-                return URLEncoder.encode(key, charset.name());
-            } catch (UnsupportedEncodingException ex) {
-                try {
-                    return URLEncoder.encode(key, Charset.defaultCharset().name());
-                } catch (UnsupportedEncodingException ex1) {
-                    return key;
-                }
+        if (host != null) {
+            sb.append("//");
+            if (userInfo != null) {
+                PercentEncoding.append(sb, userInfo,
+                        PercentEncoding.Component.USER_INFO, false);
+                sb.append('@');
+            }
+            boolean literal = host.indexOf(':') != -1 && !host.startsWith("[");
+            if (literal) {
+                sb.append('[').append(host).append(']');
+            } else {
+                sb.append(host);
+            }
+            if (port >= 0) {
+                sb.append(':').append(port);
             }
         }
+    }
 
-        public String getValue() {
-            return value;
+    /**
+     * Splits the encoded path into segments, then decodes each, so an
+     * encoded '/' stays within its segment.
+     */
+    private static String[] decodePath(String path) {
+        String[] segments = PATH_SPLITTER.split(path);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = PercentEncoding.decode(segments[i]);
         }
+        return segments;
+    }
 
-        public String getEncodedValue() {
-            try {
-                return URLEncoder.encode(value, charset.name());
-            } catch (UnsupportedEncodingException ex) {
-                try {
-                    return URLEncoder.encode(value, Charset.defaultCharset().name());
-                } catch (UnsupportedEncodingException ex1) {
-                    return value;
+    /**
+     * Appends the path, query and fragment.
+     */
+    private void appendFile(StringBuilder sb) {
+        if (!path.isEmpty()) {
+            int start = sb.length();
+            for (int i = 0; i < path.size(); i++) {
+                if (i > 0) {
+                    sb.append(PATH_SEPARATOR);
                 }
+                PercentEncoding.append(sb, path.get(i),
+                        PercentEncoding.Component.PATH_SEGMENT, false);
+            }
+            if (host != null && sb.length() > start
+                    && sb.charAt(start) != '/') {
+                sb.insert(start, PATH_SEPARATOR); //path must be absolute
             }
         }
-
-        @Override
-        public String toString() {
-            return String.format("%s=%s", getEncodedKey(), getEncodedValue());
+        if (!params.isEmpty()) {
+            sb.append('?');
+            params.appendTo(sb);
         }
-
-        @Override
-        public int hashCode() {
-            int hash = 3;
-            hash = 79 * hash + Objects.hashCode(this.key);
-            hash = 79 * hash + Objects.hashCode(this.value);
-            return hash;
+        if (ref != null) {
+            sb.append('#');
+            PercentEncoding.append(sb, ref,
+                    PercentEncoding.Component.FRAGMENT, false);
         }
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            final Parameter other = (Parameter) obj;
-            if (!Objects.equals(this.key, other.key)) {
-                return false;
-            }
-            return Objects.equals(this.value, other.value);
+    /**
+     * Returns the empty StringBuilder of the thread, reused by each URL
+     * serialized on the thread.
+     */
+    static StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            //don't retain a buffer grown by an unusually long URL
+            sb = new StringBuilder(256);
+            BUFFER.set(sb);
         }
-
+        sb.setLength(0);
+        return sb;
     }
 }
@@ -16,8 +16,11 @@
 package org.geoint.net;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.CookieHandler;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URI;
@@ -25,10 +28,22 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -47,13 +62,22 @@ public class URLProtocolRegistry {
     private final Map<String, URLContextStreamHandler> streamHandlers; //key=protocol
     //TODO replace with a more sophisticated way to filter initializers (ie tree)
     private final Set<URLContextConnectionInitializer> initializers;
-
+    private final Map<String, Integer> warmUpRoutes; //key=url, value=connections
+    private volatile CookieHandler cookieHandler;
+    private volatile RequestCoalescer coalescer;
+    private volatile ConnectionMetrics metrics;
+
+    private static final String WARM_UP_METHOD = "HEAD";
+    private static final int MAX_WARM_UP_THREADS = 32;
+    private static final ThreadLocal<Boolean> UNINITIALIZED
+            = new ThreadLocal<>();
     private static final Logger LOGGER
             = Logger.getLogger(URLProtocolRegistry.class.getName());
 
     public URLProtocolRegistry() {
         streamHandlers = new HashMap<>();
         initializers = new LinkedHashSet<>();
+        warmUpRoutes = new LinkedHashMap<>();
     }
 
     /**
@@ -73,6 +97,87 @@ public class URLProtocolRegistry {
         }
     }
 
+    /**
+     * Sets the cookie handler used by the HTTP connections of this registry
+     * while it is {@link #registerWithJvm() registered} with the JVM.
+     * <p>
+     * The JRE HttpURLConnection only consults the JVM default CookieHandler,
+     * so the first call to this method installs a default handler which
+     * delegates to the handler of the registry currently registered with the
+     * JVM, allowing registries (and their cookies) to be swapped out at
+     * runtime as their stream handlers are.  Connections made while the
+     * registered registry has no cookie handler use the default handler
+     * which was set before, if any.
+     *
+     * @param handler cookie handler, or null to use the previous default
+     * @see org.geoint.net.www.http.StripedCookieStore
+     */
+    public void setCookieHandler(CookieHandler handler) {
+        this.cookieHandler = handler;
+        RegistryCookieHandler.install();
+    }
+
+    /**
+     * Returns the cookie handler used by the HTTP connections of this
+     * registry.
+     *
+     * @return cookie handler, or null if the previous default is used
+     */
+    public CookieHandler getCookieHandler() {
+        return cookieHandler;
+    }
+
+    /**
+     * Coalesces concurrent identical GET requests made with connections
+     * created by this registry.
+     * <p>
+     * Coalescing is disabled by default.  Connections to HTTP(S) URLs are
+     * returned wrapped after they have been initialized, so identical
+     * requests made while the first is in flight share its response.
+     *
+     * @param coalescer coalescer, or null to disable coalescing
+     * @see RequestCoalescer
+     */
+    public void setRequestCoalescer(RequestCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Returns the coalescer of GET requests made with connections created by
+     * this registry.
+     *
+     * @return coalescer, or null if requests are not coalesced
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Records the timing breakdown and byte counts of requests made with
+     * connections created by this registry.
+     * <p>
+     * Metrics are disabled by default.  Connections to HTTP(S) URLs are
+     * returned wrapped after they have been initialized, before they are
+     * wrapped by the {@link #setRequestCoalescer(RequestCoalescer) request
+     * coalescer}, so a coalesced request is recorded once.
+     *
+     * @param metrics metrics, or null to disable them
+     * @see ConnectionMetrics
+     */
+    public void setConnectionMetrics(ConnectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics of requests made with connections created by this
+     * registry.
+     *
+     * @return metrics, or null if requests are not recorded
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return metrics;
+    }
+
     /**
      * Register a {@link URLStreamHandler handler} for the specified protocol.
      *
@@ -139,8 +244,8 @@ public class URLProtocolRegistry {
      */
     public void addInitializer(
             URLConnectionInitializer initializer, String protocol) {
-        addInitializer(initializer,
-                (u) -> u.getProtocol().equalsIgnoreCase(protocol.toLowerCase()));
+        String scheme = protocol.toLowerCase(Locale.ROOT);
+        addRouteInitializer(initializer, (u) -> u.getScheme().equals(scheme));
     }
 
     /**
@@ -153,15 +258,16 @@ public class URLProtocolRegistry {
      */
     public void addInitializer(URLConnectionInitializer initializer,
             String protocol, String hostname) {
-        addInitializer(initializer,
-                (u) -> u.getProtocol().equalsIgnoreCase(protocol.toLowerCase())
-                && u.getHost().equalsIgnoreCase(hostname)
-        );
+        String scheme = protocol.toLowerCase(Locale.ROOT);
+        addRouteInitializer(initializer,
+                (u) -> u.getScheme().equals(scheme) && u.isHost(hostname));
     }
 
     /**
      * Adds a URLConnection initializer that will be called for all URLs with
      * the specified protocol, hostname, and port.
+     * <p>
+     * A URL without a port is of the default port of its protocol.
      *
      * @param initializer initializer
      * @param protocol protocol defined by the URL
@@ -170,11 +276,8 @@ public class URLProtocolRegistry {
      */
     public void addInitializer(URLConnectionInitializer initializer,
             String protocol, String hostname, int port) {
-        addInitializer(initializer,
-                (u) -> u.getProtocol().equalsIgnoreCase(protocol.toLowerCase())
-                && u.getHost().equalsIgnoreCase(hostname)
-                && u.getPort() == port
-        );
+        String endpoint = ParsedURL.endpoint(protocol, hostname, port);
+        addRouteInitializer(initializer, (u) -> u.getEndpoint() == endpoint);
     }
 
     /**
@@ -189,16 +292,18 @@ public class URLProtocolRegistry {
      */
     public void addInitializer(URLConnectionInitializer initializer,
             String protocol, String hostname, String path) {
-        addInitializer(initializer,
-                (u) -> u.getProtocol().equalsIgnoreCase(protocol.toLowerCase())
-                && u.getHost().equalsIgnoreCase(hostname)
-                && u.getPath().startsWith(path));
+        String scheme = protocol.toLowerCase(Locale.ROOT);
+        addRouteInitializer(initializer,
+                (u) -> u.getScheme().equals(scheme) && u.isHost(hostname)
+                && u.isPathUnder(path));
     }
 
     /**
      * Adds a URLConnection initializer that will be called for all URLs with
      * the specified protocol, hostname, and port, and is or exists under the
      * provided relative path.
+     * <p>
+     * A URL without a port is of the default port of its protocol.
      *
      * @param initializer initializer
      * @param protocol protocol defined by the URL
@@ -208,12 +313,9 @@ public class URLProtocolRegistry {
      */
     public void addInitializer(URLConnectionInitializer initializer,
             String protocol, String hostname, int port, String path) {
-        addInitializer(initializer,
-                (u) -> u.getProtocol().equalsIgnoreCase(protocol.toLowerCase())
-                && u.getHost().equalsIgnoreCase(hostname)
-                && u.getPort() == port
-                && u.getPath().startsWith(path)
-        );
+        String endpoint = ParsedURL.endpoint(protocol, hostname, port);
+        addRouteInitializer(initializer,
+                (u) -> u.getEndpoint() == endpoint && u.isPathUnder(path));
     }
 
     /**
@@ -225,9 +327,26 @@ public class URLProtocolRegistry {
      */
     public void addInitializer(
             URLConnectionInitializer initializer, Predicate<URL> filter) {
-        addContextInitializer(
-                new URLContextConnectionInitializer(initializer, filter)
-        );
+        addContextInitializer(new URLContextConnectionInitializer(initializer,
+                null, filter));
+    }
+
+    /**
+     * Adds a URLConnection initializer that is only used when the URL passes
+     * the provided test.
+     * <p>
+     * The URL of each connection is parsed once and provided to the test of
+     * every initializer; endpoint keys created by
+     * {@link ParsedURL#endpoint(String, String, int)} may be compared to it
+     * by identity.
+     *
+     * @param initializer initializer
+     * @param route parsed URL test
+     */
+    public void addRouteInitializer(URLConnectionInitializer initializer,
+            Predicate<ParsedURL> route) {
+        addContextInitializer(new URLContextConnectionInitializer(initializer,
+                route, null));
     }
 
     private void addContextInitializer(URLContextConnectionInitializer init) {
@@ -257,8 +376,12 @@ public class URLProtocolRegistry {
      * @throws IOException if thrown by initializer
      */
     public void initialize(URLConnection conn) throws IOException {
+        if (initializers.isEmpty()) {
+            return;
+        }
+        ParsedURL url = ParsedURL.of(conn.getURL());
         for (URLContextConnectionInitializer i : initializers) {
-            i.initialize(conn);
+            i.initialize(conn, url);
         }
     }
 
@@ -277,6 +400,197 @@ public class URLProtocolRegistry {
         return new URL(context, url);
     }
 
+    /**
+     * Opens a connection to the URL without the initializers, request
+     * coalescing or connection metrics of the registry whose stream handler
+     * the URL uses, if any.
+     * <p>
+     * For initializers which connect to a service themselves, such as a token
+     * endpoint, so their own connection is not initialized by (and waiting
+     * on) the initializer when the registry is registered with the JVM.
+     *
+     * @param url url
+     * @return uninitialized connection
+     * @throws IOException if the connection could not be opened
+     */
+    public static URLConnection openUninitialized(URL url) throws IOException {
+        UNINITIALIZED.set(Boolean.TRUE);
+        try {
+            return url.openConnection();
+        } finally {
+            UNINITIALIZED.remove();
+        }
+    }
+
+    /**
+     * Registers a route to be pre-connected when {@link #warmUp(long, TimeUnit)}
+     * is called.
+     * <p>
+     * Warm-up connections are opened through this registry, so every
+     * initializer in context of the URL (for example the SSLSocketFactory
+     * installed by an HTTPS mutual authentication initializer) is applied
+     * exactly as it would be for application traffic.  Registering the same
+     * URL again replaces the number of connections for that route.
+     * <p>
+     * Every connection of a route holds its own warm-up thread until all of
+     * its siblings have responded, so a route of n connections needs n
+     * threads (and n sockets) at once during {@link #warmUp(long, TimeUnit)}.
+     * Warm-up uses up to 32 threads, or the largest route's connection count
+     * if that is greater; additional routes are warmed as threads free up.
+     *
+     * @param url route url
+     * @param connections number of concurrent connections to establish
+     * @throws MalformedURLException if the url is not valid
+     * @throws IllegalArgumentException if connections is less than one
+     */
+    public void addWarmUp(String url, int connections)
+            throws MalformedURLException, IllegalArgumentException {
+        if (connections < 1) {
+            throw new IllegalArgumentException(String.format("Route '%s' must "
+                    + "warm at least one connection, %d requested.",
+                    url, connections));
+        }
+        toUrl(url); //validate now rather than at startup
+        synchronized (warmUpRoutes) {
+            warmUpRoutes.put(url, connections);
+        }
+    }
+
+    /**
+     * Removes a route from warm-up.
+     *
+     * @param url route url
+     */
+    public void removeWarmUp(String url) {
+        synchronized (warmUpRoutes) {
+            warmUpRoutes.remove(url);
+        }
+    }
+
+    /**
+     * Opens, in parallel, the configured number of connections to each
+     * registered warm-up route.
+     * <p>
+     * Each connection completes the TCP connect and any TLS handshake, issues
+     * a HEAD request (for HTTP connections), and is held open until every
+     * connection to that route has responded, so the route ends up with
+     * distinct keep-alive sockets and a cached TLS session rather than one
+     * socket reused serially.  Failures are logged and do not prevent the
+     * remaining routes from being warmed.
+     *
+     * @param timeout maximum time to wait for all routes to be warmed
+     * @param unit timeout unit
+     * @return number of connections successfully warmed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int warmUp(long timeout, TimeUnit unit) throws InterruptedException {
+        final Map<String, Integer> routes;
+        synchronized (warmUpRoutes) {
+            routes = new LinkedHashMap<>(warmUpRoutes);
+        }
+        final int total = routes.values().stream()
+                .mapToInt(Integer::intValue)
+                .sum();
+        if (total == 0) {
+            return 0;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        //a route needs all its connections open at once; other routes queue
+        final int largest = routes.values().stream()
+                .mapToInt(Integer::intValue)
+                .max()
+                .getAsInt();
+        final int threads = Math.min(total,
+                Math.max(largest, MAX_WARM_UP_THREADS));
+        ExecutorService exec = Executors.newFixedThreadPool(threads, (r) -> {
+            Thread t = new Thread(r, "url-warm-up");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(total);
+            for (Map.Entry<String, Integer> route : routes.entrySet()) {
+                final CountDownLatch responded
+                        = new CountDownLatch(route.getValue());
+                for (int i = 0; i < route.getValue(); i++) {
+                    results.add(exec.submit(() -> warmConnection(
+                            route.getKey(), responded, deadline)));
+                }
+            }
+
+            int warmed = 0;
+            for (Future<Boolean> r : results) {
+                long remaining = deadline - System.nanoTime();
+                try {
+                    if (r.get(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                        warmed++;
+                    }
+                } catch (ExecutionException | TimeoutException ex) {
+                    //failures are logged by warmConnection
+                }
+            }
+            return warmed;
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private boolean warmConnection(String url, CountDownLatch responded,
+            long deadline) throws InterruptedException {
+        URLConnection conn = null;
+        boolean warmed = false;
+        try {
+            conn = toUrl(url).openConnection();
+            int timeoutMillis = (int) Math.max(1, TimeUnit.NANOSECONDS
+                    .toMillis(deadline - System.nanoTime()));
+            conn.setConnectTimeout(timeoutMillis);
+            conn.setReadTimeout(timeoutMillis);
+            if (conn instanceof HttpURLConnection) {
+                ((HttpURLConnection) conn).setRequestMethod(WARM_UP_METHOD);
+                ((HttpURLConnection) conn).getResponseCode();
+            } else {
+                conn.connect();
+            }
+            warmed = true;
+        } catch (IOException | RuntimeException ex) {
+            //an initializer may fail with an unchecked exception
+            LOGGER.log(Level.WARNING, String.format("Unable to warm "
+                    + "connection to '%s'.", url), ex);
+        } finally {
+            responded.countDown();
+        }
+
+        //hold the connection until its siblings have their own sockets
+        responded.await(Math.max(0, deadline - System.nanoTime()),
+                TimeUnit.NANOSECONDS);
+        if (conn != null) {
+            release(conn);
+        }
+        return warmed;
+    }
+
+    /**
+     * Returns the socket of a warmed connection to the keep-alive cache.
+     */
+    private static void release(URLConnection conn) {
+        try {
+            InputStream in = (conn instanceof HttpURLConnection
+                    && ((HttpURLConnection) conn).getResponseCode() >= 400)
+                            ? ((HttpURLConnection) conn).getErrorStream()
+                            : conn.getInputStream();
+            if (in != null) {
+                byte[] buffer = new byte[512];
+                while (in.read(buffer) != -1) {
+                    //drain so the socket may be reused
+                }
+                in.close();
+            }
+        } catch (IOException ex) {
+            //connection is not reusable, nothing more to do
+        }
+    }
+
     /**
      * Contextual stream handler which simply iterates through all the
      * initializers in the sequence they were added to the factory, executing
@@ -299,8 +613,11 @@ public class URLProtocolRegistry {
                 delegateMethod.setAccessible(true);
                 URLConnection conn
                         = (URLConnection) delegateMethod.invoke(h, u);
+                if (UNINITIALIZED.get() != null) {
+                    return conn;
+                }
                 initialize(conn);
-                return conn;
+                return coalesce(instrument(conn));
             } catch (NoSuchMethodException | IllegalAccessException |
                     IllegalArgumentException | InvocationTargetException ex) {
                 String msg = String.format("Unable to execute "
@@ -320,8 +637,11 @@ public class URLProtocolRegistry {
                 delegateMethod.setAccessible(true);
                 URLConnection conn
                         = (URLConnection) delegateMethod.invoke(h, u, p);
+                if (UNINITIALIZED.get() != null) {
+                    return conn;
+                }
                 initialize(conn);
-                return conn;
+                return coalesce(instrument(conn));
             } catch (NoSuchMethodException | IllegalAccessException |
                     IllegalArgumentException | InvocationTargetException ex) {
                 String msg = String.format("Unable to execute "
@@ -333,6 +653,16 @@ public class URLProtocolRegistry {
             }
         }
 
+        private URLConnection instrument(URLConnection conn) {
+            ConnectionMetrics m = metrics;
+            return (m == null) ? conn : m.wrap(conn);
+        }
+
+        private URLConnection coalesce(URLConnection conn) {
+            RequestCoalescer c = coalescer;
+            return (c == null) ? conn : c.wrap(conn);
+        }
+
         private URLStreamHandler getDelegateHandler() {
             return handlerSupplier.get();
         }
@@ -342,7 +672,8 @@ public class URLProtocolRegistry {
     private class URLContextConnectionInitializer {
 
         private final URLConnectionInitializer delegate;
-        private final Predicate<URL> filter;
+        private final Predicate<ParsedURL> route; //null if filtered by URL
+        private final Predicate<URL> filter; //null if filtered by route
 
         /**
          * Constructs an initializer that is applied to all URL context.
@@ -350,26 +681,30 @@ public class URLProtocolRegistry {
          * @param delegate
          */
         public URLContextConnectionInitializer(URLConnectionInitializer delegate) {
-            this.delegate = delegate;
-            this.filter = (u) -> true;
+            this(delegate, (u) -> true, null);
         }
 
         /**
          * Constructs an initializer that applied to only those connections
-         * passing the URL predicate.
+         * passing the parsed URL or URL predicate.
          *
          * @param delegate initializer
-         * @param filter URL context filter
+         * @param route parsed URL filter, or null
+         * @param filter URL context filter, or null
          */
         public URLContextConnectionInitializer(URLConnectionInitializer delegate,
-                Predicate<URL> filter) {
+                Predicate<ParsedURL> route, Predicate<URL> filter) {
             this.delegate = delegate;
+            this.route = route;
             this.filter = filter;
         }
 
-        public void initialize(URLConnection connection)
+        public void initialize(URLConnection connection, ParsedURL url)
                 throws URLConnectionInitializationException, IOException {
-            if (filter.test(connection.getURL())) {
+            boolean applies = (route != null)
+                    ? route.test(url)
+                    : filter.test(connection.getURL());
+            if (applies) {
                 try {
                     delegate.initialize(connection);
                 } catch (IncompleteConnectionInitializationException ex) {
@@ -408,4 +743,50 @@ public class URLProtocolRegistry {
 
     }
 
+    /**
+     * Default CookieHandler delegating to the cookie handler of the registry
+     * registered with the JVM.
+     */
+    private static final class RegistryCookieHandler extends CookieHandler {
+
+        private static final RegistryCookieHandler INSTANCE
+                = new RegistryCookieHandler();
+        private volatile CookieHandler previous;
+
+        private static synchronized void install() {
+            CookieHandler current = CookieHandler.getDefault();
+            if (current != INSTANCE) {
+                INSTANCE.previous = current;
+                CookieHandler.setDefault(INSTANCE);
+            }
+        }
+
+        @Override
+        public Map<String, List<String>> get(URI uri,
+                Map<String, List<String>> requestHeaders) throws IOException {
+            CookieHandler h = delegate();
+            return (h == null)
+                    ? Collections.emptyMap()
+                    : h.get(uri, requestHeaders);
+        }
+
+        @Override
+        public void put(URI uri, Map<String, List<String>> responseHeaders)
+                throws IOException {
+            CookieHandler h = delegate();
+            if (h != null) {
+                h.put(uri, responseHeaders);
+            }
+        }
+
+        private CookieHandler delegate() {
+            URLProtocolRegistry registry
+                    = ProtocolRegistryStreamHandlerFactory.INSTANCE.registry;
+            CookieHandler h = (registry == null)
+                    ? null
+                    : registry.cookieHandler;
+            return (h == null) ? previous : h;
+        }
+    }
+
 }
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable URL specification, the thread safe counterpart of
+ * {@link URLBuilder}.
+ * <p>
+ * Each {@code with}/{@code add} method returns a new specification which
+ * shares the path segments and query parameters of this one, so deriving
+ * many URLs from a common base copies nothing but what differs.  The
+ * encoded form of each path segment and query parameter is memoized on it
+ * when first serialized, so a derived specification only encodes what it
+ * added; the serialized URL of each specification is also memoized.
+ * <p>
+ * Instances are immutable and may be freely shared between threads.
+ */
+public final class URLSpec {
+
+    /**
+     * Specification without any URL component.
+     */
+    public static final URLSpec EMPTY
+            = new URLSpec(null, null, null, -1, null, null, null);
+
+    private final String protocol;
+    private final String userInfo;
+    private final String host;
+    private final int port;
+    private final Segment path; //last segment, null if empty
+    private final Param params; //last parameter, null if empty
+    private final String ref;
+    //memoized, racy single-check: every thread computes the same string
+    private String file;
+    private String serialized;
+
+    private URLSpec(String protocol, String userInfo, String host, int port,
+            Segment path, Param params, String ref) {
+        this.protocol = protocol;
+        this.userInfo = userInfo;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.params = params;
+        this.ref = ref;
+    }
+
+    /**
+     * Creates a specification from the URL.
+     *
+     * @param url url
+     * @return specification
+     * @throws MalformedURLException if the URL is malformed
+     */
+    public static URLSpec of(String url) throws MalformedURLException {
+        return of(new URL(url));
+    }
+
+    /**
+     * Creates a specification from the URL.
+     * <p>
+     * The user info, path and fragment are percent-decoded as UTF-8 and the
+     * query is decoded as UTF-8 form parameters.
+     *
+     * @param url url
+     * @return specification
+     */
+    public static URLSpec of(URL url) {
+        return EMPTY.withProtocol(url.getProtocol())
+                .withUserInfo(PercentEncoding.decode(url.getUserInfo()))
+                .withHost(url.getHost())
+                .withPort(url.getPort())
+                .withPathSegments(segments(url.getPath(), true))
+                .withQuery(url.getQuery())
+                .withRef(PercentEncoding.decode(url.getRef()));
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public String getUserInfo() {
+        return userInfo;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return port, or -1 if the default port of the protocol is used
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    /**
+     * Returns a specification with the URL protocol (scheme).
+     *
+     * @param protocol protocol
+     * @return specification
+     */
+    public URLSpec withProtocol(String protocol) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    /**
+     * Returns a specification with the unencoded user info.
+     *
+     * @param userInfo user info, or null
+     * @return specification
+     */
+    public URLSpec withUserInfo(String userInfo) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    /**
+     * Returns a specification with the host.
+     *
+     * @param host host
+     * @return specification
+     */
+    public URLSpec withHost(String host) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    /**
+     * Returns a specification with the port.
+     *
+     * @param port port, or -1 to use the default port of the protocol
+     * @return specification
+     */
+    public URLSpec withPort(int port) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    /**
+     * Returns a specification using the default port of the protocol.
+     *
+     * @return specification
+     */
+    public URLSpec withDefaultPort() {
+        return withPort(-1);
+    }
+
+    /**
+     * Returns a specification with the path, replacing any existing path.
+     *
+     * @param path unencoded path, segments separated by '/'
+     * @return specification
+     */
+    public URLSpec withPath(String path) {
+        return withPathSegments(segments(path, false));
+    }
+
+    /**
+     * Returns a specification with the path segments, replacing any existing
+     * path.
+     *
+     * @param segments unencoded path segments
+     * @return specification
+     */
+    public URLSpec withPath(String... segments) {
+        return withPathSegments(append(null, segments));
+    }
+
+    /**
+     * Returns a specification with the segments appended to the path.
+     *
+     * @param segments unencoded path segments
+     * @return specification
+     */
+    public URLSpec appendToPath(String... segments) {
+        return withPathSegments(append(path, segments));
+    }
+
+    /**
+     * Returns a specification with the query parameters, replacing any
+     * existing parameters.
+     *
+     * @param query UTF-8 form encoded query
+     * @return specification
+     */
+    public URLSpec withQuery(String query) {
+        Param p = null;
+        for (Map.Entry<String, String> e : QueryParameters.parse(query)) {
+            p = new Param(p, e.getKey(), e.getValue(),
+                    StandardCharsets.UTF_8);
+        }
+        return withParams(p);
+    }
+
+    /**
+     * Returns a specification with the UTF-8 encoded query parameter added.
+     *
+     * @param key unencoded key
+     * @param value unencoded value
+     * @return specification
+     */
+    public URLSpec addParameter(String key, String value) {
+        return addParameter(StandardCharsets.UTF_8, key, value);
+    }
+
+    /**
+     * Returns a specification with the query parameter added.
+     *
+     * @param charset charset of the encoded parameter
+     * @param key unencoded key
+     * @param value unencoded value
+     * @return specification
+     */
+    public URLSpec addParameter(Charset charset, String key, String value) {
+        return withParams(new Param(params, key, value, charset));
+    }
+
+    /**
+     * Returns a specification with a UTF-8 encoded query parameter added for
+     * each value.
+     *
+     * @param key unencoded key
+     * @param values unencoded values
+     * @return specification
+     */
+    public URLSpec addParameters(String key, String... values) {
+        Param p = params;
+        for (String v : values) {
+            p = new Param(p, key, v, StandardCharsets.UTF_8);
+        }
+        return withParams(p);
+    }
+
+    /**
+     * Returns a specification without the query parameters of the key.
+     * <p>
+     * The parameters preceding the first removed parameter remain shared.
+     *
+     * @param key key
+     * @return specification
+     */
+    public URLSpec removeParameters(String key) {
+        //parameters are linked last to first, rebuild after the first match
+        Param first = null;
+        for (Param p = params; p != null; p = p.previous) {
+            if (p.key.equals(key)) {
+                first = p;
+            }
+        }
+        if (first == null) {
+            return this;
+        }
+        Param[] kept = new Param[params.size - first.size];
+        int n = 0;
+        for (Param p = params; p != first; p = p.previous) {
+            if (!p.key.equals(key)) {
+                kept[n++] = p;
+            }
+        }
+        Param rebuilt = first.previous;
+        for (int i = n - 1; i >= 0; i--) {
+            rebuilt = new Param(rebuilt, kept[i].key, kept[i].value,
+                    kept[i].charset);
+        }
+        return withParams(rebuilt);
+    }
+
+    /**
+     * Returns a specification with the unencoded fragment.
+     *
+     * @param ref fragment, or null
+     * @return specification
+     */
+    public URLSpec withRef(String ref) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    /**
+     * Creates the URL.
+     *
+     * @return url
+     * @throws MalformedURLException if the specification has no protocol or
+     * host, or the URL is malformed
+     */
+    public URL toURL() throws MalformedURLException {
+        if (protocol == null || host == null) {
+            throw new MalformedURLException("URL requires a protocol and "
+                    + "host.");
+        }
+        if (userInfo != null) {
+            //URL has no constructor accepting the user info
+            return new URL(asString());
+        }
+        return new URL(protocol, host, port, file());
+    }
+
+    public URI toURI() throws URISyntaxException {
+        return new URI(asString());
+    }
+
+    /**
+     * Returns the serialized URL, memoized.
+     *
+     * @return url
+     */
+    public String asString() {
+        String s = serialized;
+        if (s == null) {
+            String f = file();
+            StringBuilder sb = new StringBuilder(f.length() + 64);
+            URLBuilder.appendAuthority(sb, protocol, userInfo, host, port);
+            s = sb.append(f).toString();
+            serialized = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the path, query and fragment, memoized.
+     */
+    private String file() {
+        String f = file;
+        if (f == null) {
+            StringBuilder sb = new StringBuilder(64);
+            if (path != null) {
+                path.appendPath(sb);
+                if (host != null && sb.length() > 0 && sb.charAt(0) != '/') {
+                    sb.insert(0, '/'); //path must be absolute
+                }
+            }
+            if (params != null) {
+                sb.append('?');
+                params.appendQuery(sb);
+            }
+            if (ref != null) {
+                sb.append('#');
+                PercentEncoding.append(sb, ref,
+                        PercentEncoding.Component.FRAGMENT, false);
+            }
+            f = sb.toString();
+            file = f;
+        }
+        return f;
+    }
+
+    @Override
+    public int hashCode() {
+        return asString().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return Objects.equals(asString(), ((URLSpec) obj).asString());
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+
+    private URLSpec withPathSegments(Segment path) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    private URLSpec withParams(Param params) {
+        return new URLSpec(protocol, userInfo, host, port, path, params, ref);
+    }
+
+    /**
+     * Splits the path into segments, decoding each after splitting if the
+     * path is encoded, so an encoded '/' stays within its segment.
+     */
+    private static Segment segments(String path, boolean encoded) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        Segment s = null;
+        int start = 0;
+        int end;
+        while ((end = path.indexOf('/', start)) != -1) {
+            String segment = path.substring(start, end);
+            s = new Segment(s, encoded
+                    ? PercentEncoding.decode(segment) : segment);
+            start = end + 1;
+        }
+        if (start < path.length()) {
+            String segment = path.substring(start);
+            s = new Segment(s, encoded
+                    ? PercentEncoding.decode(segment) : segment);
+        }
+        return s;
+    }
+
+    private static Segment append(Segment last, String... segments) {
+        for (String s : segments) {
+            last = new Segment(last, s);
+        }
+        return last;
+    }
+
+    /**
+     * Path segment, linked to the segment preceding it.
+     */
+    private static final class Segment {
+
+        private final Segment previous;
+        private final String value;
+        private final int size;
+        private String encoded; //memoized, of this segment only
+
+        private Segment(Segment previous, String value) {
+            this.previous = previous;
+            this.value = Objects.requireNonNull(value, "Path segment must "
+                    + "not be null.");
+            this.size = (previous == null) ? 1 : previous.size + 1;
+        }
+
+        /**
+         * Appends the encoded path up to and including this segment.
+         */
+        private void appendPath(StringBuilder sb) {
+            Segment[] segments = new Segment[size];
+            int i = size;
+            for (Segment s = this; s != null; s = s.previous) {
+                segments[--i] = s;
+            }
+            for (; i < segments.length; i++) {
+                if (i > 0) {
+                    sb.append('/');
+                }
+                sb.append(segments[i].encoded());
+            }
+        }
+
+        private String encoded() {
+            String e = encoded;
+            if (e == null) {
+                e = PercentEncoding.encode(value,
+                        PercentEncoding.Component.PATH_SEGMENT);
+                encoded = e;
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Query parameter, linked to the parameter preceding it.
+     */
+    private static final class Param {
+
+        private final Param previous;
+        private final String key;
+        private final String value;
+        private final Charset charset;
+        private final int size;
+        private String encoded; //memoized, of this parameter only
+
+        private Param(Param previous, String key, String value,
+                Charset charset) {
+            this.previous = previous;
+            this.key = Objects.requireNonNull(key, "Parameter key must not "
+                    + "be null.");
+            this.value = Objects.requireNonNull(value, "Parameter value must "
+                    + "not be null.");
+            this.charset = charset;
+            this.size = (previous == null) ? 1 : previous.size + 1;
+        }
+
+        /**
+         * Appends the encoded query up to and including this parameter.
+         */
+        private void appendQuery(StringBuilder sb) {
+            Param[] query = new Param[size];
+            int i = size;
+            for (Param p = this; p != null; p = p.previous) {
+                query[--i] = p;
+            }
+            for (; i < query.length; i++) {
+                if (i > 0) {
+                    sb.append('&');
+                }
+                sb.append(query[i].encoded());
+            }
+        }
+
+        private String encoded() {
+            String e = encoded;
+            if (e == null) {
+                StringBuilder sb = new StringBuilder(
+                        key.length() + value.length() + 16);
+                PercentEncoding.appendForm(sb, key, charset);
+                sb.append('=');
+                PercentEncoding.appendForm(sb, value, charset);
+                e = sb.toString();
+                encoded = e;
+            }
+            return e;
+        }
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * URL template compiled once and expanded many times, for URLs which differ
+ * only by a few path segments or query values.
+ * <p>
+ * Templates are a subset of RFC 6570: expressions of one or more
+ * comma-separated variables with the simple <code>{var}</code>, reserved
+ * <code>{+var}</code>, fragment <code>{#var}</code>, path segment
+ * <code>{/var}</code>, query <code>{?var}</code> and query continuation
+ * <code>{&amp;var}</code> operators.  Variable values are expanded as strings
+ * (see {@link String#valueOf(Object)}), null values are undefined; the
+ * prefix and explode modifiers are not supported.
+ * <p>
+ * The literal parts of the template are percent-encoded when compiled, so
+ * expanding a template only encodes the variable values and concatenates.
+ * A template may be {@link #bind(URLProtocolRegistry) bound} to a registry so
+ * the URLs it creates open their connections through it.
+ * <p>
+ * This class is immutable and thread safe.
+ */
+public final class URLTemplate {
+
+    private static final String OPERATORS = "+#/?&";
+    private static final String UNSUPPORTED_OPERATORS = ".;=,!@|";
+
+    private final String pattern;
+    private final Part[] parts;
+    private final List<String> variables;
+    private final int literalLength;
+    private final String scheme; //null if not a literal
+    private final String host; //null if the authority is not a literal
+    private final int port;
+    private final int fileOffset; //file start in the first literal
+    private final URLProtocolRegistry registry; //null if not bound
+    private final URLStreamHandler handler; //handler of literal scheme
+
+    private URLTemplate(String pattern, Part[] parts, List<String> variables,
+            URLProtocolRegistry registry) {
+        this.pattern = pattern;
+        this.parts = parts;
+        this.variables = variables;
+        int length = 0;
+        for (Part p : parts) {
+            if (p instanceof Literal) {
+                length += ((Literal) p).encoded.length();
+            }
+        }
+        this.literalLength = length;
+        this.scheme = scheme(parts);
+        String authority = authority(parts, scheme);
+        if (authority == null) {
+            this.host = null;
+            this.port = -1;
+            this.fileOffset = 0;
+        } else {
+            int portSeparator = authority.lastIndexOf(':');
+            if (portSeparator < authority.lastIndexOf(']')) {
+                portSeparator = -1; //IPv6 literal without port
+            }
+            this.host = (portSeparator == -1) ? authority
+                    : authority.substring(0, portSeparator);
+            this.port = (portSeparator == -1) ? -1
+                    : Integer.parseInt(authority.substring(portSeparator + 1));
+            this.fileOffset = scheme.length() + 3 + authority.length();
+        }
+        this.registry = registry;
+        this.handler = (registry == null || scheme == null) ? null
+                : registry.createURLStreamHandler(scheme);
+    }
+
+    /**
+     * Compiles the template.
+     *
+     * @param pattern URL template
+     * @return compiled template
+     * @throws IllegalArgumentException if the template is malformed or uses
+     * an unsupported expression
+     */
+    public static URLTemplate compile(String pattern) {
+        List<Part> parts = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            int open = pattern.indexOf('{', i);
+            int literalEnd = (open == -1) ? pattern.length() : open;
+            if (literalEnd > i) {
+                String literal = pattern.substring(i, literalEnd);
+                if (literal.indexOf('}') != -1) {
+                    throw new IllegalArgumentException(String.format(
+                            "Unmatched '}' in URL template '%s'.", pattern));
+                }
+                parts.add(new Literal(literal));
+            }
+            if (open == -1) {
+                break;
+            }
+            int close = pattern.indexOf('}', open);
+            if (close == -1) {
+                throw new IllegalArgumentException(String.format(
+                        "Unterminated expression in URL template '%s'.",
+                        pattern));
+            }
+            parts.add(expression(pattern, pattern.substring(open + 1, close),
+                    variables));
+            i = close + 1;
+        }
+        return new URLTemplate(pattern, parts.toArray(new Part[parts.size()]),
+                Collections.unmodifiableList(variables), null);
+    }
+
+    /**
+     * Compiles the template appended to the URL of the builder.
+     * <p>
+     * The template continues the last component of the URL, for example a
+     * builder with query parameters is continued with a
+     * <code>{&amp;var}</code> expression.
+     *
+     * @param base URL the template is appended to
+     * @param pattern URL template
+     * @return compiled template
+     * @throws IllegalArgumentException if the template is malformed or uses
+     * an unsupported expression
+     */
+    public static URLTemplate compile(URLBuilder base, String pattern) {
+        //the serialized builder is encoded and has no braces
+        return compile(base.asString() + pattern);
+    }
+
+    /**
+     * Returns a template which creates URLs with the stream handler of the
+     * registry for their protocol, so their connections are initialized by
+     * the registry.
+     * <p>
+     * If the protocol is a literal of the template, its handler is resolved
+     * once, when bound.
+     *
+     * @param registry registry
+     * @return bound template
+     */
+    public URLTemplate bind(URLProtocolRegistry registry) {
+        return new URLTemplate(pattern, parts, variables, registry);
+    }
+
+    /**
+     * Returns the template variables, in the order of their first
+     * occurrence, which is the order of positional values.
+     *
+     * @return variable names
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Expands the template.
+     *
+     * @param values value of each variable, in the order of
+     * {@link #getVariables()}
+     * @return URL
+     * @throws IllegalArgumentException if the number of values does not
+     * match the number of variables
+     */
+    public String expand(Object... values) {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException(String.format("URL template "
+                    + "'%s' requires %d values, %d provided.", pattern,
+                    variables.size(), values.length));
+        }
+        return expand(values, 0);
+    }
+
+    /**
+     * Expands the template.
+     *
+     * @param values variable values by name; missing variables are undefined
+     * @return URL
+     */
+    public String expand(Map<String, ?> values) {
+        return expand(positional(values));
+    }
+
+    /**
+     * Expands the template as a URL.
+     *
+     * @param values value of each variable, in the order of
+     * {@link #getVariables()}
+     * @return URL
+     * @throws MalformedURLException if the expanded template is not a URL
+     */
+    public URL toURL(Object... values) throws MalformedURLException {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException(String.format("URL template "
+                    + "'%s' requires %d values, %d provided.", pattern,
+                    variables.size(), values.length));
+        }
+        if (host == null) {
+            return toURL(expand(values, 0));
+        }
+        //the literal protocol and authority needn't be parsed
+        return new URL(scheme, host, port, expand(values, fileOffset),
+                handler);
+    }
+
+    /**
+     * Expands the template as a URL.
+     *
+     * @param values variable values by name; missing variables are undefined
+     * @return URL
+     * @throws MalformedURLException if the expanded template is not a URL
+     */
+    public URL toURL(Map<String, ?> values) throws MalformedURLException {
+        return toURL(positional(values));
+    }
+
+    private URL toURL(String spec) throws MalformedURLException {
+        if (registry == null) {
+            return new URL(spec);
+        }
+        URLStreamHandler h = handler;
+        if (h == null && scheme == null) {
+            int colon = spec.indexOf(':');
+            if (colon > 0) {
+                h = registry.createURLStreamHandler(spec.substring(0, colon));
+            }
+        }
+        return new URL(null, spec, h);
+    }
+
+    /**
+     * Expands the template from the offset in its first part, in the buffer
+     * of the thread.
+     */
+    private String expand(Object[] values, int offset) {
+        //converted before taking the buffer, which a toString() serializing
+        //a URL would reset
+        values = strings(values);
+        StringBuilder sb = URLBuilder.buffer();
+        sb.ensureCapacity(literalLength - offset + 16 * values.length);
+        int first = 0;
+        if (offset > 0) {
+            sb.append(((Literal) parts[0]).encoded, offset,
+                    ((Literal) parts[0]).encoded.length());
+            first = 1;
+        }
+        for (int i = first; i < parts.length; i++) {
+            parts[i].expand(sb, values);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the values as strings, or the values if they already are.
+     */
+    private static Object[] strings(Object[] values) {
+        Object[] strings = values;
+        for (int i = 0; i < values.length; i++) {
+            Object v = values[i];
+            if (v != null && !(v instanceof String)) {
+                if (strings == values) {
+                    strings = values.clone();
+                }
+                strings[i] = String.valueOf(v);
+            }
+        }
+        return strings;
+    }
+
+    private Object[] positional(Map<String, ?> values) {
+        Object[] positional = new Object[variables.size()];
+        for (int i = 0; i < positional.length; i++) {
+            positional[i] = values.get(variables.get(i));
+        }
+        return positional;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private static Expression expression(String pattern, String expression,
+            List<String> variables) {
+        char operator = expression.isEmpty() ? 0 : expression.charAt(0);
+        if (UNSUPPORTED_OPERATORS.indexOf(operator) != -1) {
+            throw new IllegalArgumentException(String.format("Unsupported "
+                    + "operator '%s' in URL template '%s'.", operator,
+                    pattern));
+        }
+        if (OPERATORS.indexOf(operator) == -1) {
+            operator = 0;
+        }
+        String[] names = expression.substring((operator == 0) ? 0 : 1)
+                .split(",", -1);
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (!isVariableName(names[i])) {
+                throw new IllegalArgumentException(String.format("Invalid or "
+                        + "unsupported variable '%s' in URL template '%s'.",
+                        names[i], pattern));
+            }
+            int index = variables.indexOf(names[i]);
+            if (index == -1) {
+                index = variables.size();
+                variables.add(names[i]);
+            }
+            indexes[i] = index;
+        }
+        return new Expression(operator, names, indexes);
+    }
+
+    private static boolean isVariableName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '.'
+                    && c != '%') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the scheme if it is a literal of the template.
+     */
+    private static String scheme(Part[] parts) {
+        if (parts.length == 0 || !(parts[0] instanceof Literal)) {
+            return null;
+        }
+        String literal = ((Literal) parts[0]).encoded;
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == ':') {
+                return (i > 0) ? literal.substring(0, i) : null;
+            }
+            if (c == '/' || c == '?' || c == '#') {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the authority if the scheme and the whole authority are
+     * literals of the template, and the authority has no user info.
+     */
+    private static String authority(Part[] parts, String scheme) {
+        if (scheme == null) {
+            return null;
+        }
+        String literal = ((Literal) parts[0]).encoded;
+        int start = scheme.length() + 1;
+        if (!literal.startsWith("//", start)) {
+            return null;
+        }
+        start += 2;
+        for (int i = start; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                String authority = literal.substring(start, i);
+                return (authority.isEmpty() || !isHostPort(authority))
+                        ? null : authority;
+            }
+            if (c == '@' || c == '%') {
+                return null;
+            }
+        }
+        return null; //authority may continue in an expression
+    }
+
+    private static boolean isHostPort(String authority) {
+        int portSeparator = authority.lastIndexOf(':');
+        if (portSeparator == -1 || portSeparator < authority.lastIndexOf(']')) {
+            return true;
+        }
+        if (portSeparator == authority.length() - 1
+                || authority.length() - portSeparator > 6) {
+            return false;
+        }
+        for (int i = portSeparator + 1; i < authority.length(); i++) {
+            if (!Character.isDigit(authority.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static abstract class Part {
+
+        abstract void expand(StringBuilder sb, Object[] values);
+    }
+
+    private static final class Literal extends Part {
+
+        private final String encoded;
+
+        private Literal(String literal) {
+            StringBuilder sb = new StringBuilder(literal.length());
+            PercentEncoding.append(sb, literal,
+                    PercentEncoding.Component.RESERVED);
+            this.encoded = sb.toString();
+        }
+
+        @Override
+        void expand(StringBuilder sb, Object[] values) {
+            sb.append(encoded);
+        }
+    }
+
+    private static final class Expression extends Part {
+
+        private final String first;
+        private final char separator;
+        private final boolean reserved;
+        private final String[] names; //null if not named
+        private final int[] indexes;
+
+        private Expression(char operator, String[] names, int[] indexes) {
+            this.indexes = indexes;
+            switch (operator) {
+                case '+':
+                    first = "";
+                    separator = ',';
+                    reserved = true;
+                    break;
+                case '#':
+                    first = "#";
+                    separator = ',';
+                    reserved = true;
+                    break;
+                case '/':
+                    first = "/";
+                    separator = '/';
+                    reserved = false;
+                    break;
+                case '?':
+                    first = "?";
+                    separator = '&';
+                    reserved = false;
+                    break;
+                case '&':
+                    first = "&";
+                    separator = '&';
+                    reserved = false;
+                    break;
+                default:
+                    first = "";
+                    separator = ',';
+                    reserved = false;
+            }
+            this.names = (operator == '?' || operator == '&') ? names : null;
+        }
+
+        @Override
+        void expand(StringBuilder sb, Object[] values) {
+            boolean defined = false;
+            for (int i = 0; i < indexes.length; i++) {
+                Object value = values[indexes[i]];
+                if (value == null) {
+                    continue;
+                }
+                if (defined) {
+                    sb.append(separator);
+                } else {
+                    sb.append(first);
+                    defined = true;
+                }
+                if (names != null) {
+                    sb.append(names[i]).append('=');
+                }
+                if (reserved) {
+                    PercentEncoding.append(sb, String.valueOf(value),
+                            PercentEncoding.Component.RESERVED, true);
+                } else {
+                    PercentEncoding.append(sb, String.valueOf(value),
+                            PercentEncoding.Component.UNRESERVED, false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * HostnameVerifier matching the host against the identities of the server
+ * certificate as described by
+ * <a href="http://tools.ietf.org/html/rfc6125">RFC 6125</a>.
+ * <p>
+ * The DNS and IP address subject alternative names of each certificate are
+ * read once and compiled into matchers, and the result for each host checked
+ * against the certificate is cached, so verifying a host against a
+ * certificate seen before does not allocate.  The cache is bounded by the
+ * number of certificates.
+ * <p>
+ * Matching rules:
+ * <ul>
+ * <li>DNS names are compared case-insensitively, ignoring a trailing dot on
+ * the host.</li>
+ * <li>A wildcard is only accepted as the complete left-most label of a name
+ * with at least two further labels ({@code *.example.com}), and matches
+ * exactly one label.</li>
+ * <li>IP address hosts only match IP address subject alternative names.</li>
+ * <li>The most specific subject common name is only used if the certificate
+ * has no DNS subject alternative names.</li>
+ * </ul>
+ *
+ * @see SSLContextBuilder#verifyHostnames(CachingHostnameVerifier)
+ */
+public class CachingHostnameVerifier implements HostnameVerifier {
+
+    private static final int DEFAULT_MAX_CERTIFICATES = 1024;
+    private static final int MAX_HOSTS_PER_CERTIFICATE = 64;
+    private static final int SAN_DNS = 2;
+    private static final int SAN_IP = 7;
+
+    private final int maxCertificates;
+    private final ConcurrentMap<X509Certificate, Identities> certificates
+            = new ConcurrentHashMap<>();
+
+    public CachingHostnameVerifier() {
+        this(DEFAULT_MAX_CERTIFICATES);
+    }
+
+    /**
+     * @param maxCertificates maximum number of certificates whose compiled
+     * identities are cached
+     */
+    public CachingHostnameVerifier(int maxCertificates) {
+        this.maxCertificates = maxCertificates;
+    }
+
+    @Override
+    public boolean verify(String host, SSLSession session) {
+        try {
+            Certificate[] peer = session.getPeerCertificates();
+            return peer.length > 0 && peer[0] instanceof X509Certificate
+                    && verify(host, (X509Certificate) peer[0]);
+        } catch (SSLPeerUnverifiedException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Verifies the host against the identities of the certificate.
+     *
+     * @param host host name or IP address
+     * @param certificate server certificate
+     * @return true if the certificate identifies the host
+     */
+    public boolean verify(String host, X509Certificate certificate) {
+        if (host == null) {
+            return false;
+        }
+        //certificates compare by encoding, the JRE caches their hash code
+        Identities identities = certificates.get(certificate);
+        if (identities == null) {
+            identities = new Identities(certificate);
+            Identities existing
+                    = certificates.putIfAbsent(certificate, identities);
+            if (existing != null) {
+                identities = existing;
+            } else {
+                evict(certificate);
+            }
+        }
+        return identities.matches(host);
+    }
+
+    /**
+     * Number of certificates with cached identities.
+     *
+     * @return cache size
+     */
+    public int size() {
+        return certificates.size();
+    }
+
+    /**
+     * Removes all cached identities and results.
+     */
+    public void clear() {
+        certificates.clear();
+    }
+
+    private void evict(X509Certificate added) {
+        Iterator<X509Certificate> i = certificates.keySet().iterator();
+        while (certificates.size() > maxCertificates && i.hasNext()) {
+            if (i.next() != added) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Compiled identities of a certificate and the results of the hosts
+     * checked against it.
+     */
+    private static final class Identities {
+
+        private final String[] names;
+        //wildcard names without the leading '*', ie ".example.com"
+        private final String[] wildcardSuffixes;
+        private final byte[][] addresses;
+        private final ConcurrentMap<String, Boolean> results
+                = new ConcurrentHashMap<>();
+
+        private Identities(X509Certificate cert) {
+            List<String> dns = new ArrayList<>();
+            List<byte[]> ips = new ArrayList<>();
+            readSubjectAltNames(cert, dns, ips);
+            if (dns.isEmpty()) {
+                String cn = mostSpecificCommonName(cert);
+                if (cn != null) {
+                    dns.add(cn);
+                }
+            }
+
+            List<String> exact = new ArrayList<>();
+            List<String> wildcards = new ArrayList<>();
+            for (String name : dns) {
+                name = stripTrailingDot(name).toLowerCase(Locale.ROOT);
+                if (name.startsWith("*.")) {
+                    //at least two labels must follow the wildcard
+                    if (name.indexOf('.', 2) > 2) {
+                        wildcards.add(name.substring(1));
+                    }
+                } else if (name.indexOf('*') < 0) {
+                    exact.add(name);
+                }
+            }
+            this.names = exact.toArray(new String[exact.size()]);
+            this.wildcardSuffixes
+                    = wildcards.toArray(new String[wildcards.size()]);
+            this.addresses = ips.toArray(new byte[ips.size()][]);
+        }
+
+        private boolean matches(String host) {
+            Boolean result = results.get(host);
+            if (result == null) {
+                result = isIpAddress(host)
+                        ? matchesAddress(host)
+                        : matchesName(stripTrailingDot(host));
+                if (results.size() >= MAX_HOSTS_PER_CERTIFICATE) {
+                    results.clear();
+                }
+                results.put(host, result);
+            }
+            return result;
+        }
+
+        private boolean matchesName(String host) {
+            final int length = host.length();
+            for (String name : names) {
+                if (name.length() == length
+                        && host.regionMatches(true, 0, name, 0, length)) {
+                    return true;
+                }
+            }
+            //a wildcard matches exactly one, non-empty, left-most label
+            final int dot = host.indexOf('.');
+            if (dot <= 0) {
+                return false;
+            }
+            for (String suffix : wildcardSuffixes) {
+                if (suffix.length() == length - dot
+                        && host.regionMatches(true, dot, suffix, 0,
+                                suffix.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesAddress(String host) {
+            byte[] address = toAddress(host);
+            if (address == null) {
+                return false;
+            }
+            for (byte[] a : addresses) {
+                if (Arrays.equals(a, address)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static void readSubjectAltNames(X509Certificate cert,
+            List<String> dns, List<byte[]> ips) {
+        Collection<List<?>> sans;
+        try {
+            sans = cert.getSubjectAlternativeNames();
+        } catch (CertificateParsingException ex) {
+            return;
+        }
+        if (sans == null) {
+            return;
+        }
+        for (List<?> san : sans) {
+            int type = (Integer) san.get(0);
+            if (type == SAN_DNS) {
+                dns.add((String) san.get(1));
+            } else if (type == SAN_IP) {
+                byte[] address = toAddress((String) san.get(1));
+                if (address != null) {
+                    ips.add(address);
+                }
+            }
+        }
+    }
+
+    /**
+     * The last (most specific) common name of the subject, or null.
+     */
+    private static String mostSpecificCommonName(X509Certificate cert) {
+        try {
+            LdapName subject = new LdapName(
+                    cert.getSubjectX500Principal().getName());
+            //LdapName lists the RDNs from least to most specific
+            String cn = null;
+            for (Rdn rdn : subject.getRdns()) {
+                if ("CN".equalsIgnoreCase(rdn.getType())) {
+                    cn = rdn.getValue().toString();
+                }
+            }
+            return cn;
+        } catch (InvalidNameException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isIpAddress(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !host.isEmpty();
+    }
+
+    /**
+     * Address bytes of an IP address literal, or null if it is not one.
+     */
+    private static byte[] toAddress(String literal) {
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
+        }
+        if (!isIpAddress(literal)) {
+            return null;
+        }
+        try {
+            //literals are parsed, not resolved
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException ex) {
+            return null;
+        }
+    }
+
+    private static String stripTrailingDot(String name) {
+        return name.endsWith(".")
+                ? name.substring(0, name.length() - 1)
+                : name;
+    }
+}
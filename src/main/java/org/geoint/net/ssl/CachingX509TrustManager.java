@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Decorates an X509TrustManager, skipping PKIX path building and signature
+ * verification for certificate chains which the delegate has recently
+ * validated.
+ * <p>
+ * The delegate is part of the cache key, so a cache shared with other trust
+ * managers only answers for chains this delegate validated.  When the
+ * connection uses endpoint identification, the peer host is also part of the
+ * cache key, so a chain validated for one host is not accepted for another
+ * without being checked by the delegate.
+ *
+ * @see TrustValidationCache
+ */
+public class CachingX509TrustManager extends X509ExtendedTrustManager {
+
+    private static final char HOST_SEPARATOR = '@';
+
+    private final TrustValidationCache cache;
+    private final X509TrustManager delegate;
+
+    public CachingX509TrustManager(TrustValidationCache cache,
+            X509TrustManager delegate) {
+        this.cache = cache;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the validation cache.
+     *
+     * @return validation cache
+     */
+    public TrustValidationCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        TrustValidationCache.Key key = cache.key(delegate, chain,
+                authType, false, null);
+        if (!cache.isValidated(key)) {
+            delegate.checkClientTrusted(chain, authType);
+            cache.validated(key, chain);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        TrustValidationCache.Key key = cache.key(delegate, chain,
+                authType, false, identifiedHost(socket));
+        if (!cache.isValidated(key)) {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate)
+                        .checkClientTrusted(chain, authType, socket);
+            } else {
+                delegate.checkClientTrusted(chain, authType);
+            }
+            cache.validated(key, chain);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        TrustValidationCache.Key key = cache.key(delegate, chain,
+                authType, false, identifiedHost(engine));
+        if (!cache.isValidated(key)) {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate)
+                        .checkClientTrusted(chain, authType, engine);
+            } else {
+                delegate.checkClientTrusted(chain, authType);
+            }
+            cache.validated(key, chain);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        TrustValidationCache.Key key = cache.key(delegate, chain,
+                authType, true, null);
+        if (!cache.isValidated(key)) {
+            delegate.checkServerTrusted(chain, authType);
+            cache.validated(key, chain);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        TrustValidationCache.Key key = cache.key(delegate, chain,
+                authType, true, identifiedHost(socket));
+        if (!cache.isValidated(key)) {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate)
+                        .checkServerTrusted(chain, authType, socket);
+            } else {
+                delegate.checkServerTrusted(chain, authType);
+            }
+            cache.validated(key, chain);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        TrustValidationCache.Key key = cache.key(delegate, chain,
+                authType, true, identifiedHost(engine));
+        if (!cache.isValidated(key)) {
+            if (delegate instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) delegate)
+                        .checkServerTrusted(chain, authType, engine);
+            } else {
+                delegate.checkServerTrusted(chain, authType);
+            }
+            cache.validated(key, chain);
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    /**
+     * Endpoint identification algorithm and peer host if the socket performs
+     * endpoint identification, otherwise null.
+     */
+    private static String identifiedHost(Socket socket) {
+        if (!(socket instanceof SSLSocket)) {
+            return null;
+        }
+        SSLSocket ssl = (SSLSocket) socket;
+        String algorithm = ssl.getSSLParameters()
+                .getEndpointIdentificationAlgorithm();
+        if (algorithm == null) {
+            return null;
+        }
+        SSLSession session = ssl.getHandshakeSession();
+        return algorithm + HOST_SEPARATOR
+                + ((session == null) ? null : session.getPeerHost());
+    }
+
+    private static String identifiedHost(SSLEngine engine) {
+        if (engine == null) {
+            return null;
+        }
+        String algorithm = engine.getSSLParameters()
+                .getEndpointIdentificationAlgorithm();
+        return (algorithm == null)
+                ? null
+                : algorithm + HOST_SEPARATOR + engine.getPeerHost();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
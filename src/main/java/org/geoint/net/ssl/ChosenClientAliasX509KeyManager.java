@@ -19,15 +19,21 @@ import java.net.Socket;
 import java.security.Principal;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509KeyManager;
 
 /**
  * Decorates an X509KeyManager, delegating all methods except those
  * chooseClientAlias, which will always return a specific alias.
+ * <p>
+ * Extends X509ExtendedKeyManager so the alias is also chosen for SSLEngine
+ * connections; the JRE does not choose any alias for engines with a plain
+ * X509KeyManager.
  *
  * @author steve_siebert
  */
-public class ChosenClientAliasX509KeyManager implements X509KeyManager {
+public class ChosenClientAliasX509KeyManager extends X509ExtendedKeyManager {
 
     private final String clientAlias;
     private final X509KeyManager delegate;
@@ -43,6 +49,12 @@ public class ChosenClientAliasX509KeyManager implements X509KeyManager {
         return clientAlias;
     }
 
+    @Override
+    public String chooseEngineClientAlias(String[] strings,
+            Principal[] prncpls, SSLEngine engine) {
+        return clientAlias;
+    }
+
     @Override
     public String[] getClientAliases(String string, Principal[] prncpls) {
         return delegate.getClientAliases(string, prncpls);
@@ -59,6 +71,16 @@ public class ChosenClientAliasX509KeyManager implements X509KeyManager {
         return delegate.chooseServerAlias(string, prncpls, socket);
     }
 
+    @Override
+    public String chooseEngineServerAlias(String string, Principal[] prncpls,
+            SSLEngine engine) {
+        X509KeyManager km = delegate;
+        return (km instanceof X509ExtendedKeyManager)
+                ? ((X509ExtendedKeyManager) km)
+                        .chooseEngineServerAlias(string, prncpls, engine)
+                : km.chooseServerAlias(string, prncpls, null);
+    }
+
     @Override
     public X509Certificate[] getCertificateChain(String string) {
         return delegate.getCertificateChain(string);
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import org.geoint.net.HappyEyeballsConnector;
+
+/**
+ * SSLContext produced by {@link SSLContextBuilder}, wrapping an initialized
+ * context.
+ * <p>
+ * Unlike the JRE implementation, which returns a new factory instance on
+ * each call, this context always returns the same SSLSocketFactory and
+ * SSLServerSocketFactory.  HttpsURLConnection keys its keep-alive cache on
+ * the socket factory instance, so sharing one context across several
+ * initializers also shares their pooled connections and TLS session cache.
+ * <p>
+ * If the context has a {@link TlsProfile}, the profile protocols, cipher
+ * suites and groups are applied to every socket, server socket and engine it
+ * creates.
+ * <p>
+ * If the context has a {@link HappyEyeballsConnector}, client sockets for
+ * host names race the addresses of the host.
+ */
+class CustomizedSSLContext extends SSLContext {
+
+    /**
+     * @param delegate initialized context
+     * @param socketCustomizers customizers applied to client sockets
+     * @param profile parameters selected from the TLS profile, or null
+     * @param connector connector racing host addresses, or null
+     */
+    CustomizedSSLContext(SSLContext delegate,
+            List<? extends SSLSocketCustomizer> socketCustomizers,
+            SSLParameters profile, HappyEyeballsConnector connector) {
+        super(new CustomizedSSLContextSpi(delegate, socketCustomizers,
+                profile, connector), delegate.getProvider(),
+                delegate.getProtocol());
+    }
+
+    private static class CustomizedSSLContextSpi extends SSLContextSpi {
+
+        private final SSLContext delegate;
+        private final SSLParameters profile;
+        private final SSLSocketFactory socketFactory;
+        private final SSLServerSocketFactory serverSocketFactory;
+
+        private CustomizedSSLContextSpi(SSLContext delegate,
+                List<? extends SSLSocketCustomizer> socketCustomizers,
+                SSLParameters profile, HappyEyeballsConnector connector) {
+            this.delegate = delegate;
+            this.profile = profile;
+
+            List<SSLSocketCustomizer> customizers = new ArrayList<>();
+            if (profile != null) {
+                //applied first, so other customizers may override it
+                customizers.add((s) -> s.setSSLParameters(
+                        TlsProfile.apply(profile, s.getSSLParameters())));
+            }
+            customizers.addAll(socketCustomizers);
+            SSLSocketFactory factory = (connector == null)
+                    ? delegate.getSocketFactory()
+                    : new HappyEyeballsSSLSocketFactory(
+                            delegate.getSocketFactory(), connector);
+            this.socketFactory = (customizers.isEmpty())
+                    ? factory
+                    : new CustomizedSSLSocketFactory(factory, customizers);
+            this.serverSocketFactory = (profile == null)
+                    ? delegate.getServerSocketFactory()
+                    : new ProfiledSSLServerSocketFactory(
+                            delegate.getServerSocketFactory(), profile);
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm,
+                SecureRandom sr) throws KeyManagementException {
+            throw new KeyManagementException("SSLContext was already "
+                    + "initialized by SSLContextBuilder.");
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return socketFactory;
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return serverSocketFactory;
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return configure(delegate.createSSLEngine());
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            return configure(delegate.createSSLEngine(host, port));
+        }
+
+        private SSLEngine configure(SSLEngine engine) {
+            if (profile != null) {
+                engine.setSSLParameters(
+                        TlsProfile.apply(profile, engine.getSSLParameters()));
+            }
+            return engine;
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            SSLParameters params = delegate.getDefaultSSLParameters();
+            return (profile == null)
+                    ? params
+                    : TlsProfile.apply(profile, params);
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Decorates an SSLSocketFactory, delegating socket creation and passing each
+ * created SSLSocket through the configured customizers, in order.
+ *
+ * @see SSLSocketCustomizer
+ */
+public class CustomizedSSLSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory delegate;
+    private final SSLSocketCustomizer[] customizers;
+
+    public CustomizedSSLSocketFactory(SSLSocketFactory delegate,
+            SSLSocketCustomizer... customizers) {
+        this.delegate = delegate;
+        this.customizers = Arrays.copyOf(customizers, customizers.length);
+    }
+
+    public CustomizedSSLSocketFactory(SSLSocketFactory delegate,
+            List<? extends SSLSocketCustomizer> customizers) {
+        this(delegate, customizers.toArray(new SSLSocketCustomizer[0]));
+    }
+
+    /**
+     * Returns the decorated factory.
+     *
+     * @return delegate factory
+     */
+    public SSLSocketFactory getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return customize(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port,
+            boolean autoClose) throws IOException {
+        return customize(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, InputStream consumed,
+            boolean autoClose) throws IOException {
+        return customize(delegate.createSocket(socket, consumed, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return customize(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost,
+            int localPort) throws IOException {
+        return customize(delegate.createSocket(host, port, localHost,
+                localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return customize(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port,
+            InetAddress localAddress, int localPort) throws IOException {
+        return customize(delegate.createSocket(address, port, localAddress,
+                localPort));
+    }
+
+    private Socket customize(Socket socket) throws IOException {
+        if (socket instanceof SSLSocket) {
+            try {
+                for (SSLSocketCustomizer c : customizers) {
+                    c.customize((SSLSocket) socket);
+                }
+            } catch (IOException | RuntimeException ex) {
+                socket.close();
+                throw ex;
+            }
+        }
+        return socket;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
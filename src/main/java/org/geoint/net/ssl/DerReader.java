@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+/**
+ * Minimal reader of definite-length DER encoded values, used to read the few
+ * certificate extensions and protocol structures the JRE provides no public
+ * API for.
+ */
+final class DerReader {
+
+    static final int INTEGER = 0x02;
+    static final int OCTET_STRING = 0x04;
+    static final int OID = 0x06;
+    static final int ENUMERATED = 0x0a;
+    static final int GENERALIZED_TIME = 0x18;
+    static final int SEQUENCE = 0x30;
+    static final int CONTEXT_0 = 0x80;
+    static final int CONTEXT_CONSTRUCTED_0 = 0xa0;
+
+    private final byte[] der;
+    private final int end;
+    private int pos;
+    int tag;
+    private int valueOffset;
+    private int valueLength;
+
+    DerReader(byte[] der) {
+        this(der, 0, der.length);
+    }
+
+    private DerReader(byte[] der, int offset, int end) {
+        this.der = der;
+        this.pos = offset;
+        this.end = end;
+    }
+
+    /**
+     * Reads the next value header, returning false if there is no further
+     * (well formed) value.
+     */
+    boolean next() {
+        if (pos + 2 > end) {
+            return false;
+        }
+        tag = der[pos++] & 0xff;
+        int len = der[pos++] & 0xff;
+        if (len > 0x7f) {
+            int octets = len & 0x7f;
+            if (octets > 3 || pos + octets > end) {
+                return false;
+            }
+            len = 0;
+            for (int i = 0; i < octets; i++) {
+                len = (len << 8) | (der[pos++] & 0xff);
+            }
+        }
+        if (pos + len > end) {
+            return false;
+        }
+        valueOffset = pos;
+        valueLength = len;
+        pos += len;
+        return true;
+    }
+
+    /**
+     * Advances to the next value with the tag, skipping any others.
+     */
+    boolean next(int expectedTag) {
+        while (next()) {
+            if (tag == expectedTag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    byte[] value() {
+        byte[] v = new byte[valueLength];
+        System.arraycopy(der, valueOffset, v, 0, valueLength);
+        return v;
+    }
+
+    /**
+     * Returns true if the current value is equal to the provided content.
+     */
+    boolean valueEquals(byte[] expected) {
+        if (expected.length != valueLength) {
+            return false;
+        }
+        for (int i = 0; i < valueLength; i++) {
+            if (der[valueOffset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    DerReader contents() {
+        return new DerReader(der, valueOffset, valueOffset + valueLength);
+    }
+}
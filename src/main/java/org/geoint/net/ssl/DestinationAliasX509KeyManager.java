@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509KeyManager;
+
+/**
+ * Decorates an X509KeyManager, choosing the client alias from the destination
+ * (peer host and port) of the connection, allowing a single SSLContext to
+ * present a different client certificate to each destination.
+ * <p>
+ * Destinations are expressed as {@code host}, {@code host:port},
+ * {@code *.domain} or {@code *.domain:port}.  A wildcard destination matches
+ * any host ending with the domain.  The most specific destination wins: an
+ * exact host is preferred to a wildcard, a longer wildcard domain to a
+ * shorter one, and a destination with a port to one without.  If no
+ * destination matches, the default alias (if any) is returned, otherwise the
+ * choice is delegated.
+ * <p>
+ * Certificate chains and private keys are cached per alias after the first
+ * lookup, rather than resolved by the delegate on each handshake.
+ */
+public class DestinationAliasX509KeyManager extends X509ExtendedKeyManager {
+
+    private static final String WILDCARD = "*.";
+    private static final char PORT_SEPARATOR = ':';
+
+    private final Map<String, String> exact;   //key=host or host:port
+    private final Map<String, String> wildcard; //key=.domain or .domain:port
+    private final String defaultAlias;
+    private final X509KeyManager delegate;
+    private final ConcurrentMap<String, X509Certificate[]> chains
+            = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PrivateKey> keys
+            = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param destinationAliases client alias by destination
+     * @param defaultAlias alias returned when no destination matches, may be
+     * null to delegate the choice
+     * @param delegate key manager
+     */
+    public DestinationAliasX509KeyManager(Map<String, String> destinationAliases,
+            String defaultAlias, X509KeyManager delegate) {
+        this.exact = new HashMap<>();
+        this.wildcard = new HashMap<>();
+        destinationAliases.forEach((d, a) -> {
+            String dest = d.toLowerCase(Locale.ROOT);
+            if (dest.startsWith(WILDCARD)) {
+                wildcard.put(dest.substring(1), a);
+            } else {
+                exact.put(dest, a);
+            }
+        });
+        this.defaultAlias = defaultAlias;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the alias for the destination, or null if no destination
+     * matches.
+     *
+     * @param host peer host
+     * @param port peer port, or -1 if unknown
+     * @return alias or null
+     */
+    public String aliasFor(String host, int port) {
+        if (host == null) {
+            return null;
+        }
+        String h = host.toLowerCase(Locale.ROOT);
+        String alias;
+        if (port > 0 && (alias = exact.get(h + PORT_SEPARATOR + port)) != null) {
+            return alias;
+        }
+        if ((alias = exact.get(h)) != null) {
+            return alias;
+        }
+        if (wildcard.isEmpty()) {
+            return null;
+        }
+        //walk from the longest domain suffix to the shortest
+        for (int dot = h.indexOf('.'); dot >= 0; dot = h.indexOf('.', dot + 1)) {
+            String domain = h.substring(dot);
+            if (port > 0 && (alias = wildcard.get(
+                    domain + PORT_SEPARATOR + port)) != null) {
+                return alias;
+            }
+            if ((alias = wildcard.get(domain)) != null) {
+                return alias;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String chooseClientAlias(String[] strings, Principal[] prncpls,
+            Socket socket) {
+        String alias = null;
+        SSLSession session = (socket instanceof SSLSocket)
+                ? ((SSLSocket) socket).getHandshakeSession()
+                : null;
+        if (session != null && session.getPeerHost() != null) {
+            alias = aliasFor(session.getPeerHost(), session.getPeerPort());
+        } else if (socket != null && socket.getRemoteSocketAddress()
+                instanceof InetSocketAddress) {
+            InetSocketAddress peer
+                    = (InetSocketAddress) socket.getRemoteSocketAddress();
+            alias = aliasFor(peer.getHostString(), peer.getPort());
+        }
+        return chosen(alias, strings, prncpls, socket);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] strings,
+            Principal[] prncpls, SSLEngine engine) {
+        String alias = (engine == null)
+                ? null
+                : aliasFor(engine.getPeerHost(), engine.getPeerPort());
+        if (alias != null) {
+            return alias;
+        }
+        if (defaultAlias != null) {
+            return defaultAlias;
+        }
+        return (delegate instanceof X509ExtendedKeyManager)
+                ? ((X509ExtendedKeyManager) delegate)
+                        .chooseEngineClientAlias(strings, prncpls, engine)
+                : delegate.chooseClientAlias(strings, prncpls, null);
+    }
+
+    private String chosen(String alias, String[] strings, Principal[] prncpls,
+            Socket socket) {
+        if (alias != null) {
+            return alias;
+        }
+        return (defaultAlias != null)
+                ? defaultAlias
+                : delegate.chooseClientAlias(strings, prncpls, socket);
+    }
+
+    @Override
+    public String[] getClientAliases(String string, Principal[] prncpls) {
+        return delegate.getClientAliases(string, prncpls);
+    }
+
+    @Override
+    public String[] getServerAliases(String string, Principal[] prncpls) {
+        return delegate.getServerAliases(string, prncpls);
+    }
+
+    @Override
+    public String chooseServerAlias(String string, Principal[] prncpls,
+            Socket socket) {
+        return delegate.chooseServerAlias(string, prncpls, socket);
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String string, Principal[] prncpls,
+            SSLEngine engine) {
+        return (delegate instanceof X509ExtendedKeyManager)
+                ? ((X509ExtendedKeyManager) delegate)
+                        .chooseEngineServerAlias(string, prncpls, engine)
+                : delegate.chooseServerAlias(string, prncpls, null);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String string) {
+        if (string == null) {
+            return null;
+        }
+        X509Certificate[] chain = chains.computeIfAbsent(string,
+                delegate::getCertificateChain);
+        return (chain == null) ? null : chain.clone();
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String string) {
+        return (string == null)
+                ? null
+                : keys.computeIfAbsent(string, delegate::getPrivateKey);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
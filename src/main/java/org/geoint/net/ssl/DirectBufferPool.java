@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded pool of direct byte buffers, reused by {@link SSLSocketChannel}
+ * for its TLS record and application data buffers.
+ * <p>
+ * Direct buffers are costly to allocate and are only released by the garbage
+ * collector, so they are returned to the pool when a channel is closed rather
+ * than allocated per connection.  Capacities are rounded up to a multiple of
+ * 1KiB so buffers sized from different sessions can be shared; at most
+ * {@code maxPooled} buffers of each capacity are retained, the rest are left
+ * to the garbage collector.
+ */
+public final class DirectBufferPool {
+
+    private static final int GRANULARITY = 1024;
+    private static final DirectBufferPool SHARED = new DirectBufferPool(64);
+
+    private final int maxPooled;
+    private final ConcurrentMap<Integer, BlockingQueue<ByteBuffer>> free
+            = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxPooled maximum number of idle buffers retained per capacity
+     */
+    public DirectBufferPool(int maxPooled) {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("Pool must retain at least "
+                    + "one buffer.");
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Process-wide pool.
+     *
+     * @return shared pool
+     */
+    public static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cleared direct buffer with at least the requested capacity.
+     *
+     * @param minCapacity minimum capacity in bytes
+     * @return buffer
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int capacity = roundUp(minCapacity);
+        BlockingQueue<ByteBuffer> queue = free.get(capacity);
+        ByteBuffer buffer = (queue == null) ? null : queue.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer acquired from this pool.  The buffer must not be used
+     * by the caller after it is released.
+     *
+     * @param buffer buffer to release, may be null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()
+                || buffer.capacity() % GRANULARITY != 0) {
+            return;
+        }
+        free.computeIfAbsent(buffer.capacity(),
+                (c) -> new ArrayBlockingQueue<>(maxPooled))
+                .offer(buffer);
+    }
+
+    /**
+     * Number of idle buffers in the pool.
+     *
+     * @return idle buffer count
+     */
+    public int size() {
+        int size = 0;
+        for (BlockingQueue<ByteBuffer> queue : free.values()) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    private static int roundUp(int capacity) {
+        return ((capacity + GRANULARITY - 1) / GRANULARITY) * GRANULARITY;
+    }
+}
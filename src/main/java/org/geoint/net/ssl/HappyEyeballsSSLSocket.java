@@ -0,0 +1,437 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import org.geoint.net.HappyEyeballsConnector;
+import org.geoint.net.SocketOptions;
+
+/**
+ * Unconnected SSLSocket which, when connected to a host name, races the
+ * addresses of the host with a {@link HappyEyeballsConnector} and layers TLS
+ * over the winning connection.
+ * <p>
+ * Until it is connected the socket delegates to an unconnected socket from
+ * the factory, recording the socket options, handshake listeners and SSL
+ * parameters set on it; these are carried over to the layered socket, which
+ * every method delegates to once connected.  Sockets which are bound before
+ * connecting, or connected to an address without a host name, are connected
+ * directly.
+ */
+class HappyEyeballsSSLSocket extends SSLSocket {
+
+    private final SSLSocketFactory factory;
+    private final HappyEyeballsConnector connector;
+    private final List<HandshakeCompletedListener> listeners
+            = new CopyOnWriteArrayList<>();
+    private SocketOptions options = SocketOptions.defaults();
+    private Integer soTimeout;
+    private boolean bound;
+    private volatile boolean closed;
+    private volatile SSLSocket target;
+
+    HappyEyeballsSSLSocket(SSLSocketFactory factory,
+            HappyEyeballsConnector connector) throws IOException {
+        this.factory = factory;
+        this.connector = connector;
+        this.target = (SSLSocket) factory.createSocket();
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint) throws IOException {
+        connect(endpoint, 0);
+    }
+
+    @Override
+    public synchronized void connect(SocketAddress endpoint, int timeout)
+            throws IOException {
+        SSLSocket unconnected = target;
+        if (bound || !(endpoint instanceof InetSocketAddress)) {
+            unconnected.connect(endpoint, timeout);
+            return;
+        }
+        if (unconnected.isConnected()) {
+            throw new SocketException("Socket is already connected.");
+        }
+
+        InetSocketAddress remote = (InetSocketAddress) endpoint;
+        String host = remote.getHostString();
+        Socket plain = connector.connect(host, remote.getPort(), timeout,
+                options);
+        SSLSocket layered;
+        try {
+            layered = (SSLSocket) factory.createSocket(plain, host,
+                    remote.getPort(), true);
+            layered.setUseClientMode(unconnected.getUseClientMode());
+            layered.setEnableSessionCreation(
+                    unconnected.getEnableSessionCreation());
+            SSLParameters params = unconnected.getSSLParameters();
+            if (params.getServerNames() == null
+                    || params.getServerNames().isEmpty()) {
+                //keep the server name indicated for the host
+                params.setServerNames(
+                        layered.getSSLParameters().getServerNames());
+            }
+            layered.setSSLParameters(params);
+            for (HandshakeCompletedListener l : listeners) {
+                layered.addHandshakeCompletedListener(l);
+            }
+            if (soTimeout != null) {
+                layered.setSoTimeout(soTimeout);
+            }
+        } catch (IOException | RuntimeException ex) {
+            plain.close();
+            throw ex;
+        }
+        target = layered;
+        unconnected.close();
+        if (closed) {
+            //closed while connecting
+            layered.close();
+            throw new SocketException("Socket is closed.");
+        }
+    }
+
+    @Override
+    public synchronized void bind(SocketAddress bindpoint) throws IOException {
+        target.bind(bindpoint);
+        bound = true;
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return target.getSupportedCipherSuites();
+    }
+
+    @Override
+    public String[] getEnabledCipherSuites() {
+        return target.getEnabledCipherSuites();
+    }
+
+    @Override
+    public void setEnabledCipherSuites(String[] suites) {
+        target.setEnabledCipherSuites(suites);
+    }
+
+    @Override
+    public String[] getSupportedProtocols() {
+        return target.getSupportedProtocols();
+    }
+
+    @Override
+    public String[] getEnabledProtocols() {
+        return target.getEnabledProtocols();
+    }
+
+    @Override
+    public void setEnabledProtocols(String[] protocols) {
+        target.setEnabledProtocols(protocols);
+    }
+
+    @Override
+    public SSLSession getSession() {
+        return target.getSession();
+    }
+
+    @Override
+    public SSLSession getHandshakeSession() {
+        return target.getHandshakeSession();
+    }
+
+    @Override
+    public void addHandshakeCompletedListener(
+            HandshakeCompletedListener listener) {
+        listeners.add(listener);
+        target.addHandshakeCompletedListener(listener);
+    }
+
+    @Override
+    public void removeHandshakeCompletedListener(
+            HandshakeCompletedListener listener) {
+        listeners.remove(listener);
+        target.removeHandshakeCompletedListener(listener);
+    }
+
+    @Override
+    public void startHandshake() throws IOException {
+        target.startHandshake();
+    }
+
+    @Override
+    public void setUseClientMode(boolean mode) {
+        target.setUseClientMode(mode);
+    }
+
+    @Override
+    public boolean getUseClientMode() {
+        return target.getUseClientMode();
+    }
+
+    @Override
+    public void setNeedClientAuth(boolean need) {
+        target.setNeedClientAuth(need);
+    }
+
+    @Override
+    public boolean getNeedClientAuth() {
+        return target.getNeedClientAuth();
+    }
+
+    @Override
+    public void setWantClientAuth(boolean want) {
+        target.setWantClientAuth(want);
+    }
+
+    @Override
+    public boolean getWantClientAuth() {
+        return target.getWantClientAuth();
+    }
+
+    @Override
+    public void setEnableSessionCreation(boolean flag) {
+        target.setEnableSessionCreation(flag);
+    }
+
+    @Override
+    public boolean getEnableSessionCreation() {
+        return target.getEnableSessionCreation();
+    }
+
+    @Override
+    public SSLParameters getSSLParameters() {
+        return target.getSSLParameters();
+    }
+
+    @Override
+    public void setSSLParameters(SSLParameters params) {
+        target.setSSLParameters(params);
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return target.getInetAddress();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return target.getLocalAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return target.getPort();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return target.getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return target.getRemoteSocketAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return target.getLocalSocketAddress();
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+        return target.getChannel();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return target.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return target.getOutputStream();
+    }
+
+    @Override
+    public synchronized void setTcpNoDelay(boolean on) throws SocketException {
+        target.setTcpNoDelay(on);
+        options = options.withTcpNoDelay(on);
+    }
+
+    @Override
+    public boolean getTcpNoDelay() throws SocketException {
+        return target.getTcpNoDelay();
+    }
+
+    @Override
+    public void setSoLinger(boolean on, int linger) throws SocketException {
+        target.setSoLinger(on, linger);
+    }
+
+    @Override
+    public int getSoLinger() throws SocketException {
+        return target.getSoLinger();
+    }
+
+    @Override
+    public void sendUrgentData(int data) throws IOException {
+        target.sendUrgentData(data);
+    }
+
+    @Override
+    public void setOOBInline(boolean on) throws SocketException {
+        target.setOOBInline(on);
+    }
+
+    @Override
+    public boolean getOOBInline() throws SocketException {
+        return target.getOOBInline();
+    }
+
+    @Override
+    public synchronized void setSoTimeout(int timeout) throws SocketException {
+        target.setSoTimeout(timeout);
+        soTimeout = timeout;
+    }
+
+    @Override
+    public int getSoTimeout() throws SocketException {
+        return target.getSoTimeout();
+    }
+
+    @Override
+    public synchronized void setSendBufferSize(int size)
+            throws SocketException {
+        target.setSendBufferSize(size);
+        options = options.withSendBufferSize(size);
+    }
+
+    @Override
+    public int getSendBufferSize() throws SocketException {
+        return target.getSendBufferSize();
+    }
+
+    @Override
+    public synchronized void setReceiveBufferSize(int size)
+            throws SocketException {
+        target.setReceiveBufferSize(size);
+        options = options.withReceiveBufferSize(size);
+    }
+
+    @Override
+    public int getReceiveBufferSize() throws SocketException {
+        return target.getReceiveBufferSize();
+    }
+
+    @Override
+    public synchronized void setKeepAlive(boolean on) throws SocketException {
+        target.setKeepAlive(on);
+        options = options.withKeepAlive(on);
+    }
+
+    @Override
+    public boolean getKeepAlive() throws SocketException {
+        return target.getKeepAlive();
+    }
+
+    @Override
+    public synchronized void setTrafficClass(int tc) throws SocketException {
+        target.setTrafficClass(tc);
+        options = options.withTrafficClass(tc);
+    }
+
+    @Override
+    public int getTrafficClass() throws SocketException {
+        return target.getTrafficClass();
+    }
+
+    @Override
+    public void setReuseAddress(boolean on) throws SocketException {
+        target.setReuseAddress(on);
+    }
+
+    @Override
+    public boolean getReuseAddress() throws SocketException {
+        return target.getReuseAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        target.close();
+    }
+
+    @Override
+    public void shutdownInput() throws IOException {
+        target.shutdownInput();
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        target.shutdownOutput();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return target.isConnected();
+    }
+
+    @Override
+    public boolean isBound() {
+        return target.isBound();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return target.isClosed();
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return target.isInputShutdown();
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return target.isOutputShutdown();
+    }
+
+    @Override
+    public void setPerformancePreferences(int connectionTime, int latency,
+            int bandwidth) {
+        target.setPerformancePreferences(connectionTime, latency, bandwidth);
+    }
+
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.SSLSocketFactory;
+import org.geoint.net.HappyEyeballsConnector;
+
+/**
+ * Decorates an SSLSocketFactory, connecting sockets for host names with a
+ * {@link HappyEyeballsConnector}.
+ * <p>
+ * Unconnected sockets (which HttpsURLConnection creates and then connects)
+ * race the addresses of the host when they are connected.  Sockets for an
+ * address, bound to a local address, or layered over an existing socket are
+ * created by the decorated factory.
+ */
+class HappyEyeballsSSLSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory delegate;
+    private final HappyEyeballsConnector connector;
+
+    HappyEyeballsSSLSocketFactory(SSLSocketFactory delegate,
+            HappyEyeballsConnector connector) {
+        this.delegate = delegate;
+        this.connector = connector;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return new HappyEyeballsSSLSocket(delegate, connector);
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port,
+            boolean autoClose) throws IOException {
+        return delegate.createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, InputStream consumed,
+            boolean autoClose) throws IOException {
+        return delegate.createSocket(socket, consumed, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket plain = connector.connect(host, port, 0, null);
+        try {
+            return delegate.createSocket(plain, host, port, true);
+        } catch (IOException | RuntimeException ex) {
+            plain.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost,
+            int localPort) throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port,
+            InetAddress localAddress, int localPort) throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Decorates an X509TrustManager, performing endpoint identification of
+ * servers with a {@link CachingHostnameVerifier} in place of the JRE
+ * hostname check.
+ * <p>
+ * Applies to any SSLSocket or SSLEngine whose SSLParameters set an endpoint
+ * identification algorithm, including the sockets HttpsURLConnection creates
+ * when the default HostnameVerifier is used.  The chain is first validated by
+ * the delegate with the socket or engine, so an X509ExtendedTrustManager
+ * delegate applies the algorithm constraints and any checks of its own for
+ * the handshake, and the verifier then checks the peer host.  Connections
+ * without an endpoint identification algorithm are only checked by the
+ * delegate.
+ *
+ * @see SSLContextBuilder#verifyHostnames(CachingHostnameVerifier)
+ */
+public class HostnameVerifyingX509TrustManager
+        extends X509ExtendedTrustManager {
+
+    private final CachingHostnameVerifier verifier;
+    private final X509TrustManager delegate;
+
+    public HostnameVerifyingX509TrustManager(CachingHostnameVerifier verifier,
+            X509TrustManager delegate) {
+        this.verifier = verifier;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegate.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkClientTrusted(chain, authType, socket);
+        } else {
+            delegate.checkClientTrusted(chain, authType);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkClientTrusted(chain, authType, engine);
+        } else {
+            delegate.checkClientTrusted(chain, authType);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegate.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkServerTrusted(chain, authType, socket);
+        } else {
+            delegate.checkServerTrusted(chain, authType);
+        }
+        if (socket instanceof SSLSocket) {
+            SSLSocket ssl = (SSLSocket) socket;
+            if (ssl.getSSLParameters()
+                    .getEndpointIdentificationAlgorithm() != null) {
+                SSLSession session = ssl.getHandshakeSession();
+                verify(chain, (session == null) ? null : session.getPeerHost());
+            }
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkServerTrusted(chain, authType, engine);
+        } else {
+            delegate.checkServerTrusted(chain, authType);
+        }
+        if (engine != null && engine.getSSLParameters()
+                .getEndpointIdentificationAlgorithm() != null) {
+            verify(chain, engine.getPeerHost());
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    private void verify(X509Certificate[] chain, String host)
+            throws CertificateException {
+        if (!verifier.verify(host, chain[0])) {
+            throw new CertificateException("No subject alternative name "
+                    + "of " + chain[0].getSubjectX500Principal()
+                    + " matches " + host);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * X509TrustManager which validates each chain against only the trust anchors
+ * that could have issued it, found through a shared {@link TrustAnchorIndex},
+ * rather than against every certificate of a (very large) trust store.
+ * <p>
+ * Path validation, algorithm constraints and endpoint identification are
+ * still performed by the JRE trust manager; one is created lazily for each
+ * distinct set of candidate anchors and reused, so memory grows with the
+ * number of anchors actually used rather than the size of the trust store.
+ */
+public class IndexedX509TrustManager extends X509ExtendedTrustManager {
+
+    private final TrustAnchorIndex index;
+    private final ConcurrentMap<List<X509Certificate>, X509ExtendedTrustManager> delegates
+            = new ConcurrentHashMap<>();
+
+    public IndexedX509TrustManager(TrustAnchorIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Returns the anchor index.
+     *
+     * @return anchor index
+     */
+    public TrustAnchorIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegateFor(chain).checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        delegateFor(chain).checkClientTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        delegateFor(chain).checkClientTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegateFor(chain).checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        delegateFor(chain).checkServerTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        delegateFor(chain).checkServerTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return index.getAnchors();
+    }
+
+    private X509ExtendedTrustManager delegateFor(X509Certificate[] chain)
+            throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            throw new IllegalArgumentException("Certificate chain is empty.");
+        }
+        List<X509Certificate> anchors = index.findAnchors(chain);
+        if (anchors.isEmpty()) {
+            throw new CertificateException(String.format("No trust anchor "
+                    + "found for '%s'.", chain[0].getSubjectX500Principal()));
+        }
+        X509ExtendedTrustManager tm = delegates.get(anchors);
+        if (tm == null) {
+            tm = createDelegate(anchors);
+            X509ExtendedTrustManager existing
+                    = delegates.putIfAbsent(anchors, tm);
+            if (existing != null) {
+                tm = existing;
+            }
+        }
+        return tm;
+    }
+
+    private static X509ExtendedTrustManager createDelegate(
+            List<X509Certificate> anchors) throws CertificateException {
+        try {
+            KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+            ks.load(null, null);
+            int i = 0;
+            for (X509Certificate a : anchors) {
+                ks.setCertificateEntry(Integer.toString(i++), a);
+            }
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                    TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(ks);
+            for (TrustManager tm : tmf.getTrustManagers()) {
+                if (tm instanceof X509ExtendedTrustManager) {
+                    return (X509ExtendedTrustManager) tm;
+                }
+            }
+            throw new CertificateException("No X.509 trust manager available.");
+        } catch (IOException | GeneralSecurityException ex) {
+            throw new CertificateException("Unable to create trust manager "
+                    + "for trust anchors.", ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[anchors=%d]", getClass().getSimpleName(),
+                index.size());
+    }
+
+}
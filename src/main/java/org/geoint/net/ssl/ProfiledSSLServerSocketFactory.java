@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLServerSocketFactory;
+
+/**
+ * Decorates an SSLServerSocketFactory, applying the parameters of a
+ * {@link TlsProfile} to each server socket it creates.
+ */
+class ProfiledSSLServerSocketFactory extends SSLServerSocketFactory {
+
+    private final SSLServerSocketFactory delegate;
+    private final SSLParameters profile;
+
+    ProfiledSSLServerSocketFactory(SSLServerSocketFactory delegate,
+            SSLParameters profile) {
+        this.delegate = delegate;
+        this.profile = profile;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return profile.getCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public ServerSocket createServerSocket() throws IOException {
+        return configure(delegate.createServerSocket());
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return configure(delegate.createServerSocket(port));
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog)
+            throws IOException {
+        return configure(delegate.createServerSocket(port, backlog));
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog,
+            InetAddress ifAddress) throws IOException {
+        return configure(delegate.createServerSocket(port, backlog,
+                ifAddress));
+    }
+
+    private ServerSocket configure(ServerSocket socket) {
+        if (socket instanceof SSLServerSocket) {
+            SSLServerSocket ssl = (SSLServerSocket) socket;
+            ssl.setSSLParameters(
+                    TlsProfile.apply(profile, ssl.getSSLParameters()));
+        }
+        return socket;
+    }
+}
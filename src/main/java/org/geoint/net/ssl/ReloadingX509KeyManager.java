@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509KeyManager;
+
+/**
+ * Decorates an X509KeyManager which may be replaced at runtime, delegating
+ * all methods to the current key manager.
+ * <p>
+ * The delegate is replaced atomically, so an SSLContext initialized with this
+ * key manager (and the socket factories and session caches of that context)
+ * remain in use across key rotation; new handshakes simply begin using the
+ * new key material.  Loading is done on the caller of {@link #reload()} (or
+ * the store watcher thread), never on a handshake thread.
+ *
+ * @see SSLContextBuilder#reloadStores(long, TimeUnit)
+ */
+public class ReloadingX509KeyManager extends X509ExtendedKeyManager {
+
+    private final StoreLoader<? extends X509KeyManager> loader;
+    private volatile X509KeyManager delegate;
+
+    private static final Logger LOGGER
+            = Logger.getLogger(ReloadingX509KeyManager.class.getName());
+
+    /**
+     * Creates a key manager, immediately loading the initial delegate.
+     *
+     * @param loader loads the current key manager
+     * @throws IOException if the initial key manager could not be read
+     * @throws GeneralSecurityException if the initial key manager is invalid
+     */
+    public ReloadingX509KeyManager(StoreLoader<? extends X509KeyManager> loader)
+            throws IOException, GeneralSecurityException {
+        this.loader = loader;
+        this.delegate = loader.load();
+    }
+
+    /**
+     * Creates a key manager which reloads when the key store file changes.
+     *
+     * @param keyStore key store file
+     * @param loader loads the key manager from the key store file
+     * @param period polling period
+     * @param unit polling period unit
+     * @return key manager
+     * @throws IOException if the initial key manager could not be read
+     * @throws GeneralSecurityException if the initial key manager is invalid
+     */
+    public static ReloadingX509KeyManager watch(Path keyStore,
+            StoreLoader<? extends X509KeyManager> loader, long period,
+            TimeUnit unit) throws IOException, GeneralSecurityException {
+        ReloadingX509KeyManager km = new ReloadingX509KeyManager(loader);
+        StoreFileWatcher.watch(keyStore, period, unit, km,
+                ReloadingX509KeyManager::reloadQuietly);
+        return km;
+    }
+
+    /**
+     * Loads and swaps in a new delegate.
+     * <p>
+     * If loading fails the current delegate remains in use.
+     *
+     * @throws IOException if the key manager could not be read
+     * @throws GeneralSecurityException if the key manager is invalid
+     */
+    public void reload() throws IOException, GeneralSecurityException {
+        this.delegate = loader.load();
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+            LOGGER.info("Reloaded X.509 key manager.");
+        } catch (IOException | GeneralSecurityException ex) {
+            LOGGER.log(Level.WARNING, "Unable to reload X.509 key manager, "
+                    + "continuing to use previous key material.", ex);
+        }
+    }
+
+    /**
+     * Returns the current delegate key manager.
+     *
+     * @return current delegate
+     */
+    public X509KeyManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String chooseClientAlias(String[] strings, Principal[] prncpls,
+            Socket socket) {
+        return delegate.chooseClientAlias(strings, prncpls, socket);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] strings,
+            Principal[] prncpls, SSLEngine engine) {
+        X509KeyManager km = delegate;
+        return (km instanceof X509ExtendedKeyManager)
+                ? ((X509ExtendedKeyManager) km)
+                        .chooseEngineClientAlias(strings, prncpls, engine)
+                : km.chooseClientAlias(strings, prncpls, null);
+    }
+
+    @Override
+    public String[] getClientAliases(String string, Principal[] prncpls) {
+        return delegate.getClientAliases(string, prncpls);
+    }
+
+    @Override
+    public String[] getServerAliases(String string, Principal[] prncpls) {
+        return delegate.getServerAliases(string, prncpls);
+    }
+
+    @Override
+    public String chooseServerAlias(String string, Principal[] prncpls,
+            Socket socket) {
+        return delegate.chooseServerAlias(string, prncpls, socket);
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String string, Principal[] prncpls,
+            SSLEngine engine) {
+        X509KeyManager km = delegate;
+        return (km instanceof X509ExtendedKeyManager)
+                ? ((X509ExtendedKeyManager) km)
+                        .chooseEngineServerAlias(string, prncpls, engine)
+                : km.chooseServerAlias(string, prncpls, null);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String string) {
+        return delegate.getCertificateChain(string);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String string) {
+        return delegate.getPrivateKey(string);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
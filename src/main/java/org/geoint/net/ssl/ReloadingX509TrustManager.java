@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Decorates an X509TrustManager which may be replaced at runtime, delegating
+ * all methods to the current trust manager.
+ * <p>
+ * The trust manager counterpart of {@link ReloadingX509KeyManager}: the
+ * delegate is replaced atomically, and loading never happens on a handshake
+ * thread.
+ *
+ * @see SSLContextBuilder#reloadStores(long, TimeUnit)
+ */
+public class ReloadingX509TrustManager extends X509ExtendedTrustManager {
+
+    private final StoreLoader<? extends X509TrustManager> loader;
+    private volatile X509TrustManager delegate;
+    private final List<Runnable> reloadListeners
+            = new CopyOnWriteArrayList<>();
+
+    private static final Logger LOGGER
+            = Logger.getLogger(ReloadingX509TrustManager.class.getName());
+
+    /**
+     * Creates a trust manager, immediately loading the initial delegate.
+     *
+     * @param loader loads the current trust manager
+     * @throws IOException if the initial trust manager could not be read
+     * @throws GeneralSecurityException if the initial trust manager is
+     * invalid
+     */
+    public ReloadingX509TrustManager(
+            StoreLoader<? extends X509TrustManager> loader)
+            throws IOException, GeneralSecurityException {
+        this.loader = loader;
+        this.delegate = loader.load();
+    }
+
+    /**
+     * Creates a trust manager which reloads when the trust store file
+     * changes.
+     *
+     * @param trustStore trust store file
+     * @param loader loads the trust manager from the trust store file
+     * @param period polling period
+     * @param unit polling period unit
+     * @return trust manager
+     * @throws IOException if the initial trust manager could not be read
+     * @throws GeneralSecurityException if the initial trust manager is
+     * invalid
+     */
+    public static ReloadingX509TrustManager watch(Path trustStore,
+            StoreLoader<? extends X509TrustManager> loader, long period,
+            TimeUnit unit) throws IOException, GeneralSecurityException {
+        ReloadingX509TrustManager tm = new ReloadingX509TrustManager(loader);
+        StoreFileWatcher.watch(trustStore, period, unit, tm,
+                ReloadingX509TrustManager::reloadQuietly);
+        return tm;
+    }
+
+    /**
+     * Adds a listener which is run each time a new delegate has been swapped
+     * in, for example to clear state derived from the previous trust anchors.
+     *
+     * @param listener reload listener
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Loads and swaps in a new delegate, then runs the reload listeners.
+     * <p>
+     * If loading fails the current delegate remains in use.
+     *
+     * @throws IOException if the trust manager could not be read
+     * @throws GeneralSecurityException if the trust manager is invalid
+     */
+    public void reload() throws IOException, GeneralSecurityException {
+        this.delegate = loader.load();
+        reloadListeners.forEach(Runnable::run);
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+            LOGGER.info("Reloaded X.509 trust manager.");
+        } catch (IOException | GeneralSecurityException ex) {
+            LOGGER.log(Level.WARNING, "Unable to reload X.509 trust manager, "
+                    + "continuing to use previous trust anchors.", ex);
+        }
+    }
+
+    /**
+     * Returns the current delegate trust manager.
+     *
+     * @return current delegate
+     */
+    public X509TrustManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegate.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        X509TrustManager tm = delegate;
+        if (tm instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) tm)
+                    .checkClientTrusted(chain, authType, socket);
+        } else {
+            tm.checkClientTrusted(chain, authType);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        X509TrustManager tm = delegate;
+        if (tm instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) tm)
+                    .checkClientTrusted(chain, authType, engine);
+        } else {
+            tm.checkClientTrusted(chain, authType);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegate.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        X509TrustManager tm = delegate;
+        if (tm instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) tm)
+                    .checkServerTrusted(chain, authType, socket);
+        } else {
+            tm.checkServerTrusted(chain, authType);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        X509TrustManager tm = delegate;
+        if (tm instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) tm)
+                    .checkServerTrusted(chain, authType, engine);
+        } else {
+            tm.checkServerTrusted(chain, authType);
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
@@ -0,0 +1,718 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Bounded cache of certificate revocation information (CRLs and OCSP
+ * responses) which is fetched and refreshed in the background, so that
+ * revocation checking during a TLS handshake is a local lookup rather than a
+ * blocking network request.
+ * <p>
+ * CRLs may be registered explicitly by {@link #addCrl(URL) location}. The
+ * status of other certificates is fetched, on first use, from the CRL
+ * distribution points or OCSP responders named in the certificate (or the
+ * {@link #setDefaultResponder(URL) default responder}); until then their
+ * status is {@link Status#UNKNOWN unknown}. Cached entries are refreshed
+ * ahead of their next update time.
+ * <p>
+ * If constructed with a directory, fetched entries are also written to that
+ * directory and read back when a cache is next created with it, so revocation
+ * information is available immediately after a restart, even if the
+ * responders are not.
+ * <p>
+ * The cache is bounded by the number of entries, not by their size; a CRL
+ * may be many megabytes, so size the cache for the CRLs it is expected to
+ * hold.
+ *
+ * @see SSLContextBuilder#checkRevocation(RevocationCache, boolean)
+ * @see RevocationCheckingX509TrustManager
+ */
+public class RevocationCache implements Closeable {
+
+    /**
+     * Revocation status of a certificate.
+     */
+    public enum Status {
+        GOOD, REVOKED, UNKNOWN
+    }
+
+    private static final Logger LOGGER
+            = Logger.getLogger(RevocationCache.class.getName());
+    /**
+     * Maximum time an entry is used before it is refreshed, regardless of
+     * its next update time.
+     */
+    private static final long MAX_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long REFRESH_CHECK_SECONDS = 30;
+    private static final int TIMEOUT_MILLIS = 10000;
+    private static final String OCSP_REQUEST_TYPE = "application/ocsp-request";
+    private static final String ENTRY_FILE_SUFFIX = ".rev";
+    private static final byte CRL_ENTRY = 'C';
+    private static final byte OCSP_ENTRY = 'O';
+
+    private final int maxEntries;
+    private final Path directory;
+    private final ConcurrentMap<Object, Entry> entries
+            = new ConcurrentHashMap<>();
+    private volatile Map<X500Principal, List<CrlEntry>> crlsByIssuer
+            = Collections.emptyMap();
+    private final Set<Object> pending = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService executor;
+    private volatile URL defaultResponder;
+
+    /**
+     * In-memory revocation cache.
+     *
+     * @param maxEntries maximum number of cached CRLs and OCSP responses
+     * @throws IllegalArgumentException if maxEntries is less than one
+     */
+    public RevocationCache(int maxEntries) {
+        this.maxEntries = requirePositive(maxEntries);
+        this.directory = null;
+        this.executor = startRefresh();
+    }
+
+    /**
+     * Revocation cache persisted to the directory, loading any entries
+     * previously written to it.
+     *
+     * @param maxEntries maximum number of cached CRLs and OCSP responses
+     * @param directory directory entries are written to
+     * @throws IOException if the directory could not be created or read
+     * @throws IllegalArgumentException if maxEntries is less than one
+     */
+    public RevocationCache(int maxEntries, Path directory) throws IOException {
+        this.maxEntries = requirePositive(maxEntries);
+        this.directory = directory;
+        Files.createDirectories(directory);
+        load();
+        this.executor = startRefresh();
+    }
+
+    private static int requirePositive(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must allow at least "
+                    + "one entry.");
+        }
+        return maxEntries;
+    }
+
+    /**
+     * Sets the OCSP responder used for certificates which do not name one.
+     *
+     * @param responder OCSP responder URL, or null
+     */
+    public void setDefaultResponder(URL responder) {
+        this.defaultResponder = responder;
+    }
+
+    /**
+     * Fetches the CRL and keeps it refreshed.
+     * <p>
+     * If the CRL could not be fetched but was loaded from the cache
+     * directory, the persisted CRL is used until the next refresh.
+     *
+     * @param location CRL location
+     * @throws IOException if the CRL could not be fetched
+     * @throws GeneralSecurityException if the CRL could not be parsed
+     */
+    public void addCrl(URL location)
+            throws IOException, GeneralSecurityException {
+        try {
+            fetchCrl(location);
+        } catch (IOException | GeneralSecurityException ex) {
+            if (!entries.containsKey(location.toString())) {
+                throw ex;
+            }
+            LOGGER.log(Level.WARNING, "Unable to fetch CRL " + location
+                    + ", using persisted CRL.", ex);
+        }
+    }
+
+    /**
+     * Returns the cached revocation status of the certificate without
+     * blocking.
+     * <p>
+     * If no current status is cached, the status is fetched in the
+     * background and {@link Status#UNKNOWN} is returned.
+     *
+     * @param cert certificate
+     * @param issuer certificate issuer
+     * @return cached status
+     */
+    public Status getStatus(X509Certificate cert, X509Certificate issuer) {
+        Status status = cachedStatus(cert, issuer);
+        if (status == null) {
+            fetchInBackground(cert, issuer);
+            return Status.UNKNOWN;
+        }
+        return status;
+    }
+
+    /**
+     * Fetches, and caches, the revocation status of the certificate from its
+     * CRL distribution points or OCSP responder.
+     *
+     * @param cert certificate
+     * @param issuer certificate issuer
+     * @return revocation status
+     * @throws IOException if revocation information could not be fetched
+     * @throws GeneralSecurityException if the revocation information was
+     * invalid
+     */
+    public Status fetchStatus(X509Certificate cert, X509Certificate issuer)
+            throws IOException, GeneralSecurityException {
+        Exception failure = null;
+        for (URL location : RevocationProtocol.crlDistributionPoints(cert)) {
+            try {
+                CrlEntry crl = fetchCrl(location);
+                if (crl.isCurrent(System.currentTimeMillis())
+                        && crl.verify(issuer)) {
+                    return crl.status(cert);
+                }
+            } catch (IOException | GeneralSecurityException ex) {
+                failure = ex;
+            }
+        }
+
+        List<URL> responders = RevocationProtocol.ocspResponders(cert);
+        URL responder = responders.isEmpty()
+                ? defaultResponder
+                : responders.get(0);
+        if (responder != null) {
+            return fetchOcsp(cert, issuer, responder).status;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw (GeneralSecurityException) failure;
+        }
+        return Status.UNKNOWN;
+    }
+
+    /**
+     * Refreshes every cached entry now, logging any that could not be
+     * refreshed.
+     */
+    public void refresh() {
+        for (Entry e : entries.values()) {
+            refresh(e);
+        }
+    }
+
+    /**
+     * Number of cached CRLs and OCSP responses.
+     *
+     * @return cache size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stops refreshing entries in the background.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Status from a current cached CRL or OCSP response, or null if neither
+     * is cached.
+     */
+    private Status cachedStatus(X509Certificate cert, X509Certificate issuer) {
+        final long now = System.currentTimeMillis();
+        List<CrlEntry> crls = crlsByIssuer.get(cert.getIssuerX500Principal());
+        if (crls != null) {
+            for (CrlEntry crl : crls) {
+                if (crl.isCurrent(now) && crl.verify(issuer)) {
+                    return crl.status(cert);
+                }
+            }
+        }
+        Entry ocsp = entries.get(new OcspKey(cert));
+        return (ocsp != null && ocsp.isCurrent(now))
+                ? ((OcspEntry) ocsp).status
+                : null;
+    }
+
+    private void fetchInBackground(X509Certificate cert,
+            X509Certificate issuer) {
+        final OcspKey key = new OcspKey(cert);
+        if (!pending.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    fetchStatus(cert, issuer);
+                } catch (IOException | GeneralSecurityException ex) {
+                    LOGGER.log(Level.WARNING, "Unable to fetch revocation "
+                            + "status of " + cert.getSubjectX500Principal(),
+                            ex);
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            //closed
+            pending.remove(key);
+        }
+    }
+
+    private CrlEntry fetchCrl(URL location)
+            throws IOException, GeneralSecurityException {
+        byte[] der;
+        try (InputStream in = open(location, null).getInputStream()) {
+            der = readFully(in);
+        }
+        CrlEntry crl = new CrlEntry(location, parseCrl(der));
+        put(crl);
+        return crl;
+    }
+
+    private OcspEntry fetchOcsp(X509Certificate cert, X509Certificate issuer,
+            URL responder) throws IOException, GeneralSecurityException {
+        byte[] response;
+        URLConnection conn = open(responder,
+                RevocationProtocol.ocspRequest(cert, issuer));
+        try (InputStream in = conn.getInputStream()) {
+            response = readFully(in);
+        }
+        OcspEntry ocsp = new OcspEntry(cert, issuer, responder, response);
+        put(ocsp);
+        return ocsp;
+    }
+
+    private void refresh(Entry e) {
+        try {
+            if (e instanceof CrlEntry) {
+                fetchCrl(((CrlEntry) e).location);
+            } else {
+                OcspEntry ocsp = (OcspEntry) e;
+                fetchOcsp(ocsp.cert, ocsp.issuer, ocsp.responder);
+            }
+        } catch (IOException | GeneralSecurityException ex) {
+            //keep using the entry until it expires
+            e.refreshAt = System.currentTimeMillis() + RETRY_MILLIS;
+            LOGGER.log(Level.WARNING, "Unable to refresh revocation "
+                    + "information " + e.key(), ex);
+        }
+    }
+
+    private void refreshDue() {
+        final long now = System.currentTimeMillis();
+        for (Entry e : entries.values()) {
+            if (e.refreshAt <= now) {
+                refresh(e);
+            }
+        }
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.key(), entry);
+        while (entries.size() > maxEntries && evict(entry)) {
+            //evict until within bounds, or nothing else can be evicted
+        }
+        if (entry instanceof CrlEntry) {
+            indexCrls();
+        }
+        persist(entry);
+    }
+
+    /**
+     * Evicts the entry, other than the one just added, which expires first,
+     * returning false if there was no such entry.
+     */
+    private boolean evict(Entry added) {
+        Entry eldest = null;
+        for (Entry e : entries.values()) {
+            if (e != added
+                    && (eldest == null || e.nextUpdate < eldest.nextUpdate)) {
+                eldest = e;
+            }
+        }
+        if (eldest == null) {
+            return false;
+        }
+        if (!entries.remove(eldest.key(), eldest)) {
+            return true; //replaced concurrently, look again
+        }
+        if (eldest instanceof CrlEntry) {
+            indexCrls();
+        }
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(file(eldest.key()));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to delete evicted "
+                        + "revocation entry " + eldest.key(), ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds the issuer index read by handshakes, which is replaced rather
+     * than modified so lookups do not lock.
+     */
+    private synchronized void indexCrls() {
+        Map<X500Principal, List<CrlEntry>> index = new HashMap<>();
+        for (Entry e : entries.values()) {
+            if (e instanceof CrlEntry) {
+                CrlEntry crl = (CrlEntry) e;
+                index.computeIfAbsent(crl.crl.getIssuerX500Principal(),
+                        (i) -> new ArrayList<>(1)).add(crl);
+            }
+        }
+        crlsByIssuer = index;
+    }
+
+    private ScheduledExecutorService startRefresh() {
+        ScheduledThreadPoolExecutor ses = new ScheduledThreadPoolExecutor(2,
+                (r) -> {
+                    Thread t = new Thread(r, "ssl-revocation-refresh");
+                    t.setDaemon(true);
+                    return t;
+                });
+        ses.scheduleWithFixedDelay(this::refreshDue, REFRESH_CHECK_SECONDS,
+                REFRESH_CHECK_SECONDS, TimeUnit.SECONDS);
+        return ses;
+    }
+
+    private void persist(Entry entry) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                entry.write(out);
+            }
+            Path file = file(entry.key());
+            Path tmp = Files.createTempFile(directory, null, null);
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | GeneralSecurityException ex) {
+            LOGGER.log(Level.WARNING, "Unable to persist revocation "
+                    + "information " + entry.key(), ex);
+        }
+    }
+
+    private void load() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*" + ENTRY_FILE_SUFFIX)) {
+            for (Path file : files) {
+                try (DataInputStream in = new DataInputStream(
+                        Files.newInputStream(file))) {
+                    Entry e = read(in);
+                    if (e.isCurrent(System.currentTimeMillis())) {
+                        entries.put(e.key(), e);
+                        continue;
+                    }
+                } catch (IOException | GeneralSecurityException ex) {
+                    LOGGER.log(Level.WARNING, "Discarding unreadable "
+                            + "revocation information " + file, ex);
+                }
+                Files.deleteIfExists(file);
+            }
+        }
+        indexCrls();
+    }
+
+    private static Entry read(DataInputStream in)
+            throws IOException, GeneralSecurityException {
+        byte type = in.readByte();
+        URL location = new URL(in.readUTF());
+        if (type == CRL_ENTRY) {
+            return new CrlEntry(location, parseCrl(readBytes(in)));
+        } else if (type == OCSP_ENTRY) {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            X509Certificate cert = (X509Certificate) cf.generateCertificate(
+                    new ByteArrayInputStream(readBytes(in)));
+            X509Certificate issuer = (X509Certificate) cf.generateCertificate(
+                    new ByteArrayInputStream(readBytes(in)));
+            //responses are verified again, rather than trusting the file
+            return new OcspEntry(cert, issuer, location, readBytes(in));
+        }
+        throw new IOException("Unknown revocation entry type " + type);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes)
+            throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private Path file(Object key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    key.toString().getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(
+                    new BigInteger(1, digest).toString(16) + ENTRY_FILE_SUFFIX);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static URLConnection open(URL location, byte[] post)
+            throws IOException {
+        URLConnection conn = location.openConnection();
+        conn.setConnectTimeout(TIMEOUT_MILLIS);
+        conn.setReadTimeout(TIMEOUT_MILLIS);
+        conn.setUseCaches(false);
+        if (post != null) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", OCSP_REQUEST_TYPE);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(post);
+            }
+        }
+        if (conn instanceof HttpURLConnection) {
+            int code = ((HttpURLConnection) conn).getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Revocation request to " + location
+                        + " failed with HTTP " + code);
+            }
+        }
+        return conn;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static X509CRL parseCrl(byte[] der) throws GeneralSecurityException {
+        return (X509CRL) CertificateFactory.getInstance("X.509")
+                .generateCRL(new ByteArrayInputStream(der));
+    }
+
+    /**
+     * When an entry published at thisUpdate, valid until nextUpdate, should
+     * be refreshed: three quarters of the way through its validity, but no
+     * later than the maximum refresh interval from now.
+     */
+    private static long refreshAt(long thisUpdate, long nextUpdate) {
+        final long now = System.currentTimeMillis();
+        long refresh = (nextUpdate == Long.MAX_VALUE)
+                ? Long.MAX_VALUE
+                : thisUpdate + (nextUpdate - thisUpdate) / 4 * 3;
+        return Math.min(refresh, now + MAX_REFRESH_MILLIS);
+    }
+
+    private abstract static class Entry {
+
+        final long nextUpdate;
+        volatile long refreshAt;
+
+        Entry(long thisUpdate, long nextUpdate) {
+            this.nextUpdate = nextUpdate;
+            this.refreshAt = RevocationCache.refreshAt(thisUpdate, nextUpdate);
+        }
+
+        boolean isCurrent(long now) {
+            return now < nextUpdate;
+        }
+
+        abstract Object key();
+
+        abstract void write(DataOutputStream out)
+                throws IOException, GeneralSecurityException;
+    }
+
+    private static final class CrlEntry extends Entry {
+
+        private final URL location;
+        private final X509CRL crl;
+        //issuer key the signature was checked with, so it is checked once
+        private volatile PublicKey verifiedKey;
+        private volatile PublicKey rejectedKey;
+
+        private CrlEntry(URL location, X509CRL crl) {
+            super(crl.getThisUpdate().getTime(),
+                    (crl.getNextUpdate() == null)
+                    ? Long.MAX_VALUE
+                    : crl.getNextUpdate().getTime());
+            this.location = location;
+            this.crl = crl;
+        }
+
+        private boolean verify(X509Certificate issuer) {
+            PublicKey key = issuer.getPublicKey();
+            if (key.equals(verifiedKey)) {
+                return true;
+            } else if (key.equals(rejectedKey)) {
+                return false;
+            }
+            try {
+                crl.verify(key);
+                verifiedKey = key;
+                return true;
+            } catch (GeneralSecurityException ex) {
+                rejectedKey = key;
+                return false;
+            }
+        }
+
+        private Status status(X509Certificate cert) {
+            return crl.isRevoked(cert) ? Status.REVOKED : Status.GOOD;
+        }
+
+        @Override
+        Object key() {
+            return location.toString();
+        }
+
+        @Override
+        void write(DataOutputStream out)
+                throws IOException, GeneralSecurityException {
+            out.writeByte(CRL_ENTRY);
+            out.writeUTF(location.toString());
+            writeBytes(out, crl.getEncoded());
+        }
+    }
+
+    private static final class OcspEntry extends Entry {
+
+        private final OcspKey key;
+        private final X509Certificate cert;
+        private final X509Certificate issuer;
+        private final URL responder;
+        private final byte[] response;
+        private final Status status;
+
+        private OcspEntry(X509Certificate cert, X509Certificate issuer,
+                URL responder, byte[] response)
+                throws GeneralSecurityException {
+            this(cert, issuer, responder, response,
+                    RevocationProtocol.ocspValidity(response, cert, issuer));
+        }
+
+        private OcspEntry(X509Certificate cert, X509Certificate issuer,
+                URL responder, byte[] response, long[] validity)
+                throws GeneralSecurityException {
+            super(validity[0], validity[1]);
+            this.key = new OcspKey(cert);
+            this.cert = cert;
+            this.issuer = issuer;
+            this.responder = responder;
+            this.response = response;
+            this.status = RevocationProtocol.verifyOcspResponse(response,
+                    cert, issuer);
+        }
+
+        @Override
+        Object key() {
+            return key;
+        }
+
+        @Override
+        void write(DataOutputStream out)
+                throws IOException, CertificateException {
+            out.writeByte(OCSP_ENTRY);
+            out.writeUTF(responder.toString());
+            writeBytes(out, cert.getEncoded());
+            writeBytes(out, issuer.getEncoded());
+            writeBytes(out, response);
+        }
+    }
+
+    private static final class OcspKey {
+
+        private final X500Principal issuer;
+        private final BigInteger serial;
+
+        private OcspKey(X509Certificate cert) {
+            this.issuer = cert.getIssuerX500Principal();
+            this.serial = cert.getSerialNumber();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * issuer.hashCode() + serial.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof OcspKey)) {
+                return false;
+            }
+            OcspKey other = (OcspKey) obj;
+            return serial.equals(other.serial)
+                    && issuer.equals(other.issuer);
+        }
+
+        @Override
+        public String toString() {
+            return "ocsp:" + issuer.getName() + ":" + serial.toString(16);
+        }
+    }
+}
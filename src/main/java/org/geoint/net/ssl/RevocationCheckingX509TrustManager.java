@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Decorates an X509TrustManager, rejecting certificate chains the delegate
+ * accepts if a certificate in the chain has been revoked.
+ * <p>
+ * Revocation status is read from a {@link RevocationCache}, so checking
+ * never blocks the handshake on a network request.  Certificates whose status
+ * is not (yet) cached are accepted, unless the trust manager requires a
+ * status, in which case they are rejected until the cache has fetched it.
+ *
+ * @see SSLContextBuilder#checkRevocation(RevocationCache, boolean)
+ */
+public class RevocationCheckingX509TrustManager
+        extends X509ExtendedTrustManager {
+
+    private final RevocationCache cache;
+    private final boolean requireStatus;
+    private final X509TrustManager delegate;
+    private volatile Map<X500Principal, X509Certificate> anchors;
+
+    /**
+     * @param cache revocation information
+     * @param requireStatus true to reject certificates whose status is
+     * unknown
+     * @param delegate trust manager validating the chains
+     */
+    public RevocationCheckingX509TrustManager(RevocationCache cache,
+            boolean requireStatus, X509TrustManager delegate) {
+        this.cache = cache;
+        this.requireStatus = requireStatus;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegate.checkClientTrusted(chain, authType);
+        checkRevocation(chain);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkClientTrusted(chain, authType, socket);
+        } else {
+            delegate.checkClientTrusted(chain, authType);
+        }
+        checkRevocation(chain);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkClientTrusted(chain, authType, engine);
+        } else {
+            delegate.checkClientTrusted(chain, authType);
+        }
+        checkRevocation(chain);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+        delegate.checkServerTrusted(chain, authType);
+        checkRevocation(chain);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            Socket socket) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkServerTrusted(chain, authType, socket);
+        } else {
+            delegate.checkServerTrusted(chain, authType);
+        }
+        checkRevocation(chain);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType,
+            SSLEngine engine) throws CertificateException {
+        if (delegate instanceof X509ExtendedTrustManager) {
+            ((X509ExtendedTrustManager) delegate)
+                    .checkServerTrusted(chain, authType, engine);
+        } else {
+            delegate.checkServerTrusted(chain, authType);
+        }
+        checkRevocation(chain);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    /**
+     * Checks each certificate of the (already validated) chain, other than
+     * the trust anchor.
+     */
+    private void checkRevocation(X509Certificate[] chain)
+            throws CertificateException {
+        for (int i = 0; i < chain.length; i++) {
+            X509Certificate cert = chain[i];
+            if (cert.getIssuerX500Principal()
+                    .equals(cert.getSubjectX500Principal())) {
+                //self-issued, the trust anchor
+                return;
+            }
+            X509Certificate issuer = (i + 1 < chain.length)
+                    ? chain[i + 1]
+                    : anchor(cert.getIssuerX500Principal());
+            if (issuer == null) {
+                return;
+            }
+            switch (cache.getStatus(cert, issuer)) {
+                case REVOKED:
+                    throw new CertificateException("Certificate "
+                            + cert.getSubjectX500Principal()
+                            + " has been revoked.");
+                case UNKNOWN:
+                    if (requireStatus) {
+                        throw new CertificateException("Revocation status "
+                                + "of certificate "
+                                + cert.getSubjectX500Principal()
+                                + " is not available.");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private X509Certificate anchor(X500Principal subject) {
+        Map<X500Principal, X509Certificate> bySubject = anchors;
+        if (bySubject == null) {
+            bySubject = new HashMap<>();
+            for (X509Certificate c : delegate.getAcceptedIssuers()) {
+                bySubject.put(c.getSubjectX500Principal(), c);
+            }
+            anchors = bySubject;
+        }
+        return bySubject.get(subject);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
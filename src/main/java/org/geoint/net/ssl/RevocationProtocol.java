@@ -0,0 +1,388 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.PKIXRevocationChecker;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Encoding and decoding of the revocation related certificate extensions and
+ * OCSP (RFC 6960) messages used by {@link RevocationCache}.
+ * <p>
+ * OCSP responses are verified by the JRE PKIX revocation checker; only the
+ * fields the JRE does not expose (the response validity period) are read
+ * here.
+ */
+final class RevocationProtocol {
+
+    private static final String CRL_DISTRIBUTION_POINTS = "2.5.29.31";
+    private static final String AUTHORITY_INFO_ACCESS = "1.3.6.1.5.5.7.1.1";
+    private static final byte[] OCSP_ACCESS_METHOD
+            = {0x2b, 0x06, 0x01, 0x05, 0x05, 0x07, 0x30, 0x01};
+    /**
+     * SHA-1 AlgorithmIdentifier, with NULL parameters, used for the OCSP
+     * CertID hashes as the JRE does.
+     */
+    private static final byte[] SHA1_ALGORITHM = {0x30, 0x09, 0x06, 0x05,
+        0x2b, 0x0e, 0x03, 0x02, 0x1a, 0x05, 0x00};
+    private static final byte[] SHA1_OID = {0x2b, 0x0e, 0x03, 0x02, 0x1a};
+    private static final byte[] SHA256_OID = {0x60, (byte) 0x86, 0x48, 0x01,
+        0x65, 0x03, 0x04, 0x02, 0x01};
+    private static final int URI_NAME = 0x86;
+    private static final int CERT_STATUS_UNKNOWN = 0x82;
+    private static final int BIT_STRING = 0x03;
+    private static final int SUCCESSFUL = 0;
+
+    private RevocationProtocol() {
+    }
+
+    /**
+     * URLs of the full name distribution points of the CRL distribution
+     * points extension.
+     */
+    static List<URL> crlDistributionPoints(X509Certificate cert) {
+        byte[] ext = cert.getExtensionValue(CRL_DISTRIBUTION_POINTS);
+        List<URL> urls = new ArrayList<>();
+        DerReader points = sequence(ext);
+        while (points != null && points.next(DerReader.SEQUENCE)) {
+            //DistributionPoint ::= SEQUENCE { [0] DistributionPointName, ...}
+            DerReader point = points.contents();
+            if (!point.next(DerReader.CONTEXT_CONSTRUCTED_0)) {
+                continue;
+            }
+            //DistributionPointName ::= CHOICE { [0] fullName GeneralNames, ...}
+            DerReader name = point.contents();
+            if (!name.next(DerReader.CONTEXT_CONSTRUCTED_0)) {
+                continue;
+            }
+            addUris(name.contents(), urls);
+        }
+        return urls;
+    }
+
+    /**
+     * OCSP responder URLs from the authority information access extension.
+     */
+    static List<URL> ocspResponders(X509Certificate cert) {
+        byte[] ext = cert.getExtensionValue(AUTHORITY_INFO_ACCESS);
+        List<URL> urls = new ArrayList<>();
+        DerReader descriptions = sequence(ext);
+        while (descriptions != null
+                && descriptions.next(DerReader.SEQUENCE)) {
+            //AccessDescription ::= SEQUENCE { accessMethod, accessLocation }
+            DerReader description = descriptions.contents();
+            if (description.next(DerReader.OID)
+                    && description.valueEquals(OCSP_ACCESS_METHOD)) {
+                addUris(description, urls);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Encodes an unsigned OCSP request, without a nonce, for the status of a
+     * single certificate.
+     */
+    static byte[] ocspRequest(X509Certificate cert, X509Certificate issuer)
+            throws GeneralSecurityException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        byte[] nameHash = sha1.digest(
+                issuer.getSubjectX500Principal().getEncoded());
+        byte[] keyHash = sha1.digest(subjectPublicKey(issuer));
+
+        byte[] certId = tlv(DerReader.SEQUENCE, SHA1_ALGORITHM,
+                tlv(DerReader.OCTET_STRING, nameHash),
+                tlv(DerReader.OCTET_STRING, keyHash),
+                tlv(DerReader.INTEGER, cert.getSerialNumber().toByteArray()));
+        //OCSPRequest { TBSRequest { requestList { Request { CertID } } } }
+        return tlv(DerReader.SEQUENCE, tlv(DerReader.SEQUENCE,
+                tlv(DerReader.SEQUENCE, tlv(DerReader.SEQUENCE, certId))));
+    }
+
+    /**
+     * Verifies the OCSP response for the certificate, returning its status.
+     *
+     * @throws CertificateException if the response is not a valid, current,
+     * response for the certificate signed by the issuer or its delegated
+     * responder
+     */
+    static RevocationCache.Status verifyOcspResponse(byte[] response,
+            X509Certificate cert, X509Certificate issuer)
+            throws GeneralSecurityException {
+        CertPathValidator validator = CertPathValidator.getInstance("PKIX");
+        PKIXRevocationChecker checker
+                = (PKIXRevocationChecker) validator.getRevocationChecker();
+        checker.setOptions(EnumSet.of(PKIXRevocationChecker.Option.NO_FALLBACK));
+        checker.setOcspResponses(Collections.singletonMap(cert, response));
+
+        PKIXParameters params = new PKIXParameters(
+                Collections.singleton(new TrustAnchor(issuer, null)));
+        params.setRevocationEnabled(false);
+        params.addCertPathChecker(checker);
+        try {
+            validator.validate(CertificateFactory.getInstance("X.509")
+                    .generateCertPath(Collections.singletonList(cert)),
+                    params);
+            return RevocationCache.Status.GOOD;
+        } catch (CertPathValidatorException ex) {
+            if (ex.getReason() == CertPathValidatorException.BasicReason.REVOKED) {
+                return RevocationCache.Status.REVOKED;
+            }
+            if (ex.getReason() == CertPathValidatorException.BasicReason
+                    .UNDETERMINED_REVOCATION_STATUS
+                    && ocspStatus(response, cert, issuer)
+                    == CERT_STATUS_UNKNOWN) {
+                return RevocationCache.Status.UNKNOWN;
+            }
+            throw new CertificateException("Invalid OCSP response for "
+                    + cert.getSubjectX500Principal() + ": " + ex.getMessage(),
+                    ex);
+        }
+    }
+
+    /**
+     * The thisUpdate and nextUpdate times of the single response for the
+     * certificate, nextUpdate being {@link Long#MAX_VALUE} if the responder
+     * did not provide one.
+     */
+    static long[] ocspValidity(byte[] response, X509Certificate cert,
+            X509Certificate issuer) throws GeneralSecurityException {
+        DerReader single = singleResponse(response, cert, issuer);
+        if (single == null
+                || !single.next(DerReader.SEQUENCE) //certID
+                || !single.next() //certStatus
+                || !single.next(DerReader.GENERALIZED_TIME)) {
+            throw new CertificateException("Malformed OCSP response.");
+        }
+        long thisUpdate = generalizedTime(single.value());
+        long nextUpdate = Long.MAX_VALUE;
+        if (single.next() && single.tag == DerReader.CONTEXT_CONSTRUCTED_0) {
+            DerReader explicit = single.contents();
+            if (explicit.next(DerReader.GENERALIZED_TIME)) {
+                nextUpdate = generalizedTime(explicit.value());
+            }
+        }
+        return new long[]{thisUpdate, nextUpdate};
+    }
+
+    /**
+     * Raw certStatus tag of the single response for the certificate.
+     */
+    private static int ocspStatus(byte[] response, X509Certificate cert,
+            X509Certificate issuer) throws GeneralSecurityException {
+        DerReader single = singleResponse(response, cert, issuer);
+        if (single == null || !single.next(DerReader.SEQUENCE)
+                || !single.next()) {
+            throw new CertificateException("Malformed OCSP response.");
+        }
+        return single.tag;
+    }
+
+    /**
+     * Reader over the fields of the SingleResponse whose CertID identifies
+     * the certificate, or null if the response is not a successful basic
+     * OCSP response or does not include the certificate.
+     */
+    private static DerReader singleResponse(byte[] response,
+            X509Certificate cert, X509Certificate issuer)
+            throws GeneralSecurityException {
+        DerReader responses = singleResponses(response);
+        while (responses != null && responses.next(DerReader.SEQUENCE)) {
+            DerReader single = responses.contents();
+            if (single.next(DerReader.SEQUENCE)
+                    && identifies(single.contents(), cert, issuer)) {
+                return responses.contents();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the CertID names the certificate: its serial number,
+     * and the hashes of the issuer name and key by the CertID hash
+     * algorithm.
+     */
+    private static boolean identifies(DerReader certId, X509Certificate cert,
+            X509Certificate issuer) throws GeneralSecurityException {
+        //CertID ::= SEQUENCE { hashAlgorithm, issuerNameHash, issuerKeyHash,
+        //   serialNumber }
+        if (!certId.next(DerReader.SEQUENCE)) {
+            return false;
+        }
+        DerReader algorithm = certId.contents();
+        if (!algorithm.next(DerReader.OID)) {
+            return false;
+        }
+        MessageDigest md;
+        if (algorithm.valueEquals(SHA1_OID)) {
+            md = MessageDigest.getInstance("SHA-1");
+        } else if (algorithm.valueEquals(SHA256_OID)) {
+            md = MessageDigest.getInstance("SHA-256");
+        } else {
+            return false;
+        }
+        return certId.next(DerReader.OCTET_STRING)
+                && certId.valueEquals(md.digest(
+                        issuer.getSubjectX500Principal().getEncoded()))
+                && certId.next(DerReader.OCTET_STRING)
+                && certId.valueEquals(md.digest(subjectPublicKey(issuer)))
+                && certId.next(DerReader.INTEGER)
+                && certId.valueEquals(cert.getSerialNumber().toByteArray());
+    }
+
+    /**
+     * Reader over the SingleResponses of a successful basic OCSP response,
+     * or null if the response is not one.
+     */
+    private static DerReader singleResponses(byte[] response) {
+        //OCSPResponse ::= SEQUENCE { responseStatus, [0] ResponseBytes }
+        DerReader r = new DerReader(response);
+        if (!r.next(DerReader.SEQUENCE)) {
+            return null;
+        }
+        r = r.contents();
+        if (!r.next(DerReader.ENUMERATED)
+                || r.value().length != 1 || r.value()[0] != SUCCESSFUL
+                || !r.next(DerReader.CONTEXT_CONSTRUCTED_0)) {
+            return null;
+        }
+        //ResponseBytes ::= SEQUENCE { responseType, response OCTET STRING }
+        r = r.contents();
+        if (!r.next(DerReader.SEQUENCE)) {
+            return null;
+        }
+        r = r.contents();
+        if (!r.next(DerReader.OCTET_STRING)) {
+            return null;
+        }
+        //BasicOCSPResponse ::= SEQUENCE { ResponseData, ... }
+        r = new DerReader(r.value());
+        if (!r.next(DerReader.SEQUENCE)) {
+            return null;
+        }
+        r = r.contents();
+        if (!r.next(DerReader.SEQUENCE)) {
+            return null;
+        }
+        //ResponseData ::= SEQUENCE { [0] version, responderID, producedAt,
+        //   responses SEQUENCE OF SingleResponse, ...}
+        //the responder id is tagged, so the first sequence is the responses
+        r = r.contents();
+        return r.next(DerReader.SEQUENCE) ? r.contents() : null;
+    }
+
+    private static long generalizedTime(byte[] value)
+            throws CertificateException {
+        //YYYYMMDDHHMMSS[.fff]Z, fractional seconds are ignored
+        String time = new String(value, StandardCharsets.US_ASCII);
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(time.substring(0, Math.min(14, time.length())))
+                    .getTime();
+        } catch (ParseException ex) {
+            throw new CertificateException("Malformed OCSP time " + time, ex);
+        }
+    }
+
+    /**
+     * Content of the subjectPublicKey BIT STRING, excluding the unused bits
+     * octet, which is hashed for the OCSP CertID issuerKeyHash.
+     */
+    private static byte[] subjectPublicKey(X509Certificate cert)
+            throws CertificateException {
+        DerReader spki = new DerReader(cert.getPublicKey().getEncoded());
+        if (spki.next(DerReader.SEQUENCE)) {
+            DerReader fields = spki.contents();
+            if (fields.next(DerReader.SEQUENCE) && fields.next(BIT_STRING)) {
+                byte[] bits = fields.value();
+                byte[] key = new byte[bits.length - 1];
+                System.arraycopy(bits, 1, key, 0, key.length);
+                return key;
+            }
+        }
+        throw new CertificateException("Unable to read public key of "
+                + cert.getSubjectX500Principal());
+    }
+
+    /**
+     * Reader over the contents of the SEQUENCE wrapped by an extension value
+     * OCTET STRING, or null if the extension is absent or malformed.
+     */
+    private static DerReader sequence(byte[] ext) {
+        if (ext == null) {
+            return null;
+        }
+        DerReader outer = new DerReader(ext);
+        if (!outer.next(DerReader.OCTET_STRING)) {
+            return null;
+        }
+        DerReader seq = outer.contents();
+        return seq.next(DerReader.SEQUENCE) ? seq.contents() : null;
+    }
+
+    private static void addUris(DerReader names, List<URL> urls) {
+        while (names.next(URI_NAME)) {
+            try {
+                urls.add(new URL(new String(names.value(),
+                        StandardCharsets.US_ASCII)));
+            } catch (MalformedURLException ex) {
+                //ldap and other schemes without a handler are not fetched
+            }
+        }
+    }
+
+    private static byte[] tlv(int tag, byte[]... values) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] v : values) {
+            content.write(v, 0, v.length);
+        }
+        int len = content.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len + 4);
+        out.write(tag);
+        if (len < 0x80) {
+            out.write(len);
+        } else if (len < 0x100) {
+            out.write(0x81);
+            out.write(len);
+        } else {
+            out.write(0x82);
+            out.write(len >> 8);
+            out.write(len);
+        }
+        out.write(content.toByteArray(), 0, len);
+        return out.toByteArray();
+    }
+}
@@ -15,19 +15,33 @@
  */
 package org.geoint.net.ssl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+import org.geoint.net.HappyEyeballsConnector;
+import org.geoint.net.SocketOptions;
 
 /**
  * Fluid API to construct an SSLContext, or something that adapts an SSLContext.
@@ -38,15 +52,36 @@ import javax.net.ssl.X509KeyManager;
 public class SSLContextBuilder<T> {
 
     private static final String JKS_STORE_TYPE = "jks";
+    private static final String CONTEXT_PROTOCOL = "TLS";
 
     private InputStream keyStore;
+    private byte[] keyStoreContent;
+    private Path keyStoreFile;
     private String keyStoreType;
     private char[] keyStorePass;
     private String alias;
     private char[] aliasPass;
+    private final Map<String, String> destinationAliases = new TreeMap<>();
     private InputStream trustStore;
+    private byte[] trustStoreContent;
+    private Path trustStoreFile;
     private String trustStoreType;
     private char[] trustStorePass;
+    private Integer sessionCacheSize;
+    private Integer sessionTimeout;
+    private final List<SSLSocketCustomizer> socketCustomizers
+            = new ArrayList<>();
+    private SSLContextCache cache;
+    private TrustValidationCache trustValidationCache;
+    private boolean indexTrustAnchors;
+    private RevocationCache revocationCache;
+    private boolean requireRevocationStatus;
+    private CachingHostnameVerifier hostnameVerifier;
+    private TlsProfile profile;
+    private SocketOptions socketOptions;
+    private HappyEyeballsConnector connector;
+    private long reloadPeriod;
+    private TimeUnit reloadUnit;
     private final Function<SSLContext, T> buildAdapter;
 
     /**
@@ -97,14 +132,44 @@ public class SSLContextBuilder<T> {
         return new SSLContextBuilder((c) -> ((SSLContext) c).getServerSocketFactory());
     }
 
+    /**
+     * Returns an SSLEngineFactory on build, for use with non-blocking or
+     * asynchronous channels.
+     *
+     * @see SSLEngineFactory#withEndpointIdentification(String)
+     * @see SSLEngineFactory#withClientAuth(SSLEngineFactory.ClientAuth)
+     * @return ssl engine factory
+     */
+    public static SSLContextBuilder<SSLEngineFactory> buildEngineFactory() {
+        return new SSLContextBuilder((c) -> new SSLEngineFactory((SSLContext) c));
+    }
+
     public SSLContextBuilder<T> useKeyStore(InputStream in,
             String keyStoreType, char[] password) {
         this.keyStore = in;
+        this.keyStoreContent = null;
+        this.keyStoreFile = null;
         this.keyStoreType = keyStoreType;
         withKeyStorePass(password);
         return this;
     }
 
+    /**
+     * Uses the key store file, which is read each time a context is built.
+     *
+     * @see #reloadStores(long, TimeUnit)
+     * @param file key store file
+     * @param keyStoreType key store type
+     * @param password key store password
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> useKeyStore(Path file,
+            String keyStoreType, char[] password) {
+        useKeyStore((InputStream) null, keyStoreType, password);
+        this.keyStoreFile = file;
+        return this;
+    }
+
     public SSLContextBuilder<T> useKeyStore(InputStream in,
             String keyStoreType) {
         return this.useKeyStore(in, keyStoreType, null);
@@ -156,11 +221,49 @@ public class SSLContextBuilder<T> {
     public SSLContextBuilder<T> useTrustStore(InputStream in,
             String trustStoreType, char[] trustStorePass) {
         this.trustStore = in;
+        this.trustStoreContent = null;
+        this.trustStoreFile = null;
         this.trustStoreType = trustStoreType;
         withTrustStorePass(trustStorePass);
         return this;
     }
 
+    /**
+     * Specifies the keystore certificate, by alias name, to return for
+     * connections to the destination.
+     * <p>
+     * Destinations may be a host, a host and port ({@code host:port}), or a
+     * wildcard domain ({@code *.domain}, optionally with a port).  Connections
+     * to destinations not configured use the alias set by
+     * {@link #useCertificate(String)}, if any.
+     *
+     * @see DestinationAliasX509KeyManager
+     * @param destination destination host
+     * @param certificateAlias alias of certificate to return for destination
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> useCertificateFor(String destination,
+            String certificateAlias) {
+        this.destinationAliases.put(destination, certificateAlias);
+        return this;
+    }
+
+    /**
+     * Uses the trust store file, which is read each time a context is built.
+     *
+     * @see #reloadStores(long, TimeUnit)
+     * @param file trust store file
+     * @param trustStoreType trust store type
+     * @param trustStorePass trust store password
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> useTrustStore(Path file,
+            String trustStoreType, char[] trustStorePass) {
+        useTrustStore((InputStream) null, trustStoreType, trustStorePass);
+        this.trustStoreFile = file;
+        return this;
+    }
+
     public SSLContextBuilder<T> useTrustStore(InputStream in,
             String keyStoreType) {
         return this.useTrustStore(in, keyStoreType, null);
@@ -180,28 +283,404 @@ public class SSLContextBuilder<T> {
         return this;
     }
 
+    /**
+     * Sets the maximum number of TLS sessions cached by the context for
+     * resumption.
+     * <p>
+     * A built context returns the same socket factory on each call, so
+     * sharing one context across several initializers (or registering one
+     * initializer for several routes) shares this cache.
+     *
+     * @param size maximum number of cached sessions, 0 for no limit
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> withSessionCacheSize(int size) {
+        this.sessionCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Sets how long a cached TLS session may be resumed.
+     *
+     * @param seconds session timeout in seconds, 0 for no limit
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> withSessionTimeout(int seconds) {
+        this.sessionTimeout = seconds;
+        return this;
+    }
+
+    /**
+     * Enables only the protocols, cipher suites and key exchange groups of
+     * the profile on the sockets, server sockets and engines created by the
+     * built context.
+     *
+     * @see TlsProfile
+     * @param tlsProfile TLS profile
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> withProfile(TlsProfile tlsProfile) {
+        this.profile = tlsProfile;
+        return this;
+    }
+
+    /**
+     * Records full and resumed handshakes completed by sockets created from
+     * the built context.
+     *
+     * @param statistics handshake statistics
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> withSessionStatistics(
+            SSLSessionStatistics statistics) {
+        return customizeSockets(statistics);
+    }
+
+    /**
+     * Applies TCP socket options to each SSLSocket created by the socket
+     * factory of the built context, before it is connected (if the caller
+     * creates it unconnected, as HttpsURLConnection does).
+     * <p>
+     * The connect and read timeouts of the options are not applied to
+     * sockets; use
+     * {@link org.geoint.net.www.https.HttpsMutualAuthInitializer#withSocketOptions(SocketOptions)}
+     * to also apply them to HTTPS connections.
+     *
+     * @param options socket options
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> withSocketOptions(SocketOptions options) {
+        this.socketOptions = options;
+        return this;
+    }
+
+    /**
+     * Connects client sockets of the built context to host names by racing
+     * the addresses of the host, so an unreachable or slow address does not
+     * delay the connection by the full connect timeout.
+     * <p>
+     * This applies to sockets created unconnected and then connected to a
+     * host name (as HttpsURLConnection does), and to sockets created for a
+     * host name and port.
+     *
+     * @see HappyEyeballsConnector
+     * @param connector connector, which may be shared by several contexts
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> connectWithHappyEyeballs(
+            HappyEyeballsConnector connector) {
+        this.connector = connector;
+        return this;
+    }
+
+    /**
+     * Customizes each SSLSocket created by the socket factory of the built
+     * context.
+     *
+     * @param customizer socket customizer
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> customizeSockets(
+            SSLSocketCustomizer customizer) {
+        this.socketCustomizers.add(customizer);
+        return this;
+    }
+
+    /**
+     * Watches key store and trust store {@link #useKeyStore(Path, String, char[])
+     * files} for changes, reloading the key material of built contexts in
+     * the background when they change.
+     * <p>
+     * Built contexts, and the socket factories and session caches obtained
+     * from them, remain valid across reloads.
+     *
+     * @see ReloadingX509KeyManager
+     * @see ReloadingX509TrustManager
+     * @param period polling period
+     * @param unit polling period unit
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> reloadStores(long period, TimeUnit unit) {
+        this.reloadPeriod = period;
+        this.reloadUnit = unit;
+        return this;
+    }
+
+    /**
+     * Caches successful certificate chain validations of the built context
+     * trust managers, skipping path building and signature verification for
+     * chains seen recently.
+     *
+     * @see CachingX509TrustManager
+     * @param validationCache validation cache
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> cacheTrustValidation(
+            TrustValidationCache validationCache) {
+        this.trustValidationCache = validationCache;
+        return this;
+    }
+
+    /**
+     * Validates certificate chains against a compact index of the trust
+     * store anchors, shared by every context built from the same trust store
+     * content, rather than having each context copy and search every anchor.
+     * <p>
+     * Recommended for trust stores with a large number of certificates.
+     *
+     * @see IndexedX509TrustManager
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> indexTrustAnchors() {
+        this.indexTrustAnchors = true;
+        return this;
+    }
+
+    /**
+     * Rejects certificate chains containing a revoked certificate, reading
+     * revocation status from the cache rather than fetching it during the
+     * handshake.  Certificates whose status is not yet cached are accepted.
+     *
+     * @see RevocationCheckingX509TrustManager
+     * @param revocations revocation information
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> checkRevocation(RevocationCache revocations) {
+        return checkRevocation(revocations, false);
+    }
+
+    /**
+     * Rejects certificate chains containing a revoked certificate, reading
+     * revocation status from the cache rather than fetching it during the
+     * handshake.
+     *
+     * @see RevocationCheckingX509TrustManager
+     * @param revocations revocation information
+     * @param requireStatus true to also reject certificates whose status is
+     * not yet cached
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> checkRevocation(RevocationCache revocations,
+            boolean requireStatus) {
+        this.revocationCache = revocations;
+        this.requireRevocationStatus = requireStatus;
+        return this;
+    }
+
+    /**
+     * Performs endpoint identification of servers with the verifier, which
+     * caches the result for each host and certificate, rather than the JRE
+     * hostname check.
+     * <p>
+     * Applies to sockets and engines whose SSLParameters set an endpoint
+     * identification algorithm, which HttpsURLConnection does unless a
+     * HostnameVerifier is installed on the connection.
+     *
+     * @see HostnameVerifyingX509TrustManager
+     * @param verifier hostname verifier
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> verifyHostnames(
+            CachingHostnameVerifier verifier) {
+        this.hostnameVerifier = verifier;
+        return this;
+    }
+
+    /**
+     * Obtains the SSLContext from the provided cache, only building a new
+     * context if the cache does not already contain one for an identical
+     * configuration.
+     *
+     * @see SSLContextCache
+     * @param cache context cache
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> useCache(SSLContextCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Obtains the SSLContext from the {@link SSLContextCache#shared() shared}
+     * process-wide cache.
+     *
+     * @return this builder (fluid interface)
+     */
+    public SSLContextBuilder<T> useSharedCache() {
+        return useCache(SSLContextCache.shared());
+    }
+
+    /**
+     * Builds the configured type.
+     * <p>
+     * The key store and trust store streams are read on the first build and
+     * retained, so a builder may be built more than once.
+     *
+     * @return built type
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if the context could not be created
+     */
     public T build()
             throws IOException, GeneralSecurityException {
+        SSLContext context = (cache == null)
+                ? createContext()
+                : cache.get(this);
+        return buildAdapter.apply(context);
+    }
 
-        SSLContext context = SSLContext.getInstance("SSL");
+    /**
+     * Creates a new SSLContext from the current configuration, bypassing any
+     * cache.
+     */
+    SSLContext createContext() throws IOException, GeneralSecurityException {
+        SSLContext context = SSLContext.getInstance(CONTEXT_PROTOCOL);
         context.init(createKeyManagers(), createTrustManagers(), null);
-        
-        return buildAdapter.apply(context);
+        configureSessions(context.getClientSessionContext());
+        configureSessions(context.getServerSessionContext());
+
+        List<SSLSocketCustomizer> customizers = new ArrayList<>();
+        if (socketOptions != null) {
+            customizers.add(socketOptions::apply);
+        }
+        customizers.addAll(socketCustomizers);
+        return new CustomizedSSLContext(context, customizers,
+                (profile == null)
+                        ? null
+                        : profile.select(context.getSupportedSSLParameters()),
+                connector);
+    }
+
+    /**
+     * Returns a key which is equal for builders that would create identical
+     * contexts: the content of the stores, their types and passwords, and
+     * the remaining builder options.
+     */
+    SSLContextKey toKey() throws IOException, GeneralSecurityException {
+        return SSLContextKey.digest()
+                .add(getKeyStoreContent())
+                .add(keyStoreType)
+                .add(keyStorePass)
+                .add(alias)
+                .add(aliasPass)
+                .add(destinationAliases)
+                .add(getTrustStoreContent())
+                .add(trustStoreType)
+                .add(trustStorePass)
+                .add(sessionCacheSize)
+                .add(sessionTimeout)
+                .add(keyStoreFile)
+                .add(trustStoreFile)
+                .add((reloadPeriod > 0)
+                        ? reloadUnit.toMillis(reloadPeriod)
+                        : null)
+                .addIdentity(socketCustomizers)
+                .add(indexTrustAnchors)
+                .addIdentity(trustValidationCache)
+                .addIdentity(revocationCache)
+                .add(requireRevocationStatus)
+                .addIdentity(hostnameVerifier)
+                .add(profile)
+                .add(socketOptions)
+                .addIdentity(connector)
+                .build();
+    }
+
+    private byte[] getKeyStoreContent() throws IOException {
+        if (keyStoreFile != null) {
+            return Files.readAllBytes(keyStoreFile);
+        }
+        if (keyStoreContent == null && keyStore != null) {
+            keyStoreContent = readFully(keyStore);
+            keyStore = null;
+        }
+        return keyStoreContent;
+    }
+
+    private byte[] getTrustStoreContent() throws IOException {
+        if (trustStoreFile != null) {
+            return Files.readAllBytes(trustStoreFile);
+        }
+        if (trustStoreContent == null && trustStore != null) {
+            trustStoreContent = readFully(trustStore);
+            trustStore = null;
+        }
+        return trustStoreContent;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static InputStream open(byte[] content) {
+        return (content == null) ? null : new ByteArrayInputStream(content);
+    }
+
+    private void configureSessions(SSLSessionContext sessions) {
+        if (sessions == null) {
+            return;
+        }
+        if (sessionCacheSize != null) {
+            sessions.setSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout != null) {
+            sessions.setSessionTimeout(sessionTimeout);
+        }
     }
 
     private KeyManager[] createKeyManagers()
             throws GeneralSecurityException, IOException {
+        final String type = keyStoreType;
+        final char[] storePass = keyStorePass;
+        final char[] keyPass = (aliasPass == null) ? keyStorePass : aliasPass;
+        final String chosenAlias = alias;
+        final Map<String, String> destinations
+                = new HashMap<>(destinationAliases);
 
-        KeyStore ks = KeyStore.getInstance(keyStoreType);
-        ks.load(keyStore, keyStorePass);
+        if (keyStoreFile != null && reloadPeriod > 0) {
+            final Path file = keyStoreFile;
+            return new KeyManager[]{ReloadingX509KeyManager.watch(file,
+                () -> x509KeyManager(loadKeyManagers(
+                        Files.readAllBytes(file), type, storePass, keyPass,
+                        chosenAlias, destinations)),
+                reloadPeriod, reloadUnit)};
+        }
+        return loadKeyManagers(getKeyStoreContent(), type, storePass, keyPass,
+                chosenAlias, destinations);
+    }
+
+    private static KeyManager[] loadKeyManagers(byte[] content, String type,
+            char[] storePass, char[] keyPass, String alias,
+            Map<String, String> destinations)
+            throws GeneralSecurityException, IOException {
+
+        KeyStore ks = KeyStore.getInstance(type);
+        ks.load(open(content), storePass);
 
         //load KeyManagers like normal, leveraging the system to do the 
         //heavy lifting; then we'll specialize
         KeyManagerFactory kmf = KeyManagerFactory.getInstance(
                 KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(ks, (aliasPass == null) ? keyStorePass : aliasPass);
+        kmf.init(ks, keyPass);
         KeyManager[] km = kmf.getKeyManagers();
 
+        //decorate any X509KeyManager to choose the client alias by 
+        //destination if this was specified
+        if (!destinations.isEmpty()) {
+            for (int i = 0; i < km.length; i++) {
+                if (km[i] instanceof X509KeyManager) {
+                    km[i] = new DestinationAliasX509KeyManager(destinations,
+                            alias, (X509KeyManager) km[i]);
+                }
+            }
+            return km;
+        }
+
         //decorate any X509KeyManager to always choose the client alias if 
         //this was sepecified
         if (alias != null) {
@@ -216,10 +695,107 @@ public class SSLContextBuilder<T> {
         return km;
     }
 
+    private static X509KeyManager x509KeyManager(KeyManager[] km)
+            throws GeneralSecurityException {
+        for (KeyManager k : km) {
+            if (k instanceof X509KeyManager) {
+                return (X509KeyManager) k;
+            }
+        }
+        throw new GeneralSecurityException("No X.509 key manager available.");
+    }
+
     private TrustManager[] createTrustManagers()
             throws GeneralSecurityException, IOException {
-        KeyStore ks = KeyStore.getInstance(trustStoreType);
-        ks.load(trustStore, trustStorePass);
+        final String type = trustStoreType;
+        final char[] storePass = trustStorePass;
+        final TrustValidationCache validations = trustValidationCache;
+        final boolean indexed = indexTrustAnchors;
+        final RevocationCache revocations = revocationCache;
+        final boolean requireStatus = requireRevocationStatus;
+        final CachingHostnameVerifier verifier = hostnameVerifier;
+
+        if (trustStoreFile != null && reloadPeriod > 0) {
+            final Path file = trustStoreFile;
+            ReloadingX509TrustManager tm = ReloadingX509TrustManager.watch(
+                    file,
+                    () -> x509TrustManager(verifyHostnames(
+                            checkRevocation(cacheValidations(loadTrustManagers(
+                                    Files.readAllBytes(file), type,
+                                    storePass, indexed), validations),
+                                    revocations, requireStatus),
+                            verifier)),
+                    reloadPeriod, reloadUnit);
+            if (validations != null) {
+                //trust anchors changed, previous results are stale
+                tm.addReloadListener(validations::clear);
+            }
+            return new TrustManager[]{tm};
+        }
+        return verifyHostnames(
+                checkRevocation(
+                        cacheValidations(
+                                loadTrustManagers(getTrustStoreContent(),
+                                        type, storePass, indexed),
+                                validations),
+                        revocations, requireStatus),
+                verifier);
+    }
+
+    private static TrustManager[] verifyHostnames(TrustManager[] tm,
+            CachingHostnameVerifier verifier) {
+        if (verifier != null) {
+            for (int i = 0; i < tm.length; i++) {
+                if (tm[i] instanceof X509TrustManager) {
+                    tm[i] = new HostnameVerifyingX509TrustManager(verifier,
+                            (X509TrustManager) tm[i]);
+                }
+            }
+        }
+        return tm;
+    }
+
+    /**
+     * Revocation is checked outside of the validation cache, so a cached
+     * validation does not hide a later revocation.
+     */
+    private static TrustManager[] checkRevocation(TrustManager[] tm,
+            RevocationCache revocations, boolean requireStatus) {
+        if (revocations != null) {
+            for (int i = 0; i < tm.length; i++) {
+                if (tm[i] instanceof X509TrustManager) {
+                    tm[i] = new RevocationCheckingX509TrustManager(
+                            revocations, requireStatus,
+                            (X509TrustManager) tm[i]);
+                }
+            }
+        }
+        return tm;
+    }
+
+    private static TrustManager[] cacheValidations(TrustManager[] tm,
+            TrustValidationCache validations) {
+        if (validations != null) {
+            for (int i = 0; i < tm.length; i++) {
+                if (tm[i] instanceof X509TrustManager) {
+                    tm[i] = new CachingX509TrustManager(validations,
+                            (X509TrustManager) tm[i]);
+                }
+            }
+        }
+        return tm;
+    }
+
+    private static TrustManager[] loadTrustManagers(byte[] content,
+            String type, char[] storePass, boolean indexed)
+            throws GeneralSecurityException, IOException {
+        if (indexed) {
+            return new TrustManager[]{new IndexedX509TrustManager(
+                TrustAnchorIndex.shared(content, type, storePass))};
+        }
+
+        KeyStore ks = KeyStore.getInstance(type);
+        ks.load(open(content), storePass);
 
         TrustManagerFactory tmFact = TrustManagerFactory
                 .getInstance(TrustManagerFactory.getDefaultAlgorithm());
@@ -227,4 +803,15 @@ public class SSLContextBuilder<T> {
         tmFact.init(ks);
         return tmFact.getTrustManagers();
     }
+
+    private static X509TrustManager x509TrustManager(TrustManager[] tm)
+            throws GeneralSecurityException {
+        for (TrustManager t : tm) {
+            if (t instanceof X509TrustManager) {
+                return (X509TrustManager) t;
+            }
+        }
+        throw new GeneralSecurityException(
+                "No X.509 trust manager available.");
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Cache of initialized SSLContext instances, keyed by the content of the key
+ * and trust stores and the remaining {@link SSLContextBuilder} options.
+ * <p>
+ * Builders with identical configurations obtain the same SSLContext (and
+ * therefore the same SSLSocketFactory) from the cache, so key store parsing
+ * and key/trust manager initialization is done once per configuration.
+ * Concurrent requests for a configuration that is still being built wait for
+ * that build rather than starting another.
+ *
+ * @see SSLContextBuilder#useCache(SSLContextCache)
+ */
+public class SSLContextCache {
+
+    private static final SSLContextCache SHARED = new SSLContextCache();
+
+    private final ConcurrentMap<SSLContextKey, CompletableFuture<SSLContext>> contexts
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Process-wide cache.
+     *
+     * @return shared cache
+     */
+    public static SSLContextCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the cached context for the builder configuration, building it
+     * if the cache does not already contain it.
+     *
+     * @param builder context configuration
+     * @return ssl context
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if the context could not be created
+     */
+    public SSLContext get(SSLContextBuilder<?> builder)
+            throws IOException, GeneralSecurityException {
+        return await(getAsync(builder, Runnable::run));
+    }
+
+    /**
+     * Builds, in parallel, each of the provided configurations not already
+     * cached, returning when all have been built.
+     * <p>
+     * Intended to be called at startup with all of the identities an
+     * application will use.
+     *
+     * @param builders context configurations
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if a context could not be created
+     */
+    public void prebuild(Collection<? extends SSLContextBuilder<?>> builders)
+            throws IOException, GeneralSecurityException {
+        prebuild(builders, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds, in parallel on the provided executor, each of the provided
+     * configurations not already cached, returning when all have been built.
+     *
+     * @param builders context configurations
+     * @param executor executor used to build contexts
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if a context could not be created
+     */
+    public void prebuild(Collection<? extends SSLContextBuilder<?>> builders,
+            Executor executor) throws IOException, GeneralSecurityException {
+        List<CompletableFuture<SSLContext>> pending
+                = new ArrayList<>(builders.size());
+        for (SSLContextBuilder<?> b : builders) {
+            pending.add(getAsync(b, executor));
+        }
+        for (CompletableFuture<SSLContext> f : pending) {
+            await(f);
+        }
+    }
+
+    /**
+     * Number of cached contexts.
+     *
+     * @return cache size
+     */
+    public int size() {
+        return contexts.size();
+    }
+
+    /**
+     * Removes the cached context for the builder configuration, if present.
+     *
+     * @param builder context configuration
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if the configuration key could not be
+     * computed
+     */
+    public void invalidate(SSLContextBuilder<?> builder)
+            throws IOException, GeneralSecurityException {
+        contexts.remove(builder.toKey());
+    }
+
+    /**
+     * Removes all cached contexts.
+     */
+    public void clear() {
+        contexts.clear();
+    }
+
+    private CompletableFuture<SSLContext> getAsync(SSLContextBuilder<?> builder,
+            Executor executor) throws IOException, GeneralSecurityException {
+        final SSLContextKey key = builder.toKey();
+        CompletableFuture<SSLContext> cached = contexts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<SSLContext> created = new CompletableFuture<>();
+        cached = contexts.putIfAbsent(key, created);
+        if (cached != null) {
+            return cached;
+        }
+        executor.execute(() -> {
+            try {
+                created.complete(builder.createContext());
+            } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+                //don't cache failures, a later attempt may succeed
+                contexts.remove(key, created);
+                created.completeExceptionally(ex);
+            }
+        });
+        return created;
+    }
+
+    private static SSLContext await(CompletableFuture<SSLContext> future)
+            throws IOException, GeneralSecurityException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for SSLContext.", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new GeneralSecurityException("Unable to create SSLContext.",
+                    cause);
+        }
+    }
+}
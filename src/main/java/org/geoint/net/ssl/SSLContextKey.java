@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Identifies an SSLContext configuration by a SHA-256 digest of its values
+ * (store content, store types, passwords, aliases and options) plus the
+ * identity of any stateful objects, such as socket customizers, that cannot be
+ * compared by value.
+ * <p>
+ * Passwords only contribute to the digest, they are not retained by the key.
+ */
+final class SSLContextKey {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final byte[] digest;
+    private final List<IdentityKey> identities;
+
+    private SSLContextKey(byte[] digest, List<IdentityKey> identities) {
+        this.digest = digest;
+        this.identities = identities;
+    }
+
+    static Builder digest() throws NoSuchAlgorithmException {
+        return new Builder(MessageDigest.getInstance(DIGEST_ALGORITHM));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(digest) + identities.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final SSLContextKey other = (SSLContextKey) obj;
+        return MessageDigest.isEqual(digest, other.digest)
+                && identities.equals(other.identities);
+    }
+
+    static final class Builder {
+
+        private final MessageDigest md;
+        private final List<IdentityKey> identities = new ArrayList<>();
+
+        private Builder(MessageDigest md) {
+            this.md = md;
+        }
+
+        Builder add(byte[] value) {
+            if (value == null) {
+                md.update((byte) 0);
+            } else {
+                md.update((byte) 1);
+                md.update(ByteBuffer.allocate(Integer.BYTES)
+                        .putInt(value.length).array());
+                md.update(value);
+            }
+            return this;
+        }
+
+        Builder add(char[] value) {
+            if (value == null) {
+                return add((byte[]) null);
+            }
+            ByteBuffer encoded = StandardCharsets.UTF_8
+                    .encode(CharBuffer.wrap(value));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            add(bytes);
+            Arrays.fill(bytes, (byte) 0);
+            return this;
+        }
+
+        Builder add(Object value) {
+            return add((value == null)
+                    ? null
+                    : value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Builder addIdentity(Collection<?> objects) {
+            md.update((byte) 2);
+            for (Object o : objects) {
+                identities.add(new IdentityKey(o));
+            }
+            return this;
+        }
+
+        Builder addIdentity(Object object) {
+            md.update((byte) 2);
+            identities.add(new IdentityKey(object));
+            return this;
+        }
+
+        SSLContextKey build() {
+            return new SSLContextKey(md.digest(), identities);
+        }
+    }
+
+    private static final class IdentityKey {
+
+        private final Object object;
+
+        private IdentityKey(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey
+                    && ((IdentityKey) obj).object == object;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Creates SSLEngine instances, configured for client or server mode, from a
+ * context built by {@link SSLContextBuilder}, for use with non-blocking or
+ * asynchronous channels.
+ * <p>
+ * Client engines are created for the peer host and port (so sessions are
+ * resumed per peer), send the peer host name with the server name
+ * indication extension, and by default identify the server endpoint as
+ * HTTPS does.  Server engines require client authentication by default.
+ * <p>
+ * Instances are immutable and thread-safe.
+ *
+ * @see SSLContextBuilder#buildEngineFactory()
+ * @see SSLSocketChannel
+ */
+public final class SSLEngineFactory {
+
+    /**
+     * Endpoint identification algorithm used by default for client engines.
+     */
+    public static final String HTTPS_IDENTIFICATION = "HTTPS";
+
+    /**
+     * Client authentication requested by server engines.
+     */
+    public enum ClientAuth {
+        /**
+         * Client certificates are not requested.
+         */
+        NONE,
+        /**
+         * Client certificates are requested but optional.
+         */
+        WANT,
+        /**
+         * Client certificates are required.
+         */
+        NEED
+    }
+
+    private final SSLContext context;
+    private final String endpointIdentification;
+    private final ClientAuth clientAuth;
+
+    /**
+     * Engine factory with HTTPS endpoint identification for clients and
+     * required client authentication for servers.
+     *
+     * @param context ssl context
+     */
+    public SSLEngineFactory(SSLContext context) {
+        this(context, HTTPS_IDENTIFICATION, ClientAuth.NEED);
+    }
+
+    private SSLEngineFactory(SSLContext context,
+            String endpointIdentification, ClientAuth clientAuth) {
+        this.context = context;
+        this.endpointIdentification = endpointIdentification;
+        this.clientAuth = clientAuth;
+    }
+
+    /**
+     * Returns a factory whose client engines use the endpoint
+     * identification algorithm.
+     *
+     * @param algorithm endpoint identification algorithm (ie "HTTPS" or
+     * "LDAPS"), or null to not identify the server
+     * @return engine factory
+     */
+    public SSLEngineFactory withEndpointIdentification(String algorithm) {
+        return new SSLEngineFactory(context, algorithm, clientAuth);
+    }
+
+    /**
+     * Returns a factory whose server engines request client authentication
+     * as specified.
+     *
+     * @param auth client authentication
+     * @return engine factory
+     */
+    public SSLEngineFactory withClientAuth(ClientAuth auth) {
+        return new SSLEngineFactory(context, endpointIdentification, auth);
+    }
+
+    /**
+     * Context the engines are created from.
+     *
+     * @return ssl context
+     */
+    public SSLContext getContext() {
+        return context;
+    }
+
+    /**
+     * Creates an engine to connect to the peer.
+     *
+     * @param peerHost host name or address of the peer, as the application
+     * refers to it
+     * @param peerPort port of the peer
+     * @return client mode engine
+     */
+    public SSLEngine createClientEngine(String peerHost, int peerPort) {
+        SSLEngine engine = context.createSSLEngine(peerHost, peerPort);
+        engine.setUseClientMode(true);
+        SSLParameters params = engine.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm(endpointIdentification);
+        if (isHostName(peerHost)) {
+            params.setServerNames(Collections.singletonList(
+                    new SNIHostName(peerHost)));
+        }
+        engine.setSSLParameters(params);
+        return engine;
+    }
+
+    /**
+     * Creates an engine to connect to the peer, using the host name of the
+     * address if it was created with one rather than resolving it.
+     *
+     * @param peer address of the peer
+     * @return client mode engine
+     */
+    public SSLEngine createClientEngine(InetSocketAddress peer) {
+        return createClientEngine(peer.getHostString(), peer.getPort());
+    }
+
+    /**
+     * Creates an engine to accept a connection.
+     *
+     * @return server mode engine
+     */
+    public SSLEngine createServerEngine() {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        switch (clientAuth) {
+            case NEED:
+                engine.setNeedClientAuth(true);
+                break;
+            case WANT:
+                engine.setWantClientAuth(true);
+                break;
+            default:
+                engine.setWantClientAuth(false);
+        }
+        return engine;
+    }
+
+    /**
+     * Server name indication is only sent for host names; RFC 6066 does not
+     * permit address literals.
+     */
+    private static boolean isHostName(String host) {
+        if (host == null || host.isEmpty() || host.indexOf(':') >= 0
+                || host.endsWith(".")) {
+            return false;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return true;
+            }
+        }
+        //IPv4 literal
+        return false;
+    }
+}
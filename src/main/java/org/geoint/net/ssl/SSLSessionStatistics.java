@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Counts full and abbreviated (resumed) TLS handshakes completed by sockets
+ * it {@link #customize(SSLSocket) customizes}.
+ * <p>
+ * A handshake is considered resumed if it completed with a session already
+ * recorded by this instance, or with a session derived from one.  Each
+ * recorded session is marked with a session value; TLS 1.2 and earlier
+ * resume the marked session itself, and the JRE copies the values of a TLS
+ * 1.3 session to the sessions of its tickets, so a resumed session carries
+ * the mark under either protocol while concurrent full handshakes to the same
+ * peer never do.
+ *
+ * @see SSLContextBuilder#withSessionStatistics(SSLSessionStatistics)
+ */
+public class SSLSessionStatistics implements SSLSocketCustomizer {
+
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final String marker = SSLSessionStatistics.class.getName() + "@"
+            + Integer.toHexString(System.identityHashCode(this));
+
+    @Override
+    public void customize(SSLSocket socket) {
+        socket.addHandshakeCompletedListener((e) -> record(e.getSession()));
+    }
+
+    private void record(SSLSession session) {
+        boolean known;
+        synchronized (session) {
+            known = session.getValue(marker) != null;
+            if (!known) {
+                session.putValue(marker, Boolean.TRUE);
+            }
+        }
+        if (known) {
+            resumedHandshakes.increment();
+        } else {
+            fullHandshakes.increment();
+        }
+    }
+
+    /**
+     * Number of handshakes which negotiated a new session.
+     *
+     * @return full handshake count
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    /**
+     * Number of abbreviated handshakes which resumed a cached session.
+     *
+     * @return resumed handshake count
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    /**
+     * Ratio of resumed handshakes to all handshakes recorded.
+     *
+     * @return resumption rate between 0 and 1, or 0 if no handshakes were
+     * recorded
+     */
+    public double getResumptionRate() {
+        long resumed = getResumedHandshakes();
+        long total = resumed + getFullHandshakes();
+        return (total == 0) ? 0 : (double) resumed / total;
+    }
+
+    /**
+     * Clears the handshake counters.
+     */
+    public void reset() {
+        fullHandshakes.reset();
+        resumedHandshakes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("full=%d, resumed=%d, resumptionRate=%.3f",
+                getFullHandshakes(), getResumedHandshakes(),
+                getResumptionRate());
+    }
+
+}
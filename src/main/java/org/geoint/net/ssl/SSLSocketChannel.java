@@ -0,0 +1,386 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * Byte channel which encrypts and decrypts the data of a SocketChannel with
+ * an SSLEngine.
+ * <p>
+ * The channel may be in blocking or non-blocking mode.  In non-blocking mode
+ * {@link #read(ByteBuffer)} and {@link #write(ByteBuffer)} return zero when
+ * the underlying channel is not ready, including while the handshake is in
+ * progress; the caller should wait for the channel to become readable (or
+ * writable, if {@link #hasPendingOutput()}) and call again.  The handshake
+ * is started on the first read or write, or by {@link #handshake()}.
+ * Delegated engine tasks are run on the calling thread.
+ * <p>
+ * The record and application data buffers are direct buffers acquired from
+ * a {@link DirectBufferPool} and returned to it when the channel is closed.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @see SSLEngineFactory
+ */
+public class SSLSocketChannel implements ByteChannel {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final DirectBufferPool pool;
+    //received records, in fill (write) mode
+    private ByteBuffer netIn;
+    //records to send, in drain (read) mode
+    private ByteBuffer netOut;
+    //decrypted data not yet read, in drain (read) mode
+    private ByteBuffer appIn;
+    private boolean handshakeStarted;
+    private boolean closed;
+
+    /**
+     * Wraps the channel using buffers from the {@link DirectBufferPool#shared()
+     * shared} pool.
+     *
+     * @param channel connected (or connecting) socket channel
+     * @param engine engine in client or server mode
+     */
+    public SSLSocketChannel(SocketChannel channel, SSLEngine engine) {
+        this(channel, engine, DirectBufferPool.shared());
+    }
+
+    /**
+     * @param channel connected (or connecting) socket channel
+     * @param engine engine in client or server mode
+     * @param pool pool the buffers are acquired from
+     */
+    public SSLSocketChannel(SocketChannel channel, SSLEngine engine,
+            DirectBufferPool pool) {
+        this.channel = channel;
+        this.engine = engine;
+        this.pool = pool;
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = pool.acquire(packetSize);
+        this.netOut = pool.acquire(packetSize);
+        this.netOut.limit(0);
+        this.appIn = pool.acquire(
+                engine.getSession().getApplicationBufferSize());
+        this.appIn.limit(0);
+    }
+
+    /**
+     * Underlying socket channel.
+     *
+     * @return socket channel
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Engine of the channel, from which the session may be obtained once the
+     * handshake has completed.
+     *
+     * @return ssl engine
+     */
+    public SSLEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Progresses the handshake, which in blocking mode completes it.
+     *
+     * @return true if the handshake is complete, false if (in non-blocking
+     * mode) it is waiting on the underlying channel, or if received data
+     * must be read before a post-handshake message can be processed
+     * @throws IOException if the handshake failed
+     */
+    public boolean handshake() throws IOException {
+        ensureOpen();
+        if (!handshakeStarted) {
+            handshakeStarted = true;
+            engine.beginHandshake();
+        }
+        while (true) {
+            if (!flush()) {
+                return false;
+            }
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    break;
+                case NEED_UNWRAP:
+                    SSLEngineResult result = unwrap();
+                    if (result.getStatus()
+                            == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        //decrypted data must be read first
+                        return false;
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new EOFException("Peer closed the connection "
+                                + "during the handshake.");
+                    }
+                    if (result.getStatus()
+                            == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        int read = fill();
+                        if (read < 0) {
+                            throw new EOFException("Peer closed the "
+                                    + "connection during the handshake.");
+                        }
+                        if (read == 0) {
+                            return false;
+                        }
+                    }
+                    break;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * True if encrypted data is waiting to be written to the underlying
+     * channel; in non-blocking mode the caller should wait for the channel to
+     * become writable.
+     *
+     * @return true if there is pending output
+     */
+    public boolean hasPendingOutput() {
+        return netOut.hasRemaining();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (appIn.hasRemaining()) {
+            return transfer(dst);
+        }
+        if (!handshake()) {
+            return 0;
+        }
+        while (!appIn.hasRemaining()) {
+            SSLEngineResult result = unwrap();
+            switch (result.getStatus()) {
+                case CLOSED:
+                    return -1;
+                case BUFFER_UNDERFLOW:
+                    int read = fill();
+                    if (read <= 0) {
+                        return read;
+                    }
+                    break;
+                default:
+                    //post-handshake messages (session tickets, key updates)
+                    if (!handshake()) {
+                        return appIn.hasRemaining() ? transfer(dst) : 0;
+                    }
+            }
+        }
+        return transfer(dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!handshake() || !flush()) {
+            return 0;
+        }
+        int written = 0;
+        while (src.hasRemaining()) {
+            SSLEngineResult result = wrap(src);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("Engine is closed.");
+            }
+            written += result.bytesConsumed();
+            if (!flush()) {
+                break;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    /**
+     * Sends the TLS close notification, if possible without blocking in
+     * non-blocking mode, closes the underlying channel and returns the
+     * buffers to the pool.
+     *
+     * @throws IOException if the underlying channel could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            engine.closeOutbound();
+            boolean sent = !channel.isConnected();
+            while (!sent && !engine.isOutboundDone()) {
+                sent = wrap(EMPTY).bytesProduced() == 0;
+                sent |= !flush();
+            }
+            flush();
+        } catch (IOException ex) {
+            //the peer may already have gone
+        } finally {
+            channel.close();
+            pool.release(netIn);
+            pool.release(netOut);
+            pool.release(appIn);
+            netIn = null;
+            netOut = null;
+            appIn = null;
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private int transfer(ByteBuffer dst) {
+        int n = Math.min(appIn.remaining(), dst.remaining());
+        if (n == appIn.remaining()) {
+            dst.put(appIn);
+        } else {
+            ByteBuffer slice = appIn.duplicate();
+            slice.limit(slice.position() + n);
+            dst.put(slice);
+            appIn.position(appIn.position() + n);
+        }
+        return n;
+    }
+
+    private SSLEngineResult unwrap() throws IOException {
+        while (true) {
+            netIn.flip();
+            appIn.compact();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+                appIn.flip();
+            }
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    if (appIn.hasRemaining()) {
+                        //deliver what was decrypted first
+                        return result;
+                    }
+                    appIn = replace(appIn,
+                            engine.getSession().getApplicationBufferSize());
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) {
+                        //record larger than the buffer
+                        ByteBuffer larger = pool.acquire(Math.max(
+                                engine.getSession().getPacketBufferSize(),
+                                netIn.capacity() * 2));
+                        netIn.flip();
+                        larger.put(netIn);
+                        pool.release(netIn);
+                        netIn = larger;
+                    }
+                    return result;
+                default:
+                    return result;
+            }
+        }
+    }
+
+    private SSLEngineResult wrap(ByteBuffer src) throws IOException {
+        while (true) {
+            netOut.compact();
+            SSLEngineResult result;
+            try {
+                result = engine.wrap(src, netOut);
+            } finally {
+                netOut.flip();
+            }
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return result;
+            }
+            if (!flush()) {
+                return result;
+            }
+            if (netOut.capacity()
+                    < engine.getSession().getPacketBufferSize()) {
+                netOut = replace(netOut,
+                        engine.getSession().getPacketBufferSize());
+            }
+        }
+    }
+
+    /**
+     * Reads from the underlying channel into the record buffer.
+     *
+     * @return number of bytes read, zero if none are available in
+     * non-blocking mode, or -1 at end of stream
+     */
+    private int fill() throws IOException {
+        return channel.read(netIn);
+    }
+
+    /**
+     * Writes pending records to the underlying channel.
+     *
+     * @return true if all were written
+     */
+    private boolean flush() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Replaces an empty drain mode buffer with a larger one from the pool.
+     */
+    private ByteBuffer replace(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer larger = pool.acquire(
+                Math.max(minCapacity, buffer.capacity() * 2));
+        larger.limit(0);
+        pool.release(buffer);
+        return larger;
+    }
+}
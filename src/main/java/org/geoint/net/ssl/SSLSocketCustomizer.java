@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Classes realizing this interface are provided each SSLSocket created by a
+ * {@link CustomizedSSLSocketFactory} before it is returned to the caller.
+ * <p>
+ * The socket may or may not be connected when it is customized, depending on
+ * which factory method created it, but the TLS handshake will not have
+ * started.
+ */
+@FunctionalInterface
+public interface SSLSocketCustomizer {
+
+    /**
+     * Customize the socket before it is returned by the factory.
+     *
+     * @param socket newly created socket
+     * @throws IOException if the socket could not be customized
+     */
+    void customize(SSLSocket socket) throws IOException;
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Polls key store and trust store files for changes on a single shared
+ * background thread.
+ * <p>
+ * Polling the modification time and size is used rather than a
+ * {@link java.nio.file.WatchService} because certificate rotation commonly
+ * replaces a file through a symbolic link swap, which is not reported
+ * reliably as an event on the watched file.
+ * <p>
+ * The watcher only holds a weak reference to its target, and stops polling
+ * once the target has been garbage collected.
+ */
+final class StoreFileWatcher {
+
+    private static final ScheduledExecutorService SCHEDULER
+            = Executors.newSingleThreadScheduledExecutor((r) -> {
+                Thread t = new Thread(r, "ssl-store-watcher");
+                t.setDaemon(true);
+                return t;
+            });
+    private static final Logger LOGGER
+            = Logger.getLogger(StoreFileWatcher.class.getName());
+
+    private StoreFileWatcher() {
+    }
+
+    /**
+     * Calls the listener, with the target, each time the file changes.
+     *
+     * @param <T> target type
+     * @param file file to watch
+     * @param period polling period
+     * @param unit polling period unit
+     * @param target object notified of changes
+     * @param listener change listener
+     * @return handle which may be used to stop watching
+     */
+    static <T> ScheduledFuture<?> watch(Path file, long period, TimeUnit unit,
+            T target, Consumer<T> listener) {
+        FilePoll<T> poll = new FilePoll<>(file, target, listener);
+        ScheduledFuture<?> future = SCHEDULER.scheduleWithFixedDelay(poll,
+                period, period, unit);
+        poll.future = future;
+        return future;
+    }
+
+    private static class FilePoll<T> implements Runnable {
+
+        private final Path file;
+        private final WeakReference<T> target;
+        private final Consumer<T> listener;
+        private volatile ScheduledFuture<?> future;
+        private Object lastModified;
+        private long lastSize;
+
+        private FilePoll(Path file, T target, Consumer<T> listener) {
+            this.file = file;
+            this.target = new WeakReference<>(target);
+            this.listener = listener;
+            readAttributes();
+        }
+
+        @Override
+        public void run() {
+            T t = target.get();
+            if (t == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            if (readAttributes()) {
+                try {
+                    listener.accept(t);
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.WARNING, String.format("Unable to "
+                            + "process change to '%s'.", file), ex);
+                }
+            }
+        }
+
+        /**
+         * @return true if the attributes changed since last read
+         */
+        private boolean readAttributes() {
+            try {
+                BasicFileAttributes attr = Files.readAttributes(file,
+                        BasicFileAttributes.class);
+                boolean changed = !Objects.equals(lastModified,
+                        attr.lastModifiedTime()) || lastSize != attr.size();
+                lastModified = attr.lastModifiedTime();
+                lastSize = attr.size();
+                return changed;
+            } catch (IOException ex) {
+                //file may be briefly missing during rotation, retry next poll
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Loads key material, such as a key manager or trust manager, from its
+ * source.
+ *
+ * @param <T> type loaded
+ */
+@FunctionalInterface
+public interface StoreLoader<T> {
+
+    /**
+     * Load the key material.
+     *
+     * @return loaded key material
+     * @throws IOException if the source could not be read
+     * @throws GeneralSecurityException if the key material is invalid
+     */
+    T load() throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Named sets of TLS protocols, cipher suites and key exchange groups enabled
+ * on the sockets, server sockets and engines of a context.
+ * <p>
+ * Cipher suites are listed in order of preference, favoring AES-GCM (which
+ * is hardware accelerated on current CPUs) and ChaCha20-Poly1305.  Only the
+ * protocols and cipher suites the JRE supports are enabled; named groups
+ * are only configured on JREs which allow setting them per connection (Java
+ * 20 and later), otherwise the JRE default groups (the
+ * {@code jdk.tls.namedGroups} system property) are used.
+ *
+ * @see SSLContextBuilder#withProfile(TlsProfile)
+ */
+public enum TlsProfile {
+
+    /**
+     * TLS 1.3 only.
+     */
+    MODERN(new String[]{"TLSv1.3"},
+            new String[]{
+                "TLS_AES_128_GCM_SHA256",
+                "TLS_CHACHA20_POLY1305_SHA256",
+                "TLS_AES_256_GCM_SHA384"},
+            new String[]{"x25519", "secp256r1", "secp384r1"}),
+    /**
+     * TLS 1.3 and TLS 1.2 with forward secret AEAD cipher suites.
+     */
+    COMPATIBLE(new String[]{"TLSv1.3", "TLSv1.2"},
+            new String[]{
+                "TLS_AES_128_GCM_SHA256",
+                "TLS_CHACHA20_POLY1305_SHA256",
+                "TLS_AES_256_GCM_SHA384",
+                "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+                "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+                "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+                "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256",
+                "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+                "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+                "TLS_DHE_RSA_WITH_AES_128_GCM_SHA256",
+                "TLS_DHE_RSA_WITH_AES_256_GCM_SHA384"},
+            new String[]{"x25519", "secp256r1", "secp384r1", "ffdhe2048",
+                "ffdhe3072"}),
+    /**
+     * TLS 1.3 and TLS 1.2 restricted to NIST approved algorithms: AES-GCM
+     * with ECDHE over the NIST curves.  This does not make the JRE FIPS 140
+     * validated, which requires a validated security provider.
+     */
+    FIPS(new String[]{"TLSv1.3", "TLSv1.2"},
+            new String[]{
+                "TLS_AES_128_GCM_SHA256",
+                "TLS_AES_256_GCM_SHA384",
+                "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+                "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+                "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+                "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"},
+            new String[]{"secp256r1", "secp384r1", "secp521r1"});
+
+    /**
+     * SSLParameters named group accessors, available from Java 20, or null.
+     */
+    private static final Method GET_NAMED_GROUPS
+            = parametersMethod("getNamedGroups");
+    private static final Method SET_NAMED_GROUPS
+            = parametersMethod("setNamedGroups", String[].class);
+
+    private final String[] protocols;
+    private final String[] cipherSuites;
+    private final String[] namedGroups;
+
+    private TlsProfile(String[] protocols, String[] cipherSuites,
+            String[] namedGroups) {
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.namedGroups = namedGroups;
+    }
+
+    /**
+     * Protocols of the profile.
+     *
+     * @return protocol names
+     */
+    public String[] getProtocols() {
+        return protocols.clone();
+    }
+
+    /**
+     * Cipher suites of the profile, in order of preference.
+     *
+     * @return cipher suite names
+     */
+    public String[] getCipherSuites() {
+        return cipherSuites.clone();
+    }
+
+    /**
+     * Key exchange groups of the profile, in order of preference.
+     *
+     * @return named group names
+     */
+    public String[] getNamedGroups() {
+        return namedGroups.clone();
+    }
+
+    /**
+     * Returns the parameters of the profile which are supported.
+     *
+     * @param supported parameters supported by the context
+     * @return profile parameters
+     * @throws NoSuchAlgorithmException if none of the protocols or cipher
+     * suites of the profile are supported
+     */
+    SSLParameters select(SSLParameters supported)
+            throws NoSuchAlgorithmException {
+        SSLParameters params = new SSLParameters(
+                retain(cipherSuites, supported.getCipherSuites()),
+                retain(protocols, supported.getProtocols()));
+        if (params.getProtocols().length == 0
+                || params.getCipherSuites().length == 0) {
+            throw new NoSuchAlgorithmException("TLS profile " + name()
+                    + " is not supported by this JRE.");
+        }
+        //servers choose using our preference order
+        params.setUseCipherSuitesOrder(true);
+        setNamedGroups(params, namedGroups);
+        return params;
+    }
+
+    /**
+     * Applies the protocols, cipher suites and groups of the profile
+     * parameters to the connection parameters, leaving the others as they
+     * are.
+     */
+    static SSLParameters apply(SSLParameters profile, SSLParameters params) {
+        params.setProtocols(profile.getProtocols());
+        params.setCipherSuites(profile.getCipherSuites());
+        params.setUseCipherSuitesOrder(profile.getUseCipherSuitesOrder());
+        setNamedGroups(params, namedGroups(profile));
+        return params;
+    }
+
+    private static String[] retain(String[] wanted, String[] available) {
+        Set<String> supported = new HashSet<>(Arrays.asList(available));
+        List<String> retained = new ArrayList<>(wanted.length);
+        for (String w : wanted) {
+            if (supported.contains(w)) {
+                retained.add(w);
+            }
+        }
+        return retained.toArray(new String[retained.size()]);
+    }
+
+    private static void setNamedGroups(SSLParameters params, String[] groups) {
+        if (SET_NAMED_GROUPS == null || groups == null) {
+            return;
+        }
+        try {
+            SET_NAMED_GROUPS.invoke(params, (Object) groups);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            //leave the JRE default groups
+        }
+    }
+
+    private static String[] namedGroups(SSLParameters params) {
+        if (GET_NAMED_GROUPS == null) {
+            return null;
+        }
+        try {
+            return (String[]) GET_NAMED_GROUPS.invoke(params);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            return null;
+        }
+    }
+
+    private static Method parametersMethod(String name,
+            Class<?>... parameterTypes) {
+        try {
+            return SSLParameters.class.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Immutable set of trust anchors indexed by subject key identifier and
+ * subject name, allowing the anchor(s) which may have issued a certificate
+ * chain to be found without scanning the whole trust store.
+ * <p>
+ * Indexes loaded through {@link #shared(byte[], String, char[])} are shared
+ * by every trust manager (and so every SSLContext) created from the same
+ * trust store content for as long as any of them are in use.
+ *
+ * @see IndexedX509TrustManager
+ */
+public final class TrustAnchorIndex {
+
+    private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+    private static final ConcurrentMap<SSLContextKey, WeakReference<TrustAnchorIndex>> SHARED
+            = new ConcurrentHashMap<>();
+
+    private final X509Certificate[] anchors;
+    private final Map<X500Principal, List<X509Certificate>> bySubject;
+    private final Map<ByteBuffer, List<X509Certificate>> byKeyId;
+
+    /**
+     * Indexes the trusted certificate entries of the key store.
+     *
+     * @param trustStore trust store
+     * @throws KeyStoreException if the trust store could not be read
+     */
+    public TrustAnchorIndex(KeyStore trustStore) throws KeyStoreException {
+        Set<X509Certificate> certs = new LinkedHashSet<>();
+        Enumeration<String> aliases = trustStore.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            if (!trustStore.isCertificateEntry(alias)) {
+                continue;
+            }
+            Certificate c = trustStore.getCertificate(alias);
+            if (c instanceof X509Certificate) {
+                certs.add((X509Certificate) c);
+            }
+        }
+
+        this.anchors = certs.toArray(new X509Certificate[certs.size()]);
+        Map<X500Principal, List<X509Certificate>> subjects
+                = new HashMap<>(anchors.length * 2);
+        Map<ByteBuffer, List<X509Certificate>> keyIds
+                = new HashMap<>(anchors.length * 2);
+        for (X509Certificate c : anchors) {
+            subjects.computeIfAbsent(c.getSubjectX500Principal(),
+                    (k) -> new ArrayList<>(1)).add(c);
+            byte[] ski = subjectKeyIdentifier(c);
+            if (ski != null) {
+                keyIds.computeIfAbsent(ByteBuffer.wrap(ski),
+                        (k) -> new ArrayList<>(1)).add(c);
+            }
+        }
+        this.bySubject = subjects;
+        this.byKeyId = keyIds;
+    }
+
+    /**
+     * Returns the index for the trust store content, creating it only if an
+     * index for identical content is not already in use.
+     *
+     * @param content trust store content
+     * @param type trust store type
+     * @param password trust store password, may be null
+     * @return shared index
+     * @throws IOException if the trust store could not be read
+     * @throws GeneralSecurityException if the trust store is invalid
+     */
+    public static TrustAnchorIndex shared(byte[] content, String type,
+            char[] password) throws IOException, GeneralSecurityException {
+        SSLContextKey key = SSLContextKey.digest()
+                .add(content)
+                .add(type)
+                .add(password)
+                .build();
+        WeakReference<TrustAnchorIndex> ref = SHARED.get(key);
+        TrustAnchorIndex index = (ref == null) ? null : ref.get();
+        if (index != null) {
+            return index;
+        }
+
+        KeyStore ks = KeyStore.getInstance(type);
+        ks.load((content == null) ? null : new ByteArrayInputStream(content),
+                password);
+        index = new TrustAnchorIndex(ks);
+        SHARED.values().removeIf((r) -> r.get() == null);
+        SHARED.put(key, new WeakReference<>(index));
+        return index;
+    }
+
+    /**
+     * Returns the anchors which are either part of the chain or may have
+     * issued a certificate in the chain, searching from the end of the chain.
+     *
+     * @param chain certificate chain, leaf first
+     * @return candidate anchors, empty if none
+     */
+    public List<X509Certificate> findAnchors(X509Certificate[] chain) {
+        for (int i = chain.length - 1; i >= 0; i--) {
+            X509Certificate c = chain[i];
+
+            //certificate is itself trusted
+            List<X509Certificate> same = bySubject.get(c.getSubjectX500Principal());
+            if (same != null && same.contains(c)) {
+                return Collections.singletonList(c);
+            }
+
+            //certificate was issued by an anchor
+            byte[] aki = authorityKeyIdentifier(c);
+            if (aki != null) {
+                List<X509Certificate> issuers = byKeyId.get(ByteBuffer.wrap(aki));
+                if (issuers != null) {
+                    return issuers;
+                }
+            }
+            List<X509Certificate> issuers
+                    = bySubject.get(c.getIssuerX500Principal());
+            if (issuers != null) {
+                return issuers;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Number of indexed anchors.
+     *
+     * @return anchor count
+     */
+    public int size() {
+        return anchors.length;
+    }
+
+    /**
+     * Returns a copy of all indexed anchors.
+     *
+     * @return anchors
+     */
+    public X509Certificate[] getAnchors() {
+        return anchors.clone();
+    }
+
+    /**
+     * Key identifier from the subject key identifier extension, which is an
+     * OCTET STRING wrapping the OCTET STRING key identifier.
+     */
+    private static byte[] subjectKeyIdentifier(X509Certificate c) {
+        byte[] ext = c.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+        if (ext == null) {
+            return null;
+        }
+        DerReader outer = new DerReader(ext);
+        if (!outer.next() || outer.tag != DerReader.OCTET_STRING) {
+            return null;
+        }
+        DerReader inner = outer.contents();
+        return (inner.next() && inner.tag == DerReader.OCTET_STRING)
+                ? inner.value()
+                : null;
+    }
+
+    /**
+     * Key identifier from the authority key identifier extension, which is an
+     * OCTET STRING wrapping a SEQUENCE whose optional first element is the
+     * implicitly tagged [0] key identifier.
+     */
+    private static byte[] authorityKeyIdentifier(X509Certificate c) {
+        byte[] ext = c.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+        if (ext == null) {
+            return null;
+        }
+        DerReader outer = new DerReader(ext);
+        if (!outer.next() || outer.tag != DerReader.OCTET_STRING) {
+            return null;
+        }
+        DerReader seq = outer.contents();
+        if (!seq.next() || seq.tag != DerReader.SEQUENCE) {
+            return null;
+        }
+        DerReader fields = seq.contents();
+        return (fields.next() && fields.tag == DerReader.CONTEXT_0)
+                ? fields.value()
+                : null;
+    }
+}
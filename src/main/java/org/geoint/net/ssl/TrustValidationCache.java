@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of successful certificate chain validations, used by
+ * {@link CachingX509TrustManager}.
+ * <p>
+ * Entries are keyed by the trust manager which validated the chain, a
+ * SHA-256 fingerprint of the chain, the authentication type, and the peer
+ * host checked by endpoint identification (if any).  Trust managers are
+ * compared by identity, so a cache may be shared by contexts with different
+ * trust anchors without one accepting a chain only the other trusts, and the
+ * validations of a {@link ReloadingX509TrustManager} are not reused after it
+ * reloads its trust anchors.  An entry expires after the configured
+ * time-to-live or when the first certificate in the chain expires, whichever
+ * is sooner.  Only successful validations are cached; a chain which fails
+ * validation is validated in full every time.
+ * <p>
+ * When the cache is full, the least recently used validation is evicted.
+ */
+public class TrustValidationCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<Key, Long> validated //value=expires millis
+            = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     *
+     * @param maxEntries maximum number of cached validations
+     * @param ttl maximum time a validation is cached
+     * @param unit ttl unit
+     */
+    public TrustValidationCache(int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must allow at least "
+                    + "one entry.");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * Returns the cache key for a validation, or null if a key could not be
+     * computed (in which case the validation is not cached).
+     */
+    Key key(Object trustManager, X509Certificate[] chain, String authType,
+            boolean server, String peerHost) {
+        if (chain == null || chain.length == 0) {
+            return null;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            for (X509Certificate c : chain) {
+                md.update(c.getEncoded());
+            }
+            return new Key(trustManager, md.digest(), authType, server,
+                    peerHost);
+        } catch (NoSuchAlgorithmException | CertificateEncodingException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true, recording a hit, if the validation is cached and has not
+     * expired; otherwise records a miss.
+     */
+    boolean isValidated(Key key) {
+        if (key != null) {
+            synchronized (validated) {
+                Long expires = validated.get(key);
+                if (expires != null) {
+                    if (expires > System.currentTimeMillis()) {
+                        hits.increment();
+                        return true;
+                    }
+                    validated.remove(key);
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Records a successful validation.
+     */
+    void validated(Key key, X509Certificate[] chain) {
+        if (key == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expires = now + ttlMillis;
+        for (X509Certificate c : chain) {
+            expires = Math.min(expires, c.getNotAfter().getTime());
+        }
+        if (expires <= now) {
+            return;
+        }
+        synchronized (validated) {
+            validated.put(key, expires);
+        }
+    }
+
+    /**
+     * Removes all cached validations, for example after the trust anchors
+     * have changed.
+     */
+    public void clear() {
+        synchronized (validated) {
+            validated.clear();
+        }
+    }
+
+    /**
+     * Number of cached validations.
+     *
+     * @return cache size
+     */
+    public int size() {
+        synchronized (validated) {
+            return validated.size();
+        }
+    }
+
+    /**
+     * Number of validations answered from the cache.
+     *
+     * @return hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of validations which were delegated to the trust manager.
+     *
+     * @return miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Ratio of hits to all lookups.
+     *
+     * @return hit rate between 0 and 1, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return (total == 0) ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d, hits=%d, misses=%d, hitRate=%.3f",
+                size(), getHits(), getMisses(), getHitRate());
+    }
+
+    static final class Key {
+
+        private final Object trustManager;
+        private final byte[] fingerprint;
+        private final String authType;
+        private final boolean server;
+        private final String peerHost;
+        private final int hash;
+
+        private Key(Object trustManager, byte[] fingerprint, String authType,
+                boolean server, String peerHost) {
+            this.trustManager = trustManager;
+            this.fingerprint = fingerprint;
+            this.authType = authType;
+            this.server = server;
+            this.peerHost = peerHost;
+            int h = System.identityHashCode(trustManager);
+            h = 31 * h + Arrays.hashCode(fingerprint);
+            h = 31 * h + ((authType == null) ? 0 : authType.hashCode());
+            h = 31 * h + (server ? 1 : 0);
+            h = 31 * h + ((peerHost == null) ? 0 : peerHost.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return trustManager == other.trustManager
+                    && server == other.server
+                    && Arrays.equals(fingerprint, other.fingerprint)
+                    && Objects.equals(authType, other.authType)
+                    && Objects.equals(peerHost, other.peerHost);
+        }
+    }
+}
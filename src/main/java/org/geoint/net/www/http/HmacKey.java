@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Identified secret key used to sign requests with an HMAC.
+ * <p>
+ * Initializing a Mac is far more expensive than computing a signature, so
+ * each thread signing with the key keeps its own initialized Mac, which is
+ * reset after every signature.  Rotating a key is replacing it with a new
+ * HmacKey.  A thread holds the Macs of its keys weakly, so once the old key
+ * is unreachable its Mac is dropped the next time that thread signs.
+ *
+ * @see HmacSigningInitializer
+ */
+public final class HmacKey {
+
+    public static final String DEFAULT_ALGORITHM = "HmacSHA256";
+
+    //one map per thread rather than a ThreadLocal per key, which would stay
+    //in the ThreadLocalMap of every pooled thread long after rotation
+    private static final ThreadLocal<Map<HmacKey, Mac>> MACS
+            = ThreadLocal.withInitial(WeakHashMap::new);
+
+    private final String keyId;
+    private final SecretKeySpec secret;
+
+    /**
+     * HmacSHA256 key.
+     *
+     * @param keyId key identifier sent with each signature
+     * @param secret shared secret
+     * @throws GeneralSecurityException if the key is not valid for the
+     * algorithm
+     */
+    public HmacKey(String keyId, byte[] secret)
+            throws GeneralSecurityException {
+        this(keyId, secret, DEFAULT_ALGORITHM);
+    }
+
+    /**
+     * @param keyId key identifier sent with each signature
+     * @param secret shared secret
+     * @param algorithm Mac algorithm
+     * @throws GeneralSecurityException if the algorithm is not available or
+     * the key is not valid for the algorithm
+     */
+    public HmacKey(String keyId, byte[] secret, String algorithm)
+            throws GeneralSecurityException {
+        this.keyId = Objects.requireNonNull(keyId, "Key identifier must not "
+                + "be null.");
+        this.secret = new SecretKeySpec(secret, algorithm);
+        //fail now, rather than on the first request
+        Mac.getInstance(algorithm).init(this.secret);
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public String getAlgorithm() {
+        return secret.getAlgorithm();
+    }
+
+    /**
+     * Signs the data.
+     *
+     * @param data data to sign
+     * @return signature
+     */
+    public byte[] sign(byte[] data) {
+        //doFinal resets the Mac for the next signature
+        return MACS.get().computeIfAbsent(this, HmacKey::newMac)
+                .doFinal(data);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(secret.getAlgorithm());
+            mac.init(secret);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+            //verified when constructed
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HmacKey{" + keyId + ", " + secret.getAlgorithm() + '}';
+    }
+}
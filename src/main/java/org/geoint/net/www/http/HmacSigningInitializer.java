@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+import org.geoint.net.IncompleteConnectionInitializationException;
+import org.geoint.net.ParsedURL;
+import org.geoint.net.URLConnectionInitializationException;
+import org.geoint.net.URLConnectionInitializer;
+
+/**
+ * Signs HTTP requests with an HMAC of the canonical request.
+ * <p>
+ * The canonical request is the request method, the path (or "/" if empty),
+ * the raw query (or an empty string) and the value of the Date header, each
+ * followed by a newline except the last.  The Date header is set to the time
+ * of signing and the signature is sent as
+ * <pre>Authorization: HMAC &lt;keyId&gt;:&lt;base64 signature&gt;</pre>
+ * <p>
+ * Keys are selected by route, the {@link ParsedURL#endpointOf(URL) endpoint}
+ * (protocol, host and port) of the URL, falling back to the default key;
+ * {@link #setKey(String, HmacKey) setting} the key of a route rotates it for
+ * subsequent requests.  A request for a route
+ * without a key is not signed, and initialization is incomplete.
+ * <p>
+ * Initializers run when the connection is opened, so the request is signed
+ * with the method at that time (GET).  Applications which change the method
+ * should {@link #sign(HttpURLConnection) sign} the connection again after
+ * setting it.
+ */
+public class HmacSigningInitializer implements URLConnectionInitializer {
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String DATE_HEADER = "Date";
+    private static final String SCHEME = "HMAC ";
+    private static final DateTimeFormatter HTTP_DATE
+            = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final Logger LOGGER
+            = Logger.getLogger(HmacSigningInitializer.class.getName());
+
+    private final ConcurrentMap<String, HmacKey> keys
+            = new ConcurrentHashMap<>(); //key=route
+    private volatile HmacKey defaultKey;
+    private volatile HttpDate date = new HttpDate(0);
+
+    /**
+     * Initializer without a default key; requests are only signed for routes
+     * with a key.
+     */
+    public HmacSigningInitializer() {
+        this(null);
+    }
+
+    /**
+     * @param defaultKey key for routes without their own key, may be null
+     */
+    public HmacSigningInitializer(HmacKey defaultKey) {
+        this.defaultKey = defaultKey;
+    }
+
+    /**
+     * Sets, or rotates, the key of a route.
+     *
+     * @param route route, as returned by {@link ParsedURL#endpointOf(URL)}
+     * @param key signing key
+     */
+    public void setKey(String route, HmacKey key) {
+        keys.put(route, key);
+    }
+
+    /**
+     * Removes the key of the route, so requests are signed with the default
+     * key.
+     *
+     * @param route route
+     */
+    public void removeKey(String route) {
+        keys.remove(route);
+    }
+
+    /**
+     * Sets, or rotates, the key of routes without their own key.
+     *
+     * @param key signing key, or null to sign only routes with a key
+     */
+    public void setDefaultKey(HmacKey key) {
+        this.defaultKey = key;
+    }
+
+    @Override
+    public void initialize(URLConnection connection)
+            throws URLConnectionInitializationException {
+
+        if (!(connection instanceof HttpURLConnection)) {
+            LOGGER.warning(String.format("Unable to sign URLConnection type "
+                    + "'%s'.  This warning may indicate URLProtocolRegistry "
+                    + "is misconfigured.", connection.getClass().getName()));
+            return;
+        }
+        sign((HttpURLConnection) connection);
+    }
+
+    /**
+     * Signs the request with its current method, replacing any signature.
+     *
+     * @param connection unconnected connection
+     * @throws IncompleteConnectionInitializationException if there is no key
+     * for the route
+     */
+    public void sign(HttpURLConnection connection)
+            throws IncompleteConnectionInitializationException {
+        URL url = connection.getURL();
+        String route = ParsedURL.endpointOf(url);
+        HmacKey key = keys.get(route);
+        if (key == null) {
+            key = defaultKey;
+        }
+        if (key == null) {
+            throw new IncompleteConnectionInitializationException(String.format(
+                    "No HMAC key for route '%s', request is not signed.",
+                    route));
+        }
+        String now = httpDate();
+        connection.setRequestProperty(DATE_HEADER, now);
+        connection.setRequestProperty(AUTHORIZATION_HEADER,
+                authorization(key, connection.getRequestMethod(), url, now));
+    }
+
+    /**
+     * Returns the Authorization header value signing the request.
+     */
+    static String authorization(HmacKey key, String method, URL url,
+            String date) {
+        byte[] signature = key.sign(canonicalRequest(method, url, date)
+                .getBytes(StandardCharsets.UTF_8));
+        return new StringBuilder(SCHEME.length() + key.getKeyId().length()
+                + 1 + (signature.length + 2) / 3 * 4)
+                .append(SCHEME)
+                .append(key.getKeyId())
+                .append(':')
+                .append(Base64.getEncoder().encodeToString(signature))
+                .toString();
+    }
+
+    /**
+     * Builds the canonical request from the components the URL already
+     * holds, without parsing it.
+     */
+    static String canonicalRequest(String method, URL url, String date) {
+        String path = url.getPath();
+        String query = url.getQuery();
+        StringBuilder sb = new StringBuilder(method.length() + path.length()
+                + ((query == null) ? 0 : query.length()) + date.length() + 4);
+        sb.append(method).append('\n');
+        if (path.isEmpty()) {
+            sb.append('/');
+        } else {
+            sb.append(path);
+        }
+        sb.append('\n');
+        if (query != null) {
+            sb.append(query);
+        }
+        return sb.append('\n').append(date).toString();
+    }
+
+    /**
+     * Returns the current time as an HTTP date, formatted at most once a
+     * second.
+     */
+    private String httpDate() {
+        long second = System.currentTimeMillis() / 1000;
+        HttpDate d = date;
+        if (d.second != second) {
+            d = new HttpDate(second);
+            date = d;
+        }
+        return d.formatted;
+    }
+
+    private static final class HttpDate {
+
+        private final long second;
+        private final String formatted;
+
+        private HttpDate(long second) {
+            this.second = second;
+            this.formatted = HTTP_DATE.format(Instant.ofEpochSecond(second));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.logging.Logger;
+import org.geoint.net.SocketOptions;
+import org.geoint.net.SocketOptionsSocketFactory;
+import org.geoint.net.URLConnectionInitializationException;
+import org.geoint.net.URLConnectionInitializer;
+import org.geoint.net.www.https.HttpsMutualAuthInitializer;
+
+/**
+ * Applies a {@link SocketOptions} profile to the plain {@code http}
+ * connections of a route.
+ * <p>
+ * The connect and read timeouts of the profile are applied to every
+ * HttpURLConnection.  The JRE HttpURLConnection creates its sockets
+ * internally and, unlike HttpsURLConnection, does not accept a socket
+ * factory, so the TCP options of the profile cannot be applied to it; they
+ * are logged and otherwise ignored.  Clients which accept a SocketFactory
+ * may use a {@link SocketOptionsSocketFactory} with the same profile, and
+ * {@code https} routes should use
+ * {@link HttpsMutualAuthInitializer#withSocketOptions(SocketOptions)}.
+ */
+public class HttpSocketOptionsInitializer implements URLConnectionInitializer {
+
+    private final SocketOptions options;
+
+    private static final Logger LOGGER
+            = Logger.getLogger(HttpSocketOptionsInitializer.class.getName());
+
+    /**
+     * @param options socket options of the route
+     */
+    public HttpSocketOptionsInitializer(SocketOptions options) {
+        this.options = options;
+        if (options.hasSocketOptions()) {
+            LOGGER.warning(String.format("TCP options of %s cannot be "
+                    + "applied to JRE HttpURLConnection sockets; only the "
+                    + "timeouts will be applied.", options));
+        }
+    }
+
+    /**
+     * Returns the options applied to each connection.
+     *
+     * @return socket options
+     */
+    public SocketOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public void initialize(URLConnection connection)
+            throws URLConnectionInitializationException {
+
+        if (!(connection instanceof HttpURLConnection)) {
+            LOGGER.warning(String.format("Unable to configure socket options "
+                    + "on URLConnection type '%s'.  This warning may "
+                    + "indicate URLProtocolRegistry is misconfigured.",
+                    connection.getClass().getName()));
+            return;
+        }
+
+        options.apply(connection);
+    }
+
+}
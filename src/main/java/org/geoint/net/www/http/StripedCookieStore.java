@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.net.CookieManager;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded CookieStore which stripes its cookies by domain.
+ * <p>
+ * Cookies are held in a hash of domains, each guarded by its own lock, so
+ * requests to different hosts do not contend and a lookup only visits the
+ * host and its parent domains rather than every cookie in the store.
+ * Expired cookies are dropped when their domain is visited.  When the store
+ * exceeds its maximum size the cookies of the least recently used domains
+ * are evicted, oldest first, and each domain is limited to a number of
+ * cookies (RFC 6265 recommends at least 3000 and 50 respectively).
+ * <p>
+ * Path, port and secure matching are left to the {@link CookieManager}
+ * using the store.
+ */
+public class StripedCookieStore implements CookieStore {
+
+    public static final int DEFAULT_MAX_COOKIES = 3000;
+    public static final int DEFAULT_MAX_COOKIES_PER_DOMAIN = 50;
+    private static final String LOCAL_DOMAIN = ".local";
+
+    private final ConcurrentMap<String, Domain> domains
+            = new ConcurrentHashMap<>(); //key=lower case domain
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong accessSequence = new AtomicLong();
+    private final Object evictionLock = new Object();
+    private final int maxCookies;
+    private final int maxCookiesPerDomain;
+
+    public StripedCookieStore() {
+        this(DEFAULT_MAX_COOKIES, DEFAULT_MAX_COOKIES_PER_DOMAIN);
+    }
+
+    /**
+     * @param maxCookies maximum number of cookies held by the store
+     * @param maxCookiesPerDomain maximum number of cookies held for a domain
+     */
+    public StripedCookieStore(int maxCookies, int maxCookiesPerDomain) {
+        if (maxCookies < 1 || maxCookiesPerDomain < 1) {
+            throw new IllegalArgumentException("Cookie store must hold at "
+                    + "least one cookie.");
+        }
+        this.maxCookies = maxCookies;
+        this.maxCookiesPerDomain = maxCookiesPerDomain;
+    }
+
+    /**
+     * Returns a CookieManager, with the default policy, using a new store.
+     *
+     * @return cookie manager
+     */
+    public static CookieManager newCookieManager() {
+        return new CookieManager(new StripedCookieStore(), null);
+    }
+
+    @Override
+    public void add(URI uri, HttpCookie cookie) {
+        if (cookie == null) {
+            throw new NullPointerException("Cookie must not be null.");
+        }
+        String name = domainOf(uri, cookie);
+        if (name == null) {
+            return; //no domain to index the cookie by
+        }
+        int delta;
+        while (true) {
+            Domain d = domains.computeIfAbsent(name, Domain::new);
+            synchronized (d) {
+                if (d.removed) {
+                    continue;
+                }
+                delta = d.add(uri, cookie);
+                break;
+            }
+        }
+        if (size.addAndGet(delta) > maxCookies) {
+            evict();
+        }
+    }
+
+    @Override
+    public List<HttpCookie> get(URI uri) {
+        if (uri == null) {
+            throw new NullPointerException("URI must not be null.");
+        }
+        String host = uri.getHost();
+        if (host == null) {
+            return Collections.emptyList();
+        }
+        host = host.toLowerCase(Locale.ROOT);
+
+        List<HttpCookie> cookies = new ArrayList<>();
+        collect(host, cookies);
+        if (host.indexOf('.') == -1) {
+            collect(host + LOCAL_DOMAIN, cookies);
+        } else if (!isAddress(host)) {
+            for (int i = host.indexOf('.'); i != -1;
+                    i = host.indexOf('.', i + 1)) {
+                collect(host.substring(i + 1), cookies);
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public List<HttpCookie> getCookies() {
+        List<HttpCookie> cookies = new ArrayList<>();
+        for (Domain d : domains.values()) {
+            synchronized (d) {
+                size.addAndGet(-d.expire());
+                for (Entry e : d.cookies) {
+                    cookies.add(e.cookie);
+                }
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public List<URI> getURIs() {
+        Set<URI> uris = new LinkedHashSet<>();
+        for (Domain d : domains.values()) {
+            synchronized (d) {
+                for (Entry e : d.cookies) {
+                    if (e.uri != null) {
+                        uris.add(e.uri);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(uris);
+    }
+
+    @Override
+    public boolean remove(URI uri, HttpCookie cookie) {
+        if (cookie == null) {
+            throw new NullPointerException("Cookie must not be null.");
+        }
+        String name = domainOf(uri, cookie);
+        Domain d = (name == null) ? null : domains.get(name);
+        if (d == null) {
+            return false;
+        }
+        synchronized (d) {
+            if (d.remove(cookie)) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public boolean removeAll() {
+        boolean removed = false;
+        for (Domain d : domains.values()) {
+            synchronized (d) {
+                removed |= !d.cookies.isEmpty();
+                size.addAndGet(-d.cookies.size());
+                d.cookies.clear();
+                d.discard();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of cookies held by the store, including any which
+     * have expired but not yet been dropped.
+     *
+     * @return number of cookies
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private void collect(String name, List<HttpCookie> cookies) {
+        Domain d = domains.get(name);
+        if (d == null) {
+            return;
+        }
+        synchronized (d) {
+            d.touch();
+            size.addAndGet(-d.expire());
+            for (Entry e : d.cookies) {
+                cookies.add(e.cookie);
+            }
+            if (d.cookies.isEmpty()) {
+                d.discard();
+            }
+        }
+    }
+
+    /**
+     * Evicts cookies of the least recently used domains until the store is
+     * a tenth below its maximum size, so eviction is not repeated on each
+     * cookie added to a full store.
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            if (size.get() <= maxCookies) {
+                return;
+            }
+            int target = maxCookies - maxCookies / 10;
+            List<Domain> lru = new ArrayList<>(domains.values());
+            lru.sort((a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+            for (Domain d : lru) {
+                if (size.get() <= target) {
+                    return;
+                }
+                synchronized (d) {
+                    size.addAndGet(-d.expire());
+                    while (size.get() > target && !d.cookies.isEmpty()) {
+                        d.cookies.remove(0);
+                        size.decrementAndGet();
+                    }
+                    if (d.cookies.isEmpty()) {
+                        d.discard();
+                    }
+                }
+            }
+        }
+    }
+
+    private static String domainOf(URI uri, HttpCookie cookie) {
+        String name = cookie.getDomain();
+        if (name == null) {
+            if (uri == null || uri.getHost() == null) {
+                return null;
+            }
+            name = uri.getHost();
+        }
+        name = name.toLowerCase(Locale.ROOT);
+        return (name.startsWith(".")) ? name.substring(1) : name;
+    }
+
+    /**
+     * Tests if the host is an IP address literal, which has no parent
+     * domains.
+     */
+    private static boolean isAddress(String host) {
+        if (host.indexOf(':') != -1) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cookies of one domain, in the order they were added.  Guarded by its
+     * own monitor.
+     */
+    private final class Domain {
+
+        private final String name;
+        private final List<Entry> cookies = new ArrayList<>(4);
+        private volatile long lastAccess;
+        private boolean removed;
+
+        private Domain(String name) {
+            this.name = name;
+            touch();
+        }
+
+        private void touch() {
+            lastAccess = accessSequence.incrementAndGet();
+        }
+
+        /**
+         * Replaces any equal cookie with the cookie, or only removes it if
+         * the cookie has expired.
+         *
+         * @return change in number of cookies held
+         */
+        private int add(URI uri, HttpCookie cookie) {
+            touch();
+            int delta = -expire();
+            if (remove(cookie)) {
+                delta--;
+            }
+            if (cookie.getMaxAge() != 0) {
+                cookies.add(new Entry(uri, cookie));
+                delta++;
+                if (cookies.size() > maxCookiesPerDomain) {
+                    cookies.remove(0);
+                    delta--;
+                }
+            }
+            if (cookies.isEmpty()) {
+                discard();
+            }
+            return delta;
+        }
+
+        private boolean remove(HttpCookie cookie) {
+            for (Iterator<Entry> i = cookies.iterator(); i.hasNext();) {
+                if (i.next().cookie.equals(cookie)) {
+                    i.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return number of expired cookies removed
+         */
+        private int expire() {
+            int expired = 0;
+            for (Iterator<Entry> i = cookies.iterator(); i.hasNext();) {
+                if (i.next().cookie.hasExpired()) {
+                    i.remove();
+                    expired++;
+                }
+            }
+            return expired;
+        }
+
+        /**
+         * Removes the empty domain from the store; cookies added to the
+         * domain after this are added to a new domain.
+         */
+        private void discard() {
+            removed = true;
+            domains.remove(name, this);
+        }
+    }
+
+    private static final class Entry {
+
+        private final URI uri;
+        private final HttpCookie cookie;
+
+        private Entry(URI uri, HttpCookie cookie) {
+            this.uri = uri;
+            this.cookie = cookie;
+        }
+    }
+}
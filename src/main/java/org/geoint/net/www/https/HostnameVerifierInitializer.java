@@ -21,20 +21,37 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import org.geoint.net.URLConnectionInitializationException;
 import org.geoint.net.URLConnectionInitializer;
+import org.geoint.net.ssl.CachingHostnameVerifier;
+import org.geoint.net.ssl.SSLContextBuilder;
 
 /**
  * Called to verify the hostname of a URL if the hostname does not match the
  * servers CN or subjectAltName field, as defined by
  * {@link http://tools.ietf.org/search/rfc6125 RFC 6125}.
  * <p>
- * This class only supports HttpsURLConnector instances.
+ * This class only supports HttpsURLConnector instances, which only consult
+ * the verifier when their own hostname check fails.  To verify hostnames of
+ * other SSL connections with a {@link CachingHostnameVerifier}, or to use
+ * one in place of the HttpsURLConnection check, configure it on the
+ * SSLContext with
+ * {@link SSLContextBuilder#verifyHostnames(CachingHostnameVerifier)}
+ * instead.
  *
  */
-//TODO create a hostname verifier for other SSL connections...URLConnection API isn't really too helpful here
 public class HostnameVerifierInitializer implements URLConnectionInitializer {
     
     private final HostnameVerifier verifier;
 
+    /**
+     * Create an initializer using an RFC 6125 verifier which caches its
+     * results.
+     *
+     * @see CachingHostnameVerifier
+     */
+    public HostnameVerifierInitializer() {
+        this(new CachingHostnameVerifier());
+    }
+
     /**
      *
      * @param verifier verifier to use
@@ -51,6 +68,15 @@ public class HostnameVerifierInitializer implements URLConnectionInitializer {
     public HostnameVerifierInitializer(Predicate<String> hostnameVerifier) {
         this((n, s) -> hostnameVerifier.test(n));
     }
+
+    /**
+     * Returns the verifier installed on each connection.
+     *
+     * @return hostname verifier
+     */
+    public HostnameVerifier getHostnameVerifier() {
+        return verifier;
+    }
     
     @Override
     public void initialize(URLConnection connection)
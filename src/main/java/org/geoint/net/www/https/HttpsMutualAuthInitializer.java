@@ -22,9 +22,13 @@ import java.util.logging.Logger;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
+import org.geoint.net.SocketOptions;
+import org.geoint.net.URLProtocolRegistry;
 import org.geoint.net.URLConnectionInitializationException;
 import org.geoint.net.URLConnectionInitializer;
+import org.geoint.net.ssl.CustomizedSSLSocketFactory;
 import org.geoint.net.ssl.SSLContextBuilder;
+import org.geoint.net.www.http.StripedCookieStore;
 
 /**
  * Configures a URLConnection for mutual authentication with X.509 certificates.
@@ -32,16 +36,30 @@ import org.geoint.net.ssl.SSLContextBuilder;
  * This initializer currently only supports the HTTPS protocol, configuring
  * mutual authentication for implementations of HttpsURLConnection.
  * <p>
- * HttpsMutualAuthInitializer ensures that there is a {@link CookieHandler}
- * configured, otherwise configures the {@link CookieManager JVM default}. If
- * you wish to use a custom CookieHandler you should set this up before
- * initializing this class.
+ * By default HttpsMutualAuthInitializer ensures that there is a
+ * {@link CookieHandler} configured, otherwise configures a
+ * {@link CookieManager} with a bounded {@link StripedCookieStore} as the JVM
+ * default. If you wish to use a custom CookieHandler you should set this up
+ * before initializing this class, or set it on the
+ * {@link URLProtocolRegistry#setCookieHandler(CookieHandler) registry} to
+ * keep the cookies of each registry apart, constructing the initializer so
+ * that it does not install a JVM default handler.
+ * <p>
+ * One initializer may be registered for several routes, in which case all of
+ * the routes share its SSLSocketFactory, and therefore its TLS session cache
+ * and pooled keep-alive connections.  Initializers constructed from the same
+ * context built by {@link SSLContextBuilder} share these in the same way.
+ * <p>
+ * To tune the sockets of a route, register an initializer
+ * {@link #withSocketOptions(SocketOptions) with socket options} for that
+ * route.
  *
  * @author steve_siebert
  */
 public class HttpsMutualAuthInitializer implements URLConnectionInitializer {
 
     private final SSLSocketFactory sslSocketFactory;
+    private final SocketOptions socketOptions;
 
     private static final Logger LOGGER
             = Logger.getLogger(HttpsMutualAuthInitializer.class.getName());
@@ -51,12 +69,42 @@ public class HttpsMutualAuthInitializer implements URLConnectionInitializer {
     }
 
     public HttpsMutualAuthInitializer(SSLSocketFactory sslSocketFactory) {
-        this.sslSocketFactory = sslSocketFactory;
-        if (CookieHandler.getDefault() == null) {
-            CookieHandler.setDefault(new CookieManager());
+        this(sslSocketFactory, true);
+    }
+
+    /**
+     *
+     * @param context ssl configuration
+     * @param installCookieHandler false to leave the JVM default
+     * CookieHandler unset, for example when cookies are handled by the
+     * registry
+     */
+    public HttpsMutualAuthInitializer(SSLContext context,
+            boolean installCookieHandler) {
+        this(context.getSocketFactory(), installCookieHandler);
+    }
+
+    /**
+     *
+     * @param sslSocketFactory socket factory installed on each connection
+     * @param installCookieHandler false to leave the JVM default
+     * CookieHandler unset, for example when cookies are handled by the
+     * registry
+     */
+    public HttpsMutualAuthInitializer(SSLSocketFactory sslSocketFactory,
+            boolean installCookieHandler) {
+        this(sslSocketFactory, null);
+        if (installCookieHandler && CookieHandler.getDefault() == null) {
+            CookieHandler.setDefault(StripedCookieStore.newCookieManager());
         }
     }
 
+    private HttpsMutualAuthInitializer(SSLSocketFactory sslSocketFactory,
+            SocketOptions socketOptions) {
+        this.sslSocketFactory = sslSocketFactory;
+        this.socketOptions = socketOptions;
+    }
+
     /**
      * Fluid API to construct a SSLSocketFactory used by this initializer.
      *
@@ -66,6 +114,35 @@ public class HttpsMutualAuthInitializer implements URLConnectionInitializer {
         return SSLContextBuilder.onBuild(HttpsMutualAuthInitializer::new);
     }
 
+    /**
+     * Returns an initializer using the same SSL configuration which also
+     * applies the socket options to each socket, and the connect and read
+     * timeouts of the options to each connection.
+     * <p>
+     * The returned initializer installs its own socket factory, so
+     * connections made with it are pooled separately from connections made
+     * with this initializer, but share its TLS session cache.
+     *
+     * @param options socket options
+     * @return initializer
+     */
+    public HttpsMutualAuthInitializer withSocketOptions(
+            SocketOptions options) {
+        return new HttpsMutualAuthInitializer(options.hasSocketOptions()
+                ? new CustomizedSSLSocketFactory(sslSocketFactory,
+                        options::apply)
+                : sslSocketFactory, options);
+    }
+
+    /**
+     * Returns the socket factory installed on each connection.
+     *
+     * @return ssl socket factory
+     */
+    public SSLSocketFactory getSSLSocketFactory() {
+        return sslSocketFactory;
+    }
+
     @Override
     public void initialize(URLConnection connection)
             throws URLConnectionInitializationException {
@@ -79,6 +156,9 @@ public class HttpsMutualAuthInitializer implements URLConnectionInitializer {
         }
 
         ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+        if (socketOptions != null) {
+            socketOptions.apply(connection);
+        }
     }
 
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.oauth;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Bearer access token and the time it expires.
+ */
+public final class AccessToken {
+
+    private final String value;
+    private final Instant expires;
+
+    /**
+     * @param value token value
+     * @param expires time the token expires, or null if it does not expire
+     */
+    public AccessToken(String value, Instant expires) {
+        this.value = Objects.requireNonNull(value, "Token value must not be "
+                + "null.");
+        this.expires = expires;
+    }
+
+    /**
+     * Token which expires after the provided lifetime, as returned by a token
+     * endpoint.
+     *
+     * @param value token value
+     * @param lifetime time from now the token is valid for
+     * @return token
+     */
+    public static AccessToken expiresIn(String value, Duration lifetime) {
+        return new AccessToken(value, Instant.now().plus(lifetime));
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return time the token expires, or null if it does not expire
+     */
+    public Instant getExpires() {
+        return expires;
+    }
+
+    /**
+     * Tests if the token is still valid at the provided time.
+     *
+     * @param time time
+     * @return true if the token has not expired
+     */
+    public boolean isValidAt(Instant time) {
+        return expires == null || time.isBefore(expires);
+    }
+
+    /**
+     * Returns the value of the HTTP Authorization header for this token.
+     *
+     * @return authorization header value
+     */
+    public String toAuthorization() {
+        return "Bearer " + value;
+    }
+
+    @Override
+    public String toString() {
+        //don't leak the token value into logs
+        return "AccessToken{expires=" + expires + '}';
+    }
+
+}
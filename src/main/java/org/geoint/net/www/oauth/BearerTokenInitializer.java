@@ -0,0 +1,366 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.oauth;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoint.net.FatalConnectionInitializationException;
+import org.geoint.net.IncompleteConnectionInitializationException;
+import org.geoint.net.ParsedURL;
+import org.geoint.net.URLConnectionInitializationException;
+import org.geoint.net.URLConnectionInitializer;
+
+/**
+ * Sets the HTTP Authorization header of each connection to a bearer token,
+ * such as an OAuth 2.0 access token, obtained lazily and cached per route.
+ * <p>
+ * A route is, by default, the {@link ParsedURL#endpointOf(URL) endpoint} of
+ * the URL: its protocol, host and port.  Tokens are obtained from the
+ * {@link TokenSource} the first time a route is connected to.  A new token
+ * is obtained in the background at the start of the refresh window before
+ * the current token expires (or halfway through its lifetime, if it is
+ * issued for less than the window) while connections continue to use the
+ * current one, so connections do not wait on the token endpoint while tokens
+ * are in use.  Tokens are only refreshed in the background if the
+ * current token was used; a failed refresh is retried with exponential
+ * backoff while the current token is valid.  Only one token is requested for
+ * a route at a time; connections which need a token while it is requested
+ * wait for that request rather than make their own.
+ * <p>
+ * If no valid token can be obtained the initializer throws an
+ * {@link IncompleteConnectionInitializationException} when the token source
+ * failed with an IOException or did not respond in time (the connection is
+ * returned without credentials); until the backoff after such a failure
+ * has passed, connections without a valid token fail this way immediately
+ * rather than request another token.  It throws a
+ * {@link FatalConnectionInitializationException} when the token source
+ * refused to grant a token.
+ */
+public class BearerTokenInitializer implements URLConnectionInitializer {
+
+    /**
+     * Time before a token expires in which it is refreshed.
+     */
+    public static final Duration DEFAULT_REFRESH_WINDOW
+            = Duration.ofSeconds(60);
+    /**
+     * Time a connection waits for a token to be obtained.
+     */
+    public static final Duration DEFAULT_FETCH_TIMEOUT
+            = Duration.ofSeconds(30);
+    private static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(60);
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final ExecutorService REFRESH
+            = Executors.newCachedThreadPool((r) -> {
+                Thread t = new Thread(r, "bearer-token-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+    private static final ScheduledThreadPoolExecutor SCHEDULER
+            = new ScheduledThreadPoolExecutor(1, (r) -> {
+                Thread t = new Thread(r, "bearer-token-refresh-scheduler");
+                t.setDaemon(true);
+                return t;
+            });
+    private static final Logger LOGGER
+            = Logger.getLogger(BearerTokenInitializer.class.getName());
+
+    private final TokenSource source;
+    private final Function<URL, String> routeKey;
+    private final Duration refreshWindow;
+    private final Duration fetchTimeout;
+    private final ConcurrentMap<String, Route> routes
+            = new ConcurrentHashMap<>(); //key=route
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Initializer caching a token for each protocol, host and port.
+     *
+     * @param source token source
+     */
+    public BearerTokenInitializer(TokenSource source) {
+        this(source, ParsedURL::endpointOf, DEFAULT_REFRESH_WINDOW,
+                DEFAULT_FETCH_TIMEOUT);
+    }
+
+    /**
+     * @param source token source
+     * @param routeKey function returning the route of a URL; URLs of the same
+     * route share a token
+     * @param refreshWindow time before a token expires in which it is
+     * refreshed in the background
+     * @param fetchTimeout maximum time a connection waits for a token
+     */
+    public BearerTokenInitializer(TokenSource source,
+            Function<URL, String> routeKey, Duration refreshWindow,
+            Duration fetchTimeout) {
+        if (refreshWindow.isNegative() || fetchTimeout.isNegative()) {
+            throw new IllegalArgumentException("Token refresh window and "
+                    + "timeout must not be negative.");
+        }
+        this.source = source;
+        this.routeKey = routeKey;
+        this.refreshWindow = refreshWindow;
+        this.fetchTimeout = fetchTimeout;
+    }
+
+    @Override
+    public void initialize(URLConnection connection)
+            throws URLConnectionInitializationException {
+
+        if (!(connection instanceof HttpURLConnection)) {
+            LOGGER.warning(String.format("Unable to set bearer token on "
+                    + "URLConnection type '%s'.  This warning may indicate "
+                    + "URLProtocolRegistry is misconfigured.",
+                    connection.getClass().getName()));
+            return;
+        }
+
+        AccessToken token = getToken(routeKey.apply(connection.getURL()));
+        connection.setRequestProperty(AUTHORIZATION_HEADER,
+                token.toAuthorization());
+    }
+
+    /**
+     * Returns a valid token for the route, obtaining one if there is no
+     * valid token cached.
+     *
+     * @param route route
+     * @return valid token
+     * @throws IncompleteConnectionInitializationException if a token could
+     * not be obtained in time
+     * @throws FatalConnectionInitializationException if the token source
+     * refused to grant a token
+     */
+    public AccessToken getToken(String route)
+            throws IncompleteConnectionInitializationException,
+            FatalConnectionInitializationException {
+        Route r = routes.computeIfAbsent(route, Route::new);
+        Instant now = Instant.now();
+        AccessToken current = r.token;
+        if (current != null && current.isValidAt(now)) {
+            Instant refreshAt = r.refreshAt;
+            if (refreshAt != null && !now.isBefore(refreshAt)) {
+                r.refresh(); //in the background, current is still valid
+            }
+        } else {
+            CompletableFuture<AccessToken> f = r.refreshUnlessBackingOff(now);
+            if (f == null) {
+                throw new IncompleteConnectionInitializationException(
+                        String.format("No bearer token for route '%s'; the "
+                                + "token source failed and is retried after "
+                                + "%s.", route, r.refreshAt));
+            }
+            current = r.await(f);
+        }
+        r.used = true;
+        return current;
+    }
+
+    /**
+     * Discards the cached token of the route, for example after the server
+     * rejected it, so the next connection obtains a new token.
+     *
+     * @param route route
+     */
+    public void invalidate(String route) {
+        Route r = routes.get(route);
+        if (r != null) {
+            r.token = null;
+        }
+    }
+
+    /**
+     * Cached token of a route, the request for its next token if one is in
+     * flight, and the scheduled background refresh.
+     */
+    private final class Route {
+
+        private final String route;
+        private volatile AccessToken token;
+        private volatile Instant refreshAt; //null if not refreshed early
+        private volatile boolean used; //since the token was obtained
+        private CompletableFuture<AccessToken> inFlight; //guarded by this
+        private ScheduledFuture<?> scheduled; //guarded by this
+        private int failures; //guarded by this
+
+        private Route(String route) {
+            this.route = route;
+        }
+
+        /**
+         * Starts a request for a new token unless one is already in flight.
+         *
+         * @return request in flight
+         */
+        private synchronized CompletableFuture<AccessToken> refresh() {
+            if (inFlight == null) {
+                CompletableFuture<AccessToken> f = new CompletableFuture<>();
+                inFlight = f;
+                REFRESH.execute(() -> fetch(f));
+            }
+            return inFlight;
+        }
+
+        /**
+         * Starts a request for a new token unless one is already in flight,
+         * or a failed request is being backed off.
+         *
+         * @return request in flight, or null if backing off
+         */
+        private synchronized CompletableFuture<AccessToken>
+                refreshUnlessBackingOff(Instant now) {
+            if (inFlight == null && failures > 0 && refreshAt != null
+                    && now.isBefore(refreshAt)) {
+                return null;
+            }
+            return refresh();
+        }
+
+        private void fetch(CompletableFuture<AccessToken> f) {
+            try {
+                AccessToken t = source.fetch(route);
+                if (t == null) {
+                    throw new IOException("Token source returned no token.");
+                }
+                used = false;
+                token = t;
+                scheduleRefresh(t);
+                complete(f);
+                f.complete(t);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, String.format("Unable to obtain "
+                        + "bearer token for route '%s'.", route), ex);
+                if (!(ex instanceof FatalConnectionInitializationException)) {
+                    scheduleRetry();
+                }
+                complete(f);
+                f.completeExceptionally(ex);
+            }
+        }
+
+        /**
+         * Schedules the refresh of a new token at the start of the refresh
+         * window, or halfway through its lifetime if that is later.
+         */
+        private synchronized void scheduleRefresh(AccessToken t) {
+            failures = 0;
+            if (t.getExpires() == null) {
+                refreshAt = null;
+                cancelScheduled();
+                return;
+            }
+            Duration lifetime = Duration.between(Instant.now(),
+                    t.getExpires());
+            Duration delay = lifetime.minus(refreshWindow);
+            if (delay.compareTo(lifetime.dividedBy(2)) < 0) {
+                delay = lifetime.dividedBy(2);
+            }
+            schedule(delay);
+        }
+
+        /**
+         * Schedules another attempt after a failed refresh, if the current
+         * token is still valid by then, and defers refreshes by connections
+         * until then.
+         */
+        private synchronized void scheduleRetry() {
+            Duration delay = INITIAL_RETRY_DELAY
+                    .multipliedBy(1L << Math.min(failures++, 16));
+            if (delay.compareTo(MAX_RETRY_DELAY) > 0) {
+                delay = MAX_RETRY_DELAY;
+            }
+            AccessToken current = token;
+            if (current != null
+                    && current.isValidAt(Instant.now().plus(delay))) {
+                schedule(delay);
+            } else {
+                //connections wait for a token once the current one expires
+                cancelScheduled();
+                refreshAt = Instant.now().plus(delay);
+            }
+        }
+
+        private void schedule(Duration delay) { //guarded by this
+            cancelScheduled();
+            refreshAt = Instant.now().plus(delay);
+            scheduled = SCHEDULER.schedule(() -> {
+                if (used) {
+                    refresh();
+                }
+            }, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        private void cancelScheduled() { //guarded by this
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+
+        private synchronized void complete(CompletableFuture<AccessToken> f) {
+            if (inFlight == f) {
+                inFlight = null;
+            }
+        }
+
+        private AccessToken await(CompletableFuture<AccessToken> f) {
+            try {
+                return f.get(fetchTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IncompleteConnectionInitializationException(
+                        String.format("Interrupted waiting for bearer token "
+                                + "for route '%s'.", route), ex);
+            } catch (TimeoutException ex) {
+                throw new IncompleteConnectionInitializationException(
+                        String.format("Timed out waiting for bearer token "
+                                + "for route '%s'.", route), ex);
+            } catch (ExecutionException | CompletionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof FatalConnectionInitializationException) {
+                    throw new FatalConnectionInitializationException(
+                            cause.getMessage(), cause);
+                }
+                throw new IncompleteConnectionInitializationException(
+                        String.format("Unable to obtain bearer token for "
+                                + "route '%s'.", route), cause);
+            }
+        }
+    }
+}
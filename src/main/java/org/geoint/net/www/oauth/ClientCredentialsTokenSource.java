@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.oauth;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.geoint.net.FatalConnectionInitializationException;
+import org.geoint.net.URLProtocolRegistry;
+
+/**
+ * Obtains tokens from an OAuth 2.0 token endpoint with the client credentials
+ * grant (RFC 6749 section 4.4), authenticating the client with HTTP Basic
+ * authentication.
+ * <p>
+ * The same token is requested for every route; use a source per initializer
+ * to request tokens with different scopes.  A rejected request (HTTP 400 or
+ * 401, such as invalid client credentials) is fatal, other failures may be
+ * retried.
+ * <p>
+ * The token endpoint is connected to without the initializers of the
+ * {@link URLProtocolRegistry registry}, so a registry registered with the JVM
+ * does not initialize the token request with the initializer waiting on it.
+ */
+public class ClientCredentialsTokenSource implements TokenSource {
+
+    private static final Pattern ACCESS_TOKEN = Pattern.compile(
+            "\"access_token\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)+)\"");
+    private static final Pattern EXPIRES_IN
+            = Pattern.compile("\"expires_in\"\\s*:\\s*\"?(\\d+)");
+    private static final Pattern TOKEN_TYPE = Pattern.compile(
+            "\"token_type\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)+)\"");
+    private static final String BEARER = "bearer";
+
+    private final URL tokenEndpoint;
+    private final String authorization;
+    private final String requestBody;
+
+    /**
+     * @param tokenEndpoint token endpoint url
+     * @param clientId client identifier
+     * @param clientSecret client secret
+     * @param scope requested scope, or null for the default scope of the
+     * client
+     */
+    public ClientCredentialsTokenSource(URL tokenEndpoint, String clientId,
+            String clientSecret, String scope) {
+        this.tokenEndpoint = tokenEndpoint;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+                (formEncode(clientId) + ":" + formEncode(clientSecret))
+                .getBytes(StandardCharsets.UTF_8));
+        this.requestBody = "grant_type=client_credentials"
+                + ((scope == null) ? "" : "&scope=" + formEncode(scope));
+    }
+
+    @Override
+    public AccessToken fetch(String route)
+            throws IOException, FatalConnectionInitializationException {
+        HttpURLConnection conn = (HttpURLConnection) URLProtocolRegistry
+                .openUninitialized(tokenEndpoint);
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setUseCaches(false);
+            conn.setRequestProperty("Authorization", authorization);
+            conn.setRequestProperty("Content-Type",
+                    "application/x-www-form-urlencoded");
+            conn.setRequestProperty("Accept", "application/json");
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(requestBody.getBytes(StandardCharsets.UTF_8));
+            }
+
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_BAD_REQUEST
+                    || status == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                throw new FatalConnectionInitializationException(
+                        String.format("Token endpoint '%s' refused to grant "
+                                + "a token: %s", tokenEndpoint,
+                                read(conn.getErrorStream())));
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("Token endpoint '%s' "
+                        + "responded with HTTP %d.", tokenEndpoint, status));
+            }
+            return parse(read(conn.getInputStream()));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Parses the access token response (RFC 6749 section 5.1).
+     */
+    AccessToken parse(String response) throws IOException {
+        Matcher type = TOKEN_TYPE.matcher(response);
+        if (type.find()) {
+            String tokenType = unescape(type.group(1));
+            if (!BEARER.equalsIgnoreCase(tokenType)) {
+                throw new IOException(String.format("Token endpoint '%s' "
+                        + "issued an unsupported token type '%s'.",
+                        tokenEndpoint, tokenType));
+            }
+        }
+        Matcher token = ACCESS_TOKEN.matcher(response);
+        if (!token.find()) {
+            throw new IOException(String.format("Token endpoint '%s' response "
+                    + "did not contain an access token.", tokenEndpoint));
+        }
+        String value = unescape(token.group(1));
+        Matcher expires = EXPIRES_IN.matcher(response);
+        return (expires.find())
+                ? AccessToken.expiresIn(value,
+                        Duration.ofSeconds(Long.parseLong(expires.group(1))))
+                : new AccessToken(value, null);
+    }
+
+    /**
+     * Decodes the escape sequences of a JSON string (RFC 8259 section 7).
+     */
+    private String unescape(String json) throws IOException {
+        if (json.indexOf('\\') == -1) {
+            return json;
+        }
+        StringBuilder sb = new StringBuilder(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = (++i < json.length()) ? json.charAt(i) : 0;
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    sb.append(unicodeEscape(json, i + 1));
+                    i += 4;
+                    break;
+                default:
+                    throw invalidEscape();
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the character of the four hex digits of a unicode escape.
+     */
+    private char unicodeEscape(String json, int start) throws IOException {
+        if (start + 4 > json.length()) {
+            throw invalidEscape();
+        }
+        int c = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(json.charAt(i), 16);
+            if (digit == -1) {
+                throw invalidEscape();
+            }
+            c = (c << 4) | digit;
+        }
+        return (char) c;
+    }
+
+    private IOException invalidEscape() {
+        return new IOException(String.format("Token endpoint '%s' response "
+                + "contains an invalid escape sequence.", tokenEndpoint));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream i = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = i.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String formEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            //UTF-8 is always supported
+            throw new IllegalStateException(ex);
+        }
+    }
+}
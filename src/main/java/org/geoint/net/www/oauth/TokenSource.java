@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.oauth;
+
+import java.io.IOException;
+import org.geoint.net.FatalConnectionInitializationException;
+
+/**
+ * Obtains access tokens, for example from an OAuth 2.0 token endpoint.
+ *
+ * @see ClientCredentialsTokenSource
+ */
+@FunctionalInterface
+public interface TokenSource {
+
+    /**
+     * Obtains a new access token for the route.
+     *
+     * @param route route the token is used for, as keyed by the
+     * {@link BearerTokenInitializer}
+     * @return new token
+     * @throws IOException if the token could not be obtained, but may be if
+     * tried again
+     * @throws FatalConnectionInitializationException if the token will not
+     * be granted, for example if the client credentials were rejected
+     */
+    AccessToken fetch(String route)
+            throws IOException, FatalConnectionInitializationException;
+}
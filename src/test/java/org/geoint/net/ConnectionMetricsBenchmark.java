@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Opening, connecting and disconnecting a registry connection with
+ * {@link ConnectionMetrics} disabled and enabled; the connections are stubs,
+ * so this measures the overhead of the instrumentation alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionMetricsBenchmark {
+
+    private URL disabled;
+    private URL enabled;
+
+    @Setup
+    public void setup() throws Exception {
+        URLProtocolRegistry plain = new URLProtocolRegistry();
+        plain.registerHandler("http", StubURLStreamHandler::new);
+        disabled = plain.toUrl("http://maps.example.com/v1/tiles");
+
+        URLProtocolRegistry instrumented = new URLProtocolRegistry();
+        instrumented.registerHandler("http", StubURLStreamHandler::new);
+        instrumented.setConnectionMetrics(new ConnectionMetrics());
+        enabled = instrumented.toUrl("http://maps.example.com/v1/tiles");
+    }
+
+    @Benchmark
+    public URLConnection metricsDisabled() throws Exception {
+        return request(disabled);
+    }
+
+    @Benchmark
+    public URLConnection metricsEnabled() throws Exception {
+        return request(enabled);
+    }
+
+    private static URLConnection request(URL url) throws Exception {
+        URLConnection conn = url.openConnection();
+        conn.connect();
+        ((HttpURLConnection) conn).disconnect();
+        return conn;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ConnectionMetricsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.geoint.net.ssl.TestKeyStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConnectionMetricsTest {
+
+    private Server server;
+    private Origin origin;
+    private String http;
+    private String https;
+    private final List<ConnectionTiming> timings
+            = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void start() throws Exception {
+        origin = new Origin();
+        server = new Server();
+        ServerConnector plain = new ServerConnector(server);
+        SslContextFactory ssl = new SslContextFactory();
+        ssl.setSslContext(TestKeyStore.getPkiServerConfig((c) -> c));
+        ServerConnector tls = new ServerConnector(server, ssl);
+        server.addConnector(plain);
+        server.addConnector(tls);
+        server.setHandler(origin);
+        server.start();
+        http = "http://localhost:" + plain.getLocalPort();
+        https = "https://localhost:" + tls.getLocalPort();
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testRequestTimedAndCounted() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics(timings::add);
+        origin.delayMillis = 50;
+        HttpURLConnection conn = (HttpURLConnection) metrics.wrap(
+                new URL(http + "/data?size=1000").openConnection());
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(new byte[100]);
+        }
+        assertEquals(200, conn.getResponseCode());
+        assertTrue(timings.isEmpty()); //body not read yet
+        try (InputStream in = conn.getInputStream()) {
+            assertEquals(1000, drain(in));
+        }
+
+        assertEquals(1, timings.size());
+        ConnectionTiming t = timings.get(0);
+        assertNull(t.getFailure());
+        assertEquals(100, t.getBytesWritten());
+        assertEquals(1000, t.getBytesRead());
+        assertEquals(-1, t.getDnsNanos()); //plain sockets not observed
+        assertEquals(-1, t.getTlsHandshakeNanos());
+        assertTrue(t.getConnectNanos() >= 0);
+        assertTrue(t.getTtfbNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(t.getTotalNanos() >= t.getTtfbNanos());
+
+        RouteMetrics route = metrics.getRoute("http", "localhost",
+                new URL(http).getPort());
+        assertEquals(1, route.getRequests());
+        assertEquals(1, route.getResponses());
+        assertEquals(1000, route.getBytesRead());
+        assertEquals(t.getTtfbNanos(), route.getMaxTtfbNanos());
+    }
+
+    @Test
+    public void testHandshakeTimedAndConnectionReused() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics(timings::add);
+        SSLContext client = TestKeyStore.getPkiMutualAuthClientConfig(
+                (c) -> c);
+
+        for (int i = 0; i < 2; i++) {
+            HttpsURLConnection conn = (HttpsURLConnection) metrics.wrap(
+                    new URL(https + "/data?size=10").openConnection());
+            conn.setSSLSocketFactory(client.getSocketFactory());
+            try (InputStream in = conn.getInputStream()) {
+                assertEquals(10, drain(in));
+            }
+        }
+
+        assertEquals(2, timings.size());
+        ConnectionTiming created = timings.get(0);
+        assertTrue(created.getDnsNanos() >= 0);
+        assertTrue(created.getTlsHandshakeNanos() > 0);
+        assertTrue(created.getConnectNanos() >= created.getDnsNanos()
+                + created.getTlsHandshakeNanos());
+        ConnectionTiming reused = timings.get(1);
+        assertEquals(-1, reused.getDnsNanos());
+        assertEquals(-1, reused.getTlsHandshakeNanos());
+        assertEquals(1, metrics.getRoutes().get(created.getEndpoint())
+                .getTlsHandshakes());
+    }
+
+    @Test
+    public void testDecoratedFactoryNotRetained() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        SSLSocketFactory factory = TestKeyStore.getPkiMutualAuthClientConfig(
+                (c) -> c).getSocketFactory();
+        SSLSocketFactory instrumented = metrics.instrument(factory);
+        assertSame(instrumented, metrics.instrument(factory));
+        assertSame(instrumented, metrics.instrument(instrumented));
+
+        WeakReference<SSLSocketFactory> ref = new WeakReference<>(factory);
+        factory = null;
+        instrumented = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(ref.get());
+    }
+
+    @Test
+    public void testResponseWithoutBodyAndFailure() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics(timings::add);
+        HttpURLConnection head = (HttpURLConnection) metrics.wrap(
+                new URL(http + "/data?size=10").openConnection());
+        head.setRequestMethod("HEAD");
+        assertEquals(200, head.getResponseCode());
+        assertEquals(1, timings.size());
+
+        int closed;
+        try (ServerSocket s = new ServerSocket(0)) {
+            closed = s.getLocalPort();
+        }
+        HttpURLConnection refused = (HttpURLConnection) metrics.wrap(
+                new URL("http://localhost:" + closed + "/").openConnection());
+        try {
+            refused.getResponseCode();
+            fail("connected to closed port");
+        } catch (IOException ex) {
+            //expected
+        }
+        assertEquals(2, timings.size());
+        assertNotNull(timings.get(1).getFailure());
+        assertEquals(-1, timings.get(1).getTtfbNanos());
+        assertEquals(1, metrics.getRoute("http", "localhost", closed)
+                .getFailures());
+    }
+
+    @Test
+    public void testRegistryWrapsWhenEnabled() throws Exception {
+        URLProtocolRegistry registry = new URLProtocolRegistry();
+        registry.registerHandler("http", StubURLStreamHandler::new);
+        URL url = registry.toUrl("http://example.com/");
+
+        assertFalse(url.openConnection()
+                instanceof InstrumentedHttpURLConnection);
+        registry.setConnectionMetrics(new ConnectionMetrics());
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        assertTrue(conn instanceof InstrumentedHttpURLConnection);
+        conn.connect();
+        conn.disconnect();
+        assertEquals(1, registry.getConnectionMetrics()
+                .getRoute("http", "example.com", -1).getRequests());
+    }
+
+    private static int drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static class Origin extends AbstractHandler {
+
+        private volatile long delayMillis;
+
+        @Override
+        public void handle(String target, Request rqst,
+                HttpServletRequest req, HttpServletResponse resp)
+                throws IOException {
+            drain(req.getInputStream());
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            int size = Integer.parseInt(req.getParameter("size"));
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentLength(size);
+            resp.getOutputStream().write(new byte[size]);
+            rqst.setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import org.geoint.net.ssl.SSLContextBuilder;
+import org.geoint.net.ssl.TestKeyStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Uses listeners on several loopback addresses; a listener whose backlog is
+ * full does not answer connection attempts, like an unreachable address.
+ */
+public class HappyEyeballsConnectorTest {
+
+    private static final String HOST = "multi.example.com";
+
+    private InetAddress v4;
+    private InetAddress v4Alt;
+    private InetAddress v6;
+    private ServerSocket listener;
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @Before
+    public void listen() throws Exception {
+        v4 = InetAddress.getByName("127.0.0.1");
+        v4Alt = InetAddress.getByName("127.0.0.2");
+        v6 = InetAddress.getByName("::1");
+        listener = new ServerSocket(0, 50, v4);
+        resources.add(listener);
+    }
+
+    @After
+    public void close() throws Exception {
+        for (AutoCloseable c : resources) {
+            c.close();
+        }
+    }
+
+    @Test
+    public void testUnresponsiveAddressIsRaced() throws Exception {
+        unresponsive(v4Alt);
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(100,
+                TimeUnit.MILLISECONDS, 10);
+
+        long start = System.nanoTime();
+        try (Socket socket = connector.connect(HOST,
+                new InetAddress[]{v4Alt, v4}, port(), 10000, null)) {
+            assertEquals(v4, socket.getInetAddress());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                < 5000);
+    }
+
+    @Test
+    public void testRefusedAddressStartsNextAttempt() throws Exception {
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(10,
+                TimeUnit.SECONDS, 10);
+
+        long start = System.nanoTime();
+        try (Socket socket = connector.connect(HOST,
+                new InetAddress[]{v4Alt, v4}, port(), 0,
+                SocketOptions.lowLatency())) {
+            assertEquals(v4, socket.getInetAddress());
+            assertTrue(socket.getTcpNoDelay());
+        }
+        //did not wait for the attempt delay
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                < 5000);
+    }
+
+    @Test
+    public void testFasterFamilyRemembered() throws Exception {
+        unresponsive(v6);
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(50,
+                TimeUnit.MILLISECONDS, 10);
+        InetAddress[] resolved = {v6, v4};
+
+        assertEquals(Arrays.asList(v6, v4), connector.order(HOST, resolved));
+        assertNull(connector.isIPv6Preferred(HOST));
+        connector.connect(HOST, resolved, port(), 10000, null).close();
+
+        assertFalse(connector.isIPv6Preferred(HOST));
+        assertEquals(Arrays.asList(v4, v6), connector.order(HOST, resolved));
+    }
+
+    @Test
+    public void testFamiliesInterleaved() throws Exception {
+        InetAddress v6Alt = InetAddress.getByName("::2");
+        HappyEyeballsConnector connector = new HappyEyeballsConnector();
+
+        assertEquals(Arrays.asList(v6, v4, v6Alt, v4Alt),
+                connector.order(HOST,
+                        new InetAddress[]{v6, v6Alt, v4, v4Alt}));
+    }
+
+    @Test
+    public void testAllAddressesRefused() throws Exception {
+        int port = port();
+        listener.close();
+        HappyEyeballsConnector connector = new HappyEyeballsConnector();
+
+        try {
+            connector.connect(HOST, new InetAddress[]{v4Alt, v4}, port, 0,
+                    null);
+            fail("connected to a closed port");
+        } catch (ConnectException ex) {
+            assertEquals(1, ex.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void testSSLSocketFactory() throws Exception {
+        HappyEyeballsConnector connector = new HappyEyeballsConnector();
+        SSLSocketFactory factory = SSLContextBuilder.buildFactory()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .connectWithHappyEyeballs(connector)
+                .build();
+        SSLServerSocket server = (SSLServerSocket) TestKeyStore
+                .getPkiServerConfig((c) -> c.getServerSocketFactory())
+                .createServerSocket(0, 50, v4);
+        resources.add(server);
+        Thread accept = new Thread(() -> {
+            try (SSLSocket s = (SSLSocket) server.accept()) {
+                s.getInputStream().read();
+            } catch (IOException ex) {
+                //client closed
+            }
+        });
+        accept.setDaemon(true);
+        accept.start();
+
+        //connected as HttpsURLConnection does
+        try (SSLSocket socket = (SSLSocket) factory.createSocket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress("localhost",
+                    server.getLocalPort()), 10000);
+            socket.startHandshake();
+
+            assertEquals(v4, socket.getInetAddress());
+            assertTrue(socket.getTcpNoDelay());
+            assertEquals("localhost", socket.getSession().getPeerHost());
+        }
+    }
+
+    private int port() {
+        return listener.getLocalPort();
+    }
+
+    /**
+     * Listens on the address with a full backlog, so connections to it are
+     * not answered.
+     */
+    private void unresponsive(InetAddress address) throws IOException {
+        ServerSocket ss = new ServerSocket(port(), 1, address);
+        resources.add(ss);
+        for (int i = 0; i < 2; i++) {
+            Socket filler = new Socket();
+            resources.add(filler);
+            filler.connect(new InetSocketAddress(address, port()), 1000);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParsedURLTest {
+
+    @Test
+    public void testComponents() throws Exception {
+        ParsedURL u = ParsedURL.parse(
+                "HTTPS://user:pw@Example.COM:8443/a/b?q=1&r=2#frag");
+
+        assertEquals("https", u.getScheme());
+        assertEquals("example.com", u.getHost());
+        assertEquals(8443, u.getPort());
+        assertEquals(8443, u.getEffectivePort());
+        assertEquals("/a/b", u.getPath());
+        assertEquals("q=1&r=2", u.getQuery());
+        assertEquals("frag", u.getRef());
+        assertTrue(u.isHost("EXAMPLE.com"));
+        assertTrue(u.isPathUnder("/a/"));
+        assertFalse(u.isPathUnder("/a/b?"));
+    }
+
+    @Test
+    public void testMatchesURL() throws Exception {
+        for (String s : new String[]{"http://localhost", "http://h/p?",
+            "http://h?q#", "http://[::1]:8080/x#y",
+            "http://h:/p"}) {
+            URL url = new URL(s);
+            ParsedURL u = ParsedURL.of(url);
+            assertEquals(s, url.getHost(), u.getHost());
+            assertEquals(s, url.getPort(), u.getPort());
+            assertEquals(s, url.getPath(), u.getPath());
+            assertEquals(s, url.getQuery(), u.getQuery());
+            assertEquals(s, url.getRef(), u.getRef());
+        }
+
+        ParsedURL noAuthority = ParsedURL.of(new URL("file:///tmp/a"));
+        assertNull(noAuthority.getHost());
+        assertNull(noAuthority.getEndpoint());
+        assertEquals("/tmp/a", noAuthority.getPath());
+    }
+
+    @Test
+    public void testDefaultPortAndCanonicalEndpoint() throws Exception {
+        String endpoint = ParsedURL.endpoint("HTTPS", "Example.com", -1);
+
+        assertEquals("https://example.com:443", endpoint);
+        assertSame(endpoint, ParsedURL.endpoint("https", "example.com", 443));
+        assertSame(endpoint,
+                ParsedURL.of(new URL("https://EXAMPLE.com/x")).getEndpoint());
+        assertSame(endpoint,
+                ParsedURL.parse("https://example.com:443").getEndpoint());
+        assertSame(endpoint,
+                ParsedURL.endpointOf(new URL("https://example.com:443/x")));
+        assertEquals(ParsedURL.parse("http://h/p"),
+                ParsedURL.parse("http://h/p"));
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void testInvalidPort() throws Exception {
+        ParsedURL.parse("http://h:8o/");
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void testNoScheme() throws Exception {
+        ParsedURL.parse("//h/p");
+    }
+}
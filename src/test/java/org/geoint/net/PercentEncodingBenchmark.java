@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Form encoding with {@link PercentEncoding} compared to
+ * {@link URLEncoder}, for an ASCII value needing no encoding, an ASCII value
+ * with reserved characters and a non-ASCII value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PercentEncodingBenchmark {
+
+    @Param({"image-png_tile.42", "-77.1,38.8 -76.9,39.0/x&y=z",
+        "Café du Monde 東京 😀"})
+    private String value;
+
+    private final StringBuilder sb = new StringBuilder(256);
+    private final ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    @Benchmark
+    public String urlEncoder() throws Exception {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+    @Benchmark
+    public String encodeForm() {
+        return PercentEncoding.encodeForm(value, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int encodeFormStringBuilder() {
+        sb.setLength(0);
+        PercentEncoding.encodeForm(sb, value, StandardCharsets.UTF_8);
+        return sb.length();
+    }
+
+    @Benchmark
+    public int encodeFormByteBuffer() {
+        buffer.clear();
+        PercentEncoding.encodeForm(buffer, value, StandardCharsets.UTF_8);
+        return buffer.position();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PercentEncodingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.geoint.net.PercentEncoding.Component;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PercentEncodingTest {
+
+    private static final String RESERVED = " !#$&'()*+,/:;=?@[]%";
+
+    @Test
+    public void testComponentTables() {
+        assertEquals("%20!%23$&'()*+,%2F:;=%3F@%5B%5D%25",
+                PercentEncoding.encode(RESERVED, Component.PATH_SEGMENT));
+        assertEquals("%20!%23$&'()*+,/:;=%3F@%5B%5D%25",
+                PercentEncoding.encode(RESERVED, Component.PATH));
+        assertEquals("%20!%23$%26'()*%2B,/:;%3D?@%5B%5D%25",
+                PercentEncoding.encode(RESERVED, Component.QUERY_PARAM));
+        assertEquals("%20!%23$&'()*+,/:;=?@%5B%5D%25",
+                PercentEncoding.encode(RESERVED, Component.FRAGMENT));
+        assertEquals("%20%21%23%24%26%27%28%29%2A%2B%2C%2F%3A%3B%3D%3F%40"
+                + "%5B%5D%25",
+                PercentEncoding.encode(RESERVED, Component.UNRESERVED));
+        assertEquals("caf%C3%A9%F0%9F%98%80%3F",
+                PercentEncoding.encode("café😀\ud800",
+                        Component.UNRESERVED));
+    }
+
+    @Test
+    public void testUnencodedValueReturned() {
+        String value = "plain-value_1.2~3";
+        assertSame(value, PercentEncoding.encode(value, Component.PATH));
+        String form = "plain-value_1.2*3";
+        assertSame(form, PercentEncoding.encodeForm(form,
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFormMatchesURLEncoder() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            String value = random(random);
+            for (Charset c : new Charset[]{StandardCharsets.UTF_8,
+                StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16}) {
+                String expected = URLEncoder.encode(value, c.name());
+                assertEquals(expected, PercentEncoding.encodeForm(value, c));
+
+                ByteBuffer buffer = ByteBuffer.allocate(expected.length());
+                PercentEncoding.encodeForm(buffer, value, c);
+                assertEquals(expected, new String(buffer.array(), 0,
+                        buffer.position(), StandardCharsets.US_ASCII));
+            }
+            assertEquals(value.replace("\ud800", "?"),
+                    PercentEncoding.decodeForm(PercentEncoding.encodeForm(
+                            value, StandardCharsets.UTF_8),
+                            StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testDecodeKeepsPlusAndPercent() {
+        assertEquals("a+b c%/\u00e9%2", PercentEncoding.decode(
+                "a+b%20c%25%2F%C3%A9%2"));
+        assertEquals("100%25", PercentEncoding.decode(PercentEncoding.encode(
+                "100%25", PercentEncoding.Component.PATH)));
+    }
+
+    @Test
+    public void testByteBufferMatchesStringBuilder() {
+        String value = "a b/é😀?";
+        for (Component c : Component.values()) {
+            StringBuilder sb = new StringBuilder("x");
+            PercentEncoding.encode(sb, value, c);
+
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            buffer.put((byte) 'x');
+            PercentEncoding.encode(buffer, value, c);
+            assertEquals(sb.toString(), new String(buffer.array(), 0,
+                    buffer.position(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static String random(Random random) {
+        String chars = "aZ09 -_.*~+&=%/?#éÿ中\ud800";
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(10) == 0) {
+                sb.append("😀");
+            } else {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+        }
+        return sb.toString();
+    }
+}
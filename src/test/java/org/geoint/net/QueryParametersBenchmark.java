@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Rewriting a long query, as a proxy does: parse, remove two keys, add a
+ * parameter and serialize.  Compares {@link QueryParameters} with splitting
+ * on regular expressions into a LinkedList, as URLBuilder previously did
+ * (with decoding added, which it lacked).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParametersBenchmark {
+
+    private static final Pattern QUERY_SPLITTER
+            = Pattern.compile("&", Pattern.LITERAL);
+    private static final Pattern PARAM_SPLITTER
+            = Pattern.compile("=", Pattern.LITERAL);
+
+    private String query;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                sb.append('&');
+            }
+            sb.append("param").append(i).append("=value%20").append(i)
+                    .append("%2Fx");
+        }
+        query = sb.append("&token=secret&session=abc").toString();
+    }
+
+    @Benchmark
+    public String queryParameters() {
+        QueryParameters params = QueryParameters.parse(query);
+        params.removeAll("token");
+        params.removeAll("session");
+        params.add("via", "proxy");
+        return params.toString();
+    }
+
+    @Benchmark
+    public String splitLinkedList() throws Exception {
+        List<String[]> params = new LinkedList<>();
+        for (String p : QUERY_SPLITTER.split(query)) {
+            String[] kv = PARAM_SPLITTER.split(p);
+            params.add(new String[]{URLDecoder.decode(kv[0], "UTF-8"),
+                URLDecoder.decode(kv[1], "UTF-8")});
+        }
+        for (String key : new String[]{"token", "session"}) {
+            Iterator<String[]> i = params.iterator();
+            while (i.hasNext()) {
+                if (i.next()[0].equals(key)) {
+                    i.remove();
+                }
+            }
+        }
+        params.add(new String[]{"via", "proxy"});
+        StringBuilder sb = new StringBuilder();
+        for (String[] p : params) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(URLEncoder.encode(p[0], "UTF-8")).append('=')
+                    .append(URLEncoder.encode(p[1], "UTF-8"));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(QueryParametersBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
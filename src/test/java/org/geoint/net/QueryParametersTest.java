@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class QueryParametersTest {
+
+    @Test
+    public void testParseDecodesLazily() {
+        QueryParameters params = QueryParameters.parse(
+                "a=1&flag&b=x+y%20z&a=%C3%A9&&c=%7e&bad=%zz");
+
+        assertEquals(6, params.size());
+        assertEquals("1", params.getFirst("a"));
+        assertEquals(Arrays.asList("1", "é"), params.getAll("a"));
+        assertEquals("", params.getFirst("flag"));
+        assertEquals("x y z", params.getFirst("b"));
+        assertEquals("~", params.getFirst("c"));
+        assertEquals("%zz", params.getFirst("bad"));
+        assertNull(params.getFirst("missing"));
+        assertEquals(Collections.emptyList(), params.getAll("missing"));
+        //unchanged parameters are written as parsed
+        assertEquals("a=1&flag&b=x+y%20z&a=%C3%A9&c=%7e&bad=%zz",
+                params.toString());
+    }
+
+    @Test
+    public void testParseCharset() {
+        QueryParameters params = QueryParameters.parse("k=%E9",
+                StandardCharsets.ISO_8859_1);
+        assertEquals("é", params.getFirst("k"));
+    }
+
+    @Test
+    public void testRemoveAndAdd() {
+        QueryParameters params = QueryParameters.parse("a=1&b=2&a=3&c=4");
+
+        assertEquals(2, params.removeAll("a"));
+        assertEquals(0, params.removeAll("a"));
+        params.add("a", "x y").add("d", "5");
+        assertEquals(1, params.remove("c", "4"));
+        assertEquals(0, params.remove("b", "9"));
+        params.add("e", "1").add("e", "2").add("e", "1").add("e", "3");
+        assertEquals(2, params.remove("e", "1"));
+        assertEquals(Arrays.asList("2", "3"), params.getAll("e"));
+        params.removeAll("e");
+
+        assertEquals("b=2&a=x+y&d=5", params.toString());
+        assertEquals(Collections.singletonList("x y"), params.getAll("a"));
+        assertFalse(params.containsKey("c"));
+        assertEquals(3, params.size());
+    }
+
+    @Test
+    public void testSetValueEncodes() {
+        QueryParameters params = QueryParameters.parse("a=1&b=2");
+        for (Map.Entry<String, String> p : params) {
+            if (p.getKey().equals("b")) {
+                assertEquals("2", p.setValue("&"));
+            }
+        }
+        assertEquals("a=1&b=%26", params.toString());
+    }
+
+    @Test
+    public void testIterationOrderAfterCompaction() {
+        QueryParameters params = new QueryParameters();
+        for (int i = 0; i < 100; i++) {
+            params.add("k" + (i % 4), String.valueOf(i));
+        }
+        params.removeAll("k1");
+        params.removeAll("k2");
+        params.removeAll("k3");
+
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, String> p : params) {
+            assertEquals("k0", p.getKey());
+            values.add(p.getValue());
+        }
+        assertEquals(25, values.size());
+        assertEquals(values, params.getAll("k0"));
+        assertEquals("96", values.get(24));
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RequestCoalescerTest {
+
+    private static final int THREADS = 8;
+
+    private Server server;
+    private Origin origin;
+    private String base;
+
+    @Before
+    public void start() throws Exception {
+        origin = new Origin();
+        server = new Server(0);
+        server.setHandler(origin);
+        server.start();
+        base = "http://localhost:"
+                + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testConcurrentGetsShareRequest() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+
+        List<byte[]> bodies = concurrently(coalescer, base + "/data?size=1000",
+                null);
+        assertEquals(1, origin.requests.get());
+        for (byte[] b : bodies) {
+            assertArrayEquals(Origin.body(1000), b);
+        }
+        assertEquals(0, coalescer.getInFlightCount());
+
+        //not cached
+        read(coalescer, base + "/data?size=1000", null);
+        assertEquals(2, origin.requests.get());
+    }
+
+    @Test
+    public void testLargeBodySpilledToFile() throws Exception {
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        int spilled = spilledFiles(tmp);
+        RequestCoalescer coalescer = new RequestCoalescer((u) -> true, 1024);
+
+        List<byte[]> bodies = concurrently(coalescer,
+                base + "/data?size=200000", null);
+        assertEquals(1, origin.requests.get());
+        for (byte[] b : bodies) {
+            assertArrayEquals(Origin.body(200000), b);
+        }
+        //deleted after every stream was closed
+        assertEquals(spilled, spilledFiles(tmp));
+    }
+
+    @Test
+    public void testDifferentHeadersNotShared() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        origin.delayMillis = 300;
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> json = exec.submit(() -> read(coalescer,
+                    base + "/data?size=10", "application/json"));
+            Future<byte[]> xml = exec.submit(() -> read(coalescer,
+                    base + "/data?size=10", "application/xml"));
+            json.get();
+            xml.get();
+        } finally {
+            exec.shutdownNow();
+        }
+        assertEquals(2, origin.requests.get());
+    }
+
+    @Test
+    public void testAbandonedSpilledBodyDeleted() throws Exception {
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        int spilled = spilledFiles(tmp);
+        RequestCoalescer coalescer = new RequestCoalescer((u) -> true, 1024);
+
+        abandon(coalescer, base + "/data?size=200000");
+        assertEquals(spilled + 1, spilledFiles(tmp));
+        for (int i = 0; i < 50 && spilledFiles(tmp) > spilled; i++) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(20);
+        }
+        assertEquals(spilled, spilledFiles(tmp));
+    }
+
+    @Test
+    public void testDifferentSettingsNotShared() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        origin.delayMillis = 300;
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> cached = exec.submit(() -> {
+                HttpURLConnection conn = (HttpURLConnection) coalescer.wrap(
+                        new URL(base + "/data?size=10").openConnection());
+                conn.getInputStream().close();
+                return conn.getResponseCode();
+            });
+            Future<Integer> uncached = exec.submit(() -> {
+                HttpURLConnection conn = (HttpURLConnection) coalescer.wrap(
+                        new URL(base + "/data?size=10").openConnection());
+                conn.setUseCaches(false);
+                conn.setIfModifiedSince(1000);
+                conn.getInputStream().close();
+                return conn.getResponseCode();
+            });
+            assertEquals(200, (int) cached.get());
+            assertEquals(200, (int) uncached.get());
+        } finally {
+            exec.shutdownNow();
+        }
+        assertEquals(2, origin.requests.get());
+    }
+
+    @Test
+    public void testPostNotCoalesced() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        HttpURLConnection conn = (HttpURLConnection) coalescer.wrap(
+                new URL(base + "/data?size=10").openConnection());
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(1);
+        }
+        assertEquals(200, conn.getResponseCode());
+        assertEquals(0, coalescer.getInFlightCount());
+        conn.getInputStream().close();
+    }
+
+    @Test
+    public void testErrorResponseShared() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        HttpURLConnection conn = (HttpURLConnection) coalescer.wrap(
+                new URL(base + "/missing").openConnection());
+
+        assertEquals(404, conn.getResponseCode());
+        assertEquals("text/plain", conn.getContentType());
+        try {
+            conn.getInputStream();
+            fail("404 body returned as input");
+        } catch (FileNotFoundException ex) {
+            //expected
+        }
+        try (InputStream err = conn.getErrorStream()) {
+            assertArrayEquals("missing".getBytes("UTF-8"), readAll(err));
+        }
+    }
+
+    private List<byte[]> concurrently(RequestCoalescer coalescer, String url,
+            String accept) throws Exception {
+        origin.delayMillis = 300;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(exec.submit(() -> {
+                    start.await();
+                    return read(coalescer, url, accept);
+                }));
+            }
+            start.countDown();
+            List<byte[]> bodies = new ArrayList<>();
+            for (Future<byte[]> r : results) {
+                bodies.add(r.get());
+            }
+            return bodies;
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private static byte[] read(RequestCoalescer coalescer, String url,
+            String accept) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) coalescer.wrap(
+                new URL(url).openConnection());
+        if (accept != null) {
+            conn.setRequestProperty("Accept", accept);
+        }
+        assertEquals(200, conn.getResponseCode());
+        try (InputStream in = conn.getInputStream()) {
+            return readAll(in);
+        }
+    }
+
+    /**
+     * Reads the response without closing its body stream or disconnecting.
+     */
+    private static void abandon(RequestCoalescer coalescer, String url)
+            throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) coalescer.wrap(
+                new URL(url).openConnection());
+        assertEquals(200, conn.getResponseCode());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static int spilledFiles(File dir) {
+        File[] files = dir.listFiles((d, n) -> n.startsWith("coalesced")
+                && n.endsWith(".body"));
+        return (files == null) ? 0 : files.length;
+    }
+
+    private static class Origin extends AbstractHandler {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long delayMillis;
+
+        @Override
+        public void handle(String target, Request rqst,
+                HttpServletRequest req, HttpServletResponse resp)
+                throws IOException {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            resp.setContentType("text/plain");
+            if (!"/data".equals(target)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                resp.getOutputStream().write("missing".getBytes("UTF-8"));
+            } else {
+                resp.setStatus(HttpServletResponse.SC_OK);
+                resp.getOutputStream().write(body(Integer.parseInt(
+                        req.getParameter("size"))));
+            }
+            rqst.setHandled(true);
+        }
+
+        private static byte[] body(int size) {
+            byte[] body = new byte[size];
+            for (int i = 0; i < size; i++) {
+                body[i] = (byte) ('a' + i % 26);
+            }
+            return body;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Matching the URL of a connection against the routes of eight
+ * initializers: URL predicates lowercasing and comparing strings, as the
+ * registry previously did, compared to parsing the URL once and matching
+ * routes against the {@link ParsedURL}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchingBenchmark {
+
+    private static final String[] HOSTS = {"maps.example.com",
+        "tiles.example.com", "auth.example.com", "api.example.com"};
+
+    private final List<Predicate<URL>> urlFilters = new ArrayList<>();
+    private final List<Predicate<ParsedURL>> routes = new ArrayList<>();
+    private URL url;
+
+    @Setup
+    public void setup() throws Exception {
+        url = new URL("https://API.example.com/v1/layers/roads?z=12");
+        for (String host : HOSTS) {
+            String protocol = "https";
+            int port = 443;
+            String path = "/v1/";
+            urlFilters.add((u) -> u.getProtocol()
+                    .equalsIgnoreCase(protocol.toLowerCase())
+                    && u.getHost().equalsIgnoreCase(host)
+                    && u.getPort() == port);
+            urlFilters.add((u) -> u.getProtocol()
+                    .equalsIgnoreCase(protocol.toLowerCase())
+                    && u.getHost().equalsIgnoreCase(host)
+                    && u.getPath().startsWith(path));
+
+            String endpoint = ParsedURL.endpoint(protocol, host, port);
+            routes.add((u) -> u.getEndpoint() == endpoint);
+            routes.add((u) -> u.getScheme().equals(protocol)
+                    && u.isHost(host) && u.isPathUnder(path));
+        }
+    }
+
+    @Benchmark
+    public int urlPredicates() {
+        int matched = 0;
+        for (Predicate<URL> f : urlFilters) {
+            if (f.test(url)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int parsedRoutes() {
+        ParsedURL parsed = ParsedURL.of(url);
+        int matched = 0;
+        for (Predicate<ParsedURL> r : routes) {
+            if (r.test(parsed)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RouteMatchingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
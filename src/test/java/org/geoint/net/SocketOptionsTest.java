@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import org.geoint.net.ssl.CustomizedSSLSocketFactory;
+import org.geoint.net.ssl.SSLContextBuilder;
+import org.geoint.net.ssl.TestKeyStore;
+import org.geoint.net.www.http.HttpSocketOptionsInitializer;
+import org.geoint.net.www.https.HttpsMutualAuthInitializer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SocketOptionsTest {
+
+    private static final int BUFFER_SIZE = 128 * 1024;
+
+    @Test
+    public void testSocketFactory() throws Exception {
+        SocketOptionsSocketFactory factory = new SocketOptionsSocketFactory(
+                SocketOptions.bulkTransfer(BUFFER_SIZE).withTcpNoDelay(true));
+
+        try (ServerSocket ss = new ServerSocket(0, 1,
+                InetAddress.getLoopbackAddress());
+                Socket socket = factory.createSocket(
+                        InetAddress.getLoopbackAddress(), ss.getLocalPort())) {
+            assertTrue(socket.isConnected());
+            assertTrue(socket.getTcpNoDelay());
+            assertTrue(socket.getKeepAlive());
+            //platforms may round the size up
+            assertTrue(socket.getReceiveBufferSize() >= BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void testSSLContextBuilder() throws Exception {
+        SSLSocketFactory factory = SSLContextBuilder.buildFactory()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .withSocketOptions(SocketOptions.lowLatency())
+                .build();
+
+        try (Socket socket = factory.createSocket()) {
+            assertTrue(socket.getTcpNoDelay());
+            assertTrue(socket.getKeepAlive());
+        }
+    }
+
+    @Test
+    public void testHttpsInitializerPerRoute() throws Exception {
+        HttpsMutualAuthInitializer init = TestKeyStore
+                .getPkiMutualAuthClientConfig(HttpsMutualAuthInitializer::new);
+        HttpsMutualAuthInitializer rpc = init.withSocketOptions(
+                SocketOptions.lowLatency().withReadTimeout(2000));
+
+        HttpsURLConnection conn = (HttpsURLConnection) new URL(
+                "https://localhost:8443/rpc").openConnection();
+        rpc.initialize(conn);
+        assertEquals(2000, conn.getReadTimeout());
+        assertSame(rpc.getSSLSocketFactory(), conn.getSSLSocketFactory());
+        assertSame(init.getSSLSocketFactory(),
+                ((CustomizedSSLSocketFactory) rpc.getSSLSocketFactory())
+                        .getDelegate());
+        try (Socket socket = conn.getSSLSocketFactory().createSocket()) {
+            assertTrue(socket.getTcpNoDelay());
+        }
+    }
+
+    @Test
+    public void testHttpInitializerTimeouts() throws Exception {
+        HttpSocketOptionsInitializer init = new HttpSocketOptionsInitializer(
+                SocketOptions.defaults().withConnectTimeout(1000)
+                        .withReadTimeout(5000));
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(
+                "http://localhost:8080/bulk").openConnection();
+        init.initialize(conn);
+        assertEquals(1000, conn.getConnectTimeout());
+        assertEquals(5000, conn.getReadTimeout());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Generating 100,000 URLs from columns of parameter values: a serial loop of
+ * new {@link URLBuilder}s, a serial loop expanding a {@link URLTemplate}, and
+ * a parallel {@link URLBatch} of the template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLBatchBenchmark {
+
+    private static final int ROWS = 100000;
+    private static final URLTemplate TEMPLATE = URLTemplate.compile(
+            "https://maps.example.com/v1/layers/{layer}/tiles/{z}/{x}"
+            + "{?format}");
+
+    private final List<String> layers = new ArrayList<>(ROWS);
+    private final List<Integer> zs = new ArrayList<>(ROWS);
+    private final List<Integer> xs = new ArrayList<>(ROWS);
+    private final List<String> formats = new ArrayList<>(ROWS);
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < ROWS; i++) {
+            layers.add((i % 2 == 0) ? "roads" : "rail lines");
+            zs.add(i % 20);
+            xs.add(i);
+            formats.add("image/png");
+        }
+    }
+
+    @Benchmark
+    public List<String> builderLoop() {
+        List<String> urls = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            urls.add(new URLBuilder()
+                    .withProtocol("https")
+                    .withHost("maps.example.com")
+                    .withPath("v1", "layers", layers.get(i), "tiles",
+                            String.valueOf(zs.get(i)),
+                            String.valueOf(xs.get(i)))
+                    .addParameter("format", formats.get(i))
+                    .asString());
+        }
+        return urls;
+    }
+
+    @Benchmark
+    public List<String> templateLoop() {
+        List<String> urls = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            urls.add(TEMPLATE.expand(layers.get(i), zs.get(i), xs.get(i),
+                    formats.get(i)));
+        }
+        return urls;
+    }
+
+    @Benchmark
+    public List<String> batch() {
+        return new URLBatch(TEMPLATE)
+                .expand(URLBatch.columns(layers, zs, xs, formats));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(URLBatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
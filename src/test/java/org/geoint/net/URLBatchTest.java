@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class URLBatchTest {
+
+    @Test
+    public void testOrderPreserved() {
+        URLTemplate t = URLTemplate.compile(
+                "https://example.com/tiles/{z}/{x}{?layer}");
+        List<Integer> z = new ArrayList<>();
+        List<Integer> x = new ArrayList<>();
+        List<String> layer = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            z.add(i % 20);
+            x.add(i);
+            layer.add((i % 3 == 0) ? null : "roads & rail");
+        }
+
+        List<String> urls = new URLBatch(t)
+                .expand(URLBatch.columns(z, x, layer));
+
+        assertEquals(10000, urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(t.expand(z.get(i), x.get(i), layer.get(i)),
+                    urls.get(i));
+        }
+    }
+
+    @Test
+    public void testToURLsInPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            URLBatch batch = new URLBatch(
+                    URLTemplate.compile("http://h:8080/{id}"), pool);
+
+            List<URL> urls = batch.toURLs(Stream.of(
+                    new Object[]{"a"}, new Object[]{"b"}, new Object[]{"c"}));
+
+            assertEquals(3, urls.size());
+            assertEquals("http://h:8080/a", urls.get(0).toString());
+            assertEquals("http://h:8080/c", urls.get(2).toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testNamedBindings() {
+        Map<String, String> a = Collections.singletonMap("q", "a b");
+        Map<String, String> none = Collections.emptyMap();
+
+        assertEquals(Arrays.asList("http://h/s?q=a%20b", "http://h/s"),
+                new URLBatch(URLTemplate.compile("http://h/s{?q}"))
+                        .expandNamed(Stream.of(a, none)));
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void testMalformed() throws Exception {
+        new URLBatch(URLTemplate.compile("{scheme}://h/"))
+                .toURLs(Stream.of(new Object[]{"http"},
+                        new Object[]{"nosuchscheme"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testColumnsSameSize() {
+        URLBatch.columns(Arrays.asList(1, 2), Arrays.asList(1));
+    }
+}
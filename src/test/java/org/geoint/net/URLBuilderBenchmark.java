@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URI;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time and bytes allocated to serialize a URL with {@link URLBuilder}, and
+ * with the previous serialization (URLEncoder, String.format, URI then URL).
+ * <p>
+ * {@link #main(String[])} runs with the GC profiler; compare
+ * {@code gc.alloc.rate.norm}, the bytes allocated per URL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLBuilderBenchmark {
+
+    private static final List<String> PATH
+            = Arrays.asList("", "v1", "layers", "roads", "tiles", "12");
+    private static final String[][] PARAMS = {
+        {"format", "image/png"},
+        {"bbox", "-77.1,38.8,-76.9,39.0"},
+        {"time", "2016-03-01T00:00:00Z"},
+        {"name", "Café du Monde"}};
+
+    private URLBuilder builder;
+
+    @Setup
+    public void setup() {
+        builder = new URLBuilder()
+                .withProtocol("https")
+                .withHost("maps.example.com")
+                .withPort(8443)
+                .withPath(PATH.toArray(new String[PATH.size()]));
+        for (String[] p : PARAMS) {
+            builder.addParameter(p[0], p[1]);
+        }
+    }
+
+    @Benchmark
+    public URL toURL() throws Exception {
+        return builder.toURL();
+    }
+
+    @Benchmark
+    public String asString() {
+        return builder.asString();
+    }
+
+    @Benchmark
+    public URL previousToURL() throws Exception {
+        String query = Arrays.stream(PARAMS)
+                .map((p) -> {
+                    try {
+                        return String.format("%s=%s",
+                                URLEncoder.encode(p[0], "UTF-8"),
+                                URLEncoder.encode(p[1], "UTF-8"));
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                })
+                .collect(Collectors.joining("&"));
+        return new URI("https", null, "maps.example.com", 8443,
+                String.join("/", PATH), query, null).toURL();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(URLBuilderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -16,6 +16,8 @@
 package org.geoint.net;
 
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -79,5 +81,81 @@ public class URLBuilderTest {
         assertEquals("foo=bar", url.getQuery());
         assertEquals(null, url.getRef());
     }
-    
+
+    @Test
+    public void testExplicitPort() throws Exception {
+        URL url = new URLBuilder("http://localhost:8080/test").toURL();
+        assertEquals(8080, url.getPort());
+        assertEquals("http://localhost:8080/test", url.toString());
+
+        url = new URLBuilder("http://localhost:8080/")
+                .withDefaultPoort()
+                .toURL();
+        assertEquals(-1, url.getPort());
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+        URLBuilder b = new URLBuilder()
+                .withProtocol("https")
+                .withHost("example.com")
+                .appendToPath("a b", "caf\u00e9", "x%20y")
+                .addParameter("q", "a+b c&d=\u00fc\ud83d\ude00")
+                .addParameter("k*", "~")
+                .withRef("top ref");
+        String expected = "https://example.com/a%20b/caf%C3%A9/x%2520y"
+                + "?q=a%2Bb+c%26d%3D%C3%BC%F0%9F%98%80&k*=%7E#top%20ref";
+
+        assertEquals(expected, b.asString());
+        assertEquals(expected, b.toURL().toString());
+        assertEquals(expected, b.toURI().toString());
+    }
+
+    @Test
+    public void testPercentSignEncoded() throws Exception {
+        URLBuilder b = new URLBuilder("http://localhost/a%20b#c%25d")
+                .appendToPath("100%25");
+
+        assertEquals("http://localhost/a%20b/100%2525#c%25d", b.asString());
+        //decoded when parsed, so not encoded again
+        assertEquals(b.asString(), new URLBuilder(b.toURL()).asString());
+        assertEquals(b.asString(), URLSpec.of(b.toURL()).asString());
+    }
+
+    @Test
+    public void testEncodedSlashKeptInSegment() throws Exception {
+        String url = "http://h/a%2Fb/c";
+
+        assertEquals(url, new URLBuilder(url).asString());
+        assertEquals(url, URLSpec.of(url).asString());
+        assertEquals(url, new URLBuilder("http://h/")
+                .withPath("", "a/b", "c").asString());
+    }
+
+    @Test
+    public void testParameterMatchesURLEncoder() throws Exception {
+        String value = "x y/\u00e9\u4e2d?*-._~";
+        URLBuilder b = new URLBuilder("http://localhost/")
+                .addParameter(StandardCharsets.ISO_8859_1,
+                        "latin", "\u00e9 \u4e2d")
+                .addParameter("utf", value);
+
+        assertEquals("latin=" + URLEncoder.encode("\u00e9 \u4e2d",
+                "ISO-8859-1") + "&utf="
+                + URLEncoder.encode(value, "UTF-8"),
+                b.toURL().getQuery());
+    }
+
+    @Test
+    public void testQueryKeyWithoutValue() throws Exception {
+        URLBuilder b = new URLBuilder("http://localhost/p?flag&a=b%2Bc");
+
+        assertEquals("", b.getParameters().getFirst("flag"));
+        assertEquals("b+c", b.getParameters().getFirst("a"));
+        assertEquals("http://localhost/p?flag&a=b%2Bc", b.asString());
+
+        b.removeParameters("flag").addParameter("d", "e f");
+        assertEquals("http://localhost/p?a=b%2Bc&d=e+f", b.asString());
+    }
+
 }
@@ -16,10 +16,28 @@
 package org.geoint.net;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.geoint.net.ssl.TestKeyStore;
+import org.geoint.net.www.http.StripedCookieStore;
+import org.geoint.net.www.https.HttpsMutualAuthInitializer;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.BeforeClass;
@@ -67,6 +85,28 @@ public class URLProxyRegistryTest {
 
     }
 
+    @Test
+    public void testRouteInitializers() throws Exception {
+        URLProtocolRegistry registry = new URLProtocolRegistry();
+        registry.registerHandler("http", StubURLStreamHandler::new);
+        CountingInitializer endpoint = new CountingInitializer();
+        CountingInitializer path = new CountingInitializer();
+        CountingInitializer route = new CountingInitializer();
+        registry.addInitializer(endpoint, "HTTP", "Example.com", 80);
+        registry.addInitializer(path, "http", "example.com", 80, "/api/");
+        registry.addRouteInitializer(route,
+                (u) -> u.getQuery() != null && u.getQuery().contains("x"));
+
+        for (String u : new String[]{"http://EXAMPLE.com/api/v1?x",
+            "http://example.com:80/", "http://example.com:8080/api/",
+            "http://other.com/api/"}) {
+            registry.toUrl(u).openConnection();
+        }
+        assertEquals(2, endpoint.getCount());
+        assertEquals(1, path.getCount());
+        assertEquals(1, route.getCount());
+    }
+
     @Test
     public void testJvmRegistration() throws Exception {
         URLProtocolRegistry shf = new URLProtocolRegistry();
@@ -80,4 +120,110 @@ public class URLProxyRegistryTest {
         assertEquals(0, init.getCount());
     }
 
+    @Test
+    public void testCookieHandlerPerRegistry() throws Exception {
+        URI uri = URI.create("http://localhost/");
+        CookieManager cookies = StripedCookieStore.newCookieManager();
+        URLProtocolRegistry first = new URLProtocolRegistry();
+        first.setCookieHandler(cookies);
+        first.registerWithJvm();
+
+        CookieHandler.getDefault().put(uri, Collections.singletonMap(
+                "Set-Cookie", Collections.singletonList("id=1")));
+        assertEquals(1, cookies.getCookieStore().getCookies().size());
+
+        URLProtocolRegistry second = new URLProtocolRegistry();
+        second.setCookieHandler(StripedCookieStore.newCookieManager());
+        second.registerWithJvm();
+        assertEquals(Collections.emptyList(), CookieHandler.getDefault()
+                .get(uri, Collections.emptyMap()).get("Cookie"));
+
+        first.registerWithJvm();
+        assertEquals(Collections.singletonList("id=1"),
+                CookieHandler.getDefault()
+                .get(uri, Collections.emptyMap()).get("Cookie"));
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+
+        Server server = new Server();
+        SslContextFactory ssl = new SslContextFactory();
+        ssl.setSslContext(TestKeyStore.getPkiServerConfig((c) -> c));
+        ServerConnector tls = new ServerConnector(server, ssl);
+        server.addConnector(tls);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request rqst,
+                    HttpServletRequest req, HttpServletResponse resp)
+                    throws IOException {
+                requests.incrementAndGet();
+                resp.setStatus(HttpServletResponse.SC_OK);
+                rqst.setHandled(true);
+            }
+        });
+        try {
+            server.start();
+            final String url = "https://localhost:" + tls.getLocalPort() + "/";
+
+            URLProtocolRegistry reg = new URLProtocolRegistry();
+            reg.registerHandler("https", JreHttpsHandler::new);
+            CountingInitializer init = new CountingInitializer();
+            reg.addInitializer(init);
+            reg.addInitializer(TestKeyStore.getPkiMutualAuthClientConfig(
+                    HttpsMutualAuthInitializer::new));
+            reg.setConnectionMetrics(new ConnectionMetrics());
+            reg.addWarmUp(url, 2);
+
+            assertEquals(2, reg.warmUp(10, TimeUnit.SECONDS));
+            assertEquals(2, init.getCount());
+            assertEquals(2, requests.get());
+            RouteMetrics route = reg.getConnectionMetrics()
+                    .getRoute("https", "localhost", tls.getLocalPort());
+            assertEquals(2, route.getTlsHandshakes());
+
+            //a later request reuses a warmed socket and its TLS session
+            HttpURLConnection conn
+                    = (HttpURLConnection) reg.toUrl(url).openConnection();
+            assertEquals(200, conn.getResponseCode());
+            conn.getInputStream().close();
+            assertEquals(3, init.getCount());
+            assertEquals(3, requests.get());
+            assertEquals(3, route.getRequests());
+            assertEquals(2, route.getTlsHandshakes());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testWarmUpInitializerFailure() throws Exception {
+        URLProtocolRegistry reg = new URLProtocolRegistry();
+        reg.registerHandler("https", JreHttpsHandler::new);
+        reg.addInitializer((c) -> {
+            throw new IllegalStateException("no credentials");
+        });
+        reg.addWarmUp("https://localhost:1/", 2);
+
+        assertEquals(0, reg.warmUp(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWarmUpRequiresConnection() throws Exception {
+        new URLProtocolRegistry().addWarmUp("http://localhost/", 0);
+    }
+
+    /**
+     * Opens connections with the handler the JRE uses when no registry
+     * provides one for the protocol.
+     */
+    private static class JreHttpsHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL u) throws IOException {
+            return new URL(u.toExternalForm()).openConnection();
+        }
+    }
+
 }
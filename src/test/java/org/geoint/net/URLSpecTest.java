@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class URLSpecTest {
+
+    private static final URLSpec BASE = URLSpec.EMPTY
+            .withProtocol("https")
+            .withHost("example.com")
+            .withPath("/v1/layers")
+            .addParameter("format", "image/png");
+
+    @Test
+    public void testDerivedDoesNotChangeParent() throws Exception {
+        URLSpec tile = BASE.appendToPath("roads", "1")
+                .addParameter("q", "a b")
+                .withPort(8443)
+                .withRef("top");
+
+        assertEquals("https://example.com/v1/layers?format=image%2Fpng",
+                BASE.asString());
+        assertEquals("https://example.com:8443/v1/layers/roads/1"
+                + "?format=image%2Fpng&q=a+b#top", tile.asString());
+        assertEquals(tile.asString(), tile.toURL().toString());
+        assertEquals(tile.asString(), tile.toURI().toString());
+    }
+
+    @Test
+    public void testMatchesURLBuilder() throws Exception {
+        URLBuilder builder = new URLBuilder()
+                .withProtocol("https")
+                .withHost("example.com")
+                .appendToPath("a b", "café", "x%20y")
+                .addParameter("q", "a+b c&d=ü")
+                .addParameters("k", "1", "2")
+                .withRef("top ref");
+
+        URLSpec spec = builder.toSpec();
+        assertEquals(builder.asString(), spec.asString());
+        assertEquals(spec, URLSpec.of(builder.toURL()));
+    }
+
+    @Test
+    public void testSerializedFormMemoized() {
+        URLSpec spec = BASE.addParameter("id", "1");
+        assertSame(spec.asString(), spec.asString());
+    }
+
+    @Test
+    public void testManyParametersSerialized() {
+        URLSpec spec = URLSpec.EMPTY.withProtocol("http")
+                .withHost("localhost");
+        StringBuilder expected = new StringBuilder("http://localhost?");
+        for (int i = 0; i < 50000; i++) {
+            spec = spec.addParameter("p", String.valueOf(i))
+                    .appendToPath(String.valueOf(i));
+            expected.append((i == 0) ? "" : "&").append("p=").append(i);
+        }
+        String serialized = spec.asString();
+        assertTrue(serialized.startsWith("http://localhost/0/1/2/"));
+        assertTrue(serialized.endsWith(expected.substring(
+                "http://localhost".length())));
+    }
+
+    @Test
+    public void testRemoveParameters() {
+        URLSpec spec = BASE.addParameters("a", "1", "2")
+                .addParameter("b", "3")
+                .addParameter("a", "4");
+
+        assertEquals("https://example.com/v1/layers?format=image%2Fpng&b=3",
+                spec.removeParameters("a").asString());
+        assertSame(spec, spec.removeParameters("missing"));
+    }
+
+    @Test
+    public void testQueryParsed() throws Exception {
+        URLSpec spec = URLSpec.of("http://localhost/p?flag&a=b+c&e=%C3%A9&");
+
+        assertEquals("http://localhost/p?flag=&a=b+c&e=%C3%A9",
+                spec.asString());
+        assertEquals("http://localhost/p?a=b+c", spec.removeParameters("flag")
+                .removeParameters("e").asString());
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<URL>>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(exec.submit(() -> {
+                    List<URL> urls = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        urls.add(BASE.appendToPath(String.valueOf(thread))
+                                .addParameter("i", String.valueOf(i))
+                                .toURL());
+                    }
+                    return urls;
+                }));
+            }
+            for (int t = 0; t < 8; t++) {
+                List<URL> urls = results.get(t).get();
+                for (int i = 0; i < urls.size(); i++) {
+                    assertEquals("https://example.com/v1/layers/" + t
+                            + "?format=image%2Fpng&i=" + i,
+                            urls.get(i).toString());
+                }
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Expanding a compiled {@link URLTemplate} compared to building the same URL
+ * with a new {@link URLBuilder}, as a request loop does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLTemplateBenchmark {
+
+    private static final URLTemplate TEMPLATE = URLTemplate.compile(
+            "https://maps.example.com:8443/v1/layers/{layer}/tiles/{z}"
+            + "{?format,bbox}");
+
+    private int tile;
+
+    @Benchmark
+    public String templateExpand() {
+        return TEMPLATE.expand("roads", ++tile, "image/png",
+                "-77.1,38.8,-76.9,39.0");
+    }
+
+    @Benchmark
+    public String builderAsString() {
+        return builder(++tile).asString();
+    }
+
+    @Benchmark
+    public URL templateToURL() throws Exception {
+        return TEMPLATE.toURL("roads", ++tile, "image/png",
+                "-77.1,38.8,-76.9,39.0");
+    }
+
+    @Benchmark
+    public URL builderToURL() throws Exception {
+        return builder(++tile).toURL();
+    }
+
+    private static URLBuilder builder(int tile) {
+        return new URLBuilder()
+                .withProtocol("https")
+                .withHost("maps.example.com")
+                .withPort(8443)
+                .withPath("", "v1", "layers", "roads", "tiles",
+                        String.valueOf(tile))
+                .addParameter("format", "image/png")
+                .addParameter("bbox", "-77.1,38.8,-76.9,39.0");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(URLTemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class URLTemplateTest {
+
+    @Test
+    public void testRfc6570Expressions() {
+        Map<String, Object> v = new HashMap<>();
+        v.put("var", "value");
+        v.put("hello", "Hello World!");
+        v.put("path", "/foo/bar");
+        v.put("half", "50%");
+        v.put("x", 1024);
+        v.put("y", 768);
+        v.put("empty", "");
+
+        assertEquals("value", expand("{var}", v));
+        assertEquals("Hello%20World%21", expand("{hello}", v));
+        assertEquals("50%25", expand("{half}", v));
+        assertEquals("Hello%20World!", expand("{+hello}", v));
+        assertEquals("50%25", expand("{+half}", v));
+        assertEquals("/foo/bar/here", expand("{+path}/here", v));
+        assertEquals("X#Hello%20World!", expand("X{#hello}", v));
+        assertEquals("map?1024,768", expand("map?{x,y}", v));
+        assertEquals("/value/1024/here", expand("{/var,x}/here", v));
+        assertEquals("?x=1024&y=768&empty=", expand("{?x,y,empty}", v));
+        assertEquals("?fixed=yes&x=1024", expand("?fixed=yes{&x}", v));
+        assertEquals("/value", expand("{/var,undef}", v));
+        assertEquals("", expand("{?undef}", v));
+    }
+
+    @Test
+    public void testLiteralsEncodedOnce() throws Exception {
+        URLTemplate t = URLTemplate.compile(
+                "https://example.com/café %41/{name}{?q}");
+
+        assertEquals(Arrays.asList("name", "q"), t.getVariables());
+        assertEquals("https://example.com/caf%C3%A9%20%41/x%2Fy?q=%C3%BC",
+                t.expand("x/y", "ü"));
+        assertEquals("https://example.com/caf%C3%A9%20%41/z",
+                t.toURL("z", null).toString());
+
+        URL url = URLTemplate.compile("http://[::1]:8080?a={a}").toURL("1");
+        assertEquals("[::1]", url.getHost());
+        assertEquals(8080, url.getPort());
+        assertEquals("a=1", url.getQuery());
+    }
+
+    @Test
+    public void testCompiledFromBuilder() {
+        URLBuilder base = new URLBuilder()
+                .withProtocol("https")
+                .withHost("example.com")
+                .withPort(8443)
+                .appendToPath("a b")
+                .addParameter("k", "v w");
+
+        assertEquals("https://example.com:8443/a%20b?k=v+w&id=42",
+                URLTemplate.compile(base, "{&id}").expand(42));
+    }
+
+    @Test
+    public void testValueSerializingURL() {
+        Object value = new Object() {
+            @Override
+            public String toString() {
+                try {
+                    return new URLBuilder("http://other/p").asString();
+                } catch (MalformedURLException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+
+        assertEquals("http://h/items/http%3A%2F%2Fother%2Fp/x",
+                URLTemplate.compile("http://h/items/{id}/x").expand(value));
+        assertEquals("http://h/http://other/p/x",
+                URLTemplate.compile("http://h/{+id}/x").expand(value));
+    }
+
+    @Test
+    public void testMalformedTemplates() {
+        for (String p : new String[]{"{var", "var}", "{.var}", "{;var}",
+            "{var:3}", "{var*}", "{}", "{a,,b}"}) {
+            try {
+                URLTemplate.compile(p);
+                fail(p + " compiled");
+            } catch (IllegalArgumentException ex) {
+                //expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueCountMismatch() {
+        URLTemplate.compile("http://localhost/{a}/{b}").expand("a");
+    }
+
+    @Test
+    public void testBoundToRegistry() throws Exception {
+        URLProtocolRegistry registry = new URLProtocolRegistry();
+        registry.registerHandler("tmpl", StubURLStreamHandler::new);
+        CountingInitializer init = new CountingInitializer();
+        registry.addInitializer(init);
+
+        URL url = URLTemplate.compile("tmpl://localhost/{id}")
+                .bind(registry)
+                .toURL("1");
+        URLConnection conn = url.openConnection();
+        assertEquals("tmpl://localhost/1", conn.getURL().toString());
+        assertEquals(1, init.getCount());
+
+        //protocol resolved per URL when not a literal
+        URLTemplate.compile("{+base}/{id}").bind(registry)
+                .toURL("tmpl://localhost", "2")
+                .openConnection();
+        assertEquals(2, init.getCount());
+    }
+
+    private static String expand(String pattern, Map<String, ?> values) {
+        return URLTemplate.compile(pattern).expand(values);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CachingHostnameVerifierTest {
+
+    private static KeyPair keys;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(256);
+        keys = kpg.generateKeyPair();
+    }
+
+    @Test
+    public void testExactName() throws Exception {
+        X509Certificate cert = TestCertificates.selfSignedServer("server",
+                keys, "www.example.com", "api.example.com");
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier();
+
+        assertTrue(verifier.verify("www.example.com", cert));
+        assertTrue(verifier.verify("API.Example.COM", cert));
+        assertTrue(verifier.verify("www.example.com.", cert));
+        assertFalse(verifier.verify("example.com", cert));
+        assertFalse(verifier.verify("server", cert));
+    }
+
+    @Test
+    public void testWildcard() throws Exception {
+        X509Certificate cert = TestCertificates.selfSignedServer("server",
+                keys, "*.example.com", "*.com", "f*.example.org");
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier();
+
+        assertTrue(verifier.verify("a.example.com", cert));
+        assertFalse(verifier.verify("a.b.example.com", cert));
+        assertFalse(verifier.verify("example.com", cert));
+        assertFalse(verifier.verify(".example.com", cert));
+        //wildcards must be the complete label, with two labels following
+        assertFalse(verifier.verify("foo.com", cert));
+        assertFalse(verifier.verify("foo.example.org", cert));
+    }
+
+    @Test
+    public void testCommonNameOnlyWithoutSubjectAltNames() throws Exception {
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier();
+
+        assertTrue(verifier.verify("legacy.example.com",
+                TestCertificates.selfSignedServer("legacy.example.com", keys)));
+        assertFalse(verifier.verify("legacy.example.com",
+                TestCertificates.selfSignedServer("legacy.example.com", keys,
+                        "www.example.com")));
+    }
+
+    @Test
+    public void testIpAddress() throws Exception {
+        X509Certificate cert = TestKeyStore.PKI_SERVER.getCertificateChain()[0];
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier();
+
+        assertTrue(verifier.verify("127.0.0.1", cert));
+        assertTrue(verifier.verify("localhost", cert));
+        assertFalse(verifier.verify("127.0.0.2", cert));
+        assertFalse(verifier.verify("::1", cert));
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception {
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier(1);
+
+        verifier.verify("a.example.com",
+                TestCertificates.selfSignedServer("a", keys, "a.example.com"));
+        verifier.verify("b.example.com",
+                TestCertificates.selfSignedServer("b", keys, "b.example.com"));
+
+        assertEquals(1, verifier.size());
+    }
+
+    /**
+     * Endpoint identification of a raw SSLSocket uses the verifier.
+     */
+    @Test
+    public void testSocketEndpointIdentification() throws Exception {
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier();
+        SSLContext client = SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .verifyHostnames(verifier)
+                .build();
+        SSLContext server = TestKeyStore.getPkiServerConfig((c) -> c);
+
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            Thread accept = acceptHandshakes(ss, 2);
+
+            assertTrue(handshake(client, ss.getLocalPort(), "localhost"));
+            assertFalse(handshake(client, ss.getLocalPort(), "otherhost"));
+            assertEquals(1, verifier.size());
+            accept.join(5000);
+        }
+    }
+
+    /**
+     * The delegate validates the chain with the engine before the verifier
+     * checks the host.
+     */
+    @Test
+    public void testEngineDelegatedBeforeVerification() throws Exception {
+        CachingHostnameVerifier verifier = new CachingHostnameVerifier();
+        List<String> calls = new ArrayList<>();
+        X509ExtendedTrustManager delegate = new X509ExtendedTrustManager() {
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain,
+                    String authType, SSLEngine engine) {
+                calls.add("engine");
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain,
+                    String authType) {
+                calls.add("chain");
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain,
+                    String authType, Socket socket) {
+                calls.add("socket");
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain,
+                    String authType, SSLEngine engine) {
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain,
+                    String authType, Socket socket) {
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain,
+                    String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        HostnameVerifyingX509TrustManager tm
+                = new HostnameVerifyingX509TrustManager(verifier, delegate);
+        SSLEngine engine = TestKeyStore.getPkiServerConfig((c) -> c)
+                .createSSLEngine("localhost", 443);
+        SSLParameters params = engine.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(params);
+
+        tm.checkServerTrusted(TestKeyStore.PKI_SERVER.getCertificateChain(),
+                "RSA", engine);
+        assertEquals(Collections.singletonList("engine"), calls);
+        assertEquals(1, verifier.size());
+    }
+
+    private static boolean handshake(SSLContext context, int port,
+            String host) throws IOException {
+        Socket plain = new Socket(InetAddress.getLoopbackAddress(), port);
+        try (SSLSocket socket = (SSLSocket) context.getSocketFactory()
+                .createSocket(plain, host, port, true)) {
+            SSLParameters params = socket.getSSLParameters();
+            params.setEndpointIdentificationAlgorithm("HTTPS");
+            socket.setSSLParameters(params);
+            socket.startHandshake();
+            return true;
+        } catch (SSLException ex) {
+            return false;
+        }
+    }
+
+    private static Thread acceptHandshakes(SSLServerSocket ss, int count) {
+        Thread t = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                try (SSLSocket s = (SSLSocket) ss.accept()) {
+                    s.startHandshake();
+                } catch (IOException ex) {
+                    //expected for rejected handshakes
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CachingX509TrustManagerTest {
+
+    @Test
+    public void testSuccessfulValidationCached() throws Exception {
+        CountingTrustManager delegate = new CountingTrustManager(pkiTrust());
+        TrustValidationCache cache
+                = new TrustValidationCache(10, 1, TimeUnit.MINUTES);
+        CachingX509TrustManager tm
+                = new CachingX509TrustManager(cache, delegate);
+        X509Certificate[] chain = TestKeyStore.PKI_SERVER.getCertificateChain();
+
+        tm.checkServerTrusted(chain, "RSA");
+        tm.checkServerTrusted(chain, "RSA");
+        tm.checkServerTrusted(chain, "RSA");
+
+        assertEquals(1, delegate.checks.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testFailedValidationNotCached() throws Exception {
+        CountingTrustManager delegate = new CountingTrustManager(pkiTrust());
+        TrustValidationCache cache
+                = new TrustValidationCache(10, 1, TimeUnit.MINUTES);
+        CachingX509TrustManager tm
+                = new CachingX509TrustManager(cache, delegate);
+        //signed by a CA not in the PKI trust store
+        X509Certificate[] chain = TestKeyStore.SERVER.getCertificateChain();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                tm.checkServerTrusted(chain, "RSA");
+                fail("untrusted chain accepted");
+            } catch (CertificateException ex) {
+                //expected
+            }
+        }
+        assertEquals(2, delegate.checks.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception {
+        TrustValidationCache cache
+                = new TrustValidationCache(1, 1, TimeUnit.MINUTES);
+        CachingX509TrustManager tm = new CachingX509TrustManager(cache,
+                new CountingTrustManager(pkiTrust()));
+
+        tm.checkServerTrusted(TestKeyStore.PKI_SERVER.getCertificateChain(),
+                "RSA");
+        tm.checkClientTrusted(TestKeyStore.PKI_CLIENT.getCertificateChain(),
+                "RSA");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCacheBoundToTrustManager() throws Exception {
+        TrustValidationCache cache
+                = new TrustValidationCache(10, 1, TimeUnit.MINUTES);
+        CountingTrustManager first = new CountingTrustManager(pkiTrust());
+        CountingTrustManager second = new CountingTrustManager(pkiTrust());
+        X509Certificate[] chain = TestKeyStore.PKI_SERVER.getCertificateChain();
+
+        new CachingX509TrustManager(cache, first)
+                .checkServerTrusted(chain, "RSA");
+        new CachingX509TrustManager(cache, second)
+                .checkServerTrusted(chain, "RSA");
+
+        assertEquals(1, first.checks.get());
+        assertEquals(1, second.checks.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        CountingTrustManager delegate = new CountingTrustManager(pkiTrust());
+        TrustValidationCache cache
+                = new TrustValidationCache(2, 1, TimeUnit.MINUTES);
+        CachingX509TrustManager tm
+                = new CachingX509TrustManager(cache, delegate);
+        X509Certificate[] server = TestKeyStore.PKI_SERVER.getCertificateChain();
+        X509Certificate[] client = TestKeyStore.PKI_CLIENT.getCertificateChain();
+
+        tm.checkServerTrusted(server, "RSA");
+        tm.checkClientTrusted(client, "RSA");
+        tm.checkServerTrusted(server, "RSA"); //hit, now most recently used
+        tm.checkServerTrusted(server, "ECDHE_RSA"); //evicts the client chain
+        assertEquals(3, delegate.checks.get());
+
+        tm.checkServerTrusted(server, "RSA");
+        assertEquals(3, delegate.checks.get());
+        tm.checkClientTrusted(client, "RSA");
+        assertEquals(4, delegate.checks.get());
+        assertEquals(2, cache.size());
+    }
+
+    private static X509TrustManager pkiTrust() throws Exception {
+        KeyStore ks = KeyStore.getInstance("jks");
+        ks.load(TestKeyStore.PKI_TRUST.getInputStream(),
+                TestKeyStore.PKI_TRUST.getPassword());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        return (X509TrustManager) tmf.getTrustManagers()[0];
+    }
+
+    private static class CountingTrustManager implements X509TrustManager {
+
+        private final AtomicInteger checks = new AtomicInteger();
+        private final X509TrustManager delegate;
+
+        private CountingTrustManager(X509TrustManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            checks.incrementAndGet();
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            checks.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+}
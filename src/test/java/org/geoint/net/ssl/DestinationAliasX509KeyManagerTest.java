@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DestinationAliasX509KeyManagerTest {
+
+    private static final Map<String, String> DESTINATIONS = new HashMap<>();
+
+    static {
+        DESTINATIONS.put("api.example.com", "exact");
+        DESTINATIONS.put("api.example.com:8443", "exact-port");
+        DESTINATIONS.put("*.example.com", "wildcard");
+        DESTINATIONS.put("*.internal.example.com", "internal");
+        DESTINATIONS.put("*.example.com:9443", "wildcard-port");
+    }
+
+    @Test
+    public void testMostSpecificDestination() {
+        DestinationAliasX509KeyManager km = new DestinationAliasX509KeyManager(
+                DESTINATIONS, "default", null);
+
+        assertEquals("exact", km.aliasFor("API.example.com", 443));
+        assertEquals("exact-port", km.aliasFor("api.example.com", 8443));
+        assertEquals("wildcard", km.aliasFor("www.example.com", 443));
+        assertEquals("wildcard-port", km.aliasFor("www.example.com", 9443));
+        assertEquals("internal", km.aliasFor("db.internal.example.com", -1));
+        assertNull(km.aliasFor("example.com", 443));
+        assertNull(km.aliasFor("example.org", 443));
+    }
+
+    @Test
+    public void testEngineDestination() throws Exception {
+        SSLContext context = SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.CLIENT.getInputStream(),
+                        TestKeyStore.CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.TRUST.getInputStream(),
+                        TestKeyStore.TRUST.getPassword())
+                .build();
+        SSLEngine engine = context.createSSLEngine("www.example.com", 443);
+
+        DestinationAliasX509KeyManager km = new DestinationAliasX509KeyManager(
+                DESTINATIONS, null, null);
+        assertEquals("wildcard",
+                km.chooseEngineClientAlias(new String[]{"RSA"}, null, engine));
+    }
+
+    @Test
+    public void testDefaultAlias() {
+        DestinationAliasX509KeyManager km = new DestinationAliasX509KeyManager(
+                DESTINATIONS, "default", null);
+        assertEquals("default",
+                km.chooseClientAlias(new String[]{"RSA"}, null, null));
+    }
+}
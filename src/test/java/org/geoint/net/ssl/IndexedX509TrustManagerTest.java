@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IndexedX509TrustManagerTest {
+
+    private static final int GENERATED_ANCHORS = 200;
+    private static byte[] trustStore;
+
+    @BeforeClass
+    public static void createTrustStore() throws Exception {
+        KeyStore pki = KeyStore.getInstance("jks");
+        pki.load(TestKeyStore.PKI_TRUST.getInputStream(),
+                TestKeyStore.PKI_TRUST.getPassword());
+        trustStore = TestCertificates.toBytes(TestCertificates.trustStore(
+                GENERATED_ANCHORS,
+                (X509Certificate) pki.getCertificate(
+                        TestKeyStore.PKI_TRUST.getAliasName())));
+    }
+
+    @Test
+    public void testTrustedChain() throws Exception {
+        IndexedX509TrustManager tm = new IndexedX509TrustManager(index());
+        assertEquals(GENERATED_ANCHORS + 1, tm.getAcceptedIssuers().length);
+        tm.checkServerTrusted(TestKeyStore.PKI_SERVER.getCertificateChain(),
+                "RSA");
+        tm.checkClientTrusted(TestKeyStore.PKI_CLIENT.getCertificateChain(),
+                "RSA");
+    }
+
+    @Test(expected = CertificateException.class)
+    public void testUntrustedChain() throws Exception {
+        new IndexedX509TrustManager(index()).checkServerTrusted(
+                TestKeyStore.SERVER.getCertificateChain(), "RSA");
+    }
+
+    @Test
+    public void testIndexShared() throws Exception {
+        assertSame(index(), index());
+    }
+
+    private static TrustAnchorIndex index() throws Exception {
+        return TrustAnchorIndex.shared(trustStore, "jks",
+                TestKeyStore.TRUST.getPassword());
+    }
+}
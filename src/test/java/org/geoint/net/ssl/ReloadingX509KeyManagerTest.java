@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.X509KeyManager;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReloadingX509KeyManagerTest {
+
+    @Test
+    public void testReloadOnFileChange() throws Exception {
+        Path file = Files.createTempFile("keystore", ".jks");
+        try {
+            copy(TestKeyStore.CLIENT, file);
+            ReloadingX509KeyManager km = ReloadingX509KeyManager.watch(file,
+                    () -> load(file), 50, TimeUnit.MILLISECONDS);
+            X509KeyManager initial = km.getDelegate();
+            assertNotNull(km.getCertificateChain(
+                    TestKeyStore.CLIENT.getAliasName()));
+
+            copy(TestKeyStore.SERVER, file);
+            //ensure the modification is visible even on coarse timestamps
+            Files.setLastModifiedTime(file, FileTime.fromMillis(
+                    System.currentTimeMillis() + 5000));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (km.getDelegate() == initial
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNull(km.getCertificateChain(
+                    TestKeyStore.CLIENT.getAliasName()));
+            assertNotNull(km.getCertificateChain(
+                    TestKeyStore.SERVER.getAliasName()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFailedReloadKeepsDelegate() throws Exception {
+        Path file = Files.createTempFile("keystore", ".jks");
+        try {
+            copy(TestKeyStore.CLIENT, file);
+            ReloadingX509KeyManager km
+                    = new ReloadingX509KeyManager(() -> load(file));
+            X509KeyManager initial = km.getDelegate();
+
+            Files.write(file, new byte[]{1, 2, 3});
+            try {
+                km.reload();
+                fail("corrupt key store should not load");
+            } catch (IOException | GeneralSecurityException ex) {
+                //expected
+            }
+            assertSame(initial, km.getDelegate());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void copy(TestKeyStore store, Path file) throws Exception {
+        try (InputStream in = store.getInputStream()) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static X509KeyManager load(Path file)
+            throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance("jks");
+        try (InputStream in = Files.newInputStream(file)) {
+            ks.load(in, TestKeyStore.CLIENT.getPassword());
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, TestKeyStore.CLIENT.getPassword());
+        for (KeyManager k : kmf.getKeyManagers()) {
+            if (k instanceof X509KeyManager) {
+                return (X509KeyManager) k;
+            }
+        }
+        throw new GeneralSecurityException("no X.509 key manager");
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReloadingX509TrustManagerTest {
+
+    @Test
+    public void testReloadedTrustStoreAcceptsNewAnchor() throws Exception {
+        Path file = Files.createTempFile("truststore", ".jks");
+        SSLContext server = TestKeyStore.getPkiServerConfig((c) -> c);
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            Thread acceptor = new Thread(() -> accept(ss), "tls-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            //the legacy CA did not issue the PKI server certificate
+            copy(TestKeyStore.TRUST, file);
+            SSLContext client = SSLContextBuilder.buildContext()
+                    .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                            TestKeyStore.PKI_CLIENT.getPassword())
+                    .useCertificate(TestKeyStore.PKI_CLIENT.getAliasName(),
+                            TestKeyStore.PKI_CLIENT.getPassword())
+                    .useTrustStore(file, "jks",
+                            TestKeyStore.TRUST.getPassword())
+                    .reloadStores(50, TimeUnit.MILLISECONDS)
+                    .build();
+            assertFalse(handshake(client, ss.getLocalPort()));
+
+            copy(TestKeyStore.PKI_TRUST, file);
+            //ensure the modification is visible even on coarse timestamps
+            Files.setLastModifiedTime(file, FileTime.fromMillis(
+                    System.currentTimeMillis() + 5000));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            boolean trusted;
+            while (!(trusted = handshake(client, ss.getLocalPort()))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(trusted);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFailedReloadKeepsDelegate() throws Exception {
+        Path file = Files.createTempFile("truststore", ".jks");
+        try {
+            copy(TestKeyStore.PKI_TRUST, file);
+            ReloadingX509TrustManager tm = new ReloadingX509TrustManager(
+                    () -> load(file));
+            X509TrustManager initial = tm.getDelegate();
+            tm.checkServerTrusted(TestKeyStore.PKI_SERVER
+                    .getCertificateChain(), "RSA");
+
+            Files.write(file, new byte[]{1, 2, 3});
+            try {
+                tm.reload();
+                fail("corrupt trust store should not load");
+            } catch (IOException | GeneralSecurityException ex) {
+                //expected
+            }
+            assertSame(initial, tm.getDelegate());
+            tm.checkServerTrusted(TestKeyStore.PKI_SERVER
+                    .getCertificateChain(), "RSA");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testReloadClearsValidationCache() throws Exception {
+        Path file = Files.createTempFile("truststore", ".jks");
+        try {
+            copy(TestKeyStore.PKI_TRUST, file);
+            TrustValidationCache cache
+                    = new TrustValidationCache(10, 1, TimeUnit.MINUTES);
+            ReloadingX509TrustManager tm = new ReloadingX509TrustManager(
+                    () -> new CachingX509TrustManager(cache, load(file)));
+            tm.addReloadListener(cache::clear);
+            tm.checkServerTrusted(TestKeyStore.PKI_SERVER
+                    .getCertificateChain(), "RSA");
+            assertEquals(1, cache.size());
+
+            tm.reload();
+            assertEquals(0, cache.size());
+            tm.checkServerTrusted(TestKeyStore.PKI_SERVER
+                    .getCertificateChain(), "RSA");
+            assertEquals(2, cache.getMisses());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static boolean handshake(SSLContext client, int port)
+            throws IOException {
+        try (SSLSocket s = (SSLSocket) client.getSocketFactory()
+                .createSocket("localhost", port)) {
+            s.setSoTimeout(5000);
+            s.startHandshake();
+            return true;
+        } catch (SSLException ex) {
+            return false;
+        }
+    }
+
+    private static void accept(SSLServerSocket ss) {
+        while (!ss.isClosed()) {
+            try (SSLSocket s = (SSLSocket) ss.accept()) {
+                s.startHandshake();
+            } catch (IOException ex) {
+                //client rejected the server certificate, or socket closed
+            }
+        }
+    }
+
+    private static void copy(TestKeyStore store, Path file) throws Exception {
+        try (InputStream in = store.getInputStream()) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static X509TrustManager load(Path file)
+            throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance("jks");
+        try (InputStream in = Files.newInputStream(file)) {
+            ks.load(in, TestKeyStore.PKI_TRUST.getPassword());
+        }
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        for (TrustManager t : tmf.getTrustManagers()) {
+            if (t instanceof X509TrustManager) {
+                return (X509TrustManager) t;
+            }
+        }
+        throw new GeneralSecurityException("no X.509 trust manager");
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests revocation checking against a local server standing in for the CRL
+ * distribution points and OCSP responder of the PKI test certificates.
+ */
+public class RevocationCacheTest {
+
+    private static final byte[] SHA256_WITH_RSA = {0x2a, (byte) 0x86, 0x48,
+        (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x0b};
+    private static final byte[] OCSP_BASIC = {0x2b, 0x06, 0x01, 0x05, 0x05,
+        0x07, 0x30, 0x01, 0x01};
+
+    private Server server;
+    private RevocationResponder responder;
+    private X509Certificate[] chain;
+    private RevocationCache cache;
+
+    @Before
+    public void startResponder() throws Exception {
+        responder = new RevocationResponder();
+        responder.crls.put("/root.crl", "pki-root.crl");
+        responder.crls.put("/intermediate.crl", "pki-intermediate.crl");
+        server = new Server(0);
+        server.setHandler(responder);
+        server.start();
+        chain = TestKeyStore.PKI_SERVER.getCertificateChain();
+    }
+
+    @After
+    public void stopResponder() throws Exception {
+        if (cache != null) {
+            cache.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testCrlGood() throws Exception {
+        cache = new RevocationCache(10);
+        cache.addCrl(url("/root.crl"));
+        cache.addCrl(url("/intermediate.crl"));
+
+        assertEquals(2, cache.size());
+        assertEquals(RevocationCache.Status.GOOD,
+                cache.getStatus(chain[0], chain[1]));
+        trustManager(true).checkServerTrusted(chain, "RSA");
+    }
+
+    @Test
+    public void testCrlRevoked() throws Exception {
+        responder.crls.put("/intermediate.crl", "pki-intermediate-revoked.crl");
+        cache = new RevocationCache(10);
+        cache.addCrl(url("/root.crl"));
+        cache.addCrl(url("/intermediate.crl"));
+
+        assertEquals(RevocationCache.Status.REVOKED,
+                cache.getStatus(chain[0], chain[1]));
+        assertRejected(trustManager(false));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        cache = new RevocationCache(10);
+        cache.addCrl(url("/intermediate.crl"));
+        X509TrustManager tm = trustManager(false);
+        tm.checkServerTrusted(chain, "RSA");
+
+        responder.crls.put("/intermediate.crl", "pki-intermediate-revoked.crl");
+        cache.refresh();
+
+        assertEquals(RevocationCache.Status.REVOKED,
+                cache.getStatus(chain[0], chain[1]));
+        assertRejected(tm);
+    }
+
+    @Test
+    public void testPersisted() throws Exception {
+        Path dir = Files.createTempDirectory("revocation");
+        cache = new RevocationCache(10, dir);
+        cache.addCrl(url("/intermediate.crl"));
+        URL location = url("/intermediate.crl");
+        cache.close();
+        server.stop();
+
+        cache = new RevocationCache(10, dir);
+        assertEquals(1, cache.size());
+        assertEquals(RevocationCache.Status.GOOD,
+                cache.getStatus(chain[0], chain[1]));
+        //responder is unavailable, the persisted CRL is used
+        cache.addCrl(location);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        cache = new RevocationCache(1);
+        cache.addCrl(url("/root.crl"));
+        cache.addCrl(url("/intermediate.crl"));
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testOcspGood() throws Exception {
+        cache = new RevocationCache(10);
+        cache.setDefaultResponder(url("/ocsp"));
+
+        assertEquals(RevocationCache.Status.GOOD,
+                cache.fetchStatus(chain[0], chain[1]));
+        assertEquals(RevocationCache.Status.GOOD,
+                cache.getStatus(chain[0], chain[1]));
+        assertEquals(1, responder.ocspRequests.get());
+    }
+
+    @Test
+    public void testOcspRevoked() throws Exception {
+        responder.revoked.add(chain[0].getSerialNumber());
+        cache = new RevocationCache(10);
+        cache.setDefaultResponder(url("/ocsp"));
+
+        assertEquals(RevocationCache.Status.REVOKED,
+                cache.fetchStatus(chain[0], chain[1]));
+        assertRejected(trustManager(false));
+    }
+
+    @Test
+    public void testOcspResponseMatchedByCertId() throws Exception {
+        responder.decoy = true;
+        cache = new RevocationCache(10);
+        cache.setDefaultResponder(url("/ocsp"));
+
+        //the first, expired and revoked, single response is for another
+        //certificate
+        assertEquals(RevocationCache.Status.GOOD,
+                cache.fetchStatus(chain[0], chain[1]));
+        assertEquals(RevocationCache.Status.GOOD,
+                cache.getStatus(chain[0], chain[1]));
+        assertEquals(1, responder.ocspRequests.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresEntry() throws Exception {
+        new RevocationCache(0);
+    }
+
+    @Test
+    public void testUnknownStatus() throws Exception {
+        cache = new RevocationCache(10);
+
+        //no revocation information available
+        trustManager(false).checkServerTrusted(chain, "RSA");
+        assertRejected(trustManager(true));
+    }
+
+    private X509TrustManager trustManager(boolean requireStatus)
+            throws Exception {
+        KeyStore ks = KeyStore.getInstance("jks");
+        try (InputStream in = TestKeyStore.PKI_TRUST.getInputStream()) {
+            ks.load(in, TestKeyStore.PKI_TRUST.getPassword());
+        }
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        return new RevocationCheckingX509TrustManager(cache, requireStatus,
+                (X509TrustManager) tmf.getTrustManagers()[0]);
+    }
+
+    private void assertRejected(X509TrustManager tm) {
+        try {
+            tm.checkServerTrusted(chain, "RSA");
+            fail("chain accepted");
+        } catch (CertificateException ex) {
+            //expected
+        }
+    }
+
+    private URL url(String path) throws IOException {
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return new URL("http://localhost:" + port + path);
+    }
+
+    /**
+     * Serves CRL files and signs OCSP responses with the intermediate CA
+     * key.
+     */
+    private static class RevocationResponder extends AbstractHandler {
+
+        private final Map<String, String> crls = new ConcurrentHashMap<>();
+        private final Set<BigInteger> revoked = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger ocspRequests = new AtomicInteger();
+        /**
+         * Precede the requested response with one for another certificate.
+         */
+        private volatile boolean decoy;
+
+        @Override
+        public void handle(String target, Request baseRequest,
+                HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+            baseRequest.setHandled(true);
+            byte[] body;
+            try {
+                if ("/ocsp".equals(target)) {
+                    ocspRequests.incrementAndGet();
+                    body = ocspResponse(readFully(request.getInputStream()));
+                } else if (crls.containsKey(target)) {
+                    try (InputStream in = getClass().getClassLoader()
+                            .getResourceAsStream("ssl/" + crls.get(target))) {
+                        body = readFully(in);
+                    }
+                } else {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+            } catch (GeneralSecurityException ex) {
+                throw new IOException(ex);
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.getOutputStream().write(body);
+        }
+
+        private byte[] ocspResponse(byte[] request)
+                throws IOException, GeneralSecurityException {
+            //OCSPRequest { TBSRequest { requestList { Request { CertID
+            byte[] certId = contents(contents(contents(contents(request))));
+            certId = Arrays.copyOf(certId, encodedLength(certId));
+            BigInteger serial = serial(certId);
+
+            X509Certificate issuer
+                    = TestKeyStore.PKI_CA.getCertificateChain()[0];
+            long now = System.currentTimeMillis();
+            byte[] status = revoked.contains(serial)
+                    ? TestCertificates.tlv(0xa1, generalizedTime(now - 60000))
+                    : TestCertificates.tlv(0x80, new byte[0]);
+            byte[] single = TestCertificates.seq(certId, status,
+                    generalizedTime(now - 60000),
+                    TestCertificates.tlv(0xa0, generalizedTime(now + 3600000)));
+            byte[] responses = decoy
+                    ? TestCertificates.seq(TestCertificates.seq(
+                            withSerial(certId, serial.add(BigInteger.ONE)),
+                            TestCertificates.tlv(0xa1,
+                                    generalizedTime(now - 60000)),
+                            generalizedTime(now - 60000),
+                            TestCertificates.tlv(0xa0,
+                                    generalizedTime(now - 30000))), single)
+                    : TestCertificates.seq(single);
+            byte[] responseData = TestCertificates.seq(
+                    TestCertificates.tlv(0xa1,
+                            issuer.getSubjectX500Principal().getEncoded()),
+                    generalizedTime(now),
+                    responses);
+
+            Signature signer = Signature.getInstance("SHA256withRSA");
+            signer.initSign(TestKeyStore.PKI_CA.getPrivateKey());
+            signer.update(responseData);
+            byte[] sig = signer.sign();
+            byte[] bits = new byte[sig.length + 1];
+            System.arraycopy(sig, 0, bits, 1, sig.length);
+
+            byte[] basic = TestCertificates.seq(responseData,
+                    TestCertificates.seq(TestCertificates.oid(SHA256_WITH_RSA),
+                            new byte[]{0x05, 0x00}),
+                    TestCertificates.tlv(0x03, bits));
+            return TestCertificates.seq(
+                    TestCertificates.tlv(0x0a, new byte[]{0}),
+                    TestCertificates.tlv(0xa0, TestCertificates.seq(
+                            TestCertificates.oid(OCSP_BASIC),
+                            TestCertificates.tlv(0x04, basic))));
+        }
+
+        /**
+         * Serial number, the last field of the CertID.
+         */
+        private static BigInteger serial(byte[] certId) {
+            byte[] fields = contents(certId);
+            int pos = 0;
+            byte[] last = null;
+            while (pos < fields.length) {
+                byte[] field = Arrays.copyOfRange(fields, pos, fields.length);
+                int len = encodedLength(field);
+                last = Arrays.copyOf(field, len);
+                pos += len;
+            }
+            return new BigInteger(contents(last));
+        }
+
+        /**
+         * CertID with the serial number replaced.
+         */
+        private static byte[] withSerial(byte[] certId, BigInteger serial) {
+            byte[] fields = contents(certId);
+            int pos = 0;
+            int last = 0;
+            while (pos < fields.length) {
+                last = pos;
+                pos += encodedLength(
+                        Arrays.copyOfRange(fields, pos, fields.length));
+            }
+            return TestCertificates.seq(Arrays.copyOf(fields, last),
+                    TestCertificates.tlv(0x02, serial.toByteArray()));
+        }
+
+        /**
+         * Contents of the first DER value.
+         */
+        private static byte[] contents(byte[] der) {
+            int header = headerLength(der);
+            return Arrays.copyOfRange(der, header, encodedLength(der));
+        }
+
+        private static int encodedLength(byte[] der) {
+            int len = der[1] & 0xff;
+            if (len > 0x7f) {
+                int octets = len & 0x7f;
+                len = 0;
+                for (int i = 0; i < octets; i++) {
+                    len = (len << 8) | (der[2 + i] & 0xff);
+                }
+            }
+            return headerLength(der) + len;
+        }
+
+        private static int headerLength(byte[] der) {
+            int len = der[1] & 0xff;
+            return (len > 0x7f) ? 2 + (len & 0x7f) : 2;
+        }
+
+        private static byte[] generalizedTime(long millis) {
+            SimpleDateFormat f = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+            f.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return TestCertificates.tlv(0x18, f.format(new Date(millis))
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private static byte[] readFully(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.util.Arrays;
+import javax.net.ssl.SSLContext;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SSLContextCacheTest {
+
+    @Test
+    public void testIdenticalConfigurationShared() throws Exception {
+        SSLContextCache cache = new SSLContextCache();
+
+        SSLContext first = clientBuilder(TestKeyStore.CLIENT.getAliasName())
+                .useCache(cache).build();
+        SSLContext second = clientBuilder(TestKeyStore.CLIENT.getAliasName())
+                .useCache(cache).build();
+
+        assertSame(first, second);
+        assertSame(first.getSocketFactory(), second.getSocketFactory());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDifferentConfigurationNotShared() throws Exception {
+        SSLContextCache cache = new SSLContextCache();
+
+        SSLContext first = clientBuilder(TestKeyStore.CLIENT.getAliasName())
+                .useCache(cache).build();
+        SSLContext second = clientBuilder("other")
+                .useCache(cache).build();
+
+        assertNotSame(first, second);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBuilderReusable() throws Exception {
+        SSLContextBuilder<SSLContext> builder
+                = clientBuilder(TestKeyStore.CLIENT.getAliasName());
+        assertNotNull(builder.build());
+        assertNotNull(builder.build());
+    }
+
+    @Test
+    public void testPrebuild() throws Exception {
+        SSLContextCache cache = new SSLContextCache();
+        cache.prebuild(Arrays.asList(
+                clientBuilder(TestKeyStore.CLIENT.getAliasName()),
+                clientBuilder("other")));
+        assertEquals(2, cache.size());
+
+        clientBuilder("other").useCache(cache).build();
+        assertEquals(2, cache.size());
+    }
+
+    private static SSLContextBuilder<SSLContext> clientBuilder(String alias) {
+        return SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.CLIENT.getInputStream(),
+                        TestKeyStore.CLIENT.getPassword())
+                .useCertificate(alias, TestKeyStore.CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.TRUST.getInputStream(),
+                        TestKeyStore.TRUST.getPassword());
+    }
+}
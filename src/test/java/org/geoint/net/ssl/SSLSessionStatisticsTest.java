@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SSLSessionStatisticsTest {
+
+    @Test
+    public void testResumedTls12() throws Exception {
+        assertResumedOnce("TLSv1.2");
+    }
+
+    @Test
+    public void testResumedTls13() throws Exception {
+        assertResumedOnce("TLSv1.3");
+    }
+
+    @Test
+    public void testConcurrentFullHandshakes() throws Exception {
+        final int connections = 8;
+        SSLContext server = TestKeyStore.getPkiServerConfig((c) -> c);
+        SSLSessionStatistics statistics = new SSLSessionStatistics();
+        //a context each, so no connection can resume another's session
+        List<SSLContext> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            clients.add(client(statistics));
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(connections);
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            //server hellos sent together, so sessions are created together
+            CyclicBarrier accepted = new CyclicBarrier(connections);
+            for (int i = 0; i < connections; i++) {
+                Thread acceptor = new Thread(() -> {
+                    try (SSLSocket s = (SSLSocket) ss.accept()) {
+                        accepted.await();
+                        s.getOutputStream().write(1);
+                        s.getOutputStream().flush();
+                        s.getInputStream().read();
+                    } catch (Exception ex) {
+                        //fails the client handshake
+                    }
+                }, "tls-accept");
+                acceptor.setDaemon(true);
+                acceptor.start();
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> handshakes = new ArrayList<>();
+            for (SSLContext client : clients) {
+                handshakes.add(exec.submit(() -> {
+                    start.await();
+                    handshake(client, ss.getLocalPort(), "TLSv1.3");
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> h : handshakes) {
+                h.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+        assertEquals(connections, statistics.getFullHandshakes());
+        assertEquals(0, statistics.getResumedHandshakes());
+    }
+
+    private static void assertResumedOnce(String protocol) throws Exception {
+        SSLContext server = TestKeyStore.getPkiServerConfig((c) -> c);
+        SSLSessionStatistics statistics = new SSLSessionStatistics();
+        SSLContext client = client(statistics);
+
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            Thread acceptor = new Thread(() -> accept(ss), "tls-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            for (int i = 0; i < 2; i++) {
+                handshake(client, ss.getLocalPort(), protocol);
+            }
+        }
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(1, statistics.getResumedHandshakes());
+        assertEquals(0.5, statistics.getResumptionRate(), 0);
+    }
+
+    private static SSLContext client(SSLSessionStatistics statistics)
+            throws Exception {
+        return SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useCertificate(TestKeyStore.PKI_CLIENT.getAliasName(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .withSessionStatistics(statistics)
+                .build();
+    }
+
+    private static void handshake(SSLContext client, int port,
+            String protocol) throws Exception {
+        try (SSLSocket s = (SSLSocket) client.getSocketFactory()
+                .createSocket("localhost", port)) {
+            s.setEnabledProtocols(new String[]{protocol});
+            //listeners are notified in order, after the statistics
+            CountDownLatch recorded = new CountDownLatch(1);
+            s.addHandshakeCompletedListener((e) -> recorded.countDown());
+            s.startHandshake();
+            //TLS 1.3 session tickets arrive after the handshake
+            assertEquals(1, s.getInputStream().read());
+            assertTrue(recorded.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void accept(SSLServerSocket ss) {
+        try {
+            while (true) {
+                try (SSLSocket s = (SSLSocket) ss.accept()) {
+                    s.getOutputStream().write(1);
+                    s.getOutputStream().flush();
+                    s.getInputStream().read();
+                }
+            }
+        } catch (IOException ex) {
+            //server socket closed
+        }
+    }
+}
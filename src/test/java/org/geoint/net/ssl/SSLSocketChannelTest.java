@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Uses the PKI stores rather than server.jks/client.jks, whose CA
+ * certificate current JREs no longer accept as a trust anchor.
+ */
+public class SSLSocketChannelTest {
+
+    @Test
+    public void testEngineConfiguration() throws Exception {
+        SSLEngineFactory factory = clientFactory();
+
+        SSLEngine client = factory.createClientEngine("www.example.com", 443);
+        assertTrue(client.getUseClientMode());
+        assertEquals("www.example.com", client.getPeerHost());
+        assertEquals(443, client.getPeerPort());
+        assertEquals("HTTPS", client.getSSLParameters()
+                .getEndpointIdentificationAlgorithm());
+        assertEquals(new SNIHostName("www.example.com"),
+                client.getSSLParameters().getServerNames().get(0));
+        //no server name indication for addresses
+        assertNull(factory.createClientEngine("127.0.0.1", 443)
+                .getSSLParameters().getServerNames());
+        assertNull(factory.withEndpointIdentification(null)
+                .createClientEngine("www.example.com", 443)
+                .getSSLParameters().getEndpointIdentificationAlgorithm());
+
+        SSLEngine server = factory.createServerEngine();
+        assertFalse(server.getUseClientMode());
+        assertTrue(server.getNeedClientAuth());
+        assertTrue(factory.withClientAuth(SSLEngineFactory.ClientAuth.WANT)
+                .createServerEngine().getWantClientAuth());
+    }
+
+    @Test
+    public void testMutualAuthClientChannel() throws Exception {
+        SSLContext server = TestKeyStore.getPkiServerConfig((c) -> c);
+        DirectBufferPool pool = new DirectBufferPool(4);
+
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            ss.setNeedClientAuth(true);
+            CompletableFuture<String> clientName = echoOnce(ss);
+
+            SSLEngine engine = clientFactory()
+                    .createClientEngine("localhost", ss.getLocalPort());
+            try (SSLSocketChannel channel = new SSLSocketChannel(
+                    SocketChannel.open(loopback(ss.getLocalPort())),
+                    engine, pool)) {
+                assertEquals(5, channel.write(ascii("hello")));
+                assertEquals("hello", readAscii(channel, 5));
+                assertTrue(engine.getSession().getPeerPrincipal()
+                        .getName().contains("CN=localhost"));
+            }
+            assertTrue(clientName.get(5, TimeUnit.SECONDS)
+                    .contains("CN=client"));
+            assertEquals(3, pool.size());
+        }
+    }
+
+    @Test(expected = SSLHandshakeException.class)
+    public void testEndpointIdentification() throws Exception {
+        SSLContext server = TestKeyStore.getPkiServerConfig((c) -> c);
+
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            echoOnce(ss);
+
+            try (SSLSocketChannel channel = new SSLSocketChannel(
+                    SocketChannel.open(loopback(ss.getLocalPort())),
+                    clientFactory().createClientEngine("otherhost",
+                            ss.getLocalPort()))) {
+                channel.handshake();
+            }
+        }
+    }
+
+    @Test
+    public void testNonBlockingServerChannel() throws Exception {
+        SSLEngineFactory factory = TestKeyStore.getPkiServerConfig(
+                SSLEngineFactory::new);
+        SSLContext client = TestKeyStore.getPkiMutualAuthClientConfig(
+                (c) -> c);
+
+        try (ServerSocketChannel ssc = ServerSocketChannel.open();
+                Selector selector = Selector.open()) {
+            ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    0));
+            int port = ssc.socket().getLocalPort();
+            CompletableFuture<String> reply = CompletableFuture.supplyAsync(
+                    () -> {
+                        try (SSLSocket s = (SSLSocket) client
+                                .getSocketFactory()
+                                .createSocket("localhost", port)) {
+                            s.getOutputStream().write(
+                                    "ping".getBytes(StandardCharsets.US_ASCII));
+                            byte[] b = new byte[4];
+                            new DataInputStream(s.getInputStream())
+                                    .readFully(b);
+                            return new String(b, StandardCharsets.US_ASCII);
+                        } catch (IOException ex) {
+                            return ex.toString();
+                        }
+                    });
+
+            SocketChannel accepted = ssc.accept();
+            accepted.configureBlocking(false);
+            try (SSLSocketChannel channel = new SSLSocketChannel(accepted,
+                    factory.createServerEngine())) {
+                accepted.register(selector, SelectionKey.OP_READ);
+                ByteBuffer received = ByteBuffer.allocate(4);
+                while (received.hasRemaining()) {
+                    if (channel.read(received) == 0) {
+                        selector.select(5000);
+                        selector.selectedKeys().clear();
+                    }
+                }
+                assertEquals("ping", new String(received.array(),
+                        StandardCharsets.US_ASCII));
+                assertTrue(channel.getEngine().getSession()
+                        .getPeerPrincipal().getName().contains("CN=client"));
+
+                ByteBuffer pong = ascii("pong");
+                while (pong.hasRemaining() || channel.hasPendingOutput()) {
+                    channel.write(pong);
+                }
+                assertEquals("pong", reply.get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    private static SSLEngineFactory clientFactory() throws Exception {
+        return TestKeyStore.getPkiMutualAuthClientConfig(
+                SSLEngineFactory::new);
+    }
+
+    private static InetSocketAddress loopback(int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static ByteBuffer ascii(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String readAscii(SSLSocketChannel channel, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(),
+                StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Echoes the bytes of one connection, completing with the client
+     * principal name.
+     */
+    private static CompletableFuture<String> echoOnce(SSLServerSocket ss) {
+        CompletableFuture<String> clientName = new CompletableFuture<>();
+        Thread t = new Thread(() -> {
+            try (SSLSocket s = (SSLSocket) ss.accept()) {
+                s.startHandshake();
+                clientName.complete(
+                        s.getSession().getPeerPrincipal().getName());
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = s.getInputStream().read(buffer)) != -1) {
+                    s.getOutputStream().write(buffer, 0, read);
+                }
+            } catch (IOException ex) {
+                clientName.completeExceptionally(ex);
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return clientName;
+    }
+}
@@ -91,6 +91,28 @@ public class SSLSocketFactoryBuilderTest {
         }
     }
 
+    @Test
+    public void testSessionCacheConfiguration() throws Exception {
+        SSLContext context = SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.CLIENT.getInputStream(),
+                        TestKeyStore.CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.TRUST.getInputStream(),
+                        TestKeyStore.TRUST.getPassword())
+                .withSessionCacheSize(42)
+                .withSessionTimeout(600)
+                .build();
+
+        assertEquals(42, context.getClientSessionContext().getSessionCacheSize());
+        assertEquals(600, context.getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    public void testSharedContextSharesSocketFactory() throws Exception {
+        SSLContext context = TestKeyStore.getDefaultMutualAuthClientConfig(
+                (c) -> c);
+        assertSame(context.getSocketFactory(), context.getSocketFactory());
+    }
+
     /**
      * Simple SSL server requiring mutual authentication
      */
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Generates self-signed certificates for tests which need a large number of
+ * trust anchors, or specific subject names, DER encoding the certificates
+ * directly since the JRE provides no public API to create them.
+ */
+public final class TestCertificates {
+
+    private static final byte[] ECDSA_WITH_SHA256
+            = {0x2a, (byte) 0x86, 0x48, (byte) 0xce, 0x3d, 0x04, 0x03, 0x02};
+    private static final byte[] COMMON_NAME = {0x55, 0x04, 0x03};
+    private static final byte[] BASIC_CONSTRAINTS = {0x55, 0x1d, 0x13};
+    private static final byte[] SUBJECT_KEY_IDENTIFIER = {0x55, 0x1d, 0x0e};
+    private static final byte[] SUBJECT_ALT_NAME = {0x55, 0x1d, 0x11};
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private TestCertificates() {
+    }
+
+    /**
+     * Creates a trust store containing the requested number of generated CA
+     * certificates, in addition to the provided certificates.
+     *
+     * @param count number of generated anchors
+     * @param additional additional trusted certificates
+     * @return trust store
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static KeyStore trustStore(int count,
+            X509Certificate... additional)
+            throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance("jks");
+        ks.load(null, null);
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(256);
+        for (int i = 0; i < count; i++) {
+            ks.setCertificateEntry("generated-" + i,
+                    selfSignedCa("generated-ca-" + i, kpg.generateKeyPair()));
+        }
+        for (int i = 0; i < additional.length; i++) {
+            ks.setCertificateEntry("additional-" + i, additional[i]);
+        }
+        return ks;
+    }
+
+    /**
+     * Serializes the key store with the {@link TestKeyStore} password.
+     *
+     * @param ks key store
+     * @return serialized key store
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static byte[] toBytes(KeyStore ks)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ks.store(out, TestKeyStore.TRUST.getPassword());
+        return out.toByteArray();
+    }
+
+    public static X509Certificate selfSignedCa(String cn, KeyPair keys)
+            throws IOException, GeneralSecurityException {
+        byte[] keyId = MessageDigest.getInstance("SHA-1")
+                .digest(keys.getPublic().getEncoded());
+        return selfSigned(cn, keys,
+                seq(oid(BASIC_CONSTRAINTS), tlv(0x01, new byte[]{-1}),
+                        tlv(0x04, seq(tlv(0x01, new byte[]{-1})))),
+                seq(oid(SUBJECT_KEY_IDENTIFIER),
+                        tlv(0x04, tlv(0x04, keyId))));
+    }
+
+    /**
+     * Creates a self-signed end entity certificate with the DNS subject
+     * alternative names, or none if no names are provided.
+     *
+     * @param cn subject common name
+     * @param keys certificate keys
+     * @param dnsNames DNS subject alternative names
+     * @return certificate
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static X509Certificate selfSignedServer(String cn, KeyPair keys,
+            String... dnsNames) throws IOException, GeneralSecurityException {
+        if (dnsNames.length == 0) {
+            return selfSigned(cn, keys);
+        }
+        byte[][] names = new byte[dnsNames.length][];
+        for (int i = 0; i < dnsNames.length; i++) {
+            names[i] = tlv(0x82, dnsNames[i].getBytes(StandardCharsets.US_ASCII));
+        }
+        return selfSigned(cn, keys, seq(oid(SUBJECT_ALT_NAME),
+                tlv(0x04, seq(names))));
+    }
+
+    private static X509Certificate selfSigned(String cn, KeyPair keys,
+            byte[]... extensions)
+            throws IOException, GeneralSecurityException {
+        byte[] name = seq(set(seq(oid(COMMON_NAME),
+                tlv(0x0c, cn.getBytes(StandardCharsets.UTF_8)))));
+        byte[] algorithm = seq(oid(ECDSA_WITH_SHA256));
+        long now = System.currentTimeMillis();
+
+        byte[] tbs = seq(
+                tlv(0xa0, tlv(0x02, new byte[]{2})),
+                tlv(0x02, BigInteger.valueOf(now).add(
+                        BigInteger.valueOf(cn.hashCode() & 0xffff))
+                        .toByteArray()),
+                algorithm,
+                name,
+                seq(time(now - YEAR_MILLIS), time(now + 10 * YEAR_MILLIS)),
+                name,
+                keys.getPublic().getEncoded(),
+                (extensions.length == 0)
+                        ? new byte[0]
+                        : tlv(0xa3, seq(extensions)));
+
+        Signature signer = Signature.getInstance("SHA256withECDSA");
+        signer.initSign(keys.getPrivate());
+        signer.update(tbs);
+        byte[] sig = signer.sign();
+        byte[] bits = new byte[sig.length + 1];
+        System.arraycopy(sig, 0, bits, 1, sig.length);
+
+        byte[] der = seq(tbs, algorithm, tlv(0x03, bits));
+        return (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(der));
+    }
+
+    static byte[] time(long millis) {
+        SimpleDateFormat f = new SimpleDateFormat("yyMMddHHmmss'Z'");
+        f.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return tlv(0x17, f.format(new Date(millis))
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static byte[] oid(byte[] encoded) {
+        return tlv(0x06, encoded);
+    }
+
+    static byte[] seq(byte[]... values) {
+        return tlv(0x30, concat(values));
+    }
+
+    static byte[] set(byte[]... values) {
+        return tlv(0x31, concat(values));
+    }
+
+    static byte[] concat(byte[]... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] v : values) {
+            out.write(v, 0, v.length);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] tlv(int tag, byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+        int len = value.length;
+        if (len < 0x80) {
+            out.write(len);
+        } else if (len < 0x100) {
+            out.write(0x81);
+            out.write(len);
+        } else {
+            out.write(0x82);
+            out.write(len >> 8);
+            out.write(len);
+        }
+        out.write(value, 0, value.length);
+        return out.toByteArray();
+    }
+}
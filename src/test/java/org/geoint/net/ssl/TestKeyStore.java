@@ -18,6 +18,11 @@ package org.geoint.net.ssl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.function.Function;
 import javax.net.ssl.SSLContext;
 
@@ -28,7 +33,15 @@ public enum TestKeyStore {
 
     CLIENT("client.jks", "client"),
     SERVER("server.jks", "server"),
-    TRUST("truststore.jks", "ca");
+    TRUST("truststore.jks", "ca"),
+    //chain of root-ca -> intermediate-ca -> leaf with CA basic constraints, 
+    //which current JREs require to validate the path
+    PKI_CLIENT("pki-client.jks", "client"),
+    PKI_SERVER("pki-server.jks", "server"),
+    PKI_TRUST("pki-truststore.jks", "root"),
+    //keys of the PKI root and intermediate CAs, for signing test CRLs and 
+    //OCSP responses
+    PKI_CA("pki-ca.jks", "intermediate");
 
     private static final char[] STORE_PASS = "changeit".toCharArray();
 
@@ -80,6 +93,67 @@ public enum TestKeyStore {
                 .build();
     }
 
+    /**
+     * Mutual authentication client SSL configuration, using the PKI stores,
+     * for testing.
+     *
+     * @param <T>
+     * @param adapter
+     * @return
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static <T> T getPkiMutualAuthClientConfig(Function<SSLContext, T> adapter)
+            throws IOException, GeneralSecurityException {
+        return SSLContextBuilder.onBuild(adapter)
+                .useJksKeyStore(PKI_CLIENT.getInputStream(), PKI_CLIENT.getPassword())
+                .useCertificate(PKI_CLIENT.getAliasName(), PKI_CLIENT.getPassword())
+                .useJksTrustStore(PKI_TRUST.getInputStream(), PKI_TRUST.getPassword())
+                .build();
+    }
+
+    public static <T> T getPkiServerConfig(Function<SSLContext, T> adapter)
+            throws IOException, GeneralSecurityException {
+        return SSLContextBuilder.onBuild(adapter)
+                .useJksKeyStore(PKI_SERVER.getInputStream(), PKI_SERVER.getPassword())
+                .useCertificate(PKI_SERVER.getAliasName())
+                .useJksTrustStore(PKI_TRUST.getInputStream(), PKI_TRUST.getPassword())
+                .build();
+    }
+
+    /**
+     * Returns the certificate chain of the store alias.
+     *
+     * @return certificate chain
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public X509Certificate[] getCertificateChain()
+            throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance("jks");
+        try (InputStream in = getInputStream()) {
+            ks.load(in, STORE_PASS);
+        }
+        Certificate[] chain = ks.getCertificateChain(alias);
+        return Arrays.copyOf(chain, chain.length, X509Certificate[].class);
+    }
+
+    /**
+     * Returns the private key of the store alias.
+     *
+     * @return private key
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public PrivateKey getPrivateKey()
+            throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance("jks");
+        try (InputStream in = getInputStream()) {
+            ks.load(in, STORE_PASS);
+        }
+        return (PrivateKey) ks.getKey(alias, STORE_PASS);
+    }
+
     public static <T> T getDefaultServerConfig(Function<SSLContext, T> adapter)
             throws IOException, GeneralSecurityException {
         return SSLContextBuilder.onBuild(adapter)
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Full handshake latency and bulk transfer throughput of each
+ * {@link TlsProfile} against a local Jetty server using the same profile.
+ * <p>
+ * {@code bulkTransfer} reads a {@value #BULK_BYTES} byte response over a
+ * kept-alive connection per operation, so its throughput in MiB/s is its
+ * score in ops/ms multiplied by 1000.
+ * <p>
+ * Run with {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.geoint.net.ssl.TlsProfileBenchmark}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsProfileBenchmark {
+
+    private static final int BULK_BYTES = 1024 * 1024;
+    private static final byte[] CHUNK = new byte[16 * 1024];
+
+    @Param({"MODERN", "COMPATIBLE", "FIPS"})
+    public TlsProfile profile;
+
+    private Server server;
+    private int port;
+    private SSLContext client;
+    private URL bulk;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup
+    public void setup() throws Exception {
+        SSLContext serverContext = SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_SERVER.getInputStream(),
+                        TestKeyStore.PKI_SERVER.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .withProfile(profile)
+                .build();
+        client = SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .withProfile(profile)
+                .build();
+
+        server = new Server();
+        SslContextFactory sslFactory = new SslContextFactory();
+        sslFactory.setSslContext(serverContext);
+        ServerConnector connector = new ServerConnector(server,
+                new SslConnectionFactory(sslFactory,
+                        HttpVersion.HTTP_1_1.asString()),
+                new HttpConnectionFactory(new HttpConfiguration()));
+        server.addConnector(connector);
+        server.setHandler(new BulkHandler());
+        server.start();
+        port = connector.getLocalPort();
+        bulk = new URL("https://localhost:" + port + "/bulk");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String fullHandshake() throws IOException {
+        try (SSLSocket socket = (SSLSocket) client.getSocketFactory()
+                .createSocket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port));
+            socket.startHandshake();
+            //force a full handshake on the next connection
+            socket.getSession().invalidate();
+            return socket.getSession().getCipherSuite();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long bulkTransfer() throws IOException {
+        HttpsURLConnection conn = (HttpsURLConnection) bulk.openConnection();
+        conn.setSSLSocketFactory(client.getSocketFactory());
+        long read = 0;
+        try (InputStream in = conn.getInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                read += n;
+            }
+        }
+        return read;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TlsProfileBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static class BulkHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest,
+                HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("application/octet-stream");
+            response.setContentLength(BULK_BYTES);
+            for (int sent = 0; sent < BULK_BYTES; sent += CHUNK.length) {
+                response.getOutputStream().write(CHUNK);
+            }
+            baseRequest.setHandled(true);
+        }
+    }
+}
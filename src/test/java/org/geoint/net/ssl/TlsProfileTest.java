@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TlsProfileTest {
+
+    @Test
+    public void testModernProfile() throws Exception {
+        SSLSession session = handshake(TlsProfile.MODERN, null);
+
+        assertEquals("TLSv1.3", session.getProtocol());
+        assertTrue(Arrays.asList(TlsProfile.MODERN.getCipherSuites())
+                .contains(session.getCipherSuite()));
+    }
+
+    @Test
+    public void testServerProfile() throws Exception {
+        SSLSession session = handshake(null, TlsProfile.FIPS);
+
+        assertTrue(Arrays.asList(TlsProfile.FIPS.getCipherSuites())
+                .contains(session.getCipherSuite()));
+    }
+
+    @Test
+    public void testProfileAppliedToSocketsAndEngines() throws Exception {
+        SSLContext context = profiledContext(TlsProfile.COMPATIBLE);
+
+        try (SSLSocket socket = (SSLSocket) context.getSocketFactory()
+                .createSocket()) {
+            assertArrayEquals(new String[]{"TLSv1.3", "TLSv1.2"},
+                    socket.getEnabledProtocols());
+            assertEquals("TLS_AES_128_GCM_SHA256",
+                    socket.getEnabledCipherSuites()[0]);
+        }
+        SSLEngine engine = context.createSSLEngine();
+        assertArrayEquals(new String[]{"TLSv1.3", "TLSv1.2"},
+                engine.getEnabledProtocols());
+        assertArrayEquals(new String[]{"TLSv1.3", "TLSv1.2"},
+                context.getDefaultSSLParameters().getProtocols());
+    }
+
+    private static SSLSession handshake(TlsProfile clientProfile,
+            TlsProfile serverProfile) throws Exception {
+        SSLContext client = profiledContext(clientProfile);
+        SSLContext server = SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_SERVER.getInputStream(),
+                        TestKeyStore.PKI_SERVER.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .withProfile(serverProfile)
+                .build();
+
+        try (SSLServerSocket ss = (SSLServerSocket) server
+                .getServerSocketFactory().createServerSocket(0)) {
+            Thread accept = new Thread(() -> {
+                try (SSLSocket s = (SSLSocket) ss.accept()) {
+                    s.startHandshake();
+                    s.getInputStream().read();
+                } catch (IOException ex) {
+                    //client closed
+                }
+            });
+            accept.setDaemon(true);
+            accept.start();
+
+            try (SSLSocket socket = (SSLSocket) client.getSocketFactory()
+                    .createSocket("localhost", ss.getLocalPort())) {
+                socket.startHandshake();
+                return socket.getSession();
+            }
+        }
+    }
+
+    private static SSLContext profiledContext(TlsProfile profile)
+            throws Exception {
+        return SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .withProfile(profile)
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Server chain validation time, and the cost of creating a context's trust
+ * managers, for a large trust store with the JRE trust manager and with
+ * {@link IndexedX509TrustManager}.
+ * <p>
+ * {@link #main(String[])} first prints the retained heap of ten contexts'
+ * worth of trust managers for each approach, then runs the benchmarks; add
+ * {@code -prof gc} to JMH options to compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrustAnchorIndexBenchmark {
+
+    private static final int CONTEXTS = 10;
+
+    @Param({"5000"})
+    public int anchors;
+
+    private byte[] trustStore;
+    private X509Certificate[] chain;
+    private X509TrustManager jre;
+    private X509TrustManager indexed;
+
+    @Setup
+    public void setup() throws Exception {
+        trustStore = createTrustStore(anchors);
+        chain = TestKeyStore.PKI_SERVER.getCertificateChain();
+        jre = jreTrustManager(trustStore);
+        indexed = indexedTrustManager(trustStore);
+    }
+
+    @Benchmark
+    public X509Certificate[] jreValidation() throws Exception {
+        jre.checkServerTrusted(chain, "RSA");
+        return chain;
+    }
+
+    @Benchmark
+    public X509Certificate[] indexedValidation() throws Exception {
+        indexed.checkServerTrusted(chain, "RSA");
+        return chain;
+    }
+
+    @Benchmark
+    public X509TrustManager jreCreate() throws Exception {
+        return jreTrustManager(trustStore);
+    }
+
+    @Benchmark
+    public X509TrustManager indexedCreate() throws Exception {
+        return indexedTrustManager(trustStore);
+    }
+
+    private static byte[] createTrustStore(int anchors) throws Exception {
+        KeyStore pki = KeyStore.getInstance("jks");
+        pki.load(TestKeyStore.PKI_TRUST.getInputStream(),
+                TestKeyStore.PKI_TRUST.getPassword());
+        return TestCertificates.toBytes(TestCertificates.trustStore(anchors,
+                (X509Certificate) pki.getCertificate(
+                        TestKeyStore.PKI_TRUST.getAliasName())));
+    }
+
+    private static X509TrustManager jreTrustManager(byte[] trustStore)
+            throws Exception {
+        KeyStore ks = KeyStore.getInstance("jks");
+        ks.load(new ByteArrayInputStream(trustStore),
+                TestKeyStore.TRUST.getPassword());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        return (X509TrustManager) tmf.getTrustManagers()[0];
+    }
+
+    private static X509TrustManager indexedTrustManager(byte[] trustStore)
+            throws Exception {
+        return new IndexedX509TrustManager(TrustAnchorIndex.shared(trustStore,
+                "jks", TestKeyStore.TRUST.getPassword()));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void printFootprint(int anchors) throws Exception {
+        byte[] store = createTrustStore(anchors);
+        X509Certificate[] chain = TestKeyStore.PKI_SERVER.getCertificateChain();
+        List<X509TrustManager> retained = new ArrayList<>();
+
+        long before = usedHeap();
+        for (int i = 0; i < CONTEXTS; i++) {
+            retained.add(jreTrustManager(store));
+        }
+        long jreBytes = usedHeap() - before;
+        retained.clear();
+
+        before = usedHeap();
+        for (int i = 0; i < CONTEXTS; i++) {
+            X509TrustManager tm = indexedTrustManager(store);
+            tm.checkServerTrusted(chain, "RSA");
+            retained.add(tm);
+        }
+        long indexedBytes = usedHeap() - before;
+
+        System.out.printf("Retained heap, %d contexts, %d anchors: "
+                + "jre=%d KiB, indexed=%d KiB%n", retained.size(), anchors,
+                jreBytes / 1024, indexedBytes / 1024);
+    }
+
+    public static void main(String[] args) throws Exception {
+        printFootprint(5000);
+        new Runner(new OptionsBuilder()
+                .include(TrustAnchorIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.ssl;
+
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Server certificate chain validation cost, the trust portion of each client
+ * handshake, with and without {@link CachingX509TrustManager}, and the CPU
+ * cost of a whole full handshake with and without the cache.
+ * <p>
+ * The handshake benchmarks run a client and server SSLEngine against each
+ * other over in-memory buffers, so their score is the handshake CPU time of
+ * both peers, without network latency.  Engines are created without a peer,
+ * so every handshake is a full handshake rather than a session resumption.
+ * <p>
+ * Run with {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.geoint.net.ssl.TrustValidationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrustValidationBenchmark {
+
+    private X509Certificate[] chain;
+    private X509TrustManager uncached;
+    private X509TrustManager cached;
+    private SSLContext server;
+    private SSLContext uncachedClient;
+    private SSLContext cachedClient;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyStore ks = KeyStore.getInstance("jks");
+        ks.load(TestKeyStore.PKI_TRUST.getInputStream(),
+                TestKeyStore.PKI_TRUST.getPassword());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+
+        chain = TestKeyStore.PKI_SERVER.getCertificateChain();
+        uncached = (X509TrustManager) tmf.getTrustManagers()[0];
+        cached = new CachingX509TrustManager(
+                new TrustValidationCache(1024, 1, TimeUnit.HOURS), uncached);
+
+        server = TestKeyStore.getPkiServerConfig((c) -> c);
+        uncachedClient = client(null);
+        cachedClient = client(
+                new TrustValidationCache(1024, 1, TimeUnit.HOURS));
+    }
+
+    private static SSLContext client(TrustValidationCache cache)
+            throws Exception {
+        return SSLContextBuilder.buildContext()
+                .useJksKeyStore(TestKeyStore.PKI_CLIENT.getInputStream(),
+                        TestKeyStore.PKI_CLIENT.getPassword())
+                .useJksTrustStore(TestKeyStore.PKI_TRUST.getInputStream(),
+                        TestKeyStore.PKI_TRUST.getPassword())
+                .cacheTrustValidation(cache)
+                .build();
+    }
+
+    @Benchmark
+    public X509Certificate[] uncachedValidation() throws Exception {
+        uncached.checkServerTrusted(chain, "RSA");
+        return chain;
+    }
+
+    @Benchmark
+    public X509Certificate[] cachedValidation() throws Exception {
+        cached.checkServerTrusted(chain, "RSA");
+        return chain;
+    }
+
+    @Benchmark
+    public String uncachedHandshake() throws Exception {
+        return handshake(uncachedClient);
+    }
+
+    @Benchmark
+    public String cachedHandshake() throws Exception {
+        return handshake(cachedClient);
+    }
+
+    private String handshake(SSLContext clientContext) throws SSLException {
+        SSLEngine client = clientContext.createSSLEngine();
+        client.setUseClientMode(true);
+        SSLEngine peer = server.createSSLEngine();
+        peer.setUseClientMode(false);
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer app = ByteBuffer.allocate(
+                client.getSession().getApplicationBufferSize());
+        ByteBuffer toServer = ByteBuffer.allocate(
+                client.getSession().getPacketBufferSize());
+        ByteBuffer toClient = ByteBuffer.allocate(
+                peer.getSession().getPacketBufferSize());
+        client.beginHandshake();
+        peer.beginHandshake();
+        while (handshaking(client) || handshaking(peer)) {
+            client.wrap(empty, toServer);
+            runTasks(client);
+            peer.wrap(empty, toClient);
+            runTasks(peer);
+
+            toServer.flip();
+            peer.unwrap(toServer, app);
+            toServer.compact();
+            runTasks(peer);
+            app.clear();
+            toClient.flip();
+            client.unwrap(toClient, app);
+            toClient.compact();
+            runTasks(client);
+            app.clear();
+        }
+        return client.getSession().getCipherSuite();
+    }
+
+    private static boolean handshaking(SSLEngine engine) {
+        HandshakeStatus status = engine.getHandshakeStatus();
+        return status != HandshakeStatus.NOT_HANDSHAKING
+                && status != HandshakeStatus.FINISHED;
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TrustValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Request signing throughput, with a Mac obtained and initialized for each
+ * request (signing by hand) and with the per-thread Macs of {@link HmacKey}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class HmacSigningBenchmark {
+
+    private static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+    private static final byte[] SECRET
+            = "benchmark-secret".getBytes(StandardCharsets.UTF_8);
+
+    private URL url;
+    private HmacKey key;
+
+    @Setup
+    public void setup() throws Exception {
+        url = new URL("https://api.example.com:8443/v1/tiles/12/34?"
+                + "format=png&layer=roads");
+        key = new HmacKey("bench", SECRET);
+    }
+
+    @Benchmark
+    public String macPerRequest() throws Exception {
+        String canonical = "GET\n" + url.getPath() + "\n" + url.getQuery()
+                + "\n" + DATE;
+        Mac mac = Mac.getInstance(HmacKey.DEFAULT_ALGORITHM);
+        mac.init(new SecretKeySpec(SECRET, HmacKey.DEFAULT_ALGORITHM));
+        return "HMAC bench:" + Base64.getEncoder().encodeToString(
+                mac.doFinal(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String threadLocalMac() {
+        return HmacSigningInitializer.authorization(key, "GET", url, DATE);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(HmacSigningBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
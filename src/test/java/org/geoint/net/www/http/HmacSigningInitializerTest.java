@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.geoint.net.IncompleteConnectionInitializationException;
+import org.geoint.net.ParsedURL;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HmacSigningInitializerTest {
+
+    private static final byte[] SECRET
+            = "secret".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testCanonicalRequest() throws Exception {
+        assertEquals("GET\n/a/b\nx=1&y=%20\nSun, 06 Nov 1994 08:49:37 GMT",
+                HmacSigningInitializer.canonicalRequest("GET",
+                        new URL("https://h:8443/a/b?x=1&y=%20#frag"),
+                        "Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals("POST\n/\n\nd", HmacSigningInitializer
+                .canonicalRequest("POST", new URL("http://h"), "d"));
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        HmacSigningInitializer init
+                = new HmacSigningInitializer(new HmacKey("k1", SECRET));
+        HttpURLConnection conn = connection("http://api.example.com/v1?q=2");
+        init.initialize(conn);
+
+        String date = conn.getRequestProperty("Date");
+        assertNotNull(date);
+        assertEquals("HMAC k1:" + expected("GET\n/v1\nq=2\n" + date),
+                conn.getRequestProperty("Authorization"));
+
+        //signed again after the method changes
+        conn.setRequestMethod("DELETE");
+        init.sign(conn);
+        assertEquals("HMAC k1:" + expected("DELETE\n/v1\nq=2\n"
+                + conn.getRequestProperty("Date")),
+                conn.getRequestProperty("Authorization"));
+    }
+
+    @Test
+    public void testRouteKeyRotation() throws Exception {
+        HmacSigningInitializer init
+                = new HmacSigningInitializer(new HmacKey("default", SECRET));
+        String route = ParsedURL.endpointOf(
+                new URL("https://API.example.com/"));
+        assertEquals("https://api.example.com:443", route);
+
+        init.setKey(route, new HmacKey("route-1", SECRET));
+        assertTrue(signature(init, "https://api.example.com/x")
+                .startsWith("HMAC route-1:"));
+        assertTrue(signature(init, "http://api.example.com/x")
+                .startsWith("HMAC default:"));
+
+        init.setKey(route, new HmacKey("route-2", SECRET));
+        assertTrue(signature(init, "https://api.example.com/x")
+                .startsWith("HMAC route-2:"));
+    }
+
+    @Test(expected = IncompleteConnectionInitializationException.class)
+    public void testNoKey() throws Exception {
+        new HmacSigningInitializer().initialize(connection("http://h/"));
+    }
+
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        HmacKey key = new HmacKey("k1", SECRET);
+        URL url = new URL("http://api.example.com/v1?q=2");
+        String expected = "HMAC k1:" + expected("GET\n/v1\nq=2\nd");
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(exec.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        if (!expected.equals(HmacSigningInitializer
+                                .authorization(key, "GET", url, "d"))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> r : results) {
+                assertTrue(r.get());
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private static String signature(HmacSigningInitializer init, String url)
+            throws IOException {
+        HttpURLConnection conn = connection(url);
+        init.initialize(conn);
+        return conn.getRequestProperty("Authorization");
+    }
+
+    private static String expected(String canonical) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(
+                mac.doFinal(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The JRE connection hides the Authorization header, so the tests
+     * initialize a connection which does not.
+     */
+    private static HttpURLConnection connection(String url)
+            throws IOException {
+        return new HttpURLConnection(new URL(url)) {
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public boolean usingProxy() {
+                return false;
+            }
+
+            @Override
+            public void connect() throws IOException {
+                throw new IOException("Not connectable.");
+            }
+        };
+    }
+}
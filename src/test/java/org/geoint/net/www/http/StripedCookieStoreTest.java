@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.http;
+
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StripedCookieStoreTest {
+
+    @Test
+    public void testParentDomainCookies() throws Exception {
+        StripedCookieStore store = new StripedCookieStore();
+        store.add(URI.create("http://www.example.com/"),
+                cookie("site", ".example.com"));
+        store.add(URI.create("http://www.example.com/"),
+                cookie("host", null));
+        store.add(URI.create("http://other.com/"), cookie("other", null));
+
+        assertNames(store.get(URI.create("http://WWW.example.com/a")),
+                "host", "site");
+        assertNames(store.get(URI.create("http://api.example.com/")),
+                "site");
+        assertNames(store.get(URI.create("http://example.org/")));
+        assertEquals(3, store.getCookies().size());
+    }
+
+    @Test
+    public void testReplaceAndExpire() throws Exception {
+        StripedCookieStore store = new StripedCookieStore();
+        URI uri = URI.create("http://example.com/");
+        HttpCookie session = cookie("session", null);
+        store.add(uri, session);
+        HttpCookie replaced = cookie("session", null);
+        replaced.setValue("2");
+        store.add(uri, replaced);
+
+        List<HttpCookie> cookies = store.get(uri);
+        assertEquals(1, cookies.size());
+        assertEquals("2", cookies.get(0).getValue());
+
+        HttpCookie delete = cookie("session", null);
+        delete.setMaxAge(0);
+        store.add(uri, delete);
+        assertTrue(store.get(uri).isEmpty());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDomainEvicted() throws Exception {
+        StripedCookieStore store = new StripedCookieStore(3, 2);
+        URI a = URI.create("http://a.com/");
+        URI b = URI.create("http://b.com/");
+        store.add(a, cookie("a", null));
+        store.add(b, cookie("b", null));
+        store.add(URI.create("http://c.com/"), cookie("c", null));
+        store.get(a);
+        store.add(URI.create("http://d.com/"), cookie("d", null));
+
+        assertEquals(3, store.size());
+        assertTrue(store.get(b).isEmpty());
+        assertEquals(1, store.get(a).size());
+    }
+
+    @Test
+    public void testDomainLimit() throws Exception {
+        StripedCookieStore store = new StripedCookieStore(100, 2);
+        URI uri = URI.create("http://example.com/");
+        store.add(uri, cookie("1", null));
+        store.add(uri, cookie("2", null));
+        store.add(uri, cookie("3", null));
+
+        assertNames(store.get(uri), "2", "3");
+    }
+
+    @Test
+    public void testConcurrentHostsBounded() throws Exception {
+        final int max = 500;
+        StripedCookieStore store = new StripedCookieStore(max, 5);
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            exec.execute(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    URI uri = URI.create("http://h" + (i % 700) + ".t"
+                            + thread + ".example.com/");
+                    store.add(uri, cookie("c" + i % 7, null));
+                    store.get(uri);
+                }
+            });
+        }
+        exec.shutdown();
+        assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(store.size() <= max);
+        assertEquals(store.size(), store.getCookies().size());
+    }
+
+    @Test
+    public void testCookieManager() throws Exception {
+        CookieManager manager = StripedCookieStore.newCookieManager();
+        URI uri = URI.create("http://localhost:8080/app/");
+        manager.put(uri, Collections.singletonMap("Set-Cookie",
+                Collections.singletonList("JSESSIONID=abc; Path=/app")));
+
+        Map<String, List<String>> headers = manager.get(
+                URI.create("http://localhost:8080/app/page"),
+                Collections.emptyMap());
+        assertEquals(Collections.singletonList("JSESSIONID=abc"),
+                headers.get("Cookie"));
+    }
+
+    private static HttpCookie cookie(String name, String domain) {
+        HttpCookie cookie = new HttpCookie(name, "1");
+        cookie.setDomain(domain);
+        cookie.setPath("/");
+        return cookie;
+    }
+
+    private static void assertNames(List<HttpCookie> cookies,
+            String... names) {
+        assertEquals(names.length, cookies.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], cookies.get(i).getName());
+        }
+    }
+}
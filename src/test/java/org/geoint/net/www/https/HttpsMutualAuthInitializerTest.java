@@ -3,6 +3,7 @@ package org.geoint.net.www.https;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.CookieHandler;
 import java.net.URL;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -51,6 +52,23 @@ public class HttpsMutualAuthInitializerTest {
         }
     }
 
+    @Test
+    public void testCookieHandlerNotInstalled() throws Exception {
+        CookieHandler previous = CookieHandler.getDefault();
+        CookieHandler.setDefault(null);
+        try {
+            TestKeyStore.getPkiMutualAuthClientConfig(
+                    (c) -> new HttpsMutualAuthInitializer(c, false));
+            assertNull(CookieHandler.getDefault());
+
+            TestKeyStore.getPkiMutualAuthClientConfig(
+                    HttpsMutualAuthInitializer::new);
+            assertNotNull(CookieHandler.getDefault());
+        } finally {
+            CookieHandler.setDefault(previous);
+        }
+    }
+
     private Server getHttpsServer(int port) throws Exception {
         Server server = new Server();
         server.setHandler(new TestHandler());
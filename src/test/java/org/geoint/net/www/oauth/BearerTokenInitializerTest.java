@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 geoint.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geoint.net.www.oauth;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.geoint.net.FatalConnectionInitializationException;
+import org.geoint.net.IncompleteConnectionInitializationException;
+import org.geoint.net.ParsedURL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BearerTokenInitializerTest {
+
+    private static final String ROUTE_URL = "http://api.example.com/data";
+
+    private Server server;
+    private TokenEndpoint endpoint;
+    private URL tokenUrl;
+
+    @Before
+    public void startEndpoint() throws Exception {
+        endpoint = new TokenEndpoint();
+        server = new Server(0);
+        server.setHandler(endpoint);
+        server.start();
+        tokenUrl = new URL("http://localhost:"
+                + ((ServerConnector) server.getConnectors()[0]).getLocalPort()
+                + "/token");
+    }
+
+    @After
+    public void stopEndpoint() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testClientCredentialsGrant() throws Exception {
+        BearerTokenInitializer init = new BearerTokenInitializer(source());
+
+        HttpURLConnection conn = connection();
+        init.initialize(conn);
+        assertEquals("Bearer t1", conn.getRequestProperty("Authorization"));
+        assertEquals("grant_type=client_credentials&scope=read+write",
+                endpoint.body);
+        //base64 of client:s3cret
+        assertEquals("Basic Y2xpZW50OnMzY3JldA==", endpoint.authorization);
+
+        //cached
+        init.initialize(connection());
+        assertEquals(1, endpoint.requests.get());
+    }
+
+    @Test
+    public void testConcurrentConnectionsFetchOnce() throws Exception {
+        endpoint.delayMillis = 200;
+        BearerTokenInitializer init = new BearerTokenInitializer(source());
+        final int threads = 10;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(exec.submit(() -> {
+                    HttpURLConnection conn = connection();
+                    start.await();
+                    init.initialize(conn);
+                    return conn.getRequestProperty("Authorization");
+                }));
+            }
+            start.countDown();
+            for (Future<String> r : results) {
+                assertEquals("Bearer t1", r.get());
+            }
+            assertEquals(1, endpoint.requests.get());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRefreshedBeforeExpiry() throws Exception {
+        endpoint.expiresIn = 3;
+        BearerTokenInitializer init = new BearerTokenInitializer(source(),
+                ParsedURL::endpointOf, Duration.ofMillis(2500),
+                Duration.ofSeconds(10));
+        String route = ParsedURL.endpointOf(new URL(ROUTE_URL));
+
+        assertEquals("t1", init.getToken(route).getValue());
+        //refreshed at the start of the window without waiting for a
+        //connection
+        awaitRequests(2, 2000);
+        Thread.sleep(50);
+        assertEquals("t2", init.getToken(route).getValue());
+        assertEquals(2, endpoint.attempts.get());
+    }
+
+    @Test
+    public void testShortLivedTokenRefreshedAtHalfLife() throws Exception {
+        endpoint.expiresIn = 2;
+        //issued for less than the default refresh window
+        BearerTokenInitializer init = new BearerTokenInitializer(source());
+        String route = ParsedURL.endpointOf(new URL(ROUTE_URL));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("t1", init.getToken(route).getValue());
+        }
+        Thread.sleep(200);
+        assertEquals(1, endpoint.attempts.get());
+
+        awaitRequests(2, 2000);
+        Thread.sleep(50);
+        assertEquals("t2", init.getToken(route).getValue());
+        assertEquals(2, endpoint.attempts.get());
+    }
+
+    @Test
+    public void testFailedRefreshRetriedWithBackoff() throws Exception {
+        endpoint.expiresIn = 3;
+        BearerTokenInitializer init = new BearerTokenInitializer(source(),
+                ParsedURL::endpointOf, Duration.ofMillis(2500),
+                Duration.ofSeconds(10));
+        String route = ParsedURL.endpointOf(new URL(ROUTE_URL));
+
+        assertEquals("t1", init.getToken(route).getValue());
+        endpoint.status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        for (int i = 0; i < 100 && endpoint.attempts.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, endpoint.attempts.get());
+
+        //connections use the current token and do not retry early
+        assertEquals("t1", init.getToken(route).getValue());
+        Thread.sleep(300);
+        assertEquals(2, endpoint.attempts.get());
+
+        endpoint.status = HttpServletResponse.SC_OK;
+        awaitRequests(2, 2000);
+        Thread.sleep(50);
+        assertEquals("t2", init.getToken(route).getValue());
+        assertEquals(3, endpoint.attempts.get());
+    }
+
+    @Test
+    public void testTokenResponseUnescaped() throws Exception {
+        AccessToken token = source().parse("{\"access_token\":"
+                + "\"a\\/b\\\"c\\u0041\",\"token_type\":\"Bearer\"}");
+        assertEquals("a/b\"cA", token.getValue());
+        assertNull(token.getExpires());
+
+        for (String escape : new String[]{"\\u00G1", "\\u004", "\\x"}) {
+            try {
+                source().parse("{\"access_token\":\"a" + escape + "\"}");
+                fail(escape + " parsed");
+            } catch (IOException ex) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testRouteTokensCachedSeparately() throws Exception {
+        BearerTokenInitializer init = new BearerTokenInitializer(source());
+
+        assertEquals("t1", init.getToken("https://a:443").getValue());
+        assertEquals("t2", init.getToken("https://b:443").getValue());
+        assertEquals("t1", init.getToken("https://a:443").getValue());
+
+        init.invalidate("https://a:443");
+        assertEquals("t3", init.getToken("https://a:443").getValue());
+    }
+
+    @Test(expected = FatalConnectionInitializationException.class)
+    public void testRejectedCredentialsFatal() throws Exception {
+        endpoint.status = HttpServletResponse.SC_UNAUTHORIZED;
+        new BearerTokenInitializer(source()).initialize(connection());
+    }
+
+    @Test
+    public void testUnavailableEndpointIncomplete() throws Exception {
+        endpoint.status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        BearerTokenInitializer init = new BearerTokenInitializer(source());
+        try {
+            init.initialize(connection());
+            fail("initialized without a token");
+        } catch (IncompleteConnectionInitializationException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+
+        //failed request is not cached, retried after the backoff
+        endpoint.status = HttpServletResponse.SC_OK;
+        Thread.sleep(1100);
+        HttpURLConnection conn = connection();
+        init.initialize(conn);
+        assertEquals("Bearer t1", conn.getRequestProperty("Authorization"));
+    }
+
+    @Test
+    public void testFailingSourceBackedOff() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        BearerTokenInitializer init = new BearerTokenInitializer((route) -> {
+            fetches.incrementAndGet();
+            throw new IOException("Token endpoint unavailable.");
+        });
+
+        for (int i = 0; i < 10; i++) {
+            try {
+                init.getToken("https://a:443");
+                fail("token without a source");
+            } catch (IncompleteConnectionInitializationException ex) {
+                //expected, only the first waited on a request
+            }
+        }
+        assertEquals(1, fetches.get());
+
+        //retried after one second, then backed off for two
+        Thread.sleep(1100);
+        for (int i = 0; i < 10; i++) {
+            try {
+                init.getToken("https://a:443");
+                fail("token without a source");
+            } catch (IncompleteConnectionInitializationException ex) {
+                //expected
+            }
+        }
+        assertEquals(2, fetches.get());
+    }
+
+    private void awaitRequests(int requests, long timeoutMillis)
+            throws InterruptedException {
+        for (long i = 0; i < timeoutMillis / 20
+                && endpoint.requests.get() < requests; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(requests, endpoint.requests.get());
+    }
+
+    private ClientCredentialsTokenSource source() {
+        return new ClientCredentialsTokenSource(tokenUrl, "client", "s3cret",
+                "read write");
+    }
+
+    /**
+     * The JRE connection hides the Authorization header, so the tests
+     * initialize a connection which does not.
+     */
+    private static HttpURLConnection connection() throws IOException {
+        return new HttpURLConnection(new URL(ROUTE_URL)) {
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public boolean usingProxy() {
+                return false;
+            }
+
+            @Override
+            public void connect() throws IOException {
+                throw new IOException("Not connectable.");
+            }
+        };
+    }
+
+    private static class TokenEndpoint extends AbstractHandler {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile int status = HttpServletResponse.SC_OK;
+        private volatile long delayMillis;
+        private volatile int expiresIn = 3600;
+        private volatile String body;
+        private volatile String authorization;
+
+        @Override
+        public void handle(String target, Request rqst,
+                HttpServletRequest req, HttpServletResponse resp)
+                throws IOException {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(req.getInputStream()))) {
+                body = in.readLine();
+            }
+            authorization = req.getHeader("Authorization");
+            attempts.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            resp.setStatus(status);
+            resp.setContentType("application/json");
+            if (status == HttpServletResponse.SC_OK) {
+                resp.getWriter().write("{\"access_token\":\"t"
+                        + requests.incrementAndGet() + "\","
+                        + "\"token_type\":\"Bearer\",\"expires_in\":"
+                        + expiresIn + "}");
+            } else {
+                resp.getWriter().write("{\"error\":\"invalid_client\"}");
+            }
+            rqst.setHandled(true);
+        }
+    }
+}